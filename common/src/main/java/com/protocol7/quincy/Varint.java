@@ -1,10 +1,7 @@
 package com.protocol7.quincy;
 
-import com.google.common.primitives.Longs;
-import com.protocol7.quincy.utils.Bytes;
 import com.protocol7.quincy.utils.Rnd;
 import io.netty.buffer.ByteBuf;
-import java.util.Arrays;
 
 public class Varint {
 
@@ -39,71 +36,74 @@ public class Varint {
   }
 
   private static long read(final ByteBuf bb) {
-    final int first = (bb.readByte() & 0xFF);
-    final int size = ((first & 0b11000000) & 0xFF);
-    final int rest = ((first & 0b00111111) & 0xFF);
-
-    final int len = (int) Math.pow(2, size >> 6) - 1;
-
-    final byte[] b = new byte[len];
-    bb.readBytes(b);
-    final byte[] pad = new byte[7 - len];
-    final byte[] bs = Bytes.concat(pad, new byte[] {(byte) rest}, b);
-
-    final long value = Longs.fromByteArray(bs);
-
-    checkRange(value);
-
-    return value;
+    final int first = bb.readUnsignedByte();
+    final long rest = first & 0b00111111;
+
+    // the two most significant bits give the length
+    switch (first >> 6) {
+      case 0:
+        return rest;
+      case 1:
+        return rest << 8 | bb.readUnsignedByte();
+      case 2:
+        return rest << 24 | bb.readUnsignedMedium();
+      default:
+        return rest << 56 | (long) bb.readUnsignedMedium() << 32 | bb.readUnsignedInt();
+    }
   }
 
   private static long read(final byte[] b) {
-    final int first = (b[0] & 0xFF);
-    final int size = ((first & 0b11000000) & 0xFF);
-    final int rest = ((first & 0b00111111) & 0xFF);
-
-    final int len = (int) Math.pow(2, size >> 6) - 1;
+    final int len = 1 << ((b[0] & 0xFF) >> 6);
 
-    if (b.length != (len + 1)) {
+    if (b.length != len) {
       throw new IllegalArgumentException("buffer not of correct length");
     }
 
-    final byte[] pad = new byte[7 - len];
-    final byte[] bs =
-        Bytes.concat(pad, new byte[] {(byte) rest}, Arrays.copyOfRange(b, 1, b.length));
-
-    final long value = Longs.fromByteArray(bs);
-
-    checkRange(value);
-
+    long value = b[0] & 0b00111111;
+    for (int i = 1; i < len; i++) {
+      value = value << 8 | (b[i] & 0xFF);
+    }
     return value;
   }
 
   public static void write(final long value, final ByteBuf bb) {
     checkRange(value);
 
-    bb.writeBytes(write(value));
+    final int len = getLength(value);
+    if (len == 1) {
+      bb.writeByte((int) value);
+    } else if (len == 2) {
+      bb.writeShort((int) value | 0x4000);
+    } else if (len == 4) {
+      bb.writeInt((int) value | 0x80000000);
+    } else {
+      bb.writeLong(value | 0xC000000000000000L);
+    }
   }
 
-  public static byte[] write(final long value) {
-    final int from;
-    final int mask;
+  /** The number of bytes used to encode the value */
+  public static int getLength(final long value) {
     if (value > 1073741823) {
-      from = 0;
-      mask = 0b11000000;
+      return 8;
     } else if (value > 16383) {
-      from = 4;
-      mask = 0b10000000;
+      return 4;
     } else if (value > 63) {
-      from = 6;
-      mask = 0b01000000;
+      return 2;
     } else {
-      from = 7;
-      mask = 0b00000000;
+      return 1;
+    }
+  }
+
+  public static byte[] write(final long value) {
+    checkRange(value);
+
+    final int len = getLength(value);
+    final byte[] b = new byte[len];
+    for (int i = 0; i < len; i++) {
+      b[i] = (byte) (value >> (8 * (len - 1 - i)));
     }
-    final byte[] bs = Longs.toByteArray(value);
-    final byte[] b = Arrays.copyOfRange(bs, from, 8);
-    b[0] = (byte) (b[0] | mask);
+    // length prefix, 0b00 to 0b11 for 1 to 8 bytes
+    b[0] = (byte) (b[0] | Integer.numberOfTrailingZeros(len) << 6);
     return b;
   }
 
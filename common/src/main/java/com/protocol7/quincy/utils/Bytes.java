@@ -36,21 +36,15 @@ public class Bytes {
   }
 
   public static int read24(final ByteBuf bb) {
-    final byte[] b = new byte[3];
-    bb.readBytes(b);
-    return (b[0] & 0xFF) << 16 | (b[1] & 0xFF) << 8 | (b[2] & 0xFF);
+    return bb.readUnsignedMedium();
   }
 
   public static void write24(final ByteBuf bb, final int value) {
-    bb.writeByte((value >> 16) & 0xFF);
-    bb.writeByte((value >> 8) & 0xFF);
-    bb.writeByte(value & 0xFF);
+    bb.writeMedium(value);
   }
 
   public static void set24(final ByteBuf bb, final int position, final int value) {
-    bb.setByte(position, (value >> 16) & 0xFF);
-    bb.setByte(position + 1, (value >> 8) & 0xFF);
-    bb.setByte(position + 2, value & 0xFF);
+    bb.setMedium(position, value);
   }
 
   public static byte[] write(final Writeable... writeables) {
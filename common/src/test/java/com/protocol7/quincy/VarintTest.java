@@ -38,6 +38,18 @@ public class VarintTest {
     }
   }
 
+  @Test
+  public void getLength() {
+    assertEquals(1, Varint.getLength(0));
+    assertEquals(1, Varint.getLength(63));
+    assertEquals(2, Varint.getLength(64));
+    assertEquals(2, Varint.getLength(16383));
+    assertEquals(4, Varint.getLength(16384));
+    assertEquals(4, Varint.getLength(1073741823));
+    assertEquals(8, Varint.getLength(1073741824));
+    assertEquals(8, Varint.getLength(Varint.MAX));
+  }
+
   @Test
   public void read8() {
     final ByteBuf bb = Unpooled.copiedBuffer(Hex.dehex("c2 19 7c 5e ff 14 e8 8c"));
@@ -146,6 +158,21 @@ public class VarintTest {
     assertWriteBytes(Hex.dehex("25"), 37);
   }
 
+  @Test
+  public void roundtripBoundaries() {
+    final long[] values = {0, 63, 64, 16383, 16384, 1073741823, 1073741824, Varint.MAX};
+    for (final long value : values) {
+      final ByteBuf bb = Unpooled.buffer();
+      Varint.write(value, bb);
+      assertEquals(Varint.getLength(value), bb.readableBytes());
+      assertEquals(value, Varint.readAsLong(bb));
+
+      final byte[] b = Varint.write(value);
+      assertEquals(Varint.getLength(value), b.length);
+      assertEquals(value, Varint.readAsLong(b));
+    }
+  }
+
   private void assertWrite(final byte[] expected, final long vi) {
     final ByteBuf bb = Unpooled.buffer();
     Varint.write(vi, bb);
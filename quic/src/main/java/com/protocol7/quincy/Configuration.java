@@ -1,7 +1,12 @@
 package com.protocol7.quincy;
 
+import com.protocol7.quincy.congestion.CongestionControllerFactory;
+import com.protocol7.quincy.flowcontrol.DefaultFlowControlHandler;
+import com.protocol7.quincy.flowcontrol.ReceiveBudget;
 import com.protocol7.quincy.protocol.Version;
+import com.protocol7.quincy.reliability.AckFrequency;
 import com.protocol7.quincy.tls.extensions.TransportParameters;
+import com.protocol7.quincy.utils.Ticker;
 
 public class Configuration {
 
@@ -17,6 +22,12 @@ public class Configuration {
   private final int initialMaxStreamDataBidiRemote;
   private final int initialMaxStreamDataUni;
   private final int maxAckDelay;
+  private final int receiveBatchSize;
+  private final int maxProbePacketSize;
+  private final CongestionControllerFactory congestionControllerFactory;
+  private final int pacingBurst;
+  private final long maxReceiveWindow;
+  private final ReceiveBudget receiveBudget;
 
   public Configuration(
       final Version version,
@@ -30,7 +41,13 @@ public class Configuration {
       final boolean disableMigration,
       final int initialMaxStreamDataBidiRemote,
       final int initialMaxStreamDataUni,
-      final int maxAckDelay) {
+      final int maxAckDelay,
+      final int receiveBatchSize,
+      final int maxProbePacketSize,
+      final CongestionControllerFactory congestionControllerFactory,
+      final int pacingBurst,
+      final long maxReceiveWindow,
+      final ReceiveBudget receiveBudget) {
     this.version = version;
     this.initialMaxStreamDataBidiLocal = initialMaxStreamDataBidiLocal;
     this.initialMaxData = initialMaxData;
@@ -43,6 +60,12 @@ public class Configuration {
     this.initialMaxStreamDataBidiRemote = initialMaxStreamDataBidiRemote;
     this.initialMaxStreamDataUni = initialMaxStreamDataUni;
     this.maxAckDelay = maxAckDelay;
+    this.receiveBatchSize = receiveBatchSize;
+    this.maxProbePacketSize = maxProbePacketSize;
+    this.congestionControllerFactory = congestionControllerFactory;
+    this.pacingBurst = pacingBurst;
+    this.maxReceiveWindow = maxReceiveWindow;
+    this.receiveBudget = receiveBudget;
   }
 
   public Version getVersion() {
@@ -93,17 +116,61 @@ public class Configuration {
     return maxAckDelay;
   }
 
+  public int getReceiveBatchSize() {
+    return receiveBatchSize;
+  }
+
+  public int getMaxProbePacketSize() {
+    return maxProbePacketSize;
+  }
+
+  public CongestionControllerFactory getCongestionControllerFactory() {
+    return congestionControllerFactory;
+  }
+
+  public int getPacingBurst() {
+    return pacingBurst;
+  }
+
+  public long getMaxReceiveWindow() {
+    return maxReceiveWindow;
+  }
+
+  public ReceiveBudget getReceiveBudget() {
+    return receiveBudget;
+  }
+
+  /** Creates the flow control handler of a new connection */
+  public DefaultFlowControlHandler newFlowControlHandler() {
+    return new DefaultFlowControlHandler(
+        initialMaxData,
+        initialMaxStreamDataUni,
+        maxReceiveWindow,
+        receiveBudget,
+        Ticker.systemTicker());
+  }
+
+  public boolean isPathMtuDiscovery() {
+    return maxProbePacketSize > maxPacketSize;
+  }
+
+  /** The largest packet that will be sent or received on any path */
+  public int getMaxReceivePacketSize() {
+    return Math.max(maxPacketSize, maxProbePacketSize);
+  }
+
   public TransportParameters toTransportParameters() {
     return TransportParameters.newBuilder()
         .withInitialMaxStreamDataBidiLocal(initialMaxStreamDataBidiLocal)
         .withInitialMaxData(initialMaxData)
         .withInitialMaxBidiStreams(initialMaxBidiStreams)
         .withIdleTimeout(idleTimeout)
-        .withMaxPacketSize(maxPacketSize)
+        .withMaxPacketSize(getMaxReceivePacketSize())
         .withInitialMaxUniStreams(initialMaxUniStreams)
         .withDisableMigration(disableMigration)
         .withInitialMaxStreamDataBidiRemote(initialMaxStreamDataBidiRemote)
         .withInitialMaxStreamDataUni(initialMaxStreamDataUni)
+        .withMinAckDelay(AckFrequency.MIN_ACK_DELAY)
         .build();
   }
 }
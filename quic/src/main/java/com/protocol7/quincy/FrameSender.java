@@ -3,10 +3,35 @@ package com.protocol7.quincy;
 import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.tls.EncryptionLevel;
 
 // TODO consolidate with Sender
 public interface FrameSender {
   Packet sendPacket(Packet p);
 
+  /**
+   * Sends the frames directly, any queued frames that fit are sent in the same packet. Not held
+   * back by congestion control, so only for loss probes, acks, crypto data and connection closes,
+   * other frames are queued.
+   */
   FullPacket send(Frame... frames);
+
+  /**
+   * Sends a loss probe with the frames in a packet of the encryption level. Never held back by
+   * congestion control, as per RFC 9002 section 7.5. Dropped if the keys of the level are
+   * discarded.
+   */
+  void probe(EncryptionLevel level, Frame... frames);
+
+  /** Queues the frames to be sent with the next packet, or at the latest on {@link #flush()} */
+  void queue(Frame... frames);
+
+  /**
+   * Queues the frames to be sent in packets of the encryption level, e.g. retransmitted crypto
+   * data, dropped if the keys of the level are discarded before they are sent
+   */
+  void queue(EncryptionLevel level, Frame... frames);
+
+  /** Sends all queued frames, packed into as few packets as possible */
+  void flush();
 }
@@ -3,10 +3,14 @@ package com.protocol7.quincy;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseNotifier;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class Futures {
 
@@ -47,4 +51,25 @@ public class Futures {
   public static Future<Channel> thenChannel(final ChannelFuture future) {
     return thenSync(future, aVoid -> future.channel());
   }
+
+  /**
+   * Runs an asynchronous operation on the executor, directly if already called from it, otherwise
+   * by handing it over and returning a future completed with the result of the operation.
+   */
+  public static <V> Future<V> runOn(final EventExecutor executor, final Supplier<Future<V>> f) {
+    if (executor.inEventLoop()) {
+      return f.get();
+    }
+
+    final Promise<V> result = executor.newPromise();
+    executor.execute(
+        () -> {
+          try {
+            f.get().addListener(new PromiseNotifier<>(result));
+          } catch (final RuntimeException e) {
+            result.setFailure(e);
+          }
+        });
+    return result;
+  }
 }
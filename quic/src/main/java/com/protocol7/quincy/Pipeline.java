@@ -9,6 +9,7 @@ import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.FrameType;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.tls.EncryptionLevel;
 import java.net.InetSocketAddress;
 import java.util.Iterator;
 import java.util.List;
@@ -58,6 +59,11 @@ public class Pipeline {
             ((InternalConnection) connection).setState(state);
           }
 
+          @Override
+          public long getSmoothedRtt() {
+            return ((InternalConnection) connection).getSmoothedRtt();
+          }
+
           @Override
           public Packet sendPacket(final Packet p) {
             return connection.sendPacket(p);
@@ -68,6 +74,26 @@ public class Pipeline {
             return connection.send(frames);
           }
 
+          @Override
+          public void probe(final EncryptionLevel level, final Frame... frames) {
+            connection.probe(level, frames);
+          }
+
+          @Override
+          public void queue(final Frame... frames) {
+            connection.queue(frames);
+          }
+
+          @Override
+          public void queue(final EncryptionLevel level, final Frame... frames) {
+            connection.queue(level, frames);
+          }
+
+          @Override
+          public void flush() {
+            connection.flush();
+          }
+
           @Override
           public void closeConnection(
               final TransportError error, final FrameType frameType, final String msg) {
@@ -117,6 +143,11 @@ public class Pipeline {
             ((InternalConnection) connection).setState(state);
           }
 
+          @Override
+          public long getSmoothedRtt() {
+            return ((InternalConnection) connection).getSmoothedRtt();
+          }
+
           @Override
           public Packet sendPacket(final Packet p) {
             return connection.sendPacket(p);
@@ -127,6 +158,26 @@ public class Pipeline {
             return connection.send(frames);
           }
 
+          @Override
+          public void probe(final EncryptionLevel level, final Frame... frames) {
+            connection.probe(level, frames);
+          }
+
+          @Override
+          public void queue(final Frame... frames) {
+            connection.queue(frames);
+          }
+
+          @Override
+          public void queue(final EncryptionLevel level, final Frame... frames) {
+            connection.queue(level, frames);
+          }
+
+          @Override
+          public void flush() {
+            connection.flush();
+          }
+
           @Override
           public void closeConnection(
               final TransportError error, final FrameType frameType, final String msg) {
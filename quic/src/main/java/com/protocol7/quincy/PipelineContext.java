@@ -20,4 +20,7 @@ public interface PipelineContext extends FrameSender {
   State getState();
 
   void setState(final State state);
+
+  /** The smoothed RTT of the connection in nanoseconds */
+  long getSmoothedRtt();
 }
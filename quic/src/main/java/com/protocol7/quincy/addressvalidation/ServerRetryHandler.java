@@ -11,16 +11,27 @@ import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.RetryPacket;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class ServerRetryHandler implements InboundHandler {
 
   private final RetryToken retryTokenManager;
   private final long ttlMs;
+  private final Supplier<ConnectionId> connectionIds;
 
   public ServerRetryHandler(
       final RetryToken retryTokenManager, final long ttl, final TimeUnit timeUnit) {
+    this(retryTokenManager, ttl, timeUnit, ConnectionId::random);
+  }
+
+  public ServerRetryHandler(
+      final RetryToken retryTokenManager,
+      final long ttl,
+      final TimeUnit timeUnit,
+      final Supplier<ConnectionId> connectionIds) {
     this.retryTokenManager = requireNonNull(retryTokenManager);
     this.ttlMs = timeUnit.toMillis(ttl);
+    this.connectionIds = requireNonNull(connectionIds);
   }
 
   @Override
@@ -61,7 +72,7 @@ public class ServerRetryHandler implements InboundHandler {
     final byte[] retryToken =
         retryTokenManager.create(ctx.getPeerAddress().getAddress(), now() + ttlMs);
 
-    final ConnectionId newLocalConnectionId = ConnectionId.random();
+    final ConnectionId newLocalConnectionId = connectionIds.get();
 
     ctx.sendPacket(
         new RetryPacket(
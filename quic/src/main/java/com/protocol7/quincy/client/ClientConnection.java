@@ -6,12 +6,21 @@ import static java.util.Objects.requireNonNull;
 import static java.util.Optional.of;
 
 import com.protocol7.quincy.Configuration;
+import com.protocol7.quincy.Futures;
+import com.protocol7.quincy.InboundHandler;
+import com.protocol7.quincy.OutboundHandler;
 import com.protocol7.quincy.Pipeline;
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.congestion.Pacer;
+import com.protocol7.quincy.connection.ConnectionSender;
+import com.protocol7.quincy.connection.ConnectionTimer;
+import com.protocol7.quincy.connection.FrameScheduler;
 import com.protocol7.quincy.connection.InternalConnection;
 import com.protocol7.quincy.connection.PacketSender;
 import com.protocol7.quincy.connection.State;
 import com.protocol7.quincy.flowcontrol.FlowControlHandler;
 import com.protocol7.quincy.logging.LoggingHandler;
+import com.protocol7.quincy.pmtu.PathMtuDiscovery;
 import com.protocol7.quincy.protocol.ConnectionId;
 import com.protocol7.quincy.protocol.PacketNumber;
 import com.protocol7.quincy.protocol.TransportError;
@@ -25,7 +34,10 @@ import com.protocol7.quincy.protocol.packets.InitialPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.ShortPacket;
 import com.protocol7.quincy.reliability.AckDelay;
+import com.protocol7.quincy.reliability.AckFrequency;
 import com.protocol7.quincy.reliability.PacketBufferManager;
+import com.protocol7.quincy.reliability.RetransmissionQueue;
+import com.protocol7.quincy.reliability.RttEstimator;
 import com.protocol7.quincy.streams.DefaultStreamManager;
 import com.protocol7.quincy.streams.Stream;
 import com.protocol7.quincy.streams.StreamListener;
@@ -36,26 +48,35 @@ import com.protocol7.quincy.tls.ClientTlsManager;
 import com.protocol7.quincy.tls.EncryptionLevel;
 import com.protocol7.quincy.tls.aead.AEAD;
 import com.protocol7.quincy.utils.Ticker;
-import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.Promise;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+/**
+ * A client connection. All connection state is confined to the event loop of the connection, calls
+ * to the public API from other threads are handed over to the event loop.
+ */
 public class ClientConnection implements InternalConnection {
 
+  private final Logger log = LoggerFactory.getLogger(ClientConnection.class);
+
   private ConnectionId remoteConnectionId;
   private int lastDestConnectionIdLength;
   private final Optional<ConnectionId> localConnectionId = of(ConnectionId.random());
   private final PacketSender packetSender;
 
   private final Version version;
-  private final AtomicReference<Long> sendPacketNumber = new AtomicReference<>(0L);
+  private long sendPacketNumber = 0;
   private final PacketBufferManager packetBuffer;
+  private final ConnectionSender sender;
   private final ClientStateMachine stateMachine;
   private Optional<byte[]> token = Optional.empty();
 
@@ -63,7 +84,10 @@ public class ClientConnection implements InternalConnection {
   private final ClientTlsManager tlsManager;
   private final Pipeline pipeline;
   private final InetSocketAddress peerAddress;
-  private final Timer timer;
+  private final EventExecutor executor;
+  private final ConnectionTimer timer;
+  private final RttEstimator rttEstimator;
+  private final FlowControlHandler flowControlHandler;
 
   public ClientConnection(
       final Configuration configuration,
@@ -73,18 +97,59 @@ public class ClientConnection implements InternalConnection {
       final FlowControlHandler flowControlHandler,
       final InetSocketAddress peerAddress,
       final CertificateValidator certificateValidator,
-      final Timer timer) {
+      final EventExecutor executor) {
     this.version = configuration.getVersion();
+    final int maxPacketSize = configuration.getMaxPacketSize();
     this.remoteConnectionId = initialRemoteConnectionId;
     this.packetSender = packetSender;
     this.peerAddress = peerAddress;
-    this.streamManager = new DefaultStreamManager(this, streamListener);
+    this.flowControlHandler = flowControlHandler;
+    this.executor = executor;
+    this.streamManager =
+        new DefaultStreamManager(this, executor, streamListener, flowControlHandler);
 
     final Ticker ticker = Ticker.systemTicker();
+    this.timer = new ConnectionTimer(executor, ticker);
+
+    this.rttEstimator = new RttEstimator(configuration.getMaxAckDelay(), TimeUnit.MILLISECONDS);
+    final CongestionController congestionController =
+        configuration.getCongestionControllerFactory().create(maxPacketSize, rttEstimator, ticker);
+
+    final RetransmissionQueue retransmissions = new RetransmissionQueue(this);
+    retransmissions.register(FrameType.STREAM, streamManager);
+    for (final FrameType type :
+        List.of(
+            FrameType.MAX_DATA,
+            FrameType.MAX_STREAM_DATA,
+            FrameType.DATA_BLOCKED,
+            FrameType.STREAM_DATA_BLOCKED)) {
+      retransmissions.register(type, flowControlHandler);
+    }
 
     this.packetBuffer =
         new PacketBufferManager(
-            new AckDelay(configuration.getAckDelayExponent(), ticker), this, timer, ticker);
+            new AckDelay(configuration.getAckDelayExponent(), ticker),
+            new AckFrequency(configuration.getMaxAckDelay(), TimeUnit.MILLISECONDS),
+            rttEstimator,
+            congestionController,
+            retransmissions,
+            this,
+            streamManager,
+            timer,
+            ticker);
+    this.sender =
+        new ConnectionSender(
+            new ClientPackets(),
+            packetBuffer,
+            congestionController,
+            new Pacer(
+                configuration.getPacingBurst(),
+                maxPacketSize,
+                congestionController,
+                rttEstimator,
+                ticker),
+            timer,
+            maxPacketSize);
     this.tlsManager =
         new ClientTlsManager(
             remoteConnectionId, configuration.toTransportParameters(), certificateValidator);
@@ -94,19 +159,32 @@ public class ClientConnection implements InternalConnection {
     final TerminationManager terminationManager =
         new TerminationManager(this, timer, configuration.getIdleTimeout(), TimeUnit.SECONDS);
 
-    this.pipeline =
-        new Pipeline(
+    final List<InboundHandler> inboundHandlers =
+        new ArrayList<>(
             List.of(
                 logger,
                 tlsManager,
                 packetBuffer,
                 streamManager,
                 flowControlHandler,
-                terminationManager),
-            List.of(packetBuffer, logger));
+                terminationManager));
+    final List<OutboundHandler> outboundHandlers = new ArrayList<>(List.of(packetBuffer, logger));
+
+    if (configuration.isPathMtuDiscovery()) {
+      final PathMtuDiscovery pathMtuDiscovery =
+          new PathMtuDiscovery(
+              maxPacketSize,
+              configuration.getMaxProbePacketSize(),
+              sender::sendPadded,
+              this::setMaxPacketSize,
+              ticker);
+      inboundHandlers.add(3, pathMtuDiscovery);
+      outboundHandlers.add(0, pathMtuDiscovery);
+    }
+
+    this.pipeline = new Pipeline(inboundHandlers, outboundHandlers);
 
     this.stateMachine = new ClientStateMachine(this);
-    this.timer = timer;
   }
 
   private void resetTlsSession() {
@@ -114,6 +192,11 @@ public class ClientConnection implements InternalConnection {
   }
 
   public void handshake(final Promise promise) {
+    if (!executor.inEventLoop()) {
+      executor.execute(() -> handshake(promise));
+      return;
+    }
+
     MDC.put("actor", "client");
     tlsManager.handshake(getState(), this, stateMachine::setState, promise);
   }
@@ -135,25 +218,86 @@ public class ClientConnection implements InternalConnection {
   }
 
   public FullPacket send(final Frame... frames) {
-    final Packet packet;
+    return sender.send(currentEncryptionLevel(), frames);
+  }
+
+  public void probe(final EncryptionLevel level, final Frame... frames) {
+    sender.probe(level, frames);
+  }
+
+  public void queue(final Frame... frames) {
+    sender.queue(currentEncryptionLevel(), frames);
+  }
+
+  public void queue(final EncryptionLevel level, final Frame... frames) {
+    sender.queue(level, frames);
+  }
+
+  public void flush() {
+    if (stateMachine.getState() == Closed) {
+      return;
+    }
+
+    sender.flush();
+  }
+
+  private class ClientPackets implements ConnectionSender.Packets {
+
+    @Override
+    public boolean available(final EncryptionLevel level) {
+      return tlsManager.available(level);
+    }
+
+    @Override
+    public int capacity(final EncryptionLevel level, final int packetSize) {
+      if (level == EncryptionLevel.OneRtt) {
+        return FrameScheduler.shortPacketCapacity(packetSize, getRemoteConnectionId());
+      } else if (level == EncryptionLevel.Handshake) {
+        return FrameScheduler.longPacketCapacity(
+            packetSize, of(remoteConnectionId), localConnectionId, Optional.empty());
+      } else {
+        return FrameScheduler.longPacketCapacity(
+            packetSize, of(remoteConnectionId), localConnectionId, token);
+      }
+    }
+
+    @Override
+    public Packet create(final EncryptionLevel level, final List<Frame> frames) {
+      if (level == EncryptionLevel.OneRtt) {
+        return ShortPacket.create(
+            false,
+            getRemoteConnectionId(),
+            nextSendPacketNumber(),
+            packetBuffer.getLargestAcked(level),
+            frames);
+      } else if (level == EncryptionLevel.Handshake) {
+        return HandshakePacket.create(
+            of(remoteConnectionId), localConnectionId, nextSendPacketNumber(), version, frames);
+      } else {
+        return InitialPacket.create(
+            of(remoteConnectionId),
+            localConnectionId,
+            nextSendPacketNumber(),
+            version,
+            token,
+            frames);
+      }
+    }
+
+    @Override
+    public Packet sendPacket(final Packet packet) {
+      return ClientConnection.this.sendPacket(packet);
+    }
+  }
+
+  private EncryptionLevel currentEncryptionLevel() {
     if (tlsManager.available(EncryptionLevel.OneRtt)) {
-      packet = ShortPacket.create(false, getRemoteConnectionId(), nextSendPacketNumber(), frames);
+      return EncryptionLevel.OneRtt;
     } else if (tlsManager.available(EncryptionLevel.Handshake)) {
-      packet =
-          HandshakePacket.create(
-              of(remoteConnectionId), localConnectionId, nextSendPacketNumber(), version, frames);
+      return EncryptionLevel.Handshake;
     } else {
-      packet =
-          InitialPacket.create(
-              of(remoteConnectionId),
-              localConnectionId,
-              nextSendPacketNumber(),
-              version,
-              token,
-              frames);
+      return EncryptionLevel.Initial;
     }
-
-    return (FullPacket) sendPacket(packet);
   }
 
   @Override
@@ -186,10 +330,22 @@ public class ClientConnection implements InternalConnection {
     return lastDestConnectionIdLength;
   }
 
+  // the path MTU discovered, packets are built, paced and assembled into datagrams up to the size
+  private void setMaxPacketSize(final int maxPacketSize) {
+    sender.setMaxPacketSize(maxPacketSize);
+    packetSender.setMaxPacketSize(maxPacketSize);
+  }
+
   private void sendPacketUnbuffered(final Packet packet) {
+    // written without blocking, lost packets are handled by retransmissions
     packetSender
         .send(packet, getAEAD(getEncryptionLevel(packet)))
-        .awaitUninterruptibly(); // TODO fix
+        .addListener(
+            future -> {
+              if (!future.isSuccess()) {
+                log.warn("Failed to send packet {}", packet, future.cause());
+              }
+            });
   }
 
   public void onPacket(final Packet packet) {
@@ -201,12 +357,25 @@ public class ClientConnection implements InternalConnection {
 
     final EncryptionLevel encLevel = getEncryptionLevel(packet);
     if (tlsManager.available(encLevel)) {
-      stateMachine.handlePacket(packet);
-      if (getState() != State.Closed) {
-        pipeline.onPacket(this, packet);
+      try {
+        stateMachine.handlePacket(packet);
+        if (getState() != State.Closed) {
+          pipeline.onPacket(this, packet);
+          flush();
+        }
+      } finally {
+        release(packet);
       }
     } else {
       // TODO handle unencryptable packet
+      release(packet);
+    }
+  }
+
+  private void release(final Packet packet) {
+    // frames parsed from the datagram retain slices of it until handled
+    if (packet instanceof FullPacket) {
+      ((FullPacket) packet).getPayload().release();
     }
   }
 
@@ -215,27 +384,45 @@ public class ClientConnection implements InternalConnection {
     return tlsManager.getAEAD(level);
   }
 
+  @Override
+  public long getLargestReceivedPacketNumber(final EncryptionLevel level) {
+    return packetBuffer.getLargestReceived(level);
+  }
+
   public Version getVersion() {
     return version;
   }
 
   private long nextSendPacketNumber() {
-    return sendPacketNumber.updateAndGet(packetNumber -> PacketNumber.next(packetNumber));
+    sendPacketNumber = PacketNumber.next(sendPacketNumber);
+    return sendPacketNumber;
   }
 
   public void resetSendPacketNumber() {
-    sendPacketNumber.set(0L);
+    sendPacketNumber = 0;
+    // packet numbers start over, the initial packets before the Retry will not be acked
+    packetBuffer.discard(EncryptionLevel.Initial);
   }
 
   public Stream openStream() {
-    return streamManager.openStream(true, true);
+    if (executor.inEventLoop()) {
+      return streamManager.openStream(true, true);
+    }
+    return executor
+        .submit(() -> streamManager.openStream(true, true))
+        .syncUninterruptibly()
+        .getNow();
   }
 
   public Future<Void> close(
       final TransportError error, final FrameType frameType, final String msg) {
-    stateMachine.closeImmediate(new ConnectionCloseFrame(error.getValue(), frameType, msg));
+    return Futures.runOn(
+        executor,
+        () -> {
+          stateMachine.closeImmediate(new ConnectionCloseFrame(error.getValue(), frameType, msg));
 
-    return closeInternal();
+          return closeInternal();
+        });
   }
 
   @Override
@@ -244,21 +431,31 @@ public class ClientConnection implements InternalConnection {
   }
 
   public Future<Void> close() {
-    stateMachine.closeImmediate();
+    return Futures.runOn(
+        executor,
+        () -> {
+          stateMachine.closeImmediate();
 
-    return closeInternal();
+          return closeInternal();
+        });
   }
 
   public void closeByPeer() {
-    closeInternal().awaitUninterruptibly(); // TODO fis
+    closeInternal();
   }
 
   private Future<Void> closeInternal() {
-    timer.stop();
+    timer.close();
+    flowControlHandler.close();
 
     return packetSender.destroy();
   }
 
+  @Override
+  public long getSmoothedRtt() {
+    return rttEstimator.getSmoothedRtt();
+  }
+
   public State getState() {
     return stateMachine.getState();
   }
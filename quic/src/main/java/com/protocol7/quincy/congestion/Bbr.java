@@ -0,0 +1,386 @@
+package com.protocol7.quincy.congestion;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.reliability.RateSample;
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A model based congestion controller after BBR version 2. Rather than reacting to loss, it
+ * estimates the bottleneck bandwidth and the round-trip propagation time from delivery rate
+ * samples, paces at the estimated bandwidth and bounds the window at a multiple of the
+ * bandwidth-delay product. The bandwidth is probed for every few seconds in ProbeBW, and the min
+ * RTT refreshed by briefly draining the queue in ProbeRTT. Rounds with loss above a threshold while
+ * probing end the probe and bound the data in flight, loss at other times is ignored.
+ */
+public class Bbr implements CongestionController {
+
+  enum State {
+    STARTUP,
+    DRAIN,
+    PROBE_BW_DOWN,
+    PROBE_BW_CRUISE,
+    PROBE_BW_REFILL,
+    PROBE_BW_UP,
+    PROBE_RTT
+  }
+
+  static final double STARTUP_GAIN = 2.77;
+  static final double DRAIN_GAIN = 0.35;
+  static final double CWND_GAIN = 2;
+  static final double PROBE_DOWN_GAIN = 0.9;
+  static final double PROBE_UP_GAIN = 1.25;
+  static final double PROBE_RTT_GAIN = 0.5;
+
+  // the fraction of bytes lost in a round considered a congestion signal
+  static final double LOSS_THRESHOLD = 0.02;
+  // loss events needed in a round to end startup, not to react to random loss
+  static final int STARTUP_LOSS_EVENTS = 6;
+  // the lowest in flight bound on loss, relative to the bandwidth-delay product
+  static final double BETA = 0.7;
+
+  static final int MIN_WINDOW_PACKETS = 4;
+
+  private static final int BANDWIDTH_FILTER_ROUNDS = 10;
+  private static final int FULL_BANDWIDTH_ROUNDS = 3;
+  private static final double FULL_BANDWIDTH_GROWTH = 1.25;
+
+  private static final long PROBE_RTT_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+  private static final long PROBE_RTT_DURATION = TimeUnit.MILLISECONDS.toNanos(200);
+  private static final long PROBE_BW_MIN_WAIT = TimeUnit.SECONDS.toNanos(2);
+  private static final long PROBE_BW_MAX_WAIT = TimeUnit.SECONDS.toNanos(3);
+
+  private static final long NOT_SET = Long.MAX_VALUE;
+
+  private int maxDatagramSize;
+  private final RttEstimator rttEstimator;
+  private final Ticker ticker;
+
+  private State state = State.STARTUP;
+  private double pacingGain = STARTUP_GAIN;
+  private long congestionWindow;
+  private long bytesInFlight = 0;
+  private long inflightHi = Long.MAX_VALUE;
+
+  // max delivery rate of each of the last rounds, in bytes per second
+  private final long[] roundBandwidths = new long[BANDWIDTH_FILTER_ROUNDS];
+  private long maxBandwidth = 0;
+  private long minRtt = NOT_SET;
+  private long minRttStamp = 0;
+
+  // rounds are counted by delivered bytes, a round ends when a packet sent in it is acknowledged
+  private long delivered = 0;
+  private long roundCount = 0;
+  private long nextRoundDelivered = 0;
+  private long roundAcked = 0;
+  private long roundLost = 0;
+  private int roundLossEvents = 0;
+
+  private boolean filledPipe = false;
+  private long fullBandwidth = 0;
+  private int fullBandwidthCount = 0;
+
+  private long phaseStart = 0;
+  private long probeWait = 0;
+  private long probeUpBytes = 0;
+
+  private long probeRttDone = NOT_SET;
+  private boolean probeRttRoundDone = false;
+
+  public Bbr(final int maxDatagramSize, final RttEstimator rttEstimator, final Ticker ticker) {
+    checkArgument(maxDatagramSize > 0);
+
+    this.maxDatagramSize = maxDatagramSize;
+    this.rttEstimator = requireNonNull(rttEstimator);
+    this.ticker = requireNonNull(ticker);
+    this.congestionWindow = LossBasedCongestionController.initialWindow(maxDatagramSize);
+  }
+
+  @Override
+  public void onPacketSent(final long packetNumber, final long sentTime, final int size) {
+    bytesInFlight += size;
+  }
+
+  @Override
+  public void onPacketAcked(final long packetNumber, final long sentTime, final int size) {
+    bytesInFlight -= size;
+  }
+
+  @Override
+  public void onPacketLost(final long packetNumber, final long sentTime, final int size) {
+    bytesInFlight -= size;
+    roundLost += size;
+    roundLossEvents++;
+  }
+
+  @Override
+  public void onPacketDiscarded(final long packetNumber, final int size) {
+    bytesInFlight -= size;
+  }
+
+  @Override
+  public void onRateSample(final RateSample sample) {
+    final long now = ticker.nanoTime();
+    delivered = sample.getTotalDelivered();
+
+    if (sample.getPriorDelivered() >= nextRoundDelivered) {
+      nextRoundDelivered = delivered;
+      roundCount++;
+      roundBandwidths[(int) (roundCount % BANDWIDTH_FILTER_ROUNDS)] = 0;
+      onRoundEnd(now);
+    }
+    roundAcked += sample.getAcked();
+
+    final boolean minRttExpired = updateMinRtt(sample.getRtt(), now);
+    updateBandwidth(sample);
+    updateState(now, minRttExpired);
+    updateCongestionWindow(sample.getAcked());
+  }
+
+  private boolean updateMinRtt(final long rtt, final long now) {
+    final boolean expired = minRtt != NOT_SET && now - minRttStamp > PROBE_RTT_INTERVAL;
+    if (rtt < minRtt || expired) {
+      minRtt = rtt;
+      minRttStamp = now;
+    }
+    return expired;
+  }
+
+  private void updateBandwidth(final RateSample sample) {
+    // samples over less than a round trip are inflated by compressed acks
+    if (sample.getInterval() < minRtt) {
+      return;
+    }
+
+    final int slot = (int) (roundCount % BANDWIDTH_FILTER_ROUNDS);
+    roundBandwidths[slot] = Math.max(roundBandwidths[slot], sample.getDeliveryRate());
+
+    long max = 0;
+    for (final long bandwidth : roundBandwidths) {
+      max = Math.max(max, bandwidth);
+    }
+    maxBandwidth = max;
+  }
+
+  private void onRoundEnd(final long now) {
+    final boolean highLoss = roundLost > LOSS_THRESHOLD * (roundAcked + roundLost);
+    final int lossEvents = roundLossEvents;
+    roundAcked = 0;
+    roundLost = 0;
+    roundLossEvents = 0;
+
+    if (highLoss && state == State.STARTUP && lossEvents >= STARTUP_LOSS_EVENTS) {
+      filledPipe = true;
+      inflightHi = Math.max(bytesInFlight, bdp(1));
+    } else if (highLoss && state == State.PROBE_BW_UP) {
+      // probed beyond what the path can take
+      inflightHi = Math.max(bytesInFlight, (long) (BETA * bdp(1)));
+      enterProbeBwDown(now);
+    } else if (state == State.PROBE_BW_UP && inflightHi != Long.MAX_VALUE) {
+      // grow the bound exponentially while probing without loss
+      inflightHi += probeUpBytes;
+      probeUpBytes *= 2;
+    }
+
+    if (!filledPipe) {
+      checkFullPipe();
+    }
+
+    if (state == State.PROBE_BW_REFILL) {
+      // one round at the estimated bandwidth to fill the queue before probing
+      enterPhase(State.PROBE_BW_UP, PROBE_UP_GAIN, now);
+      probeUpBytes = maxDatagramSize;
+    } else if (state == State.PROBE_RTT && probeRttDone != NOT_SET) {
+      probeRttRoundDone = true;
+    }
+  }
+
+  private void checkFullPipe() {
+    if (maxBandwidth >= fullBandwidth * FULL_BANDWIDTH_GROWTH) {
+      fullBandwidth = maxBandwidth;
+      fullBandwidthCount = 0;
+    } else if (++fullBandwidthCount >= FULL_BANDWIDTH_ROUNDS) {
+      // the bandwidth has stopped growing
+      filledPipe = true;
+    }
+  }
+
+  private void updateState(final long now, final boolean minRttExpired) {
+    switch (state) {
+      case STARTUP:
+        if (filledPipe) {
+          enterPhase(State.DRAIN, DRAIN_GAIN, now);
+        }
+        break;
+      case DRAIN:
+      case PROBE_BW_DOWN:
+        if (bytesInFlight <= bdp(1)) {
+          if (state == State.DRAIN) {
+            enterProbeBwDown(now);
+          } else {
+            enterPhase(State.PROBE_BW_CRUISE, 1, now);
+          }
+        }
+        break;
+      case PROBE_BW_CRUISE:
+        if (now - phaseStart >= probeWait) {
+          enterPhase(State.PROBE_BW_REFILL, 1, now);
+        }
+        break;
+      case PROBE_BW_UP:
+        if (now - phaseStart >= minRtt && bytesInFlight >= bdp(PROBE_UP_GAIN)) {
+          enterProbeBwDown(now);
+        }
+        break;
+      default:
+        break;
+    }
+
+    if (minRttExpired && state != State.PROBE_RTT) {
+      enterPhase(State.PROBE_RTT, 1, now);
+      probeRttDone = NOT_SET;
+      probeRttRoundDone = false;
+    }
+    if (state == State.PROBE_RTT) {
+      handleProbeRtt(now);
+    }
+  }
+
+  private void enterProbeBwDown(final long now) {
+    enterPhase(State.PROBE_BW_DOWN, PROBE_DOWN_GAIN, now);
+    // randomized to not synchronize the probing of flows sharing the bottleneck
+    probeWait =
+        PROBE_BW_MIN_WAIT
+            + ThreadLocalRandom.current().nextLong(PROBE_BW_MAX_WAIT - PROBE_BW_MIN_WAIT);
+  }
+
+  private void enterPhase(final State state, final double pacingGain, final long now) {
+    this.state = state;
+    this.pacingGain = pacingGain;
+    this.phaseStart = now;
+  }
+
+  private void handleProbeRtt(final long now) {
+    if (probeRttDone == NOT_SET) {
+      if (bytesInFlight <= probeRttWindow()) {
+        // hold the drained window for the duration and a full round
+        probeRttDone = now + PROBE_RTT_DURATION;
+        probeRttRoundDone = false;
+        nextRoundDelivered = delivered;
+      }
+    } else if (probeRttRoundDone && now >= probeRttDone) {
+      minRttStamp = now;
+      if (filledPipe) {
+        enterProbeBwDown(now);
+      } else {
+        enterPhase(State.STARTUP, STARTUP_GAIN, now);
+      }
+    }
+  }
+
+  private void updateCongestionWindow(final int acked) {
+    final long target = bdp(CWND_GAIN);
+    long window = congestionWindow;
+    if (filledPipe) {
+      window = Math.min(window + acked, target);
+    } else if (window < target
+        || delivered < LossBasedCongestionController.initialWindow(maxDatagramSize)) {
+      window += acked;
+    }
+
+    window = Math.max(window, minimumWindow());
+    if (state == State.PROBE_RTT) {
+      window = Math.min(window, probeRttWindow());
+    }
+    congestionWindow = Math.max(Math.min(window, inflightHi), minimumWindow());
+  }
+
+  /** The bandwidth-delay product scaled by the gain, the initial window before any estimate */
+  private long bdp(final double gain) {
+    if (maxBandwidth == 0 || minRtt == NOT_SET) {
+      return LossBasedCongestionController.initialWindow(maxDatagramSize);
+    }
+    return (long) (gain * maxBandwidth * minRtt / TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private long probeRttWindow() {
+    return Math.max(bdp(PROBE_RTT_GAIN), minimumWindow());
+  }
+
+  private long minimumWindow() {
+    return MIN_WINDOW_PACKETS * maxDatagramSize;
+  }
+
+  @Override
+  public void setMaxDatagramSize(final int maxDatagramSize) {
+    checkArgument(maxDatagramSize > 0);
+
+    this.maxDatagramSize = maxDatagramSize;
+  }
+
+  @Override
+  public boolean canSend() {
+    return bytesInFlight < congestionWindow;
+  }
+
+  @Override
+  public long getCongestionWindow() {
+    return congestionWindow;
+  }
+
+  @Override
+  public long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  /**
+   * Paces at the estimated bandwidth, or the initial window per smoothed RTT before any estimate
+   */
+  @Override
+  public Optional<Long> getPacingRate() {
+    final double bandwidth;
+    if (maxBandwidth > 0) {
+      bandwidth = maxBandwidth;
+    } else {
+      bandwidth =
+          (double) LossBasedCongestionController.initialWindow(maxDatagramSize)
+              * TimeUnit.SECONDS.toNanos(1)
+              / rttEstimator.getSmoothedRtt();
+    }
+    return Optional.of((long) (pacingGain * bandwidth));
+  }
+
+  State getState() {
+    return state;
+  }
+
+  /** The estimated bottleneck bandwidth in bytes per second */
+  long getMaxBandwidth() {
+    return maxBandwidth;
+  }
+
+  long getMinRtt() {
+    return minRtt;
+  }
+
+  @Override
+  public String toString() {
+    return "Bbr{"
+        + "state="
+        + state
+        + ", congestionWindow="
+        + congestionWindow
+        + ", bytesInFlight="
+        + bytesInFlight
+        + ", maxBandwidth="
+        + maxBandwidth
+        + ", minRtt="
+        + minRtt
+        + '}';
+  }
+}
@@ -0,0 +1,42 @@
+package com.protocol7.quincy.congestion;
+
+import com.protocol7.quincy.reliability.RateSample;
+import java.util.Optional;
+
+/**
+ * Limits the data in flight on a connection. Notified by the reliability layer of packets counting
+ * towards bytes in flight being sent, acknowledged, declared lost or discarded. Sizes are in bytes
+ * and times in nanoseconds of the connection ticker. Packet numbers are unique per connection.
+ */
+public interface CongestionController {
+
+  void onPacketSent(long packetNumber, long sentTime, int size);
+
+  void onPacketAcked(long packetNumber, long sentTime, int size);
+
+  void onPacketLost(long packetNumber, long sentTime, int size);
+
+  /** The packet will never be acknowledged or lost, e.g. when its keys are discarded */
+  void onPacketDiscarded(long packetNumber, int size);
+
+  /**
+   * Called once per ACK frame acknowledging packets in flight, after the acknowledged and lost
+   * packets have been reported. Ignored by loss based controllers.
+   */
+  default void onRateSample(final RateSample sample) {}
+
+  /** The max datagram size changes, e.g. with path MTU discovery */
+  void setMaxDatagramSize(int maxDatagramSize);
+
+  /** If another packet can be sent without exceeding the congestion window */
+  boolean canSend();
+
+  long getCongestionWindow();
+
+  long getBytesInFlight();
+
+  /** The rate to pace packets at in bytes per second, if decided by the controller */
+  default Optional<Long> getPacingRate() {
+    return Optional.empty();
+  }
+}
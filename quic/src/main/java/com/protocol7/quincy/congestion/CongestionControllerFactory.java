@@ -0,0 +1,11 @@
+package com.protocol7.quincy.congestion;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+
+/** Creates the congestion controller of each connection, e.g. {@code NewReno::new} */
+@FunctionalInterface
+public interface CongestionControllerFactory {
+
+  CongestionController create(int maxDatagramSize, RttEstimator rttEstimator, Ticker ticker);
+}
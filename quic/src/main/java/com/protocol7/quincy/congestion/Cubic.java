@@ -0,0 +1,96 @@
+package com.protocol7.quincy.congestion;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+
+/**
+ * The CUBIC congestion controller of RFC 9438. In congestion avoidance the window follows a cubic
+ * function of the time since the last congestion event, centered on the window at which loss
+ * occurred, and never grows slower than Reno would.
+ */
+public class Cubic extends LossBasedCongestionController {
+
+  static final double C = 0.4;
+  static final double BETA = 0.7;
+
+  // the additive increase of the Reno friendly estimate, in datagrams per window
+  private static final double ALPHA = 3 * (1 - BETA) / (1 + BETA);
+
+  private final RttEstimator rttEstimator;
+
+  // all windows in bytes
+  private double maxWindow = 0;
+  private double renoWindow = 0;
+  private boolean epochStarted = false;
+  private long epochStart = 0;
+  // time in seconds for the cubic function to reach the max window
+  private double k = 0;
+  private double increment = 0;
+
+  public Cubic(final int maxDatagramSize, final RttEstimator rttEstimator, final Ticker ticker) {
+    super(maxDatagramSize, ticker);
+
+    this.rttEstimator = requireNonNull(rttEstimator);
+  }
+
+  @Override
+  protected void onCongestionAvoidance(final int ackedBytes) {
+    final long now = ticker.nanoTime();
+    if (!epochStarted) {
+      epochStarted = true;
+      epochStart = now;
+      renoWindow = congestionWindow;
+      if (congestionWindow < maxWindow) {
+        k = Math.cbrt((maxWindow - congestionWindow) / maxDatagramSize / C);
+      } else {
+        k = 0;
+        maxWindow = congestionWindow;
+      }
+    }
+
+    final double elapsed = (now - epochStart) / 1e9;
+    renoWindow += ALPHA * maxDatagramSize * ackedBytes / congestionWindow;
+
+    if (cubicWindow(elapsed) < renoWindow) {
+      // Reno friendly region
+      congestionWindow = Math.max(congestionWindow, (long) renoWindow);
+      return;
+    }
+
+    // aim for where the cubic function will be in one round trip
+    final double rtt = rttEstimator.getSmoothedRtt() / 1e9;
+    final double target =
+        Math.min(Math.max(cubicWindow(elapsed + rtt), congestionWindow), 1.5 * congestionWindow);
+
+    increment += (target - congestionWindow) * ackedBytes / congestionWindow;
+    final long whole = (long) increment;
+    increment -= whole;
+    congestionWindow += whole;
+  }
+
+  private double cubicWindow(final double t) {
+    return C * Math.pow(t - k, 3) * maxDatagramSize + maxWindow;
+  }
+
+  @Override
+  protected void onCongestionEvent() {
+    epochStarted = false;
+    increment = 0;
+
+    // fast convergence, release bandwidth to new flows when the max window is shrinking
+    if (congestionWindow < maxWindow) {
+      maxWindow = congestionWindow * (1 + BETA) / 2;
+    } else {
+      maxWindow = congestionWindow;
+    }
+
+    slowStartThreshold = Math.max((long) (congestionWindow * BETA), minimumWindow());
+    congestionWindow = slowStartThreshold;
+  }
+
+  double getMaxWindow() {
+    return maxWindow;
+  }
+}
@@ -0,0 +1,128 @@
+package com.protocol7.quincy.congestion;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.utils.Ticker;
+
+/**
+ * Slow start, recovery and the window reduction on loss shared by loss based congestion
+ * controllers, as per RFC 9002 section 7. Subclasses decide how the window grows in congestion
+ * avoidance and how much it shrinks on a congestion event.
+ */
+abstract class LossBasedCongestionController implements CongestionController {
+
+  static final int INITIAL_WINDOW_PACKETS = 10;
+  static final int MIN_WINDOW_PACKETS = 2;
+
+  private static final long NOT_IN_RECOVERY = Long.MIN_VALUE;
+
+  protected int maxDatagramSize;
+  protected final Ticker ticker;
+
+  protected long congestionWindow;
+  protected long slowStartThreshold = Long.MAX_VALUE;
+  private long bytesInFlight = 0;
+  private long recoveryStartTime = NOT_IN_RECOVERY;
+
+  protected LossBasedCongestionController(final int maxDatagramSize, final Ticker ticker) {
+    checkArgument(maxDatagramSize > 0);
+
+    this.maxDatagramSize = maxDatagramSize;
+    this.ticker = requireNonNull(ticker);
+    this.congestionWindow = initialWindow(maxDatagramSize);
+  }
+
+  /** The initial window of RFC 9002 section 7.2 */
+  static long initialWindow(final int maxDatagramSize) {
+    return Math.min(
+        INITIAL_WINDOW_PACKETS * maxDatagramSize,
+        Math.max(14720, MIN_WINDOW_PACKETS * maxDatagramSize));
+  }
+
+  @Override
+  public void onPacketSent(final long packetNumber, final long sentTime, final int size) {
+    bytesInFlight += size;
+  }
+
+  @Override
+  public void onPacketAcked(final long packetNumber, final long sentTime, final int size) {
+    bytesInFlight -= size;
+
+    if (inRecovery(sentTime)) {
+      // the window is not grown during recovery
+      return;
+    }
+
+    if (congestionWindow < slowStartThreshold) {
+      congestionWindow += size;
+    } else {
+      onCongestionAvoidance(size);
+    }
+  }
+
+  @Override
+  public void onPacketLost(final long packetNumber, final long sentTime, final int size) {
+    bytesInFlight -= size;
+
+    // one reduction per round trip, for the first packet lost after recovery started
+    if (!inRecovery(sentTime)) {
+      recoveryStartTime = ticker.nanoTime();
+      onCongestionEvent();
+    }
+  }
+
+  @Override
+  public void onPacketDiscarded(final long packetNumber, final int size) {
+    bytesInFlight -= size;
+  }
+
+  @Override
+  public void setMaxDatagramSize(final int maxDatagramSize) {
+    checkArgument(maxDatagramSize > 0);
+
+    this.maxDatagramSize = maxDatagramSize;
+  }
+
+  @Override
+  public boolean canSend() {
+    return bytesInFlight < congestionWindow;
+  }
+
+  @Override
+  public long getCongestionWindow() {
+    return congestionWindow;
+  }
+
+  @Override
+  public long getBytesInFlight() {
+    return bytesInFlight;
+  }
+
+  protected long minimumWindow() {
+    return MIN_WINDOW_PACKETS * maxDatagramSize;
+  }
+
+  private boolean inRecovery(final long sentTime) {
+    return recoveryStartTime != NOT_IN_RECOVERY && sentTime <= recoveryStartTime;
+  }
+
+  /** Grows the window for the acknowledged bytes, once above the slow start threshold */
+  protected abstract void onCongestionAvoidance(int ackedBytes);
+
+  /** Reduces the window, and sets the slow start threshold, on entering recovery */
+  protected abstract void onCongestionEvent();
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName()
+        + "{"
+        + "congestionWindow="
+        + congestionWindow
+        + ", slowStartThreshold="
+        + slowStartThreshold
+        + ", bytesInFlight="
+        + bytesInFlight
+        + '}';
+  }
+}
@@ -0,0 +1,33 @@
+package com.protocol7.quincy.congestion;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+
+/** The NewReno congestion controller of RFC 9002 section 7 */
+public class NewReno extends LossBasedCongestionController {
+
+  // bytes acknowledged in congestion avoidance since the window last grew
+  private long bytesAcked = 0;
+
+  public NewReno(final int maxDatagramSize, final RttEstimator rttEstimator, final Ticker ticker) {
+    super(maxDatagramSize, ticker);
+  }
+
+  @Override
+  protected void onCongestionAvoidance(final int ackedBytes) {
+    // one datagram per window of acknowledged bytes. Counted across acks, as the share of a single
+    // ack rounds down to nothing for large windows
+    bytesAcked += ackedBytes;
+    if (bytesAcked >= congestionWindow) {
+      bytesAcked -= congestionWindow;
+      congestionWindow += maxDatagramSize;
+    }
+  }
+
+  @Override
+  protected void onCongestionEvent() {
+    bytesAcked = 0;
+    slowStartThreshold = congestionWindow / 2;
+    congestionWindow = Math.max(slowStartThreshold, minimumWindow());
+  }
+}
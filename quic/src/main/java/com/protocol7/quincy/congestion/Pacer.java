@@ -0,0 +1,102 @@
+package com.protocol7.quincy.congestion;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the packets of a connection over time, as per RFC 9002 section 7.7, using a token bucket
+ * refilled at the pacing rate. Up to the burst allowance is sent back to back, e.g. after an idle
+ * period. The rate is that of the congestion controller if it decides one, else 1.25 times the
+ * congestion window per smoothed RTT, so that a window is sent in less than a round trip.
+ */
+public class Pacer {
+
+  private static final double WINDOW_PACING_GAIN = 1.25;
+
+  private final CongestionController congestionController;
+  private final RttEstimator rttEstimator;
+  private final Ticker ticker;
+  private final int burstPackets;
+
+  private int maxDatagramSize;
+  private double tokens;
+  private long lastRefill;
+
+  public Pacer(
+      final int burstPackets,
+      final int maxDatagramSize,
+      final CongestionController congestionController,
+      final RttEstimator rttEstimator,
+      final Ticker ticker) {
+    checkArgument(burstPackets > 0);
+    checkArgument(maxDatagramSize > 0);
+
+    this.burstPackets = burstPackets;
+    this.maxDatagramSize = maxDatagramSize;
+    this.congestionController = requireNonNull(congestionController);
+    this.rttEstimator = requireNonNull(rttEstimator);
+    this.ticker = requireNonNull(ticker);
+
+    this.tokens = capacity();
+    this.lastRefill = ticker.nanoTime();
+  }
+
+  /** The delay in nanoseconds until a packet of the max datagram size can be sent, 0 if now */
+  public long delay() {
+    refill();
+
+    if (tokens >= maxDatagramSize) {
+      return 0;
+    }
+    return (long) Math.ceil((maxDatagramSize - tokens) * TimeUnit.SECONDS.toNanos(1) / rate());
+  }
+
+  public void onPacketSent(final int size) {
+    refill();
+
+    tokens = Math.max(tokens - size, 0);
+  }
+
+  /** The max datagram size changes, e.g. with path MTU discovery */
+  public void setMaxDatagramSize(final int maxDatagramSize) {
+    checkArgument(maxDatagramSize > 0);
+
+    this.maxDatagramSize = maxDatagramSize;
+  }
+
+  /** The pacing rate in bytes per second */
+  public double rate() {
+    return congestionController
+        .getPacingRate()
+        .map(Long::doubleValue)
+        .orElseGet(
+            () ->
+                WINDOW_PACING_GAIN
+                    * congestionController.getCongestionWindow()
+                    * TimeUnit.SECONDS.toNanos(1)
+                    / Math.max(rttEstimator.getSmoothedRtt(), RttEstimator.GRANULARITY));
+  }
+
+  private void refill() {
+    final long now = ticker.nanoTime();
+    final long elapsed = now - lastRefill;
+    lastRefill = now;
+
+    if (elapsed > 0) {
+      tokens = Math.min(tokens + rate() * elapsed / TimeUnit.SECONDS.toNanos(1), capacity());
+    }
+  }
+
+  private double capacity() {
+    return (double) burstPackets * maxDatagramSize;
+  }
+
+  @Override
+  public String toString() {
+    return "Pacer{" + "tokens=" + (long) tokens + ", rate=" + (long) rate() + '}';
+  }
+}
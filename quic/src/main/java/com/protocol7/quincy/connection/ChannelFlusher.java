@@ -0,0 +1,79 @@
+package com.protocol7.quincy.connection;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the flushes for all packets written to a channel. Packets written while routing a batch
+ * of received datagrams are flushed once the batch is done, packets written at other times once the
+ * currently running event loop task has finished.
+ */
+public class ChannelFlusher {
+
+  private static final AttributeKey<ChannelFlusher> KEY =
+      AttributeKey.valueOf(ChannelFlusher.class, "flusher");
+
+  public static ChannelFlusher get(final Channel channel) {
+    final Attribute<ChannelFlusher> attr = channel.attr(KEY);
+    final ChannelFlusher flusher = attr.get();
+    if (flusher != null) {
+      return flusher;
+    }
+
+    final ChannelFlusher newFlusher = new ChannelFlusher(channel);
+    final ChannelFlusher existing = attr.setIfAbsent(newFlusher);
+    return existing != null ? existing : newFlusher;
+  }
+
+  private final Channel channel;
+  private final AtomicBoolean flushPending = new AtomicBoolean(false);
+  private boolean inBatch; // only accessed from the event loop
+  private final List<DatagramAssembler> assemblers = new ArrayList<>(); // same
+
+  private ChannelFlusher(final Channel channel) {
+    this.channel = channel;
+  }
+
+  /** Called after writing a packet, makes sure it will be flushed. */
+  public void scheduleFlush() {
+    if (inBatch && channel.eventLoop().inEventLoop()) {
+      // flushed when the batch is done
+      return;
+    }
+
+    if (flushPending.compareAndSet(false, true)) {
+      channel.eventLoop().execute(this::flush);
+    }
+  }
+
+  /** Must be called from the event loop. The assembler is finished before the next flush. */
+  public void finishBeforeFlush(final DatagramAssembler assembler) {
+    assemblers.add(assembler);
+    scheduleFlush();
+  }
+
+  /** Must be called from the event loop. Packets written until endBatch() are flushed together. */
+  public void beginBatch() {
+    inBatch = true;
+  }
+
+  /** Must be called from the event loop. Flushes all packets written during the batch. */
+  public void endBatch() {
+    inBatch = false;
+    flush();
+  }
+
+  private void flush() {
+    flushPending.set(false);
+
+    while (!assemblers.isEmpty()) {
+      assemblers.remove(assemblers.size() - 1).finish();
+    }
+
+    channel.flush();
+  }
+}
@@ -0,0 +1,200 @@
+package com.protocol7.quincy.connection;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.congestion.Pacer;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.reliability.PacketBufferManager;
+import com.protocol7.quincy.tls.EncryptionLevel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The send path of a connection. Queued frames are packed into packets filling up to the max packet
+ * size, and flushed as far as the congestion window and the pacer allow. Packets sent directly are
+ * not held back by either, and pick up any queued frames that fit. Only loss probes, acks and
+ * connection closes are sent directly, as per RFC 9002 sections 7 and 7.5.
+ */
+public class ConnectionSender {
+
+  /** Builds and sends the packets of a client or server connection */
+  public interface Packets {
+
+    /** If the keys of the encryption level are available */
+    boolean available(EncryptionLevel level);
+
+    /** The number of bytes available for frames in a packet of the level and size */
+    int capacity(EncryptionLevel level, int packetSize);
+
+    /** Creates a packet of the level using the next packet number */
+    Packet create(EncryptionLevel level, List<Frame> frames);
+
+    /** Sends the packet through the pipeline of the connection */
+    Packet sendPacket(Packet packet);
+  }
+
+  private static final int MAX_PROBE_PACKETS = 2;
+
+  private final Logger log = LoggerFactory.getLogger(ConnectionSender.class);
+
+  private final Packets packets;
+  private final PacketBufferManager packetBuffer;
+  private final CongestionController congestionController;
+  private final Pacer pacer;
+  private final ConnectionTimer.Deadline pacingDeadline;
+  private final FrameScheduler scheduler = new FrameScheduler();
+  private int maxPacketSize;
+
+  public ConnectionSender(
+      final Packets packets,
+      final PacketBufferManager packetBuffer,
+      final CongestionController congestionController,
+      final Pacer pacer,
+      final ConnectionTimer timer,
+      final int maxPacketSize) {
+    this.packets = requireNonNull(packets);
+    this.packetBuffer = requireNonNull(packetBuffer);
+    this.congestionController = requireNonNull(congestionController);
+    this.pacer = requireNonNull(pacer);
+    this.pacingDeadline = timer.deadline(this::flush);
+    this.maxPacketSize = maxPacketSize;
+  }
+
+  public void queue(final EncryptionLevel level, final Frame... frames) {
+    scheduler.queue(level, frames);
+  }
+
+  public void flush() {
+    // retransmitted crypto data at earlier levels first
+    for (final EncryptionLevel level : EncryptionLevel.values()) {
+      if (!packets.available(level)) {
+        scheduler.discard(level);
+      } else if (!flush(level)) {
+        return;
+      }
+    }
+  }
+
+  // false if blocked by the congestion window or pacing
+  private boolean flush(final EncryptionLevel level) {
+    while (scheduler.hasQueued(level)) {
+      if (!congestionController.canSend()) {
+        // sent once acks open up the congestion window
+        log.debug("Congestion window full, {}", congestionController);
+        return false;
+      }
+
+      final long delay = pacer.delay();
+      if (delay > 0) {
+        // flushed again once the pacer has tokens for a full packet
+        log.debug("Pacing for {} ns, {}", delay, pacer);
+        pacingDeadline.set(delay, TimeUnit.NANOSECONDS);
+        return false;
+      }
+      send(level, List.of(), true)
+          .ifPresent(packet -> pacer.onPacketSent(packet.calculateLength()));
+    }
+    return true;
+  }
+
+  /** Sends the frames directly in a packet of the level, with any queued frames that fit */
+  public FullPacket send(final EncryptionLevel level, final Frame... frames) {
+    return send(level, List.of(frames), false).get();
+  }
+
+  /**
+   * Sends a loss probe with the frames in packets of the level. Probes are never held back by the
+   * congestion window or the pacer, but are limited to two packets as per RFC 9002 section 6.2.4.
+   * Any frames not fitting are left queued. The frames are dropped if the keys of the level have
+   * been discarded.
+   */
+  public void probe(final EncryptionLevel level, final Frame... frames) {
+    if (!packets.available(level)) {
+      log.debug("Dropping probe, keys discarded for {}", level);
+      for (final Frame frame : frames) {
+        frame.release();
+      }
+      return;
+    }
+
+    scheduler.queue(level, frames);
+    for (int i = 0; i < MAX_PROBE_PACKETS && scheduler.hasQueued(level); i++) {
+      send(level, List.of(), true)
+          .ifPresent(packet -> pacer.onPacketSent(packet.calculateLength()));
+    }
+  }
+
+  private Optional<FullPacket> send(
+      final EncryptionLevel level, final List<Frame> frames, final boolean flushing) {
+    final List<Frame> packetFrames = new ArrayList<>(frames);
+    if (frames.stream().noneMatch(frame -> frame instanceof AckFrame)) {
+      // acks are sent with any outgoing packet, unless flushing them
+      packetBuffer.ackFrame(level).ifPresent(packetFrames::add);
+    }
+
+    final int available =
+        packets.capacity(level, maxPacketSize) - FrameScheduler.calculateLength(packetFrames);
+    final List<Frame> drained = scheduler.drain(level, available);
+    packetFrames.addAll(drained);
+    if (flushing && drained.isEmpty()) {
+      // the next queued frame does not fit in the packet, stream and crypto data is split to fit
+      final Optional<Frame> next = scheduler.poll(level, available);
+      if (next.isPresent()) {
+        packetFrames.add(next.get());
+      } else {
+        // too large for a packet, it would otherwise be kept queued forever
+        final Frame frame = scheduler.poll(level, Integer.MAX_VALUE).get();
+        log.warn("Dropping frame too large for a packet {}", frame);
+        frame.release();
+      }
+    }
+
+    if (packetFrames.isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of((FullPacket) packets.sendPacket(packets.create(level, packetFrames)));
+  }
+
+  /**
+   * Sends a PING padded to the packet size, e.g. to probe the path MTU. Padded packets count
+   * towards the congestion window, and are only sent if the congestion window and the pacer allow.
+   *
+   * @return the packet sent, if any
+   */
+  public Optional<FullPacket> sendPadded(final int packetSize) {
+    if (!congestionController.canSend() || pacer.delay() > 0) {
+      return Optional.empty();
+    }
+
+    final int padding =
+        packets.capacity(EncryptionLevel.OneRtt, packetSize) - PingFrame.INSTANCE.calculateLength();
+    final FullPacket packet =
+        (FullPacket)
+            packets.sendPacket(
+                packets.create(
+                    EncryptionLevel.OneRtt,
+                    List.of(PingFrame.INSTANCE, new PaddingFrame(padding))));
+    pacer.onPacketSent(packet.calculateLength());
+    return Optional.of(packet);
+  }
+
+  public int getMaxPacketSize() {
+    return maxPacketSize;
+  }
+
+  public void setMaxPacketSize(final int maxPacketSize) {
+    this.maxPacketSize = maxPacketSize;
+    congestionController.setMaxDatagramSize(maxPacketSize);
+    pacer.setMaxDatagramSize(maxPacketSize);
+  }
+}
@@ -0,0 +1,131 @@
+package com.protocol7.quincy.connection;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.utils.Ticker;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The timers of a connection, e.g. idle timeout and retransmissions, as deadlines run on the event
+ * loop of the connection. A single task is scheduled with the event loop, for the earliest
+ * deadline. Moving a deadline later, like the idle timeout on every received packet, only updates
+ * the deadline, and the task is re-armed when it fires. Closing cancels all deadlines.
+ */
+public class ConnectionTimer {
+
+  private static final long NOT_SET = Long.MAX_VALUE;
+
+  public class Deadline {
+
+    private final Runnable task;
+    private long deadline = NOT_SET;
+
+    private Deadline(final Runnable task) {
+      this.task = requireNonNull(task);
+    }
+
+    /** Sets the deadline to the provided delay from now, replacing any previous deadline */
+    public void set(final long delay, final TimeUnit unit) {
+      if (closed) {
+        return;
+      }
+
+      deadline = ticker.nanoTime() + unit.toNanos(delay);
+      if (deadline < scheduledDeadline) {
+        schedule(deadline);
+      }
+    }
+
+    public void cancel() {
+      // the scheduled task is left to fire, and re-armed for the remaining deadlines
+      deadline = NOT_SET;
+    }
+
+    public boolean isSet() {
+      return deadline != NOT_SET;
+    }
+  }
+
+  private final Logger log = LoggerFactory.getLogger(ConnectionTimer.class);
+
+  private final EventExecutor executor;
+  private final Ticker ticker;
+  private final List<Deadline> deadlines = new ArrayList<>();
+  private ScheduledFuture<?> scheduled;
+  private long scheduledDeadline = NOT_SET;
+  private boolean closed = false;
+
+  public ConnectionTimer(final EventExecutor executor, final Ticker ticker) {
+    this.executor = requireNonNull(executor);
+    this.ticker = requireNonNull(ticker);
+  }
+
+  /** Creates a deadline, initially not set, running the task when it expires */
+  public Deadline deadline(final Runnable task) {
+    final Deadline deadline = new Deadline(task);
+    deadlines.add(deadline);
+    return deadline;
+  }
+
+  public void close() {
+    closed = true;
+    for (final Deadline deadline : deadlines) {
+      deadline.cancel();
+    }
+    if (scheduled != null) {
+      scheduled.cancel(false);
+      scheduled = null;
+    }
+    scheduledDeadline = NOT_SET;
+  }
+
+  private void schedule(final long deadline) {
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+
+    scheduledDeadline = deadline;
+    final long delay = Math.max(0, deadline - ticker.nanoTime());
+    scheduled = executor.schedule(this::expire, delay, TimeUnit.NANOSECONDS);
+  }
+
+  private void expire() {
+    scheduled = null;
+    scheduledDeadline = NOT_SET;
+
+    final long now = ticker.nanoTime();
+    for (final Deadline deadline : deadlines) {
+      if (closed) {
+        return;
+      }
+
+      if (deadline.deadline <= now) {
+        deadline.deadline = NOT_SET;
+        try {
+          deadline.task.run();
+        } catch (final RuntimeException e) {
+          log.warn("Connection timer task failed", e);
+        }
+      }
+    }
+
+    if (closed) {
+      return;
+    }
+
+    // tasks might have set new deadlines, already scheduled if earliest
+    long earliest = NOT_SET;
+    for (final Deadline deadline : deadlines) {
+      earliest = Math.min(earliest, deadline.deadline);
+    }
+    if (earliest < scheduledDeadline) {
+      schedule(earliest);
+    }
+  }
+}
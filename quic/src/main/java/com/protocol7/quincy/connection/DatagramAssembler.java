@@ -0,0 +1,110 @@
+package com.protocol7.quincy.connection;
+
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.protocol.packets.LongHeaderPacket;
+import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.tls.aead.AEAD;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.Future;
+import java.net.InetSocketAddress;
+
+/**
+ * Coalesces packets for the same peer, possibly of different encryption levels, into datagrams of
+ * up to the max packet size. Only packets with a length field, that is long header packets, can be
+ * followed by other packets in the same datagram. Must only be used from the event loop.
+ */
+public class DatagramAssembler {
+
+  private final Channel channel;
+  private final InetSocketAddress peerAddress;
+  private int maxPacketSize;
+  private final ChannelFlusher flusher;
+
+  private ByteBuf datagram;
+  private ChannelPromise promise;
+
+  public DatagramAssembler(
+      final Channel channel,
+      final InetSocketAddress peerAddress,
+      final int maxPacketSize,
+      final ChannelFlusher flusher) {
+    this.channel = channel;
+    this.peerAddress = peerAddress;
+    this.maxPacketSize = maxPacketSize;
+    this.flusher = flusher;
+  }
+
+  /**
+   * Adds the packet to the current datagram, or starts a new one if it does not fit. The returned
+   * future completes when the datagram has been written.
+   */
+  public Future<Void> add(final Packet packet, final AEAD aead) {
+    if (!(packet instanceof FullPacket)) {
+      // retry and version negotiation packets are always sent on their own
+      finish();
+      start();
+      packet.write(datagram, aead);
+      return finishAndReturn();
+    }
+
+    if (datagram == null) {
+      start();
+    }
+
+    final int packetOffset = datagram.writerIndex();
+    packet.write(datagram, aead);
+
+    if (packetOffset > 0 && datagram.writerIndex() > maxPacketSize) {
+      // did not fit, move the packet to a datagram of its own
+      final ByteBuf next = channel.alloc().directBuffer(maxPacketSize);
+      next.writeBytes(datagram, packetOffset, datagram.writerIndex() - packetOffset);
+      datagram.writerIndex(packetOffset);
+      finish();
+
+      start(next);
+    }
+
+    if (packet instanceof LongHeaderPacket) {
+      return promise;
+    } else {
+      // short header packets extend to the end of the datagram
+      return finishAndReturn();
+    }
+  }
+
+  /** Datagrams started after this are assembled up to the new max packet size */
+  public void setMaxPacketSize(final int maxPacketSize) {
+    this.maxPacketSize = maxPacketSize;
+  }
+
+  /** Writes the current datagram, if any, to the channel. */
+  public void finish() {
+    if (datagram != null) {
+      final DatagramPacket dp = new DatagramPacket(datagram, peerAddress);
+      final ChannelPromise p = promise;
+      datagram = null;
+      promise = null;
+
+      channel.write(dp, p);
+    }
+  }
+
+  private Future<Void> finishAndReturn() {
+    final Future<Void> future = promise;
+    finish();
+    return future;
+  }
+
+  private void start() {
+    start(channel.alloc().directBuffer(maxPacketSize));
+  }
+
+  private void start(final ByteBuf bb) {
+    datagram = bb;
+    promise = channel.newPromise();
+    flusher.finishBeforeFlush(this);
+  }
+}
@@ -0,0 +1,188 @@
+package com.protocol7.quincy.connection;
+
+import com.protocol7.quincy.Varint;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.frames.CryptoFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
+import com.protocol7.quincy.tls.EncryptionLevel;
+import com.protocol7.quincy.tls.aead.AEAD;
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Queues frames for a connection, e.g. control frames and retransmissions, to be packed into
+ * packets filling up to the max packet size rather than each being sent in a packet of its own.
+ * Frames are queued per encryption level, as e.g. crypto data is retransmitted at the level it was
+ * first sent at.
+ */
+public class FrameScheduler {
+
+  // packet numbers are written using at most 4 bytes
+  private static final int MAX_PACKET_NUMBER_LENGTH = 4;
+
+  // stream and crypto frames are not split into parts with less data than this
+  private static final int MIN_SPLIT_LENGTH = 32;
+
+  /** The number of bytes available for frames in a short header packet */
+  public static int shortPacketCapacity(
+      final int maxPacketSize, final Optional<ConnectionId> destinationConnectionId) {
+    final int header =
+        1
+            + destinationConnectionId.map(ConnectionId::getLength).orElse(0)
+            + MAX_PACKET_NUMBER_LENGTH;
+    return maxPacketSize - header - AEAD.OVERHEAD;
+  }
+
+  /** The number of bytes available for frames in a long header packet */
+  public static int longPacketCapacity(
+      final int maxPacketSize,
+      final Optional<ConnectionId> destinationConnectionId,
+      final Optional<ConnectionId> sourceConnectionId,
+      final Optional<byte[]> token) {
+    // type, version and connection ID lengths
+    int header = 1 + 4 + 1;
+    header += destinationConnectionId.map(ConnectionId::getLength).orElse(0);
+    header += sourceConnectionId.map(ConnectionId::getLength).orElse(0);
+    header += token.map(t -> Varint.getLength(t.length) + t.length).orElse(0);
+    header += Varint.getLength(maxPacketSize) + MAX_PACKET_NUMBER_LENGTH;
+    return maxPacketSize - header - AEAD.OVERHEAD;
+  }
+
+  public static int calculateLength(final List<Frame> frames) {
+    int len = 0;
+    for (final Frame frame : frames) {
+      len += frame.calculateLength();
+    }
+    return len;
+  }
+
+  private final ArrayDeque<Frame>[] queues = newQueues();
+
+  public void queue(final EncryptionLevel level, final Frame... frames) {
+    final ArrayDeque<Frame> queue = getQueue(level);
+    for (final Frame frame : frames) {
+      queue.add(frame);
+    }
+  }
+
+  public boolean hasQueued(final EncryptionLevel level) {
+    return !getQueue(level).isEmpty();
+  }
+
+  /**
+   * Removes the queued frames that fit within maxLength. Frames too large to fit are skipped, so
+   * that smaller frames after them can still fill the packet, and are kept in order for the next
+   * packet.
+   */
+  public List<Frame> drain(final EncryptionLevel level, final int maxLength) {
+    final List<Frame> frames = new ArrayList<>();
+    int remaining = maxLength;
+    final Iterator<Frame> iter = getQueue(level).iterator();
+    while (iter.hasNext() && remaining > 0) {
+      final Frame frame = iter.next();
+      final int len = frame.calculateLength();
+      if (len <= remaining) {
+        frames.add(frame);
+        remaining -= len;
+        iter.remove();
+      }
+    }
+    return frames;
+  }
+
+  /**
+   * Removes the first queued frame if it fits within maxLength. Stream and crypto frames, e.g.
+   * merged retransmissions, are split to fit and the rest is kept first in the queue. Frames that
+   * don't fit and can't be split are kept queued, rather than being sent in an oversized packet.
+   */
+  public Optional<Frame> poll(final EncryptionLevel level, final int maxLength) {
+    final ArrayDeque<Frame> queue = getQueue(level);
+    final Frame frame = queue.peek();
+    if (frame == null || frame.calculateLength() <= maxLength) {
+      return Optional.ofNullable(queue.poll());
+    }
+
+    if (!canSplit(frame, maxLength)) {
+      return Optional.empty();
+    }
+    queue.poll();
+    final int length = maxLength - header(frame);
+    final Frame[] parts =
+        frame instanceof StreamFrame
+            ? split((StreamFrame) frame, length)
+            : split((CryptoFrame) frame, length);
+    queue.addFirst(parts[1]);
+    return Optional.of(parts[0]);
+  }
+
+  /** Drops the queued frames, e.g. when the keys of the encryption level are discarded */
+  public void discard(final EncryptionLevel level) {
+    final ArrayDeque<Frame> queue = getQueue(level);
+    while (!queue.isEmpty()) {
+      queue.poll().release();
+    }
+  }
+
+  private ArrayDeque<Frame> getQueue(final EncryptionLevel level) {
+    return queues[level.ordinal()];
+  }
+
+  // the first part has length bytes of data and keeps the offset, the rest keeps the fin bit
+  private static StreamFrame[] split(final StreamFrame frame, final int length) {
+    final ByteBuf data = frame.content();
+    final StreamFrame first =
+        new StreamFrame(
+            frame.getStreamId(),
+            frame.getOffset(),
+            false,
+            data.retainedSlice(data.readerIndex(), length));
+    final StreamFrame rest =
+        new StreamFrame(
+            frame.getStreamId(),
+            frame.getOffset() + length,
+            frame.isFin(),
+            data.retainedSlice(data.readerIndex() + length, frame.getLength() - length));
+    frame.release();
+    return new StreamFrame[] {first, rest};
+  }
+
+  private static CryptoFrame[] split(final CryptoFrame frame, final int length) {
+    final ByteBuf data = frame.content();
+    final CryptoFrame first =
+        new CryptoFrame(frame.getOffset(), data.retainedSlice(data.readerIndex(), length));
+    final CryptoFrame rest =
+        new CryptoFrame(
+            frame.getOffset() + length,
+            data.retainedSlice(data.readerIndex() + length, data.readableBytes() - length));
+    frame.release();
+    return new CryptoFrame[] {first, rest};
+  }
+
+  private static boolean canSplit(final Frame frame, final int maxLength) {
+    return (frame instanceof StreamFrame || frame instanceof CryptoFrame)
+        && maxLength - header(frame) >= MIN_SPLIT_LENGTH;
+  }
+
+  // the length of a stream or crypto frame apart from its data
+  private static int header(final Frame frame) {
+    if (frame instanceof StreamFrame) {
+      return frame.calculateLength() - ((StreamFrame) frame).getLength();
+    } else {
+      return frame.calculateLength() - ((CryptoFrame) frame).content().readableBytes();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArrayDeque<Frame>[] newQueues() {
+    final ArrayDeque<Frame>[] queues = new ArrayDeque[EncryptionLevel.values().length];
+    for (int i = 0; i < queues.length; i++) {
+      queues[i] = new ArrayDeque<>();
+    }
+    return queues;
+  }
+}
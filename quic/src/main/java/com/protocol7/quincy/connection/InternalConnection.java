@@ -1,11 +1,18 @@
 package com.protocol7.quincy.connection;
 
 import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.tls.EncryptionLevel;
 
 public interface InternalConnection extends Connection {
 
   void onPacket(Packet packet);
 
+  /** The largest packet number received in the packet number space of the encryption level */
+  long getLargestReceivedPacketNumber(EncryptionLevel level);
+
+  /** The smoothed RTT in nanoseconds */
+  long getSmoothedRtt();
+
   void setState(State state);
 
   void closeByPeer();
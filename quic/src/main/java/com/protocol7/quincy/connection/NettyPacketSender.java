@@ -3,32 +3,61 @@ package com.protocol7.quincy.connection;
 import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.tls.aead.AEAD;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.socket.DatagramPacket;
 import io.netty.util.concurrent.Future;
 import java.net.InetSocketAddress;
 
+/**
+ * Writes packets to the channel without flushing, flushes are coalesced per channel by {@link
+ * ChannelFlusher}. Packets sent from the event loop are coalesced into datagrams by {@link
+ * DatagramAssembler}. With the epoll transport, all datagrams written before a flush are sent using
+ * a single sendmmsg call.
+ */
 public class NettyPacketSender implements PacketSender {
 
   private final Channel channel;
   private final InetSocketAddress peerAddress;
+  private final ChannelFlusher flusher;
+  private final DatagramAssembler assembler;
 
-  public NettyPacketSender(final Channel channel, final InetSocketAddress peerAddress) {
+  public NettyPacketSender(
+      final Channel channel, final InetSocketAddress peerAddress, final int maxPacketSize) {
     this.channel = channel;
     this.peerAddress = peerAddress;
+    this.flusher = ChannelFlusher.get(channel);
+    this.assembler = new DatagramAssembler(channel, peerAddress, maxPacketSize, flusher);
   }
 
   @Override
   public Future<Void> send(final Packet packet, final AEAD aead) {
-    final ByteBuf bb = Unpooled.buffer();
+    if (channel.eventLoop().inEventLoop()) {
+      return assembler.add(packet, aead);
+    }
+
+    // not on the event loop, send in a datagram of its own
+    final ByteBuf bb = channel.alloc().directBuffer();
     packet.write(bb, aead);
 
-    return channel.writeAndFlush(new DatagramPacket(bb, peerAddress));
+    final Future<Void> future = channel.write(new DatagramPacket(bb, peerAddress));
+
+    flusher.scheduleFlush();
+
+    return future;
+  }
+
+  @Override
+  public void setMaxPacketSize(final int maxPacketSize) {
+    assembler.setMaxPacketSize(maxPacketSize);
   }
 
   @Override
   public Future<Void> destroy() {
+    // make sure any pending packets, e.g. connection close, gets sent before closing
+    if (channel.eventLoop().inEventLoop()) {
+      assembler.finish();
+    }
+    channel.flush();
     return channel.close();
   }
 }
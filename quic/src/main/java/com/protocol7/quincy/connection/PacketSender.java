@@ -7,5 +7,8 @@ import io.netty.util.concurrent.Future;
 public interface PacketSender {
   Future<Void> send(Packet packet, AEAD aead);
 
+  /** The max packet size changes, e.g. with path MTU discovery */
+  default void setMaxPacketSize(final int maxPacketSize) {}
+
   Future<Void> destroy();
 }
@@ -1,5 +1,7 @@
 package com.protocol7.quincy.flowcontrol;
 
+import static java.util.Objects.requireNonNull;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.protocol7.quincy.PipelineContext;
 import com.protocol7.quincy.protocol.TransportError;
@@ -12,22 +14,56 @@ import com.protocol7.quincy.protocol.frames.StreamDataBlockedFrame;
 import com.protocol7.quincy.protocol.frames.StreamFrame;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.utils.Ticker;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Enforces the flow control limits of the peer, and auto-tunes the receive windows advertised to
+ * the peer to the rate at which the application reads data. The connection window grows up to the
+ * max receive window, with bytes reserved from a budget shared between connections. Stream windows
+ * grow up to the max receive window, with bytes reserved from a budget of the same size shared by
+ * the streams of the connection. Stream windows are released once all data up to the final size has
+ * been read.
+ */
 public class DefaultFlowControlHandler implements FlowControlHandler {
 
   private final FlowControlCounter receiveCounter;
   private final FlowControlCounter sendCounter;
-  private final AtomicBoolean connectionBlocked = new AtomicBoolean(false);
+  private boolean connectionBlocked = false;
   private final Set<Long> blockedStreams = new HashSet<>();
 
-  public DefaultFlowControlHandler(final long connectionMaxBytes, final long streamMaxBytes) {
+  private final long streamMaxBytes;
+  private final long maxReceiveWindow;
+  private final ReceiveWindow connectionWindow;
+  private final ReceiveBudget streamBudget;
+  // only for streams with data yet to be read, the final size of streams is kept by the counter
+  private final Map<Long, ReceiveWindow> streamWindows = new HashMap<>();
+  private final Ticker ticker;
+
+  public DefaultFlowControlHandler(
+      final long connectionMaxBytes,
+      final long streamMaxBytes,
+      final long maxReceiveWindow,
+      final ReceiveBudget budget,
+      final Ticker ticker) {
     receiveCounter = new FlowControlCounter(connectionMaxBytes, streamMaxBytes);
     sendCounter = new FlowControlCounter(connectionMaxBytes, streamMaxBytes);
+
+    this.streamMaxBytes = streamMaxBytes;
+    this.maxReceiveWindow = maxReceiveWindow;
+    this.connectionWindow =
+        new ReceiveWindow(
+            connectionMaxBytes, Math.max(connectionMaxBytes, maxReceiveWindow), budget);
+    this.streamBudget = new ReceiveBudget(maxReceiveWindow);
+    this.ticker = requireNonNull(ticker);
   }
 
   @Override
@@ -38,7 +74,7 @@ public class DefaultFlowControlHandler implements FlowControlHandler {
         if (frame.getType() == FrameType.STREAM) {
           final StreamFrame sf = (StreamFrame) frame;
 
-          if (!tryConsume(sf.getStreamId(), sf.getOffset() + sf.getData().length, ctx)) {
+          if (!tryConsume(sf.getStreamId(), sf.getOffset() + sf.getLength(), ctx)) {
             throw new IllegalStateException("Stream or connection blocked");
           }
         }
@@ -56,21 +92,52 @@ public class DefaultFlowControlHandler implements FlowControlHandler {
       return true;
     } else {
       final List<Frame> frames = new ArrayList<>();
-      if (result.getConnectionOffset() > result.getConnectionMax() && !connectionBlocked.get()) {
+      if (result.getConnectionOffset() > result.getConnectionMax() && !connectionBlocked) {
         frames.add(new DataBlockedFrame(result.getConnectionMax()));
-        connectionBlocked.set(true);
+        connectionBlocked = true;
       }
       if (result.getStreamOffset() > result.getStreamMax() && !blockedStreams.contains(sid)) {
         frames.add(new StreamDataBlockedFrame(sid, result.getStreamMax()));
         blockedStreams.add(sid);
       }
       if (!frames.isEmpty()) {
-        ctx.send(frames.toArray(new Frame[0]));
+        // sent with the next packet rather than in one of its own
+        ctx.queue(frames.toArray(new Frame[0]));
       }
       return false;
     }
   }
 
+  /**
+   * Only the most recently sent limits are retransmitted, and blocked frames only while still
+   * blocked at the same limit
+   */
+  @Override
+  public Optional<Frame> onLost(final Frame frame) {
+    final boolean current;
+    if (frame instanceof MaxDataFrame) {
+      current = ((MaxDataFrame) frame).getMaxData() == receiveCounter.getConnectionMaxBytes();
+    } else if (frame instanceof MaxStreamDataFrame) {
+      final MaxStreamDataFrame msd = (MaxStreamDataFrame) frame;
+      current =
+          !receiveCounter.isFinished(msd.getStreamId())
+              && msd.getMaxStreamData() == receiveCounter.getStreamMaxBytes(msd.getStreamId());
+    } else if (frame instanceof DataBlockedFrame) {
+      current =
+          connectionBlocked
+              && ((DataBlockedFrame) frame).getDataLimit() == sendCounter.getConnectionMaxBytes();
+    } else if (frame instanceof StreamDataBlockedFrame) {
+      final StreamDataBlockedFrame sdb = (StreamDataBlockedFrame) frame;
+      current =
+          blockedStreams.contains(sdb.getStreamId())
+              && sdb.getStreamDataLimit() == sendCounter.getStreamMaxBytes(sdb.getStreamId());
+    } else {
+      current = true;
+    }
+
+    return current ? Optional.of(frame) : Optional.empty();
+  }
+
   public void onReceivePacket(final Packet packet, final PipelineContext ctx) {
     if (packet instanceof FullPacket) {
       final FullPacket fp = (FullPacket) packet;
@@ -83,26 +150,55 @@ public class DefaultFlowControlHandler implements FlowControlHandler {
         } else if (frame.getType() == FrameType.MAX_DATA) {
           final MaxDataFrame mdf = (MaxDataFrame) frame;
           sendCounter.setConnectionMaxBytes(mdf.getMaxData());
-          connectionBlocked.set(false);
+          connectionBlocked = false;
         } else if (frame.getType() == FrameType.STREAM) {
           final StreamFrame sf = (StreamFrame) frame;
           final long sid = sf.getStreamId();
-          final TryConsumeResult result =
-              receiveCounter.tryConsume(sid, sf.getOffset() + sf.getData().length);
+          final long end = sf.getOffset() + sf.getLength();
+          if (receiveCounter.isFinished(sid) && end > receiveCounter.getStreamOffset(sid)) {
+            ctx.closeConnection(
+                TransportError.FINAL_OFFSET_ERROR, FrameType.STREAM, "Data beyond final size");
+            continue;
+          }
+
+          final TryConsumeResult result = receiveCounter.tryConsume(sid, end);
 
           if (result.isSuccess()) {
+            final long now = ticker.nanoTime();
+            final long rtt = ctx.getSmoothedRtt();
+
             final List<Frame> frames = new ArrayList<>();
-            if (1.0 * result.getConnectionOffset() / result.getConnectionMax() > 0.5) {
-              final long newMax = receiveCounter.increaseConnectionMax();
-              frames.add(new MaxDataFrame(newMax));
+            final OptionalLong connectionMax =
+                connectionWindow.onRead(
+                    receiveCounter.getConnectionReadOffset(), result.getConnectionMax(), rtt, now);
+            if (connectionMax.isPresent()) {
+              receiveCounter.setConnectionMaxBytes(connectionMax.getAsLong());
+              frames.add(new MaxDataFrame(connectionMax.getAsLong()));
+
+              closeIdleStreams(rtt, now);
+            }
+
+            if (sf.isFin()) {
+              receiveCounter.finishStream(sid, end);
             }
-            if (1.0 * result.getStreamOffset() / result.getStreamMax() > 0.5) {
-              final long newMax = receiveCounter.increaseStreamMax(sid);
-              frames.add(new MaxStreamDataFrame(sid, newMax));
+
+            final long readOffset = receiveCounter.getReadOffset(sid);
+            if (receiveCounter.isFinished(sid)) {
+              // all data of the stream is within the current limit, no larger limit is advertised
+              if (readOffset >= receiveCounter.getStreamOffset(sid)) {
+                closeStream(sid);
+              }
+            } else {
+              final OptionalLong streamMax =
+                  streamWindow(sid).onRead(readOffset, result.getStreamMax(), rtt, now);
+              if (streamMax.isPresent()) {
+                receiveCounter.setStreamMaxBytes(sid, streamMax.getAsLong());
+                frames.add(new MaxStreamDataFrame(sid, streamMax.getAsLong()));
+              }
             }
 
             if (!frames.isEmpty()) {
-              ctx.send(frames.toArray(new Frame[0]));
+              ctx.queue(frames.toArray(new Frame[0]));
             }
           } else {
             ctx.closeConnection(
@@ -114,4 +210,49 @@ public class DefaultFlowControlHandler implements FlowControlHandler {
 
     ctx.next(packet);
   }
+
+  @Override
+  public void onRead(final long sid, final long offset) {
+    receiveCounter.onRead(sid, offset);
+  }
+
+  private ReceiveWindow streamWindow(final long sid) {
+    return streamWindows.computeIfAbsent(
+        sid,
+        ignored ->
+            new ReceiveWindow(
+                streamMaxBytes, Math.max(streamMaxBytes, maxReceiveWindow), streamBudget));
+  }
+
+  private void closeStream(final long sid) {
+    final ReceiveWindow window = streamWindows.remove(sid);
+    if (window != null) {
+      window.close();
+    }
+  }
+
+  // idle streams start over from the initial window if they receive data again, windows of
+  // finished streams are closed once read
+  private void closeIdleStreams(final long rtt, final long now) {
+    final Iterator<Map.Entry<Long, ReceiveWindow>> iter = streamWindows.entrySet().iterator();
+    while (iter.hasNext()) {
+      final Map.Entry<Long, ReceiveWindow> entry = iter.next();
+      final long sid = entry.getKey();
+      final ReceiveWindow window = entry.getValue();
+      if (!receiveCounter.isFinished(sid) && window.isIdle(rtt, now)) {
+        window.shrink(receiveCounter.getReadOffset(sid), receiveCounter.getStreamMaxBytes(sid));
+        if (window.isReleased()) {
+          iter.remove();
+        }
+      }
+    }
+  }
+
+  /** Releases the growth of the receive windows back to the budget */
+  @Override
+  public void close() {
+    connectionWindow.close();
+    streamWindows.values().forEach(ReceiveWindow::close);
+    streamWindows.clear();
+  }
 }
@@ -3,47 +3,44 @@ package com.protocol7.quincy.flowcontrol;
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Math.max;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 public class FlowControlCounter {
 
-  // TODO make sure max bytes does not grow forever
-
-  private final AtomicLong connectionMaxBytes;
+  private long connectionMaxBytes;
+  private long connectionReadOffset = 0;
   private final long defaultStreamMaxBytes;
 
   private class StreamCounter {
     public boolean finished = false;
-    public final AtomicLong maxOffset = new AtomicLong(defaultStreamMaxBytes);
-    public final AtomicLong offset = new AtomicLong(0);
+    public long maxOffset = defaultStreamMaxBytes;
+    public long offset = 0;
+    public long readOffset = 0;
   }
 
   // TODO this will grow forever. Consider how we can garbage collect finished streams while not
   // recreating them on out-of-order packets
-  private final Map<Long, StreamCounter> streams = new ConcurrentHashMap<>();
+  private final Map<Long, StreamCounter> streams = new HashMap<>();
 
   public FlowControlCounter(final long connectionMaxBytes, final long streamMaxBytes) {
-    this.connectionMaxBytes = new AtomicLong(connectionMaxBytes);
+    this.connectionMaxBytes = connectionMaxBytes;
     this.defaultStreamMaxBytes = streamMaxBytes;
   }
 
   private long calculateConnectionOffset() {
-    return streams.values().stream().mapToLong(c -> c.offset.get()).sum();
+    return streams.values().stream().mapToLong(c -> c.offset).sum();
   }
 
-  // remove need to syncronize
-  public synchronized TryConsumeResult tryConsume(final long sid, final long offset) {
+  public TryConsumeResult tryConsume(final long sid, final long offset) {
     checkArgument(offset > 0);
 
     // first check if we can successfully consume
     final StreamCounter stream = streams.computeIfAbsent(sid, ignored -> new StreamCounter());
-    final long streamMax = stream.maxOffset.get();
-    final AtomicLong streamConsumed = stream.offset;
+    final long streamMax = stream.maxOffset;
     final long connOffset = calculateConnectionOffset();
 
-    final long streamDelta = offset - streamConsumed.get();
+    final long streamDelta = offset - stream.offset;
 
     final long resultingConnOffset;
     final long resultingStreamOffset;
@@ -52,56 +49,83 @@ public class FlowControlCounter {
       // out of order, always successful
       success = true;
       resultingConnOffset = connOffset;
-      resultingStreamOffset = streamConsumed.get();
+      resultingStreamOffset = stream.offset;
     } else if (streamDelta > 0 && stream.finished) {
       // trying to increase offset for finished stream, bail
       throw new IllegalStateException("Stream finished");
-    } else if (offset > streamMax || connOffset + streamDelta > connectionMaxBytes.get()) {
+    } else if (offset > streamMax || connOffset + streamDelta > connectionMaxBytes) {
       success = false;
       resultingConnOffset = connOffset + streamDelta;
       resultingStreamOffset = offset;
     } else {
       success = true;
-      streamConsumed.updateAndGet(current -> max(current, offset));
+      stream.offset = max(stream.offset, offset);
       resultingConnOffset = connOffset + streamDelta;
-      resultingStreamOffset = streamConsumed.get();
+      resultingStreamOffset = stream.offset;
     }
 
     return new TryConsumeResult(
-        success, resultingConnOffset, connectionMaxBytes.get(), resultingStreamOffset, streamMax);
+        success, resultingConnOffset, connectionMaxBytes, resultingStreamOffset, streamMax);
   }
 
   public void resetStream(final long sid, final long finalOffset) {
+    finishStream(sid, finalOffset);
+  }
+
+  /** Sets the final offset of the stream, no data can be consumed beyond it */
+  public void finishStream(final long sid, final long finalOffset) {
     final StreamCounter stream = streams.computeIfAbsent(sid, ignored -> new StreamCounter());
-    stream.offset.updateAndGet(current -> max(current, finalOffset));
+    stream.offset = max(stream.offset, finalOffset);
     stream.finished = true;
   }
 
-  public void setConnectionMaxBytes(final long connectionMaxBytes) {
-    checkArgument(connectionMaxBytes > 0);
+  public boolean isFinished(final long sid) {
+    final StreamCounter stream = streams.get(sid);
+    return stream != null && stream.finished;
+  }
 
-    this.connectionMaxBytes.updateAndGet(current -> max(connectionMaxBytes, current));
+  public long getStreamOffset(final long sid) {
+    final StreamCounter stream = streams.get(sid);
+    return stream != null ? stream.offset : 0;
   }
 
-  public long increaseStreamMax(final long sid) {
+  /** Called when the stream has been read by the application up to the offset */
+  public void onRead(final long sid, final long offset) {
     final StreamCounter stream = streams.computeIfAbsent(sid, ignored -> new StreamCounter());
-    final AtomicLong streamMax = stream.maxOffset;
+    if (offset > stream.readOffset) {
+      connectionReadOffset += offset - stream.readOffset;
+      stream.readOffset = offset;
+    }
+  }
+
+  public long getReadOffset(final long sid) {
+    final StreamCounter stream = streams.get(sid);
+    return stream != null ? stream.readOffset : 0;
+  }
 
-    // double
-    return streamMax.addAndGet(streamMax.get());
+  public long getConnectionReadOffset() {
+    return connectionReadOffset;
   }
 
-  public long increaseConnectionMax() {
-    // double
-    return connectionMaxBytes.addAndGet(connectionMaxBytes.get());
+  public void setConnectionMaxBytes(final long connectionMaxBytes) {
+    checkArgument(connectionMaxBytes > 0);
+
+    this.connectionMaxBytes = max(connectionMaxBytes, this.connectionMaxBytes);
+  }
+
+  public long getConnectionMaxBytes() {
+    return connectionMaxBytes;
+  }
+
+  public long getStreamMaxBytes(final long sid) {
+    final StreamCounter stream = streams.get(sid);
+    return stream != null ? stream.maxOffset : defaultStreamMaxBytes;
   }
 
   public void setStreamMaxBytes(final long sid, final long streamMaxBytes) {
     checkArgument(streamMaxBytes > 0);
 
     final StreamCounter stream = streams.computeIfAbsent(sid, ignored -> new StreamCounter());
-    final AtomicLong streamMax = stream.maxOffset;
-
-    streamMax.updateAndGet(current -> max(streamMaxBytes, current));
+    stream.maxOffset = max(streamMaxBytes, stream.maxOffset);
   }
 }
@@ -2,5 +2,14 @@ package com.protocol7.quincy.flowcontrol;
 
 import com.protocol7.quincy.InboundHandler;
 import com.protocol7.quincy.OutboundHandler;
+import com.protocol7.quincy.reliability.LostFrameHandler;
 
-public interface FlowControlHandler extends InboundHandler, OutboundHandler {}
+/** Handles flow control frames, and decides which lost flow control frames to retransmit */
+public interface FlowControlHandler extends InboundHandler, OutboundHandler, LostFrameHandler {
+
+  /** Called when the application has read the data of the stream up to the offset */
+  void onRead(long streamId, long offset);
+
+  /** Called when the connection is closed */
+  void close();
+}
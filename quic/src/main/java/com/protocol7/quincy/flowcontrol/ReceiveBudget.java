@@ -0,0 +1,53 @@
+package com.protocol7.quincy.flowcontrol;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes that receive windows can grow by beyond their initial size, bounding the memory the peers
+ * can make us buffer. A budget can be shared by the connections of all server workers, and is
+ * thread safe.
+ */
+public class ReceiveBudget {
+
+  private final AtomicLong available;
+
+  public ReceiveBudget(final long bytes) {
+    checkArgument(bytes >= 0);
+
+    this.available = new AtomicLong(bytes);
+  }
+
+  /**
+   * Reserves up to the number of bytes
+   *
+   * @return the number of bytes reserved, less than requested if the budget is running out
+   */
+  public long reserve(final long bytes) {
+    checkArgument(bytes >= 0);
+
+    while (true) {
+      final long current = available.get();
+      final long reserved = Math.min(current, bytes);
+      if (available.compareAndSet(current, current - reserved)) {
+        return reserved;
+      }
+    }
+  }
+
+  public void release(final long bytes) {
+    checkArgument(bytes >= 0);
+
+    available.addAndGet(bytes);
+  }
+
+  public long getAvailable() {
+    return available.get();
+  }
+
+  @Override
+  public String toString() {
+    return "ReceiveBudget{" + "available=" + available + '}';
+  }
+}
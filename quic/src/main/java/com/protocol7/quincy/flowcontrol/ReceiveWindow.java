@@ -0,0 +1,124 @@
+package com.protocol7.quincy.flowcontrol;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.OptionalLong;
+
+/**
+ * The receive window of a connection or stream, auto-tuned to the rate at which the application
+ * reads data relative to the round trip time. A new max offset is advertised once more than half of
+ * the window has been read. If the previous update was less than two round trips earlier, the
+ * window limits the throughput of the peer and is doubled, up to the max window and as far as the
+ * budget allows. Windows not read from for a number of round trips shrink back to their initial
+ * size. The peer can still send up to the max offset already advertised, so the growth is only
+ * released back to the budget once read up to that offset.
+ */
+public class ReceiveWindow {
+
+  // windows are grown if read within this many round trips
+  private static final int GROWTH_RTTS = 2;
+  // windows not read from for this many round trips are idle
+  private static final int IDLE_RTTS = 10;
+  private static final long NOT_SET = -1;
+
+  private final long initialWindow;
+  private final long maxWindow;
+  private final ReceiveBudget budget;
+
+  private long window;
+  private long lastUpdate = NOT_SET;
+  private long lastRead = NOT_SET;
+  // growth of shrunk windows, held until read up to the offset
+  private long pending = 0;
+  private long releaseAt = 0;
+
+  public ReceiveWindow(final long initialWindow, final long maxWindow, final ReceiveBudget budget) {
+    checkArgument(initialWindow > 0);
+    checkArgument(maxWindow >= initialWindow);
+
+    this.initialWindow = initialWindow;
+    this.maxWindow = maxWindow;
+    this.budget = requireNonNull(budget);
+    this.window = initialWindow;
+  }
+
+  /**
+   * Called when data has been read up to the offset. Times are in nanoseconds.
+   *
+   * @param max the max offset currently advertised
+   * @return the new max offset to advertise, if any
+   */
+  public OptionalLong onRead(final long offset, final long max, final long rtt, final long now) {
+    if (isIdle(rtt, now)) {
+      shrink(offset, max);
+    }
+    lastRead = now;
+    release(offset);
+
+    if (2 * (max - offset) >= window) {
+      // less than half of the window read
+      return OptionalLong.empty();
+    }
+
+    if (lastUpdate != NOT_SET && now - lastUpdate < GROWTH_RTTS * rtt) {
+      grow();
+    }
+    lastUpdate = now;
+
+    return OptionalLong.of(offset + window);
+  }
+
+  /** If no data has been read for a number of round trips */
+  public boolean isIdle(final long rtt, final long now) {
+    return lastRead != NOT_SET && now - lastRead > IDLE_RTTS * rtt;
+  }
+
+  /**
+   * Shrinks the window back to its initial size. The growth is released once data has been read up
+   * to the max offset advertised.
+   *
+   * @param offset the offset up to which data has been read
+   * @param max the max offset currently advertised
+   */
+  public void shrink(final long offset, final long max) {
+    pending += window - initialWindow;
+    releaseAt = Math.max(releaseAt, max);
+    window = initialWindow;
+    lastUpdate = NOT_SET;
+    release(offset);
+  }
+
+  /** If the window holds none of the budget */
+  public boolean isReleased() {
+    return window == initialWindow && pending == 0;
+  }
+
+  /** Releases all growth of the window back to the budget, once no more data can be received */
+  public void close() {
+    budget.release(pending + window - initialWindow);
+    pending = 0;
+    window = initialWindow;
+    lastUpdate = NOT_SET;
+  }
+
+  public long getWindow() {
+    return window;
+  }
+
+  private void grow() {
+    window += budget.reserve(Math.min(window, maxWindow - window));
+  }
+
+  private void release(final long offset) {
+    if (pending > 0 && offset >= releaseAt) {
+      budget.release(pending);
+      pending = 0;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ReceiveWindow{" + "window=" + window + ", pending=" + pending + '}';
+  }
+}
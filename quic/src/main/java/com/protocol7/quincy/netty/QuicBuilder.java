@@ -1,13 +1,25 @@
 package com.protocol7.quincy.netty;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 import com.protocol7.quincy.Configuration;
+import com.protocol7.quincy.congestion.CongestionControllerFactory;
+import com.protocol7.quincy.congestion.NewReno;
+import com.protocol7.quincy.flowcontrol.ReceiveBudget;
 import com.protocol7.quincy.protocol.Version;
+import com.protocol7.quincy.server.WorkerConnectionIds;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollDatagramChannel;
 import io.netty.channel.socket.DatagramChannel;
+import java.net.SocketAddress;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.List;
 
 public class QuicBuilder {
@@ -24,6 +36,14 @@ public class QuicBuilder {
   private int initialMaxStreamDataBidiRemote = 32768;
   private int initialMaxStreamDataUni = 32768;
   private int maxAckDelay = 100; // TODO verify
+  private int receiveBatchSize = 64;
+  private int maxProbePacketSize = 0;
+  private int workers = 1;
+  private CongestionControllerFactory congestionControllerFactory = NewReno::new;
+  private int pacingBurst = 10;
+  private long maxReceiveWindow = 16 * 1024 * 1024;
+  // shared by all connections configured by this builder
+  private ReceiveBudget receiveBudget = new ReceiveBudget(256 * 1024 * 1024);
 
   private List<byte[]> certificates;
   private PrivateKey privateKey;
@@ -88,6 +108,77 @@ public class QuicBuilder {
     return this;
   }
 
+  /** The maximum number of datagrams read and routed as one batch before flushing responses */
+  public QuicBuilder withReceiveBatchSize(final int receiveBatchSize) {
+    this.receiveBatchSize = receiveBatchSize;
+    return this;
+  }
+
+  /**
+   * Enables path MTU discovery, probing for packet sizes larger than the max packet size, up to
+   * maxProbePacketSize. For example, 8952 for a path with 9000 byte jumbo frames over IPv4.
+   */
+  public QuicBuilder withPathMtuDiscovery(final int maxProbePacketSize) {
+    checkArgument(maxProbePacketSize <= 65527);
+
+    this.maxProbePacketSize = maxProbePacketSize;
+    return this;
+  }
+
+  /**
+   * The number of server workers, each with its own SO_REUSEPORT channel and connection table. More
+   * than one worker requires the epoll transport.
+   */
+  public QuicBuilder withWorkers(final int workers) {
+    checkArgument(workers > 0 && workers <= WorkerConnectionIds.MAX_WORKERS);
+
+    this.workers = workers;
+    return this;
+  }
+
+  /**
+   * The congestion controller used by each connection, e.g. {@code Cubic::new} or {@code Bbr::new}.
+   * Defaults to NewReno.
+   */
+  public QuicBuilder withCongestionController(
+      final CongestionControllerFactory congestionControllerFactory) {
+    this.congestionControllerFactory = requireNonNull(congestionControllerFactory);
+    return this;
+  }
+
+  /**
+   * The number of packets that can be sent back to back before pacing kicks in, e.g. after an idle
+   * period. Defaults to 10, the initial congestion window.
+   */
+  public QuicBuilder withPacingBurst(final int pacingBurst) {
+    checkArgument(pacingBurst > 0);
+
+    this.pacingBurst = pacingBurst;
+    return this;
+  }
+
+  /**
+   * The size the receive window of a connection, and of each of its streams, can be auto-tuned up
+   * to. Defaults to 16 MB.
+   */
+  public QuicBuilder withMaxReceiveWindow(final long maxReceiveWindow) {
+    checkArgument(maxReceiveWindow > 0);
+
+    this.maxReceiveWindow = maxReceiveWindow;
+    return this;
+  }
+
+  /**
+   * The number of bytes the receive windows of all connections can together grow by beyond the
+   * initial max data. Defaults to 256 MB.
+   */
+  public QuicBuilder withReceiveBudget(final long receiveBudget) {
+    checkArgument(receiveBudget >= 0);
+
+    this.receiveBudget = new ReceiveBudget(receiveBudget);
+    return this;
+  }
+
   public QuicBuilder withCertificates(final List<byte[]> certificates) {
     this.certificates = certificates;
     return this;
@@ -111,7 +202,13 @@ public class QuicBuilder {
         disableMigration,
         initialMaxStreamDataBidiRemote,
         initialMaxStreamDataUni,
-        maxAckDelay);
+        maxAckDelay,
+        receiveBatchSize,
+        maxProbePacketSize,
+        congestionControllerFactory,
+        pacingBurst,
+        maxReceiveWindow,
+        receiveBudget);
   }
 
   public ChannelHandler serverChannelInitializer(final ChannelHandler handler) {
@@ -121,6 +218,42 @@ public class QuicBuilder {
     return new QuicServerInitializer(configuration(), handler, certificates, privateKey);
   }
 
+  /**
+   * Binds one server channel per worker to the address, spread over the event loops of the group.
+   * With multiple workers, the channels use SO_REUSEPORT and the kernel distributes datagrams
+   * between them.
+   */
+  public List<ChannelFuture> bindServer(
+      final EventLoopGroup group,
+      final Class<? extends DatagramChannel> channelClass,
+      final SocketAddress address,
+      final ChannelHandler handler) {
+    requireNonNull(certificates);
+    requireNonNull(privateKey);
+    checkArgument(
+        workers == 1 || EpollDatagramChannel.class.isAssignableFrom(channelClass),
+        "Multiple workers require the epoll transport for SO_REUSEPORT");
+
+    final Configuration configuration = configuration();
+    final ServerWorkers serverWorkers = new ServerWorkers(workers);
+
+    final List<ChannelFuture> futures = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      final Bootstrap b = new Bootstrap();
+      b.group(group);
+      b.channel(channelClass);
+      if (workers > 1) {
+        b.option(EpollChannelOption.SO_REUSEPORT, true);
+      }
+      b.handler(
+          new QuicServerInitializer(
+              configuration, handler, certificates, privateKey, serverWorkers, i));
+
+      futures.add(b.bind(address));
+    }
+    return futures;
+  }
+
   public ChannelInitializer<DatagramChannel> clientChannelInitializer(
       final ChannelHandler handler) {
     return new QuicClientInitializer(configuration(), handler);
@@ -2,8 +2,8 @@ package com.protocol7.quincy.netty;
 
 import com.protocol7.quincy.Configuration;
 import com.protocol7.quincy.client.ClientConnection;
+import com.protocol7.quincy.connection.ChannelFlusher;
 import com.protocol7.quincy.connection.NettyPacketSender;
-import com.protocol7.quincy.flowcontrol.DefaultFlowControlHandler;
 import com.protocol7.quincy.protocol.ConnectionId;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.HalfParsedPacket;
@@ -11,14 +11,11 @@ import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.streams.Stream;
 import com.protocol7.quincy.streams.StreamListener;
 import com.protocol7.quincy.tls.NoopCertificateValidator;
-import com.protocol7.quincy.utils.Bytes;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.util.HashedWheelTimer;
-import io.netty.util.Timer;
 import io.netty.util.concurrent.Promise;
 import java.net.InetSocketAddress;
 import org.slf4j.MDC;
@@ -28,12 +25,12 @@ public class QuicClientHandler extends ChannelDuplexHandler {
   private ChannelHandlerContext ctx;
   private ClientConnection connection;
   private final Configuration configuration;
-  private final Timer timer = new HashedWheelTimer();
 
   private final StreamListener streamListener =
       new StreamListener() {
         @Override
-        public void onData(final Stream stream, final byte[] data, final boolean finished) {
+        public void onData(final Stream stream, final ByteBuf data, final boolean finished) {
+          // ownership of the data is handed over to the next handler
           ctx.fireChannelRead(
               QuicPacket.of(
                   connection.getLocalConnectionId().get(),
@@ -59,12 +56,11 @@ public class QuicClientHandler extends ChannelDuplexHandler {
             configuration,
             ConnectionId.random(),
             streamListener,
-            new NettyPacketSender(ctx.channel(), remoteAddress()),
-            new DefaultFlowControlHandler(
-                configuration.getInitialMaxData(), configuration.getInitialMaxStreamDataUni()),
+            new NettyPacketSender(ctx.channel(), remoteAddress(), configuration.getMaxPacketSize()),
+            configuration.newFlowControlHandler(),
             (InetSocketAddress) ctx.channel().remoteAddress(),
             new NoopCertificateValidator(), // cert validation disabled
-            timer);
+            ctx.channel().eventLoop());
 
     final Promise<Void> handshakePromise = ctx.newPromise();
 
@@ -86,37 +82,51 @@ public class QuicClientHandler extends ChannelDuplexHandler {
     if (msg instanceof DatagramPacket) {
       final DatagramPacket dg = (DatagramPacket) msg;
 
+      // responses are flushed once all datagrams in this read have been handled
+      ChannelFlusher.get(ctx.channel()).beginBatch();
+
       final ByteBuf bb = dg.content();
 
-      while (bb.isReadable()) {
-        final HalfParsedPacket<?> halfParsed =
-            Packet.parse(bb, connection.getLastDestConnectionIdLength());
+      try {
+        while (bb.isReadable()) {
+          final HalfParsedPacket<?> halfParsed =
+              Packet.parse(bb, connection.getLastDestConnectionIdLength());
 
-        final Packet packet = halfParsed.complete(connection::getAEAD);
+          final Packet packet =
+              halfParsed.complete(connection::getAEAD, connection::getLargestReceivedPacketNumber);
 
-        MDC.put("actor", "client");
-        if (packet instanceof FullPacket) {
-          MDC.put("packetnumber", Long.toString(((FullPacket) packet).getPacketNumber()));
-        }
-        packet
-            .getDestinationConnectionId()
-            .ifPresent(connId -> MDC.put("connectionid", connId.toString()));
+          MDC.put("actor", "client");
+          if (packet instanceof FullPacket) {
+            MDC.put("packetnumber", Long.toString(((FullPacket) packet).getPacketNumber()));
+          }
+          packet
+              .getDestinationConnectionId()
+              .ifPresent(connId -> MDC.put("connectionid", connId.toString()));
 
-        connection.onPacket(packet);
+          connection.onPacket(packet);
+        }
+      } finally {
+        dg.release();
       }
     } else {
       ctx.fireChannelRead(msg);
     }
   }
 
+  @Override
+  public void channelReadComplete(final ChannelHandlerContext ctx) {
+    ChannelFlusher.get(ctx.channel()).endBatch();
+
+    ctx.fireChannelReadComplete();
+  }
+
   @Override
   public void write(
       final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
     if (msg instanceof QuicPacket) {
       final QuicPacket qp = (QuicPacket) msg;
-      final byte[] data = Bytes.drainToArray(qp.content());
-
-      connection.openStream().write(data, true);
+      // ownership of the content is handed over to the stream
+      connection.openStream().write(qp.content(), true);
     } else {
       ctx.write(msg, promise);
     }
@@ -4,6 +4,7 @@ import com.protocol7.quincy.Configuration;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FixedRecvByteBufAllocator;
 import io.netty.channel.socket.DatagramChannel;
 
 public class QuicClientInitializer extends ChannelInitializer<DatagramChannel> {
@@ -18,6 +19,14 @@ public class QuicClientInitializer extends ChannelInitializer<DatagramChannel> {
 
   @Override
   protected void initChannel(final DatagramChannel ch) {
+    if (configuration.getMaxReceivePacketSize()
+        > QuicServerInitializer.DEFAULT_RECEIVE_BUFFER_SIZE) {
+      // make room for datagrams larger than the default, e.g. with path MTU discovery
+      ch.config()
+          .setRecvByteBufAllocator(
+              new FixedRecvByteBufAllocator(configuration.getMaxReceivePacketSize()));
+    }
+
     final ChannelPipeline pipeline = ch.pipeline();
     pipeline.addLast(new QuicClientHandler(configuration));
     pipeline.addLast(handler);
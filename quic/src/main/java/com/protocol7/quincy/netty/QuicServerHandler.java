@@ -1,31 +1,38 @@
 package com.protocol7.quincy.netty;
 
 import com.protocol7.quincy.Configuration;
+import com.protocol7.quincy.connection.ChannelFlusher;
 import com.protocol7.quincy.connection.Connection;
 import com.protocol7.quincy.connection.NettyPacketSender;
+import com.protocol7.quincy.connection.PacketSender;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.server.Connections;
 import com.protocol7.quincy.server.PacketRouter;
+import com.protocol7.quincy.server.WorkerConnectionIds;
 import com.protocol7.quincy.streams.Stream;
 import com.protocol7.quincy.streams.StreamListener;
-import com.protocol7.quincy.utils.Bytes;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.socket.DatagramPacket;
-import io.netty.util.HashedWheelTimer;
-import io.netty.util.Timer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 public class QuicServerHandler extends ChannelDuplexHandler {
 
-  private final Timer timer = new HashedWheelTimer();
   private final StreamListener streamListener =
       new StreamListener() {
         @Override
-        public void onData(final Stream stream, final byte[] data, final boolean finished) {
-          System.out.println("onData " + new String(data));
+        public void onData(final Stream stream, final ByteBuf data, final boolean finished) {
+          System.out.println("onData " + data.toString(StandardCharsets.UTF_8));
+          data.release();
 
           //              ctx.fireChannelRead(
           //                      new QuicPacket(
@@ -34,42 +41,141 @@ public class QuicServerHandler extends ChannelDuplexHandler {
         }
       };
 
+  private final List<DatagramPacket> batch = new ArrayList<>();
   private final Connections connections;
   private final PacketRouter router;
+  private final ServerWorkers workers;
+  private final int workerIndex;
+  private final int maxPacketSize;
+  // only called when a connection is created, not for every datagram
+  private final Function<InetSocketAddress, PacketSender> packetSenders;
+  private ChannelHandlerContext ctx;
 
   public QuicServerHandler(
       final Configuration configuration,
       final List<byte[]> certificates,
       final PrivateKey privateKey) {
-    this.connections = new Connections(configuration, certificates, privateKey, timer);
+    this(configuration, certificates, privateKey, new ServerWorkers(1), 0);
+  }
+
+  public QuicServerHandler(
+      final Configuration configuration,
+      final List<byte[]> certificates,
+      final PrivateKey privateKey,
+      final ServerWorkers workers,
+      final int workerIndex) {
+    this.connections =
+        new Connections(
+            configuration, certificates, privateKey, new WorkerConnectionIds(workerIndex));
     this.router = new PacketRouter(configuration.getVersion(), connections, streamListener);
+    this.workers = workers;
+    this.workerIndex = workerIndex;
+    this.maxPacketSize = configuration.getMaxPacketSize();
+    this.packetSenders =
+        peerAddress -> new NettyPacketSender(ctx.channel(), peerAddress, maxPacketSize);
+  }
+
+  @Override
+  public void handlerAdded(final ChannelHandlerContext ctx) {
+    this.ctx = ctx;
+    workers.register(workerIndex, this);
   }
 
   @Override
   public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
     if (msg instanceof DatagramPacket) {
-      final DatagramPacket datagram = (DatagramPacket) msg;
-      router.route(
-          datagram.content(),
-          new NettyPacketSender(ctx.channel(), datagram.sender()),
-          datagram.sender());
-
+      // routed once the whole batch of datagrams from this read has arrived
+      batch.add((DatagramPacket) msg);
     } else {
       ctx.fireChannelRead(msg);
     }
   }
 
+  @Override
+  public void channelReadComplete(final ChannelHandlerContext ctx) {
+    final ChannelFlusher flusher = ChannelFlusher.get(ctx.channel());
+    flusher.beginBatch();
+    try {
+      for (final DatagramPacket datagram : batch) {
+        final QuicServerHandler owner = owner(datagram);
+        if (owner == this) {
+          route(ctx, datagram);
+        } else {
+          owner.forward(datagram);
+        }
+      }
+    } finally {
+      batch.clear();
+
+      // flush all responses for the batch at once
+      flusher.endBatch();
+    }
+
+    ctx.fireChannelReadComplete();
+  }
+
+  private void route(final ChannelHandlerContext ctx, final DatagramPacket datagram) {
+    try {
+      router.route(datagram.content(), packetSenders, datagram.sender(), ctx.channel().eventLoop());
+    } catch (final RuntimeException e) {
+      // a broken datagram must not prevent the rest of the batch from being routed
+      ctx.fireExceptionCaught(e);
+    } finally {
+      datagram.release();
+    }
+  }
+
+  // find the worker owning the connection, based on the worker index encoded in the connection ID
+  private QuicServerHandler owner(final DatagramPacket datagram) {
+    if (workers.size() == 1) {
+      return this;
+    }
+
+    final Optional<ConnectionId> connId;
+    try {
+      connId = Packet.parse(datagram.content().duplicate(), ConnectionId.LENGTH).getConnectionId();
+    } catch (final RuntimeException e) {
+      // let the router report the broken packet
+      return this;
+    }
+
+    if (connId.isPresent() && !connections.get(connId.get()).isPresent()) {
+      final int index = WorkerConnectionIds.workerIndex(connId.get());
+      if (index != workerIndex) {
+        return workers.get(index).orElse(this);
+      }
+    }
+    return this;
+  }
+
+  // called from other workers, hands the datagram over to the event loop of this worker
+  private void forward(final DatagramPacket datagram) {
+    ctx.channel()
+        .eventLoop()
+        .execute(
+            () -> {
+              final ChannelFlusher flusher = ChannelFlusher.get(ctx.channel());
+              flusher.beginBatch();
+              try {
+                route(ctx, datagram);
+              } finally {
+                flusher.endBatch();
+              }
+            });
+  }
+
   @Override
   public void write(
       final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
     if (msg instanceof QuicPacket) {
       final QuicPacket qp = (QuicPacket) msg;
-      final byte[] data = Bytes.drainToArray(qp.content());
-
       final Optional<Connection> connection = connections.get(qp.getLocalConnectionId());
 
       if (connection.isPresent()) {
-        connection.get().openStream().write(data, true);
+        // ownership of the content is handed over to the stream
+        connection.get().openStream().write(qp.content(), true);
+      } else {
+        qp.release();
       }
     } else {
       ctx.write(msg, promise);
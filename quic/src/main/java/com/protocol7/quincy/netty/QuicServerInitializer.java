@@ -4,6 +4,9 @@ import com.protocol7.quincy.Configuration;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.MaxMessagesRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
 import io.netty.channel.socket.DatagramChannel;
 import java.security.PrivateKey;
 import java.util.List;
@@ -14,22 +17,53 @@ public class QuicServerInitializer extends ChannelInitializer<DatagramChannel> {
   private final ChannelHandler handler;
   private final List<byte[]> certificates;
   private final PrivateKey privateKey;
+  private final ServerWorkers workers;
+  private final int workerIndex;
+
+  // the receive buffer size used by Netty datagram channels by default
+  static final int DEFAULT_RECEIVE_BUFFER_SIZE = 2048;
 
   public QuicServerInitializer(
       final Configuration configuration,
       final ChannelHandler handler,
       final List<byte[]> certificates,
       final PrivateKey privateKey) {
+    this(configuration, handler, certificates, privateKey, new ServerWorkers(1), 0);
+  }
+
+  public QuicServerInitializer(
+      final Configuration configuration,
+      final ChannelHandler handler,
+      final List<byte[]> certificates,
+      final PrivateKey privateKey,
+      final ServerWorkers workers,
+      final int workerIndex) {
     this.configuration = configuration;
     this.handler = handler;
     this.certificates = certificates;
     this.privateKey = privateKey;
+    this.workers = workers;
+    this.workerIndex = workerIndex;
   }
 
   @Override
   protected void initChannel(final DatagramChannel ch) {
+    if (configuration.getMaxReceivePacketSize() > DEFAULT_RECEIVE_BUFFER_SIZE) {
+      // make room for datagrams larger than the default, e.g. with path MTU discovery
+      ch.config()
+          .setRecvByteBufAllocator(
+              new FixedRecvByteBufAllocator(configuration.getMaxReceivePacketSize()));
+    }
+
+    final RecvByteBufAllocator allocator = ch.config().getRecvByteBufAllocator();
+    if (allocator instanceof MaxMessagesRecvByteBufAllocator) {
+      ((MaxMessagesRecvByteBufAllocator) allocator)
+          .maxMessagesPerRead(configuration.getReceiveBatchSize());
+    }
+
     final ChannelPipeline pipeline = ch.pipeline();
-    pipeline.addLast(new QuicServerHandler(configuration, certificates, privateKey));
+    pipeline.addLast(
+        new QuicServerHandler(configuration, certificates, privateKey, workers, workerIndex));
     pipeline.addLast(handler);
   }
 }
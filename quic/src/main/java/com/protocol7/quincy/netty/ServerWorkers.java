@@ -0,0 +1,34 @@
+package com.protocol7.quincy.netty;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.protocol7.quincy.server.WorkerConnectionIds;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** The server handlers for all workers bound to the same address, indexed by worker. */
+public class ServerWorkers {
+
+  private final AtomicReferenceArray<QuicServerHandler> handlers;
+
+  public ServerWorkers(final int size) {
+    checkArgument(size > 0 && size <= WorkerConnectionIds.MAX_WORKERS);
+
+    this.handlers = new AtomicReferenceArray<>(size);
+  }
+
+  public void register(final int index, final QuicServerHandler handler) {
+    handlers.set(index, handler);
+  }
+
+  public Optional<QuicServerHandler> get(final int index) {
+    if (index < 0 || index >= handlers.length()) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(handlers.get(index));
+  }
+
+  public int size() {
+    return handlers.length();
+  }
+}
@@ -0,0 +1,239 @@
+package com.protocol7.quincy.pmtu;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.protocol7.quincy.InboundHandler;
+import com.protocol7.quincy.OutboundHandler;
+import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.connection.State;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Datagram packetization layer path MTU discovery (RFC 8899). Once the handshake is done, probes
+ * the path with PING and PADDING packets, using a binary search between the current and the max
+ * probe packet size, and raises the max packet size of the connection when a probe gets acked. A
+ * probe size is given up after {@link #MAX_PROBES} lost probes.
+ *
+ * <p>If several packets larger than {@link #BASE_PACKET_SIZE} in a row are lost, the path is
+ * assumed to have become a black hole for large packets. The max packet size then falls back to
+ * {@link #BASE_PACKET_SIZE}, and the search restarts below the size that failed.
+ */
+public class PathMtuDiscovery implements InboundHandler, OutboundHandler {
+
+  /** The smallest max packet size allowed by QUIC, always assumed to work */
+  public static final int BASE_PACKET_SIZE = 1200;
+
+  @VisibleForTesting static final int MAX_PROBES = 3;
+  // the search is done when the remaining range is smaller than this
+  @VisibleForTesting static final int SEARCH_PRECISION = 16;
+  // packets are considered lost when a packet this many packet numbers later is acked
+  @VisibleForTesting static final int PACKET_THRESHOLD = 3;
+  @VisibleForTesting static final int BLACK_HOLE_THRESHOLD = 3;
+  @VisibleForTesting static final long PROBE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final int MAX_TRACKED_PACKETS = 64;
+
+  private final Logger log = LoggerFactory.getLogger(PathMtuDiscovery.class);
+
+  private final IntFunction<Optional<FullPacket>> prober;
+  private final IntConsumer listener;
+  private final Ticker ticker;
+
+  private int packetSize;
+  private int searchLow;
+  private int searchHigh;
+
+  private long probePacketNumber = -1;
+  private int probeSize;
+  private long probeSentTime;
+  private int lostProbes;
+
+  // recently sent packets larger than the base size, packet number to size
+  private final Map<Long, Integer> largePackets = new LinkedHashMap<>();
+  private int consecutiveLargeLost;
+
+  /**
+   * @param prober sends a PING and PADDING packet of the provided size, returning the packet sent
+   *     or empty if held back by congestion control
+   * @param listener called with the new max packet size when it changes
+   */
+  public PathMtuDiscovery(
+      final int packetSize,
+      final int maxProbePacketSize,
+      final IntFunction<Optional<FullPacket>> prober,
+      final IntConsumer listener,
+      final Ticker ticker) {
+    checkArgument(packetSize >= BASE_PACKET_SIZE);
+    checkArgument(maxProbePacketSize >= packetSize);
+
+    this.packetSize = packetSize;
+    this.searchLow = packetSize;
+    this.searchHigh = maxProbePacketSize;
+    this.prober = requireNonNull(prober);
+    this.listener = requireNonNull(listener);
+    this.ticker = requireNonNull(ticker);
+  }
+
+  public int getPacketSize() {
+    return packetSize;
+  }
+
+  @Override
+  public void beforeSendPacket(final Packet packet, final PipelineContext ctx) {
+    if (packet instanceof ShortPacket) {
+      final ShortPacket sp = (ShortPacket) packet;
+      final int length = sp.calculateLength();
+      // probes are larger than the current packet size, and tracked separately
+      if (length > BASE_PACKET_SIZE && length <= packetSize && isAckEliciting(sp)) {
+        largePackets.put(sp.getPacketNumber(), length);
+        if (largePackets.size() > MAX_TRACKED_PACKETS) {
+          final Iterator<Long> oldest = largePackets.keySet().iterator();
+          oldest.next();
+          oldest.remove();
+        }
+      }
+    }
+
+    ctx.next(packet);
+  }
+
+  @Override
+  public void onReceivePacket(final Packet packet, final PipelineContext ctx) {
+    if (packet instanceof ShortPacket) {
+      for (final Frame frame : ((ShortPacket) packet).getPayload().getFrames()) {
+        if (frame instanceof AckFrame) {
+          onAck((AckFrame) frame);
+        }
+      }
+    }
+
+    ctx.next(packet);
+
+    if (ctx.getState() == State.Ready) {
+      maybeProbe();
+    }
+  }
+
+  private void onAck(final AckFrame frame) {
+    final List<AckBlock> blocks = frame.getBlocks();
+    final long largestAcked = blocks.get(0).getLargest();
+
+    if (probePacketNumber != -1) {
+      if (isAcked(probePacketNumber, blocks)) {
+        onProbeAcked();
+      } else if (largestAcked >= probePacketNumber + PACKET_THRESHOLD) {
+        onProbeLost();
+      }
+    }
+
+    final Iterator<Map.Entry<Long, Integer>> iter = largePackets.entrySet().iterator();
+    while (iter.hasNext()) {
+      final long pn = iter.next().getKey();
+      if (isAcked(pn, blocks)) {
+        consecutiveLargeLost = 0;
+        iter.remove();
+      } else if (largestAcked >= pn + PACKET_THRESHOLD) {
+        consecutiveLargeLost++;
+        iter.remove();
+      }
+    }
+
+    if (consecutiveLargeLost >= BLACK_HOLE_THRESHOLD) {
+      onBlackHole();
+    }
+  }
+
+  private void onProbeAcked() {
+    log.debug("Path MTU probe of {} bytes acked", probeSize);
+
+    packetSize = probeSize;
+    searchLow = probeSize;
+    probePacketNumber = -1;
+    lostProbes = 0;
+    listener.accept(packetSize);
+  }
+
+  private void onProbeLost() {
+    log.debug("Path MTU probe of {} bytes lost", probeSize);
+
+    probePacketNumber = -1;
+    lostProbes++;
+    if (lostProbes >= MAX_PROBES) {
+      searchHigh = probeSize - 1;
+      lostProbes = 0;
+    }
+  }
+
+  private void onBlackHole() {
+    log.info("Black hole detected for packets of {} bytes, falling back", packetSize);
+
+    searchLow = BASE_PACKET_SIZE;
+    searchHigh = packetSize - 1;
+    packetSize = BASE_PACKET_SIZE;
+    probePacketNumber = -1;
+    lostProbes = 0;
+    largePackets.clear();
+    consecutiveLargeLost = 0;
+    listener.accept(packetSize);
+  }
+
+  private void maybeProbe() {
+    if (probePacketNumber != -1) {
+      if (ticker.nanoTime() - probeSentTime < PROBE_TIMEOUT_NANOS) {
+        return;
+      }
+      onProbeLost();
+    }
+
+    if (searchHigh - searchLow < SEARCH_PRECISION) {
+      return;
+    }
+
+    if (lostProbes == 0) {
+      probeSize = (searchLow + searchHigh + 1) / 2;
+    }
+
+    final Optional<FullPacket> probe = prober.apply(probeSize);
+    if (probe.isPresent()) {
+      probePacketNumber = probe.get().getPacketNumber();
+      probeSentTime = ticker.nanoTime();
+    }
+    // else probed with a later packet, once the congestion window and the pacer allow
+  }
+
+  private static boolean isAcked(final long pn, final List<AckBlock> blocks) {
+    for (final AckBlock block : blocks) {
+      if (pn >= block.getSmallest() && pn <= block.getLargest()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isAckEliciting(final FullPacket packet) {
+    for (final Frame frame : packet.getPayload().getFrames()) {
+      if (!(frame instanceof AckFrame) && !(frame instanceof PaddingFrame)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
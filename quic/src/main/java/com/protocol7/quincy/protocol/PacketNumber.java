@@ -1,21 +1,41 @@
 package com.protocol7.quincy.protocol;
 
 import com.google.common.base.Preconditions;
-import com.google.common.primitives.Ints;
 import com.protocol7.quincy.Varint;
-import com.protocol7.quincy.utils.Bytes;
+import io.netty.buffer.ByteBuf;
 
 public class PacketNumber {
 
   public static long parse(final byte[] b) {
-    final byte[] pad = new byte[4 - b.length];
-    final byte[] bs = Bytes.concat(pad, b);
+    long pn = 0;
+    for (final byte x : b) {
+      pn = pn << 8 | (x & 0xFF);
+    }
+    return pn;
+  }
 
-    return Ints.fromByteArray(bs);
+  public static long read(final ByteBuf bb, final int length) {
+    switch (length) {
+      case 1:
+        return bb.readUnsignedByte();
+      case 2:
+        return bb.readUnsignedShort();
+      case 3:
+        return bb.readUnsignedMedium();
+      case 4:
+        return bb.readUnsignedInt();
+      default:
+        throw new IllegalArgumentException("Invalid packet number length: " + length);
+    }
   }
 
   public static final long MIN = 0;
 
+  /** Used as the largest acknowledged or received packet number before any packet */
+  public static final long NONE = -1;
+
+  public static final int MAX_LENGTH = 4;
+
   public static long validate(final long number) {
     Preconditions.checkArgument(number >= 0);
     Preconditions.checkArgument(number <= Varint.MAX);
@@ -26,8 +46,58 @@ public class PacketNumber {
     return number + 1;
   }
 
+  /** The length needed to encode the packet number when no packet has yet been acknowledged */
   public static int getLength(final long number) {
-    return 4; // TODO
+    return getLength(number, NONE);
+  }
+
+  /**
+   * The number of bytes needed to encode the packet number so that the peer can decode it, given
+   * the largest packet number acknowledged by the peer. Twice the number of packets in flight must
+   * be representable, RFC 9000 appendix A.2.
+   */
+  public static int getLength(final long number, final long largestAcked) {
+    final long unacked = number - largestAcked;
+    final int bits = 65 - Long.numberOfLeadingZeros(unacked - 1);
+    return Math.min(MAX_LENGTH, (bits + 7) / 8);
+  }
+
+  /**
+   * Decodes a truncated packet number into the full packet number closest to the next expected
+   * packet number, RFC 9000 appendix A.3.
+   */
+  public static long decode(final long truncated, final int length, final long largestReceived) {
+    final long expected = largestReceived + 1;
+    final long window = 1L << (length * 8);
+    final long halfWindow = window / 2;
+    final long candidate = (expected & ~(window - 1)) | truncated;
+
+    if (candidate <= expected - halfWindow && candidate < (1L << 62) - window) {
+      return candidate + window;
+    } else if (candidate > expected + halfWindow && candidate >= window) {
+      return candidate - window;
+    } else {
+      return candidate;
+    }
+  }
+
+  public static void write(final long number, final int length, final ByteBuf bb) {
+    switch (length) {
+      case 1:
+        bb.writeByte((int) number);
+        break;
+      case 2:
+        bb.writeShort((int) number);
+        break;
+      case 3:
+        bb.writeMedium((int) number);
+        break;
+      case 4:
+        bb.writeInt((int) number);
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid packet number length: " + length);
+    }
   }
 
   public static byte[] write(final long number, final int length) {
@@ -4,45 +4,63 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 
 import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
 import com.protocol7.quincy.tls.aead.AEAD;
-import com.protocol7.quincy.utils.Bytes;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class Payload {
 
+  /**
+   * Parses the payload at the reader index. The payload is decrypted in place, the AAD is read from
+   * aadOffset up to the reader index. Stream and crypto data are parsed as slices of the buffer,
+   * retained until the payload is released.
+   */
   public static Payload parse(
-      final ByteBuf bb, final int length, final AEAD aead, final long pn, final byte[] aad) {
-    final byte[] cipherText = new byte[length];
-    bb.readBytes(cipherText);
+      final ByteBuf bb, final int length, final AEAD aead, final long pn, final int aadOffset) {
+    final int payloadOffset = bb.readerIndex();
 
-    final byte[] raw;
+    final int plainTextLength;
     try {
-      raw = aead.open(cipherText, pn, aad);
+      plainTextLength = aead.open(bb, aadOffset, payloadOffset, length, pn);
     } catch (final GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
 
     final List<Frame> frames = new ArrayList<>();
-    final ByteBuf frameBuf = Unpooled.wrappedBuffer(raw);
+    final ByteBuf frameBuf = bb.slice(payloadOffset, plainTextLength);
 
-    while (frameBuf.isReadable()) {
-      final Frame frame = Frame.parse(frameBuf);
-      frames.add(frame);
+    try {
+      while (frameBuf.isReadable()) {
+        final Frame frame = Frame.parse(frameBuf);
+        frames.add(frame);
+      }
+    } catch (final RuntimeException e) {
+      frames.forEach(Frame::release);
+      throw e;
     }
-    return new Payload(frames);
+    checkArgument(!frames.isEmpty());
+
+    bb.readerIndex(payloadOffset + length);
+
+    return new Payload(Collections.unmodifiableList(frames), true);
   }
 
   private final List<Frame> frames;
+  private final boolean parsed;
 
   public Payload(final List<Frame> frames) {
-    requireNonNull(frames);
+    this(List.copyOf(requireNonNull(frames)), false);
+  }
+
+  private Payload(final List<Frame> frames, final boolean parsed) {
     checkArgument(!frames.isEmpty());
 
-    this.frames = List.copyOf(frames);
+    this.frames = frames;
+    this.parsed = parsed;
   }
 
   public Payload(final Frame... frames) {
@@ -59,20 +77,41 @@ public class Payload {
     return new Payload(newFrames);
   }
 
+  /**
+   * Releases the buffers retained by frames of a parsed payload. Does nothing for payloads created
+   * for sending, where the frames might be retransmitted.
+   */
+  public void release() {
+    if (parsed) {
+      frames.forEach(Frame::release);
+    }
+  }
+
+  /** Adds padding if needed for the frames to be written using at least the provided length */
+  public Payload pad(final int minLength) {
+    final int length = calculateLength() - AEAD.OVERHEAD;
+    if (length >= minLength) {
+      return this;
+    }
+    return addFrame(new PaddingFrame(minLength - length));
+  }
+
   public int calculateLength() {
     return frames.stream().mapToInt(f -> f.calculateLength()).sum() + AEAD.OVERHEAD;
   }
 
-  public void write(final ByteBuf bb, final AEAD aead, final long pn, final byte[] aad) {
-    final ByteBuf raw = Unpooled.buffer();
+  /**
+   * Writes the payload at the writer index and encrypts it in place, the AAD is read from aadOffset
+   * up to the writer index.
+   */
+  public void write(final ByteBuf bb, final AEAD aead, final long pn, final int aadOffset) {
+    final int payloadOffset = bb.writerIndex();
     for (final Frame frame : frames) {
-      frame.write(raw);
+      frame.write(bb);
     }
-    final byte[] b = Bytes.drainToArray(raw);
 
     try {
-      final byte[] sealed = aead.seal(b, pn, aad);
-      bb.writeBytes(sealed);
+      aead.seal(bb, aadOffset, payloadOffset, pn);
     } catch (final GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
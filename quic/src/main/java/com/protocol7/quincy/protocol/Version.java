@@ -2,8 +2,8 @@ package com.protocol7.quincy.protocol;
 
 import static com.protocol7.quincy.utils.Hex.dehex;
 
+import com.google.common.primitives.Ints;
 import io.netty.buffer.ByteBuf;
-import java.util.Arrays;
 
 public enum Version {
   VERSION_NEGOTIATION(dehex("00000000")),
@@ -15,33 +15,27 @@ public enum Version {
   DRAFT_20(dehex("ff000014")),
   UNKNOWN(new byte[0]);
 
+  private static final Version[] KNOWN = {
+    VERSION_NEGOTIATION, FINAL, QUIC_GO, DRAFT_15, DRAFT_17, DRAFT_18, DRAFT_20
+  };
+
   public static Version read(final ByteBuf bb) {
-    final byte[] l = new byte[4];
-    bb.readBytes(l);
-
-    if (Arrays.equals(l, VERSION_NEGOTIATION.version)) {
-      return VERSION_NEGOTIATION;
-    } else if (Arrays.equals(l, FINAL.version)) {
-      return FINAL;
-    } else if (Arrays.equals(l, QUIC_GO.version)) {
-      return QUIC_GO;
-    } else if (Arrays.equals(l, DRAFT_15.version)) {
-      return DRAFT_15;
-    } else if (Arrays.equals(l, DRAFT_17.version)) {
-      return DRAFT_17;
-    } else if (Arrays.equals(l, DRAFT_18.version)) {
-      return DRAFT_18;
-    } else if (Arrays.equals(l, DRAFT_20.version)) {
-      return DRAFT_20;
-    } else {
-      return UNKNOWN;
+    final int value = bb.readInt();
+
+    for (final Version version : KNOWN) {
+      if (version.value == value) {
+        return version;
+      }
     }
+    return UNKNOWN;
   }
 
   private final byte[] version;
+  private final int value;
 
   Version(final byte[] version) {
     this.version = version;
+    this.value = version.length == 4 ? Ints.fromByteArray(version) : 0;
   }
 
   public void write(final ByteBuf bb) {
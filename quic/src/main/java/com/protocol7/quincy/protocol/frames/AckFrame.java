@@ -11,9 +11,13 @@ import java.util.List;
 
 public class AckFrame extends Frame {
 
+  // the type of ACK frames carrying ECN counts
+  private static final byte ECN_TYPE = 0x03;
+
+  /** Parses ACK and ACK_ECN frames. ECN is not supported, so the ECN counts are skipped. */
   public static AckFrame parse(final ByteBuf bb) {
     final byte type = bb.readByte();
-    if (type != FrameType.ACK.getType()) {
+    if (type != FrameType.ACK.getType() && type != ECN_TYPE) {
       throw new IllegalArgumentException("Illegal frame type");
     }
 
@@ -41,6 +45,13 @@ public class AckFrame extends Frame {
       }
     }
 
+    if (type == ECN_TYPE) {
+      // ECT(0), ECT(1) and CE counts
+      for (int i = 0; i < 3; i++) {
+        Varint.readAsLong(bb);
+      }
+    }
+
     return new AckFrame(ackDelay, blocks);
   }
 
@@ -83,6 +94,27 @@ public class AckFrame extends Frame {
     return blocks;
   }
 
+  @Override
+  public int calculateLength() {
+    final AckBlock firstBlock = blocks.get(0);
+    long smallest = firstBlock.getSmallest();
+
+    int len =
+        1
+            + Varint.getLength(firstBlock.getLargest())
+            + Varint.getLength(ackDelay)
+            + Varint.getLength((blocks.size() - 1) * 2)
+            + Varint.getLength(firstBlock.getLargest() - smallest);
+
+    for (int i = 1; i < blocks.size(); i++) {
+      final AckBlock block = blocks.get(i);
+      len += Varint.getLength(smallest - block.getLargest() - 1);
+      len += Varint.getLength(block.getLargest() - block.getSmallest());
+      smallest = block.getSmallest();
+    }
+    return len;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
@@ -0,0 +1,122 @@
+package com.protocol7.quincy.protocol.frames;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.protocol7.quincy.Varint;
+import io.netty.buffer.ByteBuf;
+import java.util.Objects;
+
+/**
+ * Asks the peer to change how often it acknowledges packets, as per
+ * draft-ietf-quic-ack-frequency-01. Frames with a sequence number not larger than an earlier frame
+ * are ignored. Only received, quincy never sends it as the transport parameters of the peer,
+ * including its min_ack_delay, are not made available to the connection.
+ */
+public class AckFrequencyFrame extends Frame {
+
+  public static AckFrequencyFrame parse(final ByteBuf bb) {
+    final long type = Varint.readAsLong(bb);
+    if (type != FrameType.ACK_FREQUENCY.getLongType()) {
+      throw new IllegalArgumentException("Illegal frame type");
+    }
+
+    final long sequenceNumber = Varint.readAsLong(bb);
+    final long packetTolerance = Varint.readAsLong(bb);
+    final long updateMaxAckDelay = Varint.readAsLong(bb);
+    final byte ignoreOrder = bb.readByte();
+    if (ignoreOrder != 0 && ignoreOrder != 1) {
+      throw new IllegalArgumentException("Illegal ignore order");
+    }
+
+    return new AckFrequencyFrame(
+        sequenceNumber, packetTolerance, updateMaxAckDelay, ignoreOrder == 1);
+  }
+
+  private final long sequenceNumber;
+  private final long packetTolerance;
+  private final long updateMaxAckDelay;
+  private final boolean ignoreOrder;
+
+  public AckFrequencyFrame(
+      final long sequenceNumber,
+      final long packetTolerance,
+      final long updateMaxAckDelay,
+      final boolean ignoreOrder) {
+    super(FrameType.ACK_FREQUENCY);
+
+    checkArgument(packetTolerance > 0);
+
+    this.sequenceNumber = sequenceNumber;
+    this.packetTolerance = packetTolerance;
+    this.updateMaxAckDelay = updateMaxAckDelay;
+    this.ignoreOrder = ignoreOrder;
+  }
+
+  public long getSequenceNumber() {
+    return sequenceNumber;
+  }
+
+  /** The number of ack-eliciting packets received before an acknowledgement is sent */
+  public long getPacketTolerance() {
+    return packetTolerance;
+  }
+
+  /** The max ack delay to use, in microseconds */
+  public long getUpdateMaxAckDelay() {
+    return updateMaxAckDelay;
+  }
+
+  /** If packets received out of order should not be acknowledged immediately */
+  public boolean isIgnoreOrder() {
+    return ignoreOrder;
+  }
+
+  @Override
+  public int calculateLength() {
+    return Varint.getLength(FrameType.ACK_FREQUENCY.getLongType())
+        + Varint.getLength(sequenceNumber)
+        + Varint.getLength(packetTolerance)
+        + Varint.getLength(updateMaxAckDelay)
+        + 1;
+  }
+
+  @Override
+  public void write(final ByteBuf bb) {
+    getType().write(bb);
+
+    Varint.write(sequenceNumber, bb);
+    Varint.write(packetTolerance, bb);
+    Varint.write(updateMaxAckDelay, bb);
+    bb.writeByte(ignoreOrder ? 1 : 0);
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    final AckFrequencyFrame that = (AckFrequencyFrame) o;
+    return sequenceNumber == that.sequenceNumber
+        && packetTolerance == that.packetTolerance
+        && updateMaxAckDelay == that.updateMaxAckDelay
+        && ignoreOrder == that.ignoreOrder;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(sequenceNumber, packetTolerance, updateMaxAckDelay, ignoreOrder);
+  }
+
+  @Override
+  public String toString() {
+    return "AckFrequencyFrame{"
+        + "sequenceNumber="
+        + sequenceNumber
+        + ", packetTolerance="
+        + packetTolerance
+        + ", updateMaxAckDelay="
+        + updateMaxAckDelay
+        + ", ignoreOrder="
+        + ignoreOrder
+        + '}';
+  }
+}
@@ -1,5 +1,6 @@
 package com.protocol7.quincy.protocol.frames;
 
+import com.google.common.base.Utf8;
 import com.protocol7.quincy.Varint;
 import io.netty.buffer.ByteBuf;
 import java.nio.charset.StandardCharsets;
@@ -40,6 +41,15 @@ public class ApplicationCloseFrame extends Frame {
     return reasonPhrase;
   }
 
+  @Override
+  public int calculateLength() {
+    final int reasonPhraseLength = Utf8.encodedLength(reasonPhrase);
+    return 1
+        + Varint.getLength(errorCode)
+        + Varint.getLength(reasonPhraseLength)
+        + reasonPhraseLength;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(0x1d);
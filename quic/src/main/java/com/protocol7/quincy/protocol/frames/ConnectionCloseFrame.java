@@ -1,5 +1,6 @@
 package com.protocol7.quincy.protocol.frames;
 
+import com.google.common.base.Utf8;
 import com.protocol7.quincy.Varint;
 import io.netty.buffer.ByteBuf;
 import java.nio.charset.StandardCharsets;
@@ -26,7 +27,7 @@ public class ConnectionCloseFrame extends Frame {
     }
 
     final int errorCode = Varint.readAsInt(bb);
-    final FrameType frameType = FrameType.fromByte(Varint.readAsByte(bb));
+    final FrameType frameType = FrameType.fromLong(Varint.readAsLong(bb));
 
     final int reasonPhraseLength = Varint.readAsInt(bb);
 
@@ -61,12 +62,22 @@ public class ConnectionCloseFrame extends Frame {
     return reasonPhrase;
   }
 
+  @Override
+  public int calculateLength() {
+    final int reasonPhraseLength = Utf8.encodedLength(reasonPhrase);
+    return 1
+        + Varint.getLength(errorCode)
+        + Varint.getLength(frameType.getLongType())
+        + Varint.getLength(reasonPhraseLength)
+        + reasonPhraseLength;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(0x1c);
 
     Varint.write(errorCode, bb);
-    Varint.write(frameType.getType(), bb);
+    Varint.write(frameType.getLongType(), bb);
 
     final byte[] reasonPhraseBytes = reasonPhrase.getBytes(StandardCharsets.UTF_8);
 
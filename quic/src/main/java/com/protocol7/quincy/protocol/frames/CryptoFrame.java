@@ -1,11 +1,16 @@
 package com.protocol7.quincy.protocol.frames;
 
 import com.protocol7.quincy.Varint;
-import com.protocol7.quincy.utils.Hex;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 
 public class CryptoFrame extends Frame {
 
+  /**
+   * Parses the frame at the reader index. The crypto data is a retained slice of the buffer,
+   * released with {@link #release()}.
+   */
   public static CryptoFrame parse(final ByteBuf bb) {
     final byte type = bb.readByte();
     if (type != FrameType.CRYPTO.getType()) {
@@ -14,15 +19,17 @@ public class CryptoFrame extends Frame {
 
     final long offset = Varint.readAsLong(bb);
     final int length = Varint.readAsInt(bb);
-    final byte[] cryptoData = new byte[length];
-    bb.readBytes(cryptoData);
-    return new CryptoFrame(offset, cryptoData);
+    return new CryptoFrame(offset, bb.readRetainedSlice(length));
   }
 
   private final long offset;
-  private final byte[] cryptoData;
+  private final ByteBuf cryptoData;
 
   public CryptoFrame(final long offset, final byte[] cryptoData) {
+    this(offset, Unpooled.wrappedBuffer(cryptoData));
+  }
+
+  public CryptoFrame(final long offset, final ByteBuf cryptoData) {
     super(FrameType.CRYPTO);
     this.offset = offset;
     this.cryptoData = cryptoData;
@@ -32,20 +39,43 @@ public class CryptoFrame extends Frame {
     return offset;
   }
 
+  /** A copy of the crypto data */
   public byte[] getCryptoData() {
+    return ByteBufUtil.getBytes(cryptoData);
+  }
+
+  /** The crypto data, without copying. Only valid until the frame is released. */
+  public ByteBuf content() {
     return cryptoData;
   }
 
+  @Override
+  public void release() {
+    cryptoData.release();
+  }
+
+  @Override
+  public int calculateLength() {
+    final int length = cryptoData.readableBytes();
+    return 1 + Varint.getLength(offset) + Varint.getLength(length) + length;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
     Varint.write(offset, bb);
-    Varint.write(cryptoData.length, bb);
-    bb.writeBytes(cryptoData);
+    Varint.write(cryptoData.readableBytes(), bb);
+    // leaves the data readable, frames might be written again on retransmission
+    bb.writeBytes(cryptoData, cryptoData.readerIndex(), cryptoData.readableBytes());
   }
 
   @Override
   public String toString() {
-    return "CryptoFrame{" + "offset=" + offset + ", cryptoData=" + Hex.hex(cryptoData) + '}';
+    return "CryptoFrame{"
+        + "offset="
+        + offset
+        + ", cryptoData="
+        + ByteBufUtil.hexDump(cryptoData)
+        + '}';
   }
 }
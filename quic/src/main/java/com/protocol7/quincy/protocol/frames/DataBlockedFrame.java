@@ -29,6 +29,11 @@ public class DataBlockedFrame extends Frame {
     return dataLimit;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(dataLimit);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
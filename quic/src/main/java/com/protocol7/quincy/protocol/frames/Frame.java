@@ -1,14 +1,16 @@
 package com.protocol7.quincy.protocol.frames;
 
+import com.protocol7.quincy.Varint;
 import com.protocol7.quincy.Writeable;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 
 public abstract class Frame implements Writeable {
 
   public static Frame parse(final ByteBuf bb) {
-    final byte typeByte = bb.getByte(bb.readerIndex());
-    final FrameType type = FrameType.fromByte(typeByte);
+    // the full type is read as it might be longer than a byte, the frame parses it again
+    final int index = bb.readerIndex();
+    final FrameType type = FrameType.fromLong(Varint.readAsLong(bb));
+    bb.readerIndex(index);
 
     if (type == FrameType.STREAM) {
       return StreamFrame.parse(bb);
@@ -42,6 +44,8 @@ public abstract class Frame implements Writeable {
       return StreamsBlockedFrame.parse(bb);
     } else if (type == FrameType.NEW_TOKEN) {
       return NewToken.parse(bb);
+    } else if (type == FrameType.ACK_FREQUENCY) {
+      return AckFrequencyFrame.parse(bb);
     } else {
       throw new RuntimeException("Unknown frame type " + type);
     }
@@ -57,16 +61,11 @@ public abstract class Frame implements Writeable {
     return type;
   }
 
-  public int calculateLength() {
-    // TODO implement in subclasses, this is slow
-    final ByteBuf bb = Unpooled.buffer();
-    try {
-      write(bb);
-      return bb.writerIndex();
-    } finally {
-      bb.release();
-    }
-  }
+  /** The exact number of bytes written by {@link #write(ByteBuf)}. */
+  public abstract int calculateLength();
 
   public abstract void write(ByteBuf bb);
+
+  /** Releases any buffers retained by the frame when parsed, does nothing for other frames */
+  public void release() {}
 }
@@ -1,5 +1,6 @@
 package com.protocol7.quincy.protocol.frames;
 
+import com.protocol7.quincy.Varint;
 import com.protocol7.quincy.utils.Hex;
 import io.netty.buffer.ByteBuf;
 
@@ -23,7 +24,19 @@ public enum FrameType {
   PATH_CHALLENGE(0x1a),
   PATH_RESPONSE(0x1b),
   CONNECTION_CLOSE(0x1c),
-  APPLICATION_CLOSE(0x1d);
+  APPLICATION_CLOSE(0x1d),
+  ACK_FREQUENCY(0xaf);
+
+  /** The frame type of a variable length integer type, extension types are longer than a byte */
+  public static FrameType fromLong(final long type) {
+    if (type == ACK_FREQUENCY.type) {
+      return ACK_FREQUENCY;
+    } else if (type >= 0 && type < 0x40) {
+      return fromByte((byte) type);
+    } else {
+      throw new RuntimeException("Unknown frame type " + Long.toHexString(type));
+    }
+  }
 
   public static FrameType fromByte(final byte b) {
     if (b == PADDING.type) {
@@ -71,17 +84,23 @@ public enum FrameType {
     }
   }
 
-  private final byte type;
+  private final int type;
 
   FrameType(final int type) {
-    this.type = (byte) type;
+    this.type = type;
   }
 
+  /** The type of single byte frame types */
   public byte getType() {
+    return (byte) type;
+  }
+
+  public long getLongType() {
     return type;
   }
 
+  /** Writes the type as a variable length integer, a single byte for all but extension types */
   public void write(final ByteBuf bb) {
-    bb.writeByte(type);
+    Varint.write(type, bb);
   }
 }
@@ -29,6 +29,11 @@ public class MaxDataFrame extends Frame {
     return maxData;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(maxData);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
@@ -41,6 +41,11 @@ public class MaxStreamDataFrame extends Frame {
     return maxStreamData;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(streamId) + Varint.getLength(maxStreamData);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
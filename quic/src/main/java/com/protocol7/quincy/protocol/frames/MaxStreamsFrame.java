@@ -37,6 +37,11 @@ public class MaxStreamsFrame extends Frame {
     return bidi;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(maxStreams);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     if (bidi) {
@@ -31,6 +31,11 @@ public class NewToken extends Frame {
     return token;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(token.length) + token.length;
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
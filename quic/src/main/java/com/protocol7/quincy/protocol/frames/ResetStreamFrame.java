@@ -54,6 +54,14 @@ public class ResetStreamFrame extends Frame {
     return offset;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1
+        + Varint.getLength(streamId)
+        + Varint.getLength(applicationErrorCode)
+        + Varint.getLength(offset);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
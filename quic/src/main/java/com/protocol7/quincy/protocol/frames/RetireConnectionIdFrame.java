@@ -27,6 +27,11 @@ public class RetireConnectionIdFrame extends Frame {
     return sequenceNumber;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(sequenceNumber);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
@@ -41,6 +41,11 @@ public class StreamDataBlockedFrame extends Frame {
     return streamDataLimit;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(streamId) + Varint.getLength(streamDataLimit);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     bb.writeByte(getType().getType());
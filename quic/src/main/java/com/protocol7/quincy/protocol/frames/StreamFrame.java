@@ -3,10 +3,15 @@ package com.protocol7.quincy.protocol.frames;
 import com.protocol7.quincy.Varint;
 import com.protocol7.quincy.protocol.StreamId;
 import io.netty.buffer.ByteBuf;
-import java.util.Arrays;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 
 public class StreamFrame extends Frame {
 
+  /**
+   * Parses the frame at the reader index. The data is a retained slice of the buffer, released with
+   * {@link #release()}.
+   */
   public static StreamFrame parse(final ByteBuf bb) {
     final byte firstByte = bb.readByte();
 
@@ -29,8 +34,7 @@ public class StreamFrame extends Frame {
       length = bb.readableBytes();
     }
 
-    final byte[] data = new byte[length];
-    bb.readBytes(data);
+    final ByteBuf data = bb.readRetainedSlice(length);
 
     return new StreamFrame(streamId, offset, fin, data);
   }
@@ -38,9 +42,14 @@ public class StreamFrame extends Frame {
   private final long streamId;
   private final long offset;
   private final boolean fin;
-  private final byte[] data;
+  private final ByteBuf data;
 
   public StreamFrame(final long streamId, final long offset, final boolean fin, final byte[] data) {
+    this(streamId, offset, fin, Unpooled.wrappedBuffer(data));
+  }
+
+  public StreamFrame(
+      final long streamId, final long offset, final boolean fin, final ByteBuf data) {
     super(FrameType.STREAM);
     this.streamId = StreamId.validate(streamId);
     this.offset = offset;
@@ -60,10 +69,34 @@ public class StreamFrame extends Frame {
     return fin;
   }
 
+  /** A copy of the data */
   public byte[] getData() {
+    return ByteBufUtil.getBytes(data);
+  }
+
+  /** The data, without copying. Only valid until the frame is released. */
+  public ByteBuf content() {
     return data;
   }
 
+  public int getLength() {
+    return data.readableBytes();
+  }
+
+  @Override
+  public void release() {
+    data.release();
+  }
+
+  @Override
+  public int calculateLength() {
+    int len = 1 + Varint.getLength(streamId);
+    if (offset > 0) {
+      len += Varint.getLength(offset);
+    }
+    return len + Varint.getLength(getLength()) + getLength();
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     byte type = getType().getType();
@@ -82,9 +115,10 @@ public class StreamFrame extends Frame {
       Varint.write(offset, bb);
     }
 
-    Varint.write(data.length, bb);
+    Varint.write(getLength(), bb);
 
-    bb.writeBytes(data);
+    // leaves the data readable, frames might be written again on retransmission
+    bb.writeBytes(data, data.readerIndex(), data.readableBytes());
   }
 
   @Override
@@ -97,7 +131,7 @@ public class StreamFrame extends Frame {
     if (offset != that.offset) return false;
     if (fin != that.fin) return false;
     if (streamId != that.streamId) return false;
-    return Arrays.equals(data, that.data);
+    return data.equals(that.data);
   }
 
   @Override
@@ -105,7 +139,7 @@ public class StreamFrame extends Frame {
     int result = Long.hashCode(streamId);
     result = 31 * result + (int) (offset ^ (offset >>> 32));
     result = 31 * result + (fin ? 1 : 0);
-    result = 31 * result + Arrays.hashCode(data);
+    result = 31 * result + data.hashCode();
     return result;
   }
 
@@ -119,7 +153,7 @@ public class StreamFrame extends Frame {
         + ", fin="
         + fin
         + ", data="
-        + Arrays.toString(data)
+        + ByteBufUtil.hexDump(data)
         + '}';
   }
 }
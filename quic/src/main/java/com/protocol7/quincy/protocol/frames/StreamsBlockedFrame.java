@@ -38,6 +38,11 @@ public class StreamsBlockedFrame extends Frame {
     return bidi;
   }
 
+  @Override
+  public int calculateLength() {
+    return 1 + Varint.getLength(streamsLimit);
+  }
+
   @Override
   public void write(final ByteBuf bb) {
     if (bidi) {
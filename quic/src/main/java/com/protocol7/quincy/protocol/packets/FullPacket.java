@@ -12,4 +12,7 @@ public interface FullPacket extends Packet {
   long getPacketNumber();
 
   Payload getPayload();
+
+  /** The number of bytes the packet is written as */
+  int calculateLength();
 }
@@ -1,6 +1,7 @@
 package com.protocol7.quincy.protocol.packets;
 
 import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.PacketNumber;
 import com.protocol7.quincy.protocol.Version;
 import com.protocol7.quincy.tls.aead.AEADProvider;
 import java.util.Optional;
@@ -11,5 +12,10 @@ public interface HalfParsedPacket<P extends Packet> {
 
   Optional<ConnectionId> getConnectionId();
 
-  P complete(AEADProvider aeadProvider);
+  /** Completes parsing, decoding packet numbers as if no packet has yet been received */
+  default P complete(final AEADProvider aeadProvider) {
+    return complete(aeadProvider, level -> PacketNumber.NONE);
+  }
+
+  P complete(AEADProvider aeadProvider, LargestPacketNumberProvider largestReceived);
 }
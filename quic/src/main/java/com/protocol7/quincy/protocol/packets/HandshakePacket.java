@@ -6,7 +6,6 @@ import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.tls.EncryptionLevel;
 import com.protocol7.quincy.tls.aead.AEAD;
 import com.protocol7.quincy.tls.aead.AEADProvider;
-import com.protocol7.quincy.utils.Bytes;
 import com.protocol7.quincy.utils.Pair;
 import io.netty.buffer.ByteBuf;
 import java.security.GeneralSecurityException;
@@ -67,48 +66,27 @@ public class HandshakePacket extends LongHeaderPacket {
       }
 
       @Override
-      public HandshakePacket complete(final AEADProvider aeadProvider) {
+      public HandshakePacket complete(
+          final AEADProvider aeadProvider, final LargestPacketNumberProvider largestReceived) {
         final int length = Varint.readAsInt(bb);
 
         final AEAD aead = aeadProvider.get(EncryptionLevel.Handshake);
 
         final int pnOffset = bb.readerIndex();
-        final int sampleOffset = pnOffset + 4;
 
-        final byte[] sample = new byte[aead.getSampleLength()];
-
-        bb.getBytes(sampleOffset, sample);
-
-        // get 4 bytes for PN. Might be too long, but we'll handle that below
-        final byte[] pn = new byte[4];
-        bb.getBytes(pnOffset, pn);
-
-        // decrypt the protected header parts
+        // remove the header protection in place
         try {
-          final byte[] decryptedHeader =
-              aead.decryptHeader(sample, Bytes.concat(new byte[] {firstByte}, pn), false);
-
-          final byte decryptedFirstByte = decryptedHeader[0];
-          final int pnLen = (decryptedFirstByte & 0x3) + 1;
+          final int pnLen = aead.decryptHeader(bb, bbOffset, pnOffset, false);
 
-          final byte[] pnBytes = Arrays.copyOfRange(decryptedHeader, 1, 1 + pnLen);
+          final long packetNumber =
+              PacketNumber.decode(
+                  PacketNumber.read(bb, pnLen),
+                  pnLen,
+                  largestReceived.get(EncryptionLevel.Handshake));
 
-          final long packetNumber = PacketNumber.parse(pnBytes);
-
-          // move reader ahead by what the PN length actually was
-          bb.readerIndex(bb.readerIndex() + pnLen);
           final int payloadLength = length - pnLen; // subtract parsed pn length
 
-          final byte[] aad = new byte[bb.readerIndex() - bbOffset];
-          bb.getBytes(bbOffset, aad);
-
-          // restore the AAD with the now removed header protected
-          aad[0] = decryptedFirstByte;
-          for (int i = 0; i < pnBytes.length; i++) {
-            aad[pnOffset - bbOffset + i] = pnBytes[i];
-          }
-
-          final Payload payload = Payload.parse(bb, payloadLength, aead, packetNumber, aad);
+          final Payload payload = Payload.parse(bb, payloadLength, aead, packetNumber, bbOffset);
 
           return new HandshakePacket(destConnId, srcConnId, version, packetNumber, payload);
         } catch (final GeneralSecurityException e) {
@@ -0,0 +1,12 @@
+package com.protocol7.quincy.protocol.packets;
+
+import com.protocol7.quincy.tls.EncryptionLevel;
+
+/**
+ * Provides the largest packet number received in the packet number space of an encryption level,
+ * used for decoding truncated packet numbers.
+ */
+public interface LargestPacketNumberProvider {
+
+  long get(EncryptionLevel level);
+}
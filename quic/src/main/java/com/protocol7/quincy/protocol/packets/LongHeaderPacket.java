@@ -8,8 +8,8 @@ import com.protocol7.quincy.protocol.frames.ConnectionCloseFrame;
 import com.protocol7.quincy.protocol.frames.CryptoFrame;
 import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
 import com.protocol7.quincy.tls.aead.AEAD;
-import com.protocol7.quincy.utils.Bytes;
 import io.netty.buffer.ByteBuf;
 import java.security.GeneralSecurityException;
 import java.util.Objects;
@@ -24,6 +24,7 @@ public abstract class LongHeaderPacket implements FullPacket {
       if (frame instanceof CryptoFrame
           || frame instanceof AckFrame
           || frame instanceof PaddingFrame
+          || frame instanceof PingFrame
           || frame instanceof ConnectionCloseFrame
           || frame instanceof ApplicationCloseFrame) {
         // ok
@@ -85,6 +86,33 @@ public abstract class LongHeaderPacket implements FullPacket {
     return payload;
   }
 
+  @Override
+  public int calculateLength() {
+    final int pnLen = PacketNumber.getLength(packetNumber);
+    final int payloadLength = paddedPayload(pnLen).calculateLength();
+
+    // type, version and connection ID lengths
+    return 1
+        + 4
+        + 1
+        + destinationConnectionId.map(ConnectionId::getLength).orElse(0)
+        + sourceConnectionId.map(ConnectionId::getLength).orElse(0)
+        + tokenLength()
+        + Varint.getLength(payloadLength + pnLen)
+        + pnLen
+        + payloadLength;
+  }
+
+  /** The number of bytes written for the token, for packet types having a token */
+  protected int tokenLength() {
+    return 0;
+  }
+
+  private Payload paddedPayload(final int pnLen) {
+    // header protection samples from 4 bytes after the start of the packet number
+    return payload.pad(PacketNumber.MAX_LENGTH - pnLen);
+  }
+
   protected void writeInternal(
       final ByteBuf bb, final AEAD aead, final Consumer<ByteBuf> tokenWriter) {
     final int bbOffset = bb.writerIndex();
@@ -102,29 +130,18 @@ public abstract class LongHeaderPacket implements FullPacket {
 
     tokenWriter.accept(bb);
 
-    final byte[] pn = PacketNumber.write(packetNumber, PacketNumber.getLength(packetNumber));
+    final Payload padded = paddedPayload(pnLen);
 
-    Varint.write(payload.calculateLength() + pn.length, bb);
+    Varint.write(padded.calculateLength() + pnLen, bb);
 
     final int pnOffset = bb.writerIndex();
-    final int sampleOffset = pnOffset + 4;
-
-    bb.writeBytes(pn);
-
-    final byte[] aad = new byte[bb.writerIndex() - bbOffset];
-    bb.getBytes(bbOffset, aad);
 
-    payload.write(bb, aead, packetNumber, aad);
+    PacketNumber.write(packetNumber, pnLen, bb);
 
-    final byte[] sample = new byte[aead.getSampleLength()];
-    bb.getBytes(sampleOffset, sample);
+    padded.write(bb, aead, packetNumber, bbOffset);
 
-    final byte firstBýte = bb.getByte(bbOffset);
-    final byte[] header = Bytes.concat(new byte[] {firstBýte}, pn);
     try {
-      final byte[] encryptedHeader = aead.encryptHeader(sample, header, false);
-      bb.setByte(bbOffset, encryptedHeader[0]);
-      bb.setBytes(pnOffset, encryptedHeader, 1, encryptedHeader.length - 1);
+      aead.encryptHeader(bb, bbOffset, pnOffset, pnLen, false);
     } catch (final GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
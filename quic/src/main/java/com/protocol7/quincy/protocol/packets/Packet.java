@@ -19,7 +19,7 @@ public interface Packet {
     return (PACKET_TYPE_MASK & b) == PACKET_TYPE_MASK;
   }
 
-  static HalfParsedPacket parse(final ByteBuf bb, final int connidLength) {
+  static HalfParsedPacket<?> parse(final ByteBuf bb, final int connidLength) {
     bb.markReaderIndex();
     final int firstByte = bb.readByte() & 0xFF;
 
@@ -43,7 +43,8 @@ public class RetryPacket implements Packet {
       }
 
       @Override
-      public RetryPacket complete(final AEADProvider aeadProvider) {
+      public RetryPacket complete(
+          final AEADProvider aeadProvider, final LargestPacketNumberProvider largestReceived) {
         return new RetryPacket(version, destConnId, srcConnId, orgConnId, retryToken);
       }
     };
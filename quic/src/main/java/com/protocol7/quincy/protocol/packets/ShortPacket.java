@@ -5,10 +5,9 @@ import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.tls.EncryptionLevel;
 import com.protocol7.quincy.tls.aead.AEAD;
 import com.protocol7.quincy.tls.aead.AEADProvider;
-import com.protocol7.quincy.utils.Bytes;
 import io.netty.buffer.ByteBuf;
 import java.security.GeneralSecurityException;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 public class ShortPacket implements FullPacket {
@@ -49,47 +48,25 @@ public class ShortPacket implements FullPacket {
       }
 
       @Override
-      public ShortPacket complete(final AEADProvider aeadProvider) {
+      public ShortPacket complete(
+          final AEADProvider aeadProvider, final LargestPacketNumberProvider largestReceived) {
 
         final AEAD aead = aeadProvider.get(EncryptionLevel.OneRtt);
 
         final int pnOffset = bb.readerIndex();
-        final int sampleOffset = pnOffset + 4;
 
-        final byte[] sample = new byte[aead.getSampleLength()];
-        bb.getBytes(sampleOffset, sample);
-
-        // get 4 bytes for PN. Might be too long, but we'll handle that below
-        final byte[] pn = new byte[4];
-        bb.getBytes(pnOffset, pn);
-
-        // decrypt the protected header parts
+        // remove the header protection in place
         try {
-          final byte[] decryptedHeader =
-              aead.decryptHeader(sample, Bytes.concat(new byte[] {firstByte}, pn), true);
-
-          final byte decryptedFirstByte = decryptedHeader[0];
-          final int pnLen = (decryptedFirstByte & 0x3) + 1;
-
-          final byte[] pnBytes = Arrays.copyOfRange(decryptedHeader, 1, 1 + pnLen);
-
-          final long packetNumber = PacketNumber.parse(pnBytes);
+          final int pnLen = aead.decryptHeader(bb, bbOffset, pnOffset, true);
 
-          // move reader ahead by what the PN length actually was
-          bb.readerIndex(bb.readerIndex() + pnLen);
+          final long packetNumber =
+              PacketNumber.decode(
+                  PacketNumber.read(bb, pnLen), pnLen, largestReceived.get(EncryptionLevel.OneRtt));
 
-          final byte[] aad = new byte[bb.readerIndex() - bbOffset];
-          bb.getBytes(bbOffset, aad);
+          final Payload payload =
+              Payload.parse(bb, bb.readableBytes(), aead, packetNumber, bbOffset);
 
-          // restore the AAD with the now removed header protected
-          aad[0] = decryptedFirstByte;
-          for (int i = 0; i < pnBytes.length; i++) {
-            aad[pnOffset - bbOffset + i] = pnBytes[i];
-          }
-
-          final Payload payload = Payload.parse(bb, bb.readableBytes(), aead, packetNumber, aad);
-
-          return new ShortPacket(keyPhase, connId, packetNumber, payload);
+          return new ShortPacket(keyPhase, connId, packetNumber, pnLen, payload);
         } catch (final GeneralSecurityException e) {
           throw new RuntimeException(e);
         }
@@ -105,9 +82,36 @@ public class ShortPacket implements FullPacket {
     return new ShortPacket(keyPhase, connectionId, packetNumber, new Payload(frames));
   }
 
+  public static ShortPacket create(
+      final boolean keyPhase,
+      final Optional<ConnectionId> connectionId,
+      final long packetNumber,
+      final List<Frame> frames) {
+    return new ShortPacket(keyPhase, connectionId, packetNumber, new Payload(frames));
+  }
+
+  /**
+   * Creates a packet with the packet number encoded using as few bytes as possible, given the
+   * largest packet number acknowledged by the peer.
+   */
+  public static ShortPacket create(
+      final boolean keyPhase,
+      final Optional<ConnectionId> connectionId,
+      final long packetNumber,
+      final long largestAcked,
+      final List<Frame> frames) {
+    return new ShortPacket(
+        keyPhase,
+        connectionId,
+        packetNumber,
+        PacketNumber.getLength(packetNumber, largestAcked),
+        new Payload(frames));
+  }
+
   private final boolean keyPhase;
   private final Optional<ConnectionId> connectionId;
   private final long packetNumber;
+  private final int packetNumberLength;
   private final Payload payload;
 
   public ShortPacket(
@@ -115,9 +119,19 @@ public class ShortPacket implements FullPacket {
       final Optional<ConnectionId> connectionId,
       final long packetNumber,
       final Payload payload) {
+    this(keyPhase, connectionId, packetNumber, PacketNumber.getLength(packetNumber), payload);
+  }
+
+  private ShortPacket(
+      final boolean keyPhase,
+      final Optional<ConnectionId> connectionId,
+      final long packetNumber,
+      final int packetNumberLength,
+      final Payload payload) {
     this.keyPhase = keyPhase;
     this.connectionId = connectionId;
     this.packetNumber = PacketNumber.validate(packetNumber);
+    this.packetNumberLength = packetNumberLength;
     this.payload = payload;
   }
 
@@ -128,7 +142,21 @@ public class ShortPacket implements FullPacket {
 
   @Override
   public FullPacket addFrame(final Frame frame) {
-    return new ShortPacket(keyPhase, connectionId, packetNumber, payload.addFrame(frame));
+    return new ShortPacket(
+        keyPhase, connectionId, packetNumber, packetNumberLength, payload.addFrame(frame));
+  }
+
+  @Override
+  public int calculateLength() {
+    return 1
+        + connectionId.map(ConnectionId::getLength).orElse(0)
+        + packetNumberLength
+        + paddedPayload().calculateLength();
+  }
+
+  private Payload paddedPayload() {
+    // header protection samples from 4 bytes after the start of the packet number
+    return payload.pad(PacketNumber.MAX_LENGTH - packetNumberLength);
   }
 
   @Override
@@ -143,7 +171,7 @@ public class ShortPacket implements FullPacket {
     // TODO spin bit
     // TODO reserved bits
 
-    final int pnLen = PacketNumber.getLength(packetNumber);
+    final int pnLen = packetNumberLength;
 
     b = (byte) (b | (pnLen - 1)); // pn length
 
@@ -152,25 +180,13 @@ public class ShortPacket implements FullPacket {
     connectionId.get().write(bb);
 
     final int pnOffset = bb.writerIndex();
-    final int sampleOffset = pnOffset + 4;
-
-    final byte[] pn = PacketNumber.write(packetNumber, pnLen);
-    bb.writeBytes(pn);
-
-    final byte[] aad = new byte[bb.writerIndex() - bbOffset];
-    bb.getBytes(bbOffset, aad);
 
-    payload.write(bb, aead, packetNumber, aad);
+    PacketNumber.write(packetNumber, pnLen, bb);
 
-    final byte[] sample = new byte[aead.getSampleLength()];
-    bb.getBytes(sampleOffset, sample);
+    paddedPayload().write(bb, aead, packetNumber, bbOffset);
 
-    final byte firstBýte = bb.getByte(bbOffset);
-    final byte[] header = Bytes.concat(new byte[] {firstBýte}, pn);
     try {
-      final byte[] encryptedHeader = aead.encryptHeader(sample, header, true);
-      bb.setByte(bbOffset, encryptedHeader[0]);
-      bb.setBytes(pnOffset, encryptedHeader, 1, encryptedHeader.length - 1);
+      aead.encryptHeader(bb, bbOffset, pnOffset, pnLen, true);
     } catch (final GeneralSecurityException e) {
       throw new RuntimeException(e);
     }
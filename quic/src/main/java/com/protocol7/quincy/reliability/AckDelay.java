@@ -19,6 +19,11 @@ public class AckDelay {
     return Math.max(unit.toMicros(delay) / ackDelayMultiplier, 0);
   }
 
+  /** Decodes an ack delay from an ACK frame into nanoseconds */
+  public long toNanos(final long ackDelay) {
+    return TimeUnit.MICROSECONDS.toNanos(ackDelay * ackDelayMultiplier);
+  }
+
   public long time() {
     return ticker.nanoTime();
   }
@@ -0,0 +1,85 @@
+package com.protocol7.quincy.reliability;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.protocol.frames.AckFrequencyFrame;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when received application data packets are acknowledged, as per RFC 9000 section 13.2. An
+ * ACK frame is sent immediately once a number of ack-eliciting packets have been received or a
+ * packet arrives out of order, and otherwise within the max ack delay. The peer can change these
+ * with ACK_FREQUENCY frames, as per draft-ietf-quic-ack-frequency-01.
+ */
+public class AckFrequency {
+
+  /** Ack-eliciting packets received before acknowledging immediately, every other packet */
+  public static final int DEFAULT_PACKET_TOLERANCE = 2;
+
+  /**
+   * The smallest max ack delay accepted in ACK_FREQUENCY frames, in microseconds. Advertised in the
+   * min_ack_delay transport parameter.
+   */
+  public static final int MIN_ACK_DELAY = 1000;
+
+  private long packetTolerance = DEFAULT_PACKET_TOLERANCE;
+  private long maxAckDelay;
+  private boolean ignoreOrder = false;
+  private long sequenceNumber = -1;
+
+  // ack-eliciting packets received since an ACK frame was last sent
+  private long unacknowledged = 0;
+
+  public AckFrequency(final long maxAckDelay, final TimeUnit unit) {
+    checkArgument(maxAckDelay >= 0);
+    requireNonNull(unit);
+
+    this.maxAckDelay = unit.toNanos(maxAckDelay);
+  }
+
+  /**
+   * Called for each received ack-eliciting packet.
+   *
+   * @return true if an ACK frame should be sent immediately, else it can be delayed up to the max
+   *     ack delay
+   */
+  public boolean onAckElicitingPacket(final boolean outOfOrder) {
+    unacknowledged++;
+    return unacknowledged >= packetTolerance || (outOfOrder && !ignoreOrder);
+  }
+
+  public void onAckSent() {
+    unacknowledged = 0;
+  }
+
+  /** The max ack delay in nanoseconds */
+  public long getMaxAckDelay() {
+    return maxAckDelay;
+  }
+
+  /** Applies an ACK_FREQUENCY frame from the peer, unless a later one has already been applied */
+  public void update(final AckFrequencyFrame frame) {
+    if (frame.getSequenceNumber() <= sequenceNumber) {
+      return;
+    }
+
+    sequenceNumber = frame.getSequenceNumber();
+    packetTolerance = frame.getPacketTolerance();
+    maxAckDelay =
+        TimeUnit.MICROSECONDS.toNanos(Math.max(frame.getUpdateMaxAckDelay(), MIN_ACK_DELAY));
+    ignoreOrder = frame.isIgnoreOrder();
+  }
+
+  @Override
+  public String toString() {
+    return "AckFrequency{"
+        + "packetTolerance="
+        + packetTolerance
+        + ", maxAckDelay="
+        + maxAckDelay
+        + ", ignoreOrder="
+        + ignoreOrder
+        + '}';
+  }
+}
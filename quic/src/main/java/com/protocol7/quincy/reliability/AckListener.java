@@ -0,0 +1,10 @@
+package com.protocol7.quincy.reliability;
+
+import com.protocol7.quincy.protocol.frames.Frame;
+import java.util.List;
+
+/** Notified of the frames carried by a sent packet once the packet is acknowledged by the peer */
+public interface AckListener {
+
+  void onAck(long packetNumber, List<Frame> frames);
+}
@@ -0,0 +1,105 @@
+package com.protocol7.quincy.reliability;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.utils.Ticker;
+import java.util.Optional;
+
+/**
+ * Estimates the delivery rate of a connection, as per draft-cheng-iccrg-delivery-rate-estimation.
+ * The state of the connection is recorded with each packet in flight as it is sent, and compared to
+ * the state when the packet is acknowledged. Of the packets acknowledged by an ACK frame, the most
+ * recently sent one gives the sample. Shared by all packet number spaces of the connection.
+ */
+public class DeliveryRateSampler {
+
+  private final Ticker ticker;
+
+  // bytes delivered on the connection, the time of the last delivery, and the send time of the
+  // most recently sent packet acknowledged
+  private long delivered = 0;
+  private long deliveredTime = 0;
+  private long firstSentTime = 0;
+
+  // the sample built from the packets acknowledged by the current ACK frame
+  private boolean hasSample = false;
+  private long priorDelivered = 0;
+  private long sendElapsed = 0;
+  private long ackElapsed = 0;
+  private long sampleSentTime = 0;
+  private int acked = 0;
+
+  public DeliveryRateSampler(final Ticker ticker) {
+    this.ticker = requireNonNull(ticker);
+  }
+
+  /**
+   * Called before a packet in flight is sent. After an idle period, with no bytes in flight, the
+   * intervals start over from the send time.
+   */
+  public void onPacketSent(final long sentTime, final boolean idle) {
+    if (idle) {
+      firstSentTime = sentTime;
+      deliveredTime = sentTime;
+    }
+  }
+
+  /** Bytes delivered on the connection, recorded with each sent packet */
+  public long getDelivered() {
+    return delivered;
+  }
+
+  /** The time of the last delivery, recorded with each sent packet */
+  public long getDeliveredTime() {
+    return deliveredTime;
+  }
+
+  /** The send time of the last acknowledged packet, recorded with each sent packet */
+  public long getFirstSentTime() {
+    return firstSentTime;
+  }
+
+  /** Called for each acknowledged packet in flight, with the state recorded when it was sent */
+  public void onPacketAcked(
+      final long sentTime,
+      final int size,
+      final long packetDelivered,
+      final long packetDeliveredTime,
+      final long packetFirstSentTime) {
+    delivered += size;
+    deliveredTime = ticker.nanoTime();
+    acked += size;
+
+    // sample the most recently sent packet
+    if (!hasSample || sentTime >= sampleSentTime) {
+      hasSample = true;
+      priorDelivered = packetDelivered;
+      sendElapsed = sentTime - packetFirstSentTime;
+      ackElapsed = deliveredTime - packetDeliveredTime;
+      sampleSentTime = sentTime;
+      firstSentTime = sentTime;
+    }
+  }
+
+  /**
+   * Takes the sample of the packets acknowledged since the last sample, if any. The interval is the
+   * longer of the send and ack intervals, so that compressed acks do not overestimate the rate.
+   */
+  public Optional<RateSample> sample() {
+    if (!hasSample) {
+      return Optional.empty();
+    }
+
+    final RateSample sample =
+        new RateSample(
+            delivered - priorDelivered,
+            Math.max(sendElapsed, ackElapsed),
+            priorDelivered,
+            delivered,
+            deliveredTime - sampleSentTime,
+            acked);
+    hasSample = false;
+    acked = 0;
+    return Optional.of(sample);
+  }
+}
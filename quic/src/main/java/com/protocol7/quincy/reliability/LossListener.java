@@ -0,0 +1,13 @@
+package com.protocol7.quincy.reliability;
+
+import com.protocol7.quincy.protocol.frames.Frame;
+import java.util.List;
+
+/**
+ * Notified of the frames carried by a sent packet once the packet is declared lost. The frames are
+ * handed over to the listener, to be retransmitted or released.
+ */
+public interface LossListener {
+
+  void onLoss(long packetNumber, List<Frame> frames);
+}
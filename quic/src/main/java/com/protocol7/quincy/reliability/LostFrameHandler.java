@@ -0,0 +1,17 @@
+package com.protocol7.quincy.reliability;
+
+import com.protocol7.quincy.protocol.frames.Frame;
+import java.util.Optional;
+
+/** Decides what to retransmit in place of a frame of a lost packet */
+@FunctionalInterface
+public interface LostFrameHandler {
+
+  /**
+   * Takes over the lost frame.
+   *
+   * @return the frame to retransmit, possibly refreshed to current values, or empty if no longer
+   *     needed
+   */
+  Optional<Frame> onLost(Frame frame);
+}
@@ -2,7 +2,6 @@ package com.protocol7.quincy.reliability;
 
 import static com.protocol7.quincy.protocol.packets.Packet.getEncryptionLevel;
 import static java.util.Objects.requireNonNull;
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -10,70 +9,197 @@ import com.protocol7.quincy.FrameSender;
 import com.protocol7.quincy.InboundHandler;
 import com.protocol7.quincy.OutboundHandler;
 import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.connection.ConnectionTimer;
+import com.protocol7.quincy.connection.State;
+import com.protocol7.quincy.protocol.PacketNumber;
 import com.protocol7.quincy.protocol.frames.AckBlock;
 import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.AckFrequencyFrame;
+import com.protocol7.quincy.protocol.frames.CryptoFrame;
 import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
 import com.protocol7.quincy.protocol.packets.*;
-import com.protocol7.quincy.reliability.AckQueue.Entry;
 import com.protocol7.quincy.tls.EncryptionLevel;
-import com.protocol7.quincy.utils.Pair;
 import com.protocol7.quincy.utils.Ticker;
-import io.netty.util.Timeout;
-import io.netty.util.Timer;
-import io.netty.util.TimerTask;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Tracks sent and received packets per packet number space. Handles acks, and detects lost packets
+ * and sends probes as per RFC 9002.
+ */
 public class PacketBufferManager implements InboundHandler, OutboundHandler {
 
-  private static final long RESEND_DELAY = 10;
+  private static final long NO_TIME = Long.MAX_VALUE;
+
+  // limits the backoff of the probe timeout
+  private static final int MAX_PTO_BACKOFF = 16;
 
   private final Logger log = LoggerFactory.getLogger(PacketBufferManager.class);
 
-  private final PacketBuffer initialBuffer;
-  private final PacketBuffer handshakeBuffer;
-  private final PacketBuffer buffer;
-  private final AckQueue ackQueue = new AckQueue();
-  private final AtomicReference<Long> largestAcked = new AtomicReference<>(0L);
+  private final SentPacketTracker initialBuffer;
+  private final SentPacketTracker handshakeBuffer;
+  private final SentPacketTracker buffer;
+  // per packet number space, indexed by encryption level
+  private final ReceivedPacketTracker[] received = newReceivedPacketTrackers();
+  private final long[] largestAcked = newPacketNumbers();
+  private final long[] lossTimes = newTimes();
+  private final long[] lastAckElicitingTimes = newTimes();
+  private int ptoCount = 0;
   private final AckDelay ackDelay;
+  private final AckFrequency ackFrequency;
+  private final RttEstimator rttEstimator;
+  private final CongestionController congestionController;
+  private final RetransmissionQueue retransmissions;
+  private final DeliveryRateSampler sampler;
   private final FrameSender frameSender;
+  private final AckListener ackListener;
+  private final Ticker ticker;
+  private final ConnectionTimer.Deadline lossDetectionDeadline;
+  private final ConnectionTimer.Deadline ackDeadline;
 
   public PacketBufferManager(
       final AckDelay ackDelay,
+      final AckFrequency ackFrequency,
+      final RttEstimator rttEstimator,
+      final CongestionController congestionController,
+      final RetransmissionQueue retransmissions,
       final FrameSender frameSender,
-      final Timer timer,
+      final AckListener ackListener,
+      final ConnectionTimer timer,
       final Ticker ticker) {
     this.ackDelay = requireNonNull(ackDelay);
+    this.ackFrequency = requireNonNull(ackFrequency);
+    this.rttEstimator = requireNonNull(rttEstimator);
+    this.congestionController = requireNonNull(congestionController);
+    this.retransmissions = requireNonNull(retransmissions);
     this.frameSender = frameSender;
+    this.ackListener = requireNonNull(ackListener);
+    this.ticker = requireNonNull(ticker);
+
+    sampler = new DeliveryRateSampler(ticker);
+    initialBuffer = new SentPacketTracker(congestionController, sampler, ticker);
+    handshakeBuffer = new SentPacketTracker(congestionController, sampler, ticker);
+    buffer = new SentPacketTracker(congestionController, sampler, ticker);
+
+    // only armed while there are ack-eliciting packets in flight, cancelled with the connection
+    // timer
+    this.lossDetectionDeadline = timer.deadline(this::onLossDetectionTimeout);
+    // delayed acks of application data, initial and handshake packets are acked with the next
+    // packet sent at their level
+    this.ackDeadline = timer.deadline(() -> flushAcks(EncryptionLevel.OneRtt, frameSender));
+  }
+
+  private void onLossDetectionTimeout() {
+    final Optional<EncryptionLevel> lossLevel = earliest(lossTimes);
+    if (lossLevel.isPresent()) {
+      // time threshold loss detection
+      detectLostPackets(lossLevel.get());
+    } else {
+      final Optional<EncryptionLevel> probeLevel = earliestProbeTimeout();
+      if (probeLevel.isPresent()) {
+        ptoCount++;
+        sendProbe(probeLevel.get());
+      }
+    }
+
+    setLossDetectionTimer();
+  }
 
-    initialBuffer = new PacketBuffer(ticker);
-    handshakeBuffer = new PacketBuffer(ticker);
-    buffer = new PacketBuffer(ticker);
+  private void sendProbe(final EncryptionLevel level) {
+    log.debug("Probe timeout at level {}, count {}", level, ptoCount);
+
+    // the ack of the probe declares earlier packets lost
+    if (level == EncryptionLevel.OneRtt) {
+      frameSender.probe(level, PingFrame.INSTANCE);
+      return;
+    }
 
-    final TimerTask task =
-        new TimerTask() {
-          @Override
-          public void run(final Timeout timeout) {
-            resend();
-            timeout.timer().newTimeout(this, RESEND_DELAY, MILLISECONDS);
-          }
-        };
+    // the handshake can't progress without the crypto data of the level, so it is sent again
+    // rather than waiting for the ack of a ping. Without any, a ping still elicits an ack
+    final List<Frame> probe = new ArrayList<>();
+    for (final Frame frame : getBuffer(level).getUnackedFrames()) {
+      if (frame instanceof CryptoFrame) {
+        final CryptoFrame cf = (CryptoFrame) frame;
+        // the sent frame is released once acked, the probe holds its own reference to the data
+        probe.add(new CryptoFrame(cf.getOffset(), cf.content().retainedDuplicate()));
+      }
+    }
+    if (probe.isEmpty()) {
+      probe.add(PingFrame.INSTANCE);
+    }
+    frameSender.probe(level, probe.toArray(new Frame[0]));
+  }
 
-    timer.newTimeout(task, RESEND_DELAY, MILLISECONDS);
+  private void setLossDetectionTimer() {
+    final Optional<EncryptionLevel> lossLevel = earliest(lossTimes);
+    final long time;
+    if (lossLevel.isPresent()) {
+      time = lossTimes[lossLevel.get().ordinal()];
+    } else {
+      final Optional<EncryptionLevel> probeLevel = earliestProbeTimeout();
+      if (!probeLevel.isPresent()) {
+        lossDetectionDeadline.cancel();
+        return;
+      }
+      time = probeTime(probeLevel.get());
+    }
 
-    // TODO cancel timeout when connection closes
+    lossDetectionDeadline.set(Math.max(0, time - ticker.nanoTime()), NANOSECONDS);
   }
 
-  public void resend() {
-    final Collection<Frame> toResend = buffer.drainSince(1000, MILLISECONDS);
-    toResend.stream().forEach(frameSender::send);
+  private Optional<EncryptionLevel> earliestProbeTimeout() {
+    Optional<EncryptionLevel> earliest = Optional.empty();
+    for (final EncryptionLevel level : EncryptionLevel.values()) {
+      if (getBuffer(level).hasAckEliciting()
+          && (!earliest.isPresent() || probeTime(level) < probeTime(earliest.get()))) {
+        earliest = Optional.of(level);
+      }
+    }
+    return earliest;
+  }
+
+  private long probeTime(final EncryptionLevel level) {
+    final long timeout =
+        rttEstimator.probeTimeout(level == EncryptionLevel.OneRtt)
+            << Math.min(ptoCount, MAX_PTO_BACKOFF);
+    return lastAckElicitingTimes[level.ordinal()] + timeout;
+  }
+
+  private static Optional<EncryptionLevel> earliest(final long[] times) {
+    Optional<EncryptionLevel> earliest = Optional.empty();
+    for (final EncryptionLevel level : EncryptionLevel.values()) {
+      final long time = times[level.ordinal()];
+      if (time != NO_TIME && (!earliest.isPresent() || time < times[earliest.get().ordinal()])) {
+        earliest = Optional.of(level);
+      }
+    }
+    return earliest;
+  }
+
+  private void detectLostPackets(final EncryptionLevel level) {
+    final long largest = largestAcked[level.ordinal()];
+    if (largest == PacketNumber.NONE) {
+      return;
+    }
+
+    final Optional<Long> lossTime =
+        getBuffer(level)
+            .removeLost(
+                largest,
+                rttEstimator.lossDelay(),
+                (pn, frames) -> {
+                  log.debug("Lost packet {} at level {}", pn, level);
+                  retransmissions.onLoss(level, frames);
+                });
+    lossTimes[level.ordinal()] = lossTime.orElse(NO_TIME);
+
+    retransmissions.flush();
   }
 
   @Override
@@ -82,32 +208,33 @@ public class PacketBufferManager implements InboundHandler, OutboundHandler {
     requireNonNull(ctx);
 
     if (packet instanceof FullPacket) {
-      FullPacket fp = (FullPacket) packet;
-      buffer(fp);
-
-      final Pair<List<AckBlock>, Long> drained = drainAcks(getEncryptionLevel(fp));
-      final List<AckBlock> ackBlocks = drained.getFirst();
-      if (!ackBlocks.isEmpty()) {
-        // add to packet
-        final long delay = ackDelay.calculate(drained.getSecond(), NANOSECONDS);
-        final AckFrame ackFrame = new AckFrame(delay, ackBlocks);
-        fp = fp.addFrame(ackFrame);
-      }
+      buffer((FullPacket) packet);
+    }
 
-      ctx.next(fp);
-    } else {
-      ctx.next(packet);
+    ctx.next(packet);
+  }
+
+  /**
+   * Creates an ACK frame for the received packets of the encryption level. Called by the connection
+   * when creating a packet so that acks are sent with any outgoing packet, until the peer has
+   * acknowledged a packet carrying them.
+   */
+  public Optional<AckFrame> ackFrame(final EncryptionLevel level) {
+    final Optional<AckFrame> ackFrame = getReceived(level).ackFrame(ackDelay);
+    if (ackFrame.isPresent() && level == EncryptionLevel.OneRtt) {
+      ackFrequency.onAckSent();
+      ackDeadline.cancel();
     }
+    return ackFrame;
   }
 
   private void buffer(final FullPacket packet) {
     final EncryptionLevel level = getEncryptionLevel(packet);
-    if (level == EncryptionLevel.Initial) {
-      initialBuffer.put(packet);
-    } else if (level == EncryptionLevel.Handshake) {
-      handshakeBuffer.put(packet);
-    } else {
-      buffer.put(packet);
+    getBuffer(level).put(packet);
+
+    if (SentPacketTracker.isAckEliciting(packet.getPayload().getFrames())) {
+      lastAckElicitingTimes[level.ordinal()] = ticker.nanoTime();
+      setLossDetectionTimer();
     }
   }
 
@@ -119,35 +246,62 @@ public class PacketBufferManager implements InboundHandler, OutboundHandler {
     if (packet instanceof FullPacket) {
       if (packet instanceof HandshakePacket) {
         // implicitly ack all initial packets
-        initialBuffer.clear();
+        clear(EncryptionLevel.Initial);
       } else if (packet instanceof ShortPacket) {
         // implicitly ack all handshake packets
-        handshakeBuffer.clear();
+        clear(EncryptionLevel.Handshake);
       }
 
       final FullPacket fp = (FullPacket) packet;
-      ackQueue.add(fp, ackDelay.time());
+      final EncryptionLevel level = getEncryptionLevel(packet);
+      final long largestReceived = getReceived(level).getLargestReceived();
+      if (!getReceived(level).add(fp.getPacketNumber(), ackDelay.time())) {
+        log.debug("Dropping duplicate packet {}", fp.getPacketNumber());
+        return;
+      }
       log.debug("Acked packet {}", fp.getPacketNumber());
 
       handleAcks(packet);
+      handleAckFrequency(fp);
+
+      // decided before the rest of the pipeline runs, as it might send the acks
+      final boolean ackEliciting =
+          level == EncryptionLevel.OneRtt
+              && SentPacketTracker.isAckEliciting(fp.getPayload().getFrames());
+      final boolean immediate =
+          ackEliciting
+              && ackFrequency.onAckElicitingPacket(
+                  isOutOfOrder(fp.getPacketNumber(), largestReceived));
+
+      // let the rest of the pipeline run first, so that the ack can be sent together with any
+      // frames queued in response to this packet
+      ctx.next(packet);
 
-      if (shouldFlush(packet)) {
-        log.debug("Directly acking packet");
-        final EncryptionLevel level = getEncryptionLevel(packet);
-        flushAcks(level, ctx);
+      // the packet might have closed the connection
+      if (ackEliciting && ctx.getState() != State.Closed && getReceived(level).isAckPending()) {
+        if (immediate) {
+          log.debug("Directly acking packet");
+          flushAcks(level, ctx);
+        } else if (!ackDeadline.isSet()) {
+          ackDeadline.set(ackFrequency.getMaxAckDelay(), NANOSECONDS);
+        }
       }
+    } else {
+      ctx.next(packet);
     }
+  }
 
-    ctx.next(packet);
+  // a gap below the packet, or the packet fills an earlier gap
+  private static boolean isOutOfOrder(final long packetNumber, final long largestReceived) {
+    return largestReceived != PacketNumber.NONE
+        && (packetNumber < largestReceived || packetNumber > largestReceived + 1);
   }
 
-  private boolean shouldFlush(final Packet packet) {
-    if (packet instanceof InitialPacket || packet instanceof HandshakePacket) {
-      return false;
-    } else if (packet instanceof FullPacket && acksOnly((FullPacket) packet)) {
-      return false;
-    } else {
-      return true;
+  private void handleAckFrequency(final FullPacket packet) {
+    for (final Frame frame : packet.getPayload().getFrames()) {
+      if (frame instanceof AckFrequencyFrame) {
+        ackFrequency.update((AckFrequencyFrame) frame);
+      }
     }
   }
 
@@ -165,94 +319,143 @@ public class PacketBufferManager implements InboundHandler, OutboundHandler {
   }
 
   private void handleAcks(final AckFrame frame, final EncryptionLevel level) {
-    frame.getBlocks().forEach(b -> handleAcks(b, level));
-  }
+    final SentPacketTracker tracker = getBuffer(level);
+    final long largest = frame.getBlocks().get(0).getLargest();
+    final boolean largestNewlyAcked = tracker.contains(largest);
+    final long largestSentTime = largestNewlyAcked ? tracker.getSentTime(largest) : 0;
+    final int unacked = tracker.size();
+
+    boolean ackElicitingAcked = false;
+    for (final AckBlock block : frame.getBlocks()) {
+      ackElicitingAcked |= handleAcks(block, level);
+    }
 
-  private void handleAcks(final AckBlock block, final EncryptionLevel level) {
-    // TODO optimize
-    final long smallest = block.getSmallest();
-    final long largest = block.getLargest();
-    for (long pn = smallest; pn <= largest; pn++) {
-      if (ack(pn, level)) {
-        log.debug("Acked packet {} at level {}", pn, level);
-        largestAcked.getAndAccumulate(pn, Math::max);
-      }
+    if (tracker.size() == unacked) {
+      // nothing newly acked
+      return;
+    }
+
+    if (largestNewlyAcked && ackElicitingAcked) {
+      // the ack delay of initial packets is ignored, as the peer has not yet sent its max ack delay
+      final long delay =
+          level == EncryptionLevel.Initial ? 0 : ackDelay.toNanos(frame.getAckDelay());
+      rttEstimator.update(
+          ticker.nanoTime() - largestSentTime, delay, level == EncryptionLevel.OneRtt);
     }
+
+    detectLostPackets(level);
+    // after the acked and lost packets of the frame have been reported
+    sampler.sample().ifPresent(congestionController::onRateSample);
+    ptoCount = 0;
+    setLossDetectionTimer();
   }
 
-  private boolean ack(final long pn, final EncryptionLevel level) {
+  private boolean handleAcks(final AckBlock block, final EncryptionLevel level) {
+    return getBuffer(level)
+        .remove(
+            block.getSmallest(),
+            block.getLargest(),
+            (pn, frames) -> {
+              log.debug("Acked packet {} at level {}", pn, level);
+              largestAcked[level.ordinal()] = Math.max(largestAcked[level.ordinal()], pn);
+
+              // the peer has seen the acks sent in the packet, no need to send them again
+              for (final Frame frame : frames) {
+                if (frame instanceof AckFrame) {
+                  getReceived(level).prune(((AckFrame) frame).getBlocks().get(0).getLargest());
+                }
+              }
+
+              ackListener.onAck(pn, frames);
+            });
+  }
+
+  /**
+   * Drops the sent packets of the encryption level without them being acknowledged, e.g. initial
+   * packets answered by a Retry
+   */
+  public void discard(final EncryptionLevel level) {
+    clear(level);
+    largestAcked[level.ordinal()] = PacketNumber.NONE;
+  }
+
+  private void clear(final EncryptionLevel level) {
+    getBuffer(level).clear();
+    lossTimes[level.ordinal()] = NO_TIME;
+    setLossDetectionTimer();
+  }
+
+  private SentPacketTracker getBuffer(final EncryptionLevel level) {
     if (level == EncryptionLevel.Initial) {
-      return initialBuffer.remove(pn);
+      return initialBuffer;
     } else if (level == EncryptionLevel.Handshake) {
-      return handshakeBuffer.remove(pn);
+      return handshakeBuffer;
     } else {
-      return buffer.remove(pn);
+      return buffer;
     }
   }
 
-  private void flushAcks(final EncryptionLevel level, final FrameSender sender) {
-    final Pair<List<AckBlock>, Long> drained = drainAcks(level);
-    final List<AckBlock> blocks = drained.getFirst();
-    if (!blocks.isEmpty()) {
-      final long delay = ackDelay.calculate(drained.getSecond(), NANOSECONDS);
-      final AckFrame ackFrame = new AckFrame(delay, blocks);
-      sender.send(ackFrame);
-
-      log.debug("Flushed acks {}", blocks);
-    }
+  /** The largest packet number acknowledged by the peer, used for encoding packet numbers */
+  public long getLargestAcked(final EncryptionLevel level) {
+    return largestAcked[level.ordinal()];
   }
 
-  // TODO break out and test directly
-  private Pair<List<AckBlock>, Long> drainAcks(final EncryptionLevel level) {
-    final Collection<Entry> pns = ackQueue.drain(level);
-    if (pns.isEmpty()) {
-      return Pair.of(Collections.emptyList(), 0L);
-    }
+  /** The largest packet number received from the peer, used for decoding packet numbers */
+  public long getLargestReceived(final EncryptionLevel level) {
+    return getReceived(level).getLargestReceived();
+  }
 
-    final long largestPnQueueTime =
-        pns.stream().max(Comparator.comparingLong(Entry::getPacketNumber)).get().getTimestamp();
-
-    final List<Long> pnsLong =
-        pns.stream().map(Entry::getPacketNumber).sorted().collect(Collectors.toList());
-
-    final List<AckBlock> blocks = new ArrayList<>();
-    long lower = -1;
-    long upper = -1;
-    for (final long pn : pnsLong) {
-      if (lower == -1) {
-        lower = pn;
-        upper = pn;
-      } else {
-        if (pn > upper + 1) {
-          blocks.add(new AckBlock(lower, upper));
-          lower = pn;
-          upper = pn;
-        } else {
-          upper++;
-        }
-      }
+  private ReceivedPacketTracker getReceived(final EncryptionLevel level) {
+    return received[level.ordinal()];
+  }
+
+  private static ReceivedPacketTracker[] newReceivedPacketTrackers() {
+    final ReceivedPacketTracker[] trackers =
+        new ReceivedPacketTracker[EncryptionLevel.values().length];
+    for (int i = 0; i < trackers.length; i++) {
+      trackers[i] = new ReceivedPacketTracker();
     }
-    blocks.add(new AckBlock(lower, upper));
+    return trackers;
+  }
 
-    return Pair.of(blocks, ackDelay.delay(largestPnQueueTime));
+  private static long[] newTimes() {
+    final long[] times = new long[EncryptionLevel.values().length];
+    Arrays.fill(times, NO_TIME);
+    return times;
   }
 
-  private static boolean acksOnly(final FullPacket packet) {
-    return packet.getPayload().getFrames().stream().allMatch(frame -> frame instanceof AckFrame);
+  private static long[] newPacketNumbers() {
+    final long[] pns = new long[EncryptionLevel.values().length];
+    Arrays.fill(pns, PacketNumber.NONE);
+    return pns;
+  }
+
+  private void flushAcks(final EncryptionLevel level, final FrameSender sender) {
+    // acks might already have been sent with packets sent by later handlers
+    if (!getReceived(level).isAckPending()) {
+      return;
+    }
+
+    final Optional<AckFrame> ackFrame = ackFrame(level);
+    if (ackFrame.isPresent()) {
+      sender.send(ackFrame.get());
+
+      log.debug("Flushed acks {}", ackFrame.get().getBlocks());
+    }
   }
 
   @VisibleForTesting
-  protected PacketBuffer getBuffer() {
+  protected SentPacketTracker getBuffer() {
     return buffer;
   }
 
   @VisibleForTesting
-  protected PacketBuffer getInitialBuffer() {
+  protected SentPacketTracker getInitialBuffer() {
     return initialBuffer;
   }
 
   @VisibleForTesting
-  protected PacketBuffer getHandshakeBuffer() {
+  protected SentPacketTracker getHandshakeBuffer() {
     return handshakeBuffer;
   }
 }
@@ -0,0 +1,85 @@
+package com.protocol7.quincy.reliability;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A delivery rate sample, taken when an ACK frame acknowledges packets in flight. Describes the
+ * bytes delivered to the peer over the interval from the send of the most recently sent of the
+ * acknowledged packets, as per draft-cheng-iccrg-delivery-rate-estimation.
+ */
+public class RateSample {
+
+  private final long delivered;
+  private final long interval;
+  private final long priorDelivered;
+  private final long totalDelivered;
+  private final long rtt;
+  private final int acked;
+
+  public RateSample(
+      final long delivered,
+      final long interval,
+      final long priorDelivered,
+      final long totalDelivered,
+      final long rtt,
+      final int acked) {
+    this.delivered = delivered;
+    this.interval = interval;
+    this.priorDelivered = priorDelivered;
+    this.totalDelivered = totalDelivered;
+    this.rtt = rtt;
+    this.acked = acked;
+  }
+
+  /** Bytes delivered over the interval */
+  public long getDelivered() {
+    return delivered;
+  }
+
+  /** The interval of the sample, in nanoseconds */
+  public long getInterval() {
+    return interval;
+  }
+
+  /** Bytes delivered on the connection when the most recently sent acknowledged packet was sent */
+  public long getPriorDelivered() {
+    return priorDelivered;
+  }
+
+  /** Bytes delivered on the connection, including this sample */
+  public long getTotalDelivered() {
+    return totalDelivered;
+  }
+
+  /** The round-trip time of the most recently sent acknowledged packet, in nanoseconds */
+  public long getRtt() {
+    return rtt;
+  }
+
+  /** Bytes newly acknowledged by the ACK frame */
+  public int getAcked() {
+    return acked;
+  }
+
+  /** The delivery rate in bytes per second, 0 if the interval is empty */
+  public long getDeliveryRate() {
+    if (interval <= 0) {
+      return 0;
+    }
+    return (long) ((double) delivered * TimeUnit.SECONDS.toNanos(1) / interval);
+  }
+
+  @Override
+  public String toString() {
+    return "RateSample{"
+        + "delivered="
+        + delivered
+        + ", interval="
+        + interval
+        + ", rtt="
+        + rtt
+        + ", acked="
+        + acked
+        + '}';
+  }
+}
@@ -0,0 +1,189 @@
+package com.protocol7.quincy.reliability;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.protocol7.quincy.protocol.PacketNumber;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The received packet numbers of a packet number space, kept as ranges to acknowledge. Ranges are
+ * acknowledged in every ACK frame until a packet carrying one of the frames is acknowledged by the
+ * peer, after which the ranges covered by it are pruned. At most {@link #MAX_RANGES} ranges are
+ * kept, bounding the size of the ACK frame.
+ */
+public class ReceivedPacketTracker {
+
+  public static final int MAX_RANGES = 32;
+
+  // in increasing order, ranges are never adjacent or overlapping
+  private final long[] smallest = new long[MAX_RANGES];
+  private final long[] largest = new long[MAX_RANGES];
+  private int count = 0;
+
+  // packet numbers below have been pruned, and are handled as duplicates
+  private long floor = 0;
+
+  private long largestReceived = PacketNumber.NONE;
+  private long largestReceivedTime = 0;
+  private boolean ackPending = false;
+
+  /**
+   * Records a received packet number.
+   *
+   * @return false if the packet is a duplicate and should be ignored
+   */
+  public boolean add(final long packetNumber, final long time) {
+    if (packetNumber < floor) {
+      return false;
+    }
+
+    if (packetNumber > largestReceived) {
+      largestReceived = packetNumber;
+      largestReceivedTime = time;
+
+      // in order, extend the latest range
+      if (count > 0 && largest[count - 1] + 1 == packetNumber) {
+        largest[count - 1] = packetNumber;
+      } else {
+        insert(count, packetNumber);
+      }
+    } else {
+      final int i = find(packetNumber);
+      if (i >= 0 && packetNumber <= largest[i]) {
+        return false;
+      }
+
+      final boolean extendsBelow = i >= 0 && largest[i] + 1 == packetNumber;
+      final boolean extendsAbove = i + 1 < count && smallest[i + 1] - 1 == packetNumber;
+      if (extendsBelow && extendsAbove) {
+        // fills the gap between two ranges
+        largest[i] = largest[i + 1];
+        removeRange(i + 1);
+      } else if (extendsBelow) {
+        largest[i] = packetNumber;
+      } else if (extendsAbove) {
+        smallest[i + 1] = packetNumber;
+      } else {
+        insert(i + 1, packetNumber);
+      }
+    }
+
+    ackPending = true;
+    return true;
+  }
+
+  /** If packets have been received since the last ACK frame was created */
+  public boolean isAckPending() {
+    return ackPending;
+  }
+
+  public long getLargestReceived() {
+    return largestReceived;
+  }
+
+  /**
+   * Creates an ACK frame for all tracked ranges, largest first, if any. The ranges are kept for
+   * acknowledging again until pruned.
+   */
+  public Optional<AckFrame> ackFrame(final AckDelay ackDelay) {
+    if (count == 0) {
+      return Optional.empty();
+    }
+
+    final List<AckBlock> blocks = new ArrayList<>(count);
+    for (int i = count - 1; i >= 0; i--) {
+      blocks.add(new AckBlock(smallest[i], largest[i]));
+    }
+    ackPending = false;
+
+    final long delay = ackDelay.calculate(ackDelay.delay(largestReceivedTime), NANOSECONDS);
+    return Optional.of(new AckFrame(delay, blocks));
+  }
+
+  /**
+   * Stops acknowledging packets up to the largest packet number acknowledged in an ACK frame, once
+   * the packet carrying the frame has been acknowledged by the peer.
+   */
+  public void prune(final long largestAcknowledged) {
+    if (largestAcknowledged < floor) {
+      return;
+    }
+    floor = largestAcknowledged + 1;
+
+    int pruned = 0;
+    while (pruned < count && largest[pruned] < floor) {
+      pruned++;
+    }
+    removeRanges(0, pruned);
+
+    if (count > 0 && smallest[0] < floor) {
+      smallest[0] = floor;
+    }
+  }
+
+  public int size() {
+    return count;
+  }
+
+  // index of the last range starting at or below the packet number, -1 if none
+  private int find(final long packetNumber) {
+    int low = 0;
+    int high = count - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      if (smallest[mid] <= packetNumber) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private void insert(final int at, final long packetNumber) {
+    int index = at;
+    if (count == MAX_RANGES) {
+      if (index == 0) {
+        // older than all tracked ranges, left unacknowledged for the peer to retransmit
+        return;
+      }
+      // make room by dropping the oldest range
+      floor = largest[0] + 1;
+      removeRange(0);
+      index--;
+    }
+
+    System.arraycopy(smallest, index, smallest, index + 1, count - index);
+    System.arraycopy(largest, index, largest, index + 1, count - index);
+    smallest[index] = packetNumber;
+    largest[index] = packetNumber;
+    count++;
+  }
+
+  private void removeRange(final int index) {
+    removeRanges(index, 1);
+  }
+
+  private void removeRanges(final int index, final int n) {
+    final int moved = count - index - n;
+    System.arraycopy(smallest, index + n, smallest, index, moved);
+    System.arraycopy(largest, index + n, largest, index, moved);
+    count -= n;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder("ReceivedPacketTracker{");
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(smallest[i]).append("..").append(largest[i]);
+    }
+    return sb.append('}').toString();
+  }
+}
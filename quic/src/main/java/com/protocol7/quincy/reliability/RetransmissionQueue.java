@@ -0,0 +1,129 @@
+package com.protocol7.quincy.reliability;
+
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.FrameSender;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.FrameType;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
+import com.protocol7.quincy.tls.EncryptionLevel;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Retransmits the frames of lost packets by what they carry rather than as they were sent. Acks,
+ * padding and pings only matter in the packet they were sent in and are dropped. Handlers
+ * registered per frame type can drop frames no longer needed or refresh them, e.g. flow control
+ * limits. Lost data of a stream is merged into contiguous ranges, split again by the connection to
+ * fill packets. Frames are retransmitted at the encryption level they were sent at.
+ */
+public class RetransmissionQueue {
+
+  private static final LostFrameHandler DROP =
+      frame -> {
+        frame.release();
+        return Optional.empty();
+      };
+
+  private final FrameSender frameSender;
+  private final Map<FrameType, LostFrameHandler> handlers = new EnumMap<>(FrameType.class);
+  private final List<List<Frame>> lost = new ArrayList<>();
+
+  public RetransmissionQueue(final FrameSender frameSender) {
+    this.frameSender = requireNonNull(frameSender);
+
+    handlers.put(FrameType.ACK, DROP);
+    handlers.put(FrameType.PADDING, DROP);
+    handlers.put(FrameType.PING, DROP);
+
+    for (int i = 0; i < EncryptionLevel.values().length; i++) {
+      lost.add(new ArrayList<>());
+    }
+  }
+
+  /** Sets how lost frames of the type are handled, replacing any previous handler */
+  public void register(final FrameType type, final LostFrameHandler handler) {
+    handlers.put(requireNonNull(type), requireNonNull(handler));
+  }
+
+  /** Takes over the frames of a lost packet, to be retransmitted on {@link #flush()} */
+  public void onLoss(final EncryptionLevel level, final List<Frame> frames) {
+    for (final Frame frame : frames) {
+      handlers
+          .getOrDefault(frame.getType(), Optional::of)
+          .onLost(frame)
+          .ifPresent(lost.get(level.ordinal())::add);
+    }
+  }
+
+  /** Queues the frames to retransmit with the frame sender, and flushes them */
+  public void flush() {
+    boolean queued = false;
+    for (final EncryptionLevel level : EncryptionLevel.values()) {
+      final List<Frame> frames = lost.get(level.ordinal());
+      if (!frames.isEmpty()) {
+        frameSender.queue(level, merge(frames).toArray(new Frame[0]));
+        frames.clear();
+        queued = true;
+      }
+    }
+
+    if (queued) {
+      frameSender.flush();
+    }
+  }
+
+  // control frames first, followed by the stream data merged per stream
+  private static List<Frame> merge(final List<Frame> frames) {
+    final List<Frame> merged = new ArrayList<>();
+    final Map<Long, List<StreamFrame>> streams = new LinkedHashMap<>();
+    for (final Frame frame : frames) {
+      if (frame instanceof StreamFrame) {
+        final StreamFrame sf = (StreamFrame) frame;
+        streams.computeIfAbsent(sf.getStreamId(), id -> new ArrayList<>()).add(sf);
+      } else {
+        merged.add(frame);
+      }
+    }
+
+    for (final List<StreamFrame> stream : streams.values()) {
+      stream.sort(Comparator.comparingLong(StreamFrame::getOffset));
+
+      int start = 0;
+      for (int i = 1; i <= stream.size(); i++) {
+        if (i == stream.size() || !isContiguous(stream.get(i - 1), stream.get(i))) {
+          merged.add(concat(stream.subList(start, i)));
+          start = i;
+        }
+      }
+    }
+    return merged;
+  }
+
+  private static boolean isContiguous(final StreamFrame first, final StreamFrame second) {
+    return !first.isFin() && first.getOffset() + first.getLength() == second.getOffset();
+  }
+
+  private static StreamFrame concat(final List<StreamFrame> frames) {
+    final StreamFrame first = frames.get(0);
+    if (frames.size() == 1) {
+      return first;
+    }
+
+    // the merged buffer takes over the data of the frames, without copying
+    final ByteBuf[] data = new ByteBuf[frames.size()];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = frames.get(i).content();
+    }
+    final StreamFrame last = frames.get(frames.size() - 1);
+    return new StreamFrame(
+        first.getStreamId(), first.getOffset(), last.isFin(), Unpooled.wrappedBuffer(data));
+  }
+}
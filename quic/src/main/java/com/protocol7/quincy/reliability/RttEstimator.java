@@ -0,0 +1,114 @@
+package com.protocol7.quincy.reliability;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.TimeUnit;
+
+/** Estimates the round-trip time of the connection from RTT samples, as per RFC 9002 section 5 */
+public class RttEstimator {
+
+  public static final long INITIAL_RTT = TimeUnit.MILLISECONDS.toNanos(333);
+  public static final long GRANULARITY = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final int TIME_THRESHOLD_NUMERATOR = 9;
+  private static final int TIME_THRESHOLD_DENOMINATOR = 8;
+
+  private final long maxAckDelay;
+
+  private boolean hasSample = false;
+  private long latestRtt = 0;
+  private long smoothedRtt = INITIAL_RTT;
+  private long rttVar = INITIAL_RTT / 2;
+  private long minRtt = 0;
+
+  public RttEstimator(final long maxAckDelay, final TimeUnit unit) {
+    checkArgument(maxAckDelay >= 0);
+
+    this.maxAckDelay = unit.toNanos(maxAckDelay);
+  }
+
+  /**
+   * Updates the estimate with a sample, in nanoseconds. The ack delay reported by the peer is only
+   * subtracted once the handshake is confirmed, and then limited to the max ack delay.
+   */
+  public void update(final long sample, final long ackDelay, final boolean handshakeConfirmed) {
+    checkArgument(sample >= 0);
+    checkArgument(ackDelay >= 0);
+
+    latestRtt = sample;
+
+    if (!hasSample) {
+      hasSample = true;
+      minRtt = sample;
+      smoothedRtt = sample;
+      rttVar = sample / 2;
+      return;
+    }
+
+    minRtt = Math.min(minRtt, sample);
+
+    final long delay = handshakeConfirmed ? Math.min(ackDelay, maxAckDelay) : ackDelay;
+
+    // only adjust for the ack delay if the result is not below the min RTT
+    long adjustedRtt = sample;
+    if (sample >= minRtt + delay) {
+      adjustedRtt = sample - delay;
+    }
+
+    rttVar = (3 * rttVar + Math.abs(smoothedRtt - adjustedRtt)) / 4;
+    smoothedRtt = (7 * smoothedRtt + adjustedRtt) / 8;
+  }
+
+  public boolean hasSample() {
+    return hasSample;
+  }
+
+  public long getLatestRtt() {
+    return latestRtt;
+  }
+
+  public long getSmoothedRtt() {
+    return smoothedRtt;
+  }
+
+  public long getRttVar() {
+    return rttVar;
+  }
+
+  public long getMinRtt() {
+    return minRtt;
+  }
+
+  public long getMaxAckDelay() {
+    return maxAckDelay;
+  }
+
+  /** The time after which a packet sent before an acknowledged packet is declared lost */
+  public long lossDelay() {
+    final long rtt = Math.max(latestRtt, smoothedRtt);
+    return Math.max(rtt * TIME_THRESHOLD_NUMERATOR / TIME_THRESHOLD_DENOMINATOR, GRANULARITY);
+  }
+
+  /**
+   * The probe timeout without backoff. The max ack delay is included for the application data
+   * space, where the peer can delay acks.
+   */
+  public long probeTimeout(final boolean includeMaxAckDelay) {
+    final long pto = smoothedRtt + Math.max(4 * rttVar, GRANULARITY);
+    return includeMaxAckDelay ? pto + maxAckDelay : pto;
+  }
+
+  @Override
+  public String toString() {
+    return "RttEstimator{"
+        + "latestRtt="
+        + latestRtt
+        + ", smoothedRtt="
+        + smoothedRtt
+        + ", rttVar="
+        + rttVar
+        + ", minRtt="
+        + minRtt
+        + '}';
+  }
+}
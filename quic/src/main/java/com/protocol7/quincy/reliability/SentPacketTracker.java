@@ -0,0 +1,394 @@
+package com.protocol7.quincy.reliability;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The sent and not yet acknowledged packets of a packet number space. Packets are kept in a ring of
+ * primitive arrays indexed by packet number, starting at the oldest unacknowledged packet. Packet
+ * numbers are sent in increasing order, so inserting, acknowledging and finding the oldest packet
+ * are all constant time. Packet numbers skipped in this space, e.g. used in other spaces, are empty
+ * slots in the ring. Packets counting towards bytes in flight are reported to the congestion
+ * controller as they are sent, acknowledged, lost or discarded, and carry the state of the delivery
+ * rate sampler from when they were sent.
+ */
+public class SentPacketTracker {
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  private static final byte SENT = 0x1;
+  private static final byte ACK_ELICITING = 0x2;
+  private static final byte IN_FLIGHT = 0x4;
+
+  /** Packets this many packet numbers before an acknowledged packet are declared lost */
+  public static final int PACKET_THRESHOLD = 3;
+
+  private final CongestionController congestionController;
+  private final DeliveryRateSampler sampler;
+  private final Ticker ticker;
+
+  // slot of packet number pn is (head + pn - base) & mask
+  private long[] sentTimes = new long[INITIAL_CAPACITY];
+  private int[] sizes = new int[INITIAL_CAPACITY];
+  private byte[] flags = new byte[INITIAL_CAPACITY];
+  private Object[] frames = new Object[INITIAL_CAPACITY];
+  private long[] delivered = new long[INITIAL_CAPACITY];
+  private long[] deliveredTimes = new long[INITIAL_CAPACITY];
+  private long[] firstSentTimes = new long[INITIAL_CAPACITY];
+  private int mask = INITIAL_CAPACITY - 1;
+  private int head = 0;
+
+  // packet number of the head slot, and one past the largest sent packet number
+  private long base = 0;
+  private long end = 0;
+  private int count = 0;
+  private int ackElicitingCount = 0;
+
+  public SentPacketTracker(
+      final CongestionController congestionController,
+      final DeliveryRateSampler sampler,
+      final Ticker ticker) {
+    this.congestionController = requireNonNull(congestionController);
+    this.sampler = requireNonNull(sampler);
+    this.ticker = requireNonNull(ticker);
+  }
+
+  public void put(final FullPacket packet) {
+    requireNonNull(packet);
+
+    final List<Frame> packetFrames = packet.getPayload().getFrames();
+    put(
+        packet.getPacketNumber(),
+        ticker.nanoTime(),
+        packet.calculateLength(),
+        isAckEliciting(packetFrames),
+        isInFlight(packetFrames),
+        packetFrames);
+  }
+
+  private void put(
+      final long packetNumber,
+      final long sentTime,
+      final int size,
+      final boolean ackEliciting,
+      final boolean inFlight,
+      final List<Frame> packetFrames) {
+    checkArgument(packetNumber >= end, "Packet numbers must be increasing");
+
+    if (count == 0) {
+      // start the ring at the new packet
+      base = packetNumber;
+      head = 0;
+    } else {
+      ensureCapacity(packetNumber - base + 1);
+    }
+
+    final int slot = slot(packetNumber);
+    sentTimes[slot] = sentTime;
+    sizes[slot] = size;
+    flags[slot] = (byte) (SENT | (ackEliciting ? ACK_ELICITING : 0) | (inFlight ? IN_FLIGHT : 0));
+    frames[slot] = packetFrames;
+
+    end = packetNumber + 1;
+    count++;
+    if (ackEliciting) {
+      ackElicitingCount++;
+    }
+    if (inFlight) {
+      sampler.onPacketSent(sentTime, congestionController.getBytesInFlight() == 0);
+      delivered[slot] = sampler.getDelivered();
+      deliveredTimes[slot] = sampler.getDeliveredTime();
+      firstSentTimes[slot] = sampler.getFirstSentTime();
+      congestionController.onPacketSent(packetNumber, sentTime, size);
+    }
+  }
+
+  /**
+   * Drops all packets as acknowledged. As no packets are left, packet numbers may start over after
+   * clearing.
+   */
+  public void clear() {
+    for (long pn = base; pn < end; pn++) {
+      final int slot = slot(pn);
+      if (flags[slot] != 0) {
+        if ((flags[slot] & IN_FLIGHT) != 0) {
+          congestionController.onPacketDiscarded(pn, sizes[slot]);
+        }
+        release(slot);
+        clearSlot(slot);
+      }
+    }
+    count = 0;
+    ackElicitingCount = 0;
+    base = 0;
+    end = 0;
+    head = 0;
+  }
+
+  /** Drops an acknowledged packet, the data of its frames is no longer needed */
+  public boolean remove(final long packetNumber) {
+    if (!contains(packetNumber)) {
+      return false;
+    }
+
+    final int slot = slot(packetNumber);
+    acked(packetNumber, slot);
+    release(slot);
+    removeSlot(slot);
+    return true;
+  }
+
+  /**
+   * Drops the acknowledged packets in the range of packet numbers, notifying the listener of the
+   * frames of each. Only the part of the range within the unacknowledged packets is visited.
+   *
+   * @return true if any of the dropped packets were ack-eliciting
+   */
+  public boolean remove(final long smallest, final long largest, final AckListener listener) {
+    boolean ackEliciting = false;
+    final long from = Math.max(smallest, base);
+    final long to = Math.min(largest, end - 1);
+    for (long pn = from; pn <= to && count > 0; pn++) {
+      final int slot = slot(pn);
+      if (flags[slot] != 0) {
+        ackEliciting |= (flags[slot] & ACK_ELICITING) != 0;
+        acked(pn, slot);
+        listener.onAck(pn, getFrames(slot));
+        release(slot);
+        removeSlot(slot);
+      }
+    }
+    return ackEliciting;
+  }
+
+  /**
+   * Drops the packets sent before the largest acknowledged packet that are declared lost, for being
+   * sent more than the loss delay ago or {@link #PACKET_THRESHOLD} packet numbers before it. The
+   * frames of lost packets are handed over to the listener.
+   *
+   * @return the time at which the earliest of the remaining packets sent before the largest
+   *     acknowledged packet will be declared lost, if any
+   */
+  public Optional<Long> removeLost(
+      final long largestAcked, final long lossDelay, final LossListener listener) {
+    final long lostSendTime = ticker.nanoTime() - lossDelay;
+
+    long lossTime = Long.MAX_VALUE;
+    final long to = Math.min(largestAcked, end - 1);
+    for (long pn = base; pn <= to && count > 0; pn++) {
+      final int slot = slot(pn);
+      if (flags[slot] != 0) {
+        if (sentTimes[slot] <= lostSendTime || largestAcked - pn >= PACKET_THRESHOLD) {
+          if ((flags[slot] & IN_FLIGHT) != 0) {
+            congestionController.onPacketLost(pn, sentTimes[slot], sizes[slot]);
+          }
+          listener.onLoss(pn, getFrames(slot));
+          removeSlot(slot);
+        } else {
+          lossTime = Math.min(lossTime, sentTimes[slot] + lossDelay);
+        }
+      }
+    }
+
+    if (lossTime == Long.MAX_VALUE) {
+      return Optional.empty();
+    }
+    return Optional.of(lossTime);
+  }
+
+  /**
+   * The frames of the unacknowledged ack-eliciting packets, oldest first. The frames are still
+   * owned by the tracker and released when their packets are acknowledged.
+   */
+  public List<Frame> getUnackedFrames() {
+    final List<Frame> unacked = new ArrayList<>();
+    for (long pn = base; pn < end; pn++) {
+      final int slot = slot(pn);
+      if ((flags[slot] & ACK_ELICITING) != 0) {
+        unacked.addAll(getFrames(slot));
+      }
+    }
+    return unacked;
+  }
+
+  public boolean contains(final long packetNumber) {
+    return packetNumber >= base && packetNumber < end && flags[slot(packetNumber)] != 0;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /** If any ack-eliciting packets are unacknowledged */
+  public boolean hasAckEliciting() {
+    return ackElicitingCount > 0;
+  }
+
+  /** The packet number of the oldest unacknowledged packet, if any */
+  public Optional<Long> oldestPacketNumber() {
+    if (count == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(base);
+  }
+
+  /** The time at which the oldest packet in the buffer was sent, if any */
+  public Optional<Long> oldestTime() {
+    if (count == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(sentTimes[head]);
+  }
+
+  public long getSentTime(final long packetNumber) {
+    checkArgument(contains(packetNumber));
+    return sentTimes[slot(packetNumber)];
+  }
+
+  public int getSize(final long packetNumber) {
+    checkArgument(contains(packetNumber));
+    return sizes[slot(packetNumber)];
+  }
+
+  public boolean isAckEliciting(final long packetNumber) {
+    checkArgument(contains(packetNumber));
+    return (flags[slot(packetNumber)] & ACK_ELICITING) != 0;
+  }
+
+  public boolean isInFlight(final long packetNumber) {
+    checkArgument(contains(packetNumber));
+    return (flags[slot(packetNumber)] & IN_FLIGHT) != 0;
+  }
+
+  private void acked(final long packetNumber, final int slot) {
+    if ((flags[slot] & IN_FLIGHT) != 0) {
+      sampler.onPacketAcked(
+          sentTimes[slot],
+          sizes[slot],
+          delivered[slot],
+          deliveredTimes[slot],
+          firstSentTimes[slot]);
+      congestionController.onPacketAcked(packetNumber, sentTimes[slot], sizes[slot]);
+    }
+  }
+
+  private int slot(final long packetNumber) {
+    return (int) ((head + (packetNumber - base)) & mask);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<Frame> getFrames(final int slot) {
+    return (List<Frame>) frames[slot];
+  }
+
+  private void release(final int slot) {
+    for (final Frame frame : getFrames(slot)) {
+      frame.release();
+    }
+  }
+
+  private void clearSlot(final int slot) {
+    flags[slot] = 0;
+    frames[slot] = null;
+  }
+
+  private void removeSlot(final int slot) {
+    if ((flags[slot] & ACK_ELICITING) != 0) {
+      ackElicitingCount--;
+    }
+    clearSlot(slot);
+    count--;
+
+    if (count == 0) {
+      base = end;
+      head = 0;
+    } else {
+      // move the head past acknowledged packets, each slot is passed once
+      while (flags[head] == 0) {
+        head = (head + 1) & mask;
+        base++;
+      }
+    }
+  }
+
+  private void ensureCapacity(final long span) {
+    if (span <= sentTimes.length) {
+      return;
+    }
+
+    int capacity = sentTimes.length;
+    while (capacity < span) {
+      capacity <<= 1;
+    }
+
+    // copy into the new arrays with the head at slot 0
+    final long[] newSentTimes = new long[capacity];
+    final int[] newSizes = new int[capacity];
+    final byte[] newFlags = new byte[capacity];
+    final Object[] newFrames = new Object[capacity];
+    final long[] newDelivered = new long[capacity];
+    final long[] newDeliveredTimes = new long[capacity];
+    final long[] newFirstSentTimes = new long[capacity];
+    copy(sentTimes, newSentTimes);
+    copy(sizes, newSizes);
+    copy(flags, newFlags);
+    copy(frames, newFrames);
+    copy(delivered, newDelivered);
+    copy(deliveredTimes, newDeliveredTimes);
+    copy(firstSentTimes, newFirstSentTimes);
+
+    sentTimes = newSentTimes;
+    sizes = newSizes;
+    flags = newFlags;
+    frames = newFrames;
+    delivered = newDelivered;
+    deliveredTimes = newDeliveredTimes;
+    firstSentTimes = newFirstSentTimes;
+    head = 0;
+    mask = capacity - 1;
+  }
+
+  private void copy(final Object from, final Object to) {
+    final int used = (int) (end - base);
+    final int first = Math.min(used, mask + 1 - head);
+    System.arraycopy(from, head, to, 0, first);
+    System.arraycopy(from, 0, to, first, used - first);
+  }
+
+  static boolean isAckEliciting(final List<Frame> frames) {
+    for (final Frame frame : frames) {
+      if (!(frame instanceof AckFrame) && !(frame instanceof PaddingFrame)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isInFlight(final List<Frame> frames) {
+    for (final Frame frame : frames) {
+      if (!(frame instanceof AckFrame)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "SentPacketTracker{" + "base=" + base + ", end=" + end + ", count=" + count + '}';
+  }
+}
@@ -3,19 +3,21 @@ package com.protocol7.quincy.server;
 import com.protocol7.quincy.Configuration;
 import com.protocol7.quincy.connection.Connection;
 import com.protocol7.quincy.connection.PacketSender;
-import com.protocol7.quincy.flowcontrol.DefaultFlowControlHandler;
 import com.protocol7.quincy.protocol.ConnectionId;
 import com.protocol7.quincy.streams.StreamListener;
-import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
 import java.net.InetSocketAddress;
 import java.security.PrivateKey;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/** The connections of a server worker, only accessed from the event loop of the worker */
 public class Connections {
 
   private final Logger log = LoggerFactory.getLogger(Connections.class);
@@ -23,25 +25,26 @@ public class Connections {
   private final Configuration configuration;
   private final List<byte[]> certificates;
   private final PrivateKey privateKey;
-  private final Map<ConnectionId, ServerConnection> connections = new ConcurrentHashMap<>();
-  private final Timer timer;
+  private final Map<ConnectionId, ServerConnection> connections = new HashMap<>();
+  private final Supplier<ConnectionId> connectionIds;
 
   public Connections(
       final Configuration configuration,
       final List<byte[]> certificates,
       final PrivateKey privateKey,
-      final Timer timer) {
+      final Supplier<ConnectionId> connectionIds) {
     this.configuration = configuration;
     this.certificates = certificates;
     this.privateKey = privateKey;
-    this.timer = timer;
+    this.connectionIds = connectionIds;
   }
 
   public ServerConnection get(
       final Optional<ConnectionId> connIdOpt,
       final StreamListener streamHandler,
-      final PacketSender packetSender,
-      final InetSocketAddress peerAddress) {
+      final Function<InetSocketAddress, PacketSender> packetSenders,
+      final InetSocketAddress peerAddress,
+      final EventExecutor executor) {
 
     final ConnectionId connId = connIdOpt.get();
 
@@ -53,17 +56,14 @@ public class Connections {
               configuration,
               connId,
               streamHandler,
-              packetSender,
+              packetSenders.apply(peerAddress),
               certificates,
               privateKey,
-              new DefaultFlowControlHandler(
-                  configuration.getInitialMaxData(), configuration.getInitialMaxStreamDataUni()),
+              configuration.newFlowControlHandler(),
               peerAddress,
-              timer);
-      final ServerConnection existingConn = connections.putIfAbsent(connId, conn);
-      if (existingConn != null) {
-        conn = existingConn;
-      }
+              executor,
+              connectionIds);
+      connections.put(connId, conn);
     }
     return conn;
   }
@@ -9,8 +9,10 @@ import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.VersionNegotiationPacket;
 import com.protocol7.quincy.streams.StreamListener;
 import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.EventExecutor;
 import java.net.InetSocketAddress;
 import java.util.Optional;
+import java.util.function.Function;
 import org.slf4j.MDC;
 
 public class PacketRouter {
@@ -28,22 +30,30 @@ public class PacketRouter {
 
   private boolean validateVersion(
       final HalfParsedPacket<?> halfParsed,
-      final PacketSender sender,
+      final Function<InetSocketAddress, PacketSender> packetSenders,
+      final InetSocketAddress peerAddress,
       final Optional<ConnectionId> srcConnId) {
 
     if (halfParsed.getVersion().isPresent()) {
       if (halfParsed.getVersion().get() != version) {
         final VersionNegotiationPacket verNeg =
             new VersionNegotiationPacket(halfParsed.getConnectionId(), srcConnId, version);
-        sender.send(verNeg, null); // TODO remove null
+        packetSenders.apply(peerAddress).send(verNeg, null); // TODO remove null
         return false;
       }
     }
     return true;
   }
 
+  /**
+   * Routes the packets of the datagram to their connections. Packet senders for the peer are only
+   * created for new connections and version negotiation, not for every datagram.
+   */
   public void route(
-      final ByteBuf bb, final PacketSender sender, final InetSocketAddress peerAddress) {
+      final ByteBuf bb,
+      final Function<InetSocketAddress, PacketSender> packetSenders,
+      final InetSocketAddress peerAddress,
+      final EventExecutor executor) {
 
     while (bb.isReadable()) {
       final HalfParsedPacket<?> halfParsed = Packet.parse(bb, ConnectionId.LENGTH);
@@ -52,11 +62,13 @@ public class PacketRouter {
           connections.get(
               halfParsed.getConnectionId(),
               listener,
-              sender,
-              peerAddress); // TODO fix for when connId is omitted
+              packetSenders,
+              peerAddress,
+              executor); // TODO fix for when connId is omitted
 
-      if (validateVersion(halfParsed, sender, conn.getLocalConnectionId())) {
-        final Packet packet = halfParsed.complete(conn::getAEAD);
+      if (validateVersion(halfParsed, packetSenders, peerAddress, conn.getLocalConnectionId())) {
+        final Packet packet =
+            halfParsed.complete(conn::getAEAD, conn::getLargestReceivedPacketNumber);
 
         MDC.put("actor", "server");
         if (packet instanceof FullPacket) {
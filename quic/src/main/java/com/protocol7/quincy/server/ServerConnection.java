@@ -3,14 +3,23 @@ package com.protocol7.quincy.server;
 import static java.util.Optional.empty;
 
 import com.protocol7.quincy.Configuration;
+import com.protocol7.quincy.Futures;
+import com.protocol7.quincy.InboundHandler;
+import com.protocol7.quincy.OutboundHandler;
 import com.protocol7.quincy.Pipeline;
 import com.protocol7.quincy.addressvalidation.RetryToken;
 import com.protocol7.quincy.addressvalidation.ServerRetryHandler;
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.congestion.Pacer;
+import com.protocol7.quincy.connection.ConnectionSender;
+import com.protocol7.quincy.connection.ConnectionTimer;
+import com.protocol7.quincy.connection.FrameScheduler;
 import com.protocol7.quincy.connection.InternalConnection;
 import com.protocol7.quincy.connection.PacketSender;
 import com.protocol7.quincy.connection.State;
 import com.protocol7.quincy.flowcontrol.FlowControlHandler;
 import com.protocol7.quincy.logging.LoggingHandler;
+import com.protocol7.quincy.pmtu.PathMtuDiscovery;
 import com.protocol7.quincy.protocol.*;
 import com.protocol7.quincy.protocol.frames.ConnectionCloseFrame;
 import com.protocol7.quincy.protocol.frames.Frame;
@@ -21,7 +30,10 @@ import com.protocol7.quincy.protocol.packets.InitialPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.ShortPacket;
 import com.protocol7.quincy.reliability.AckDelay;
+import com.protocol7.quincy.reliability.AckFrequency;
 import com.protocol7.quincy.reliability.PacketBufferManager;
+import com.protocol7.quincy.reliability.RetransmissionQueue;
+import com.protocol7.quincy.reliability.RttEstimator;
 import com.protocol7.quincy.streams.DefaultStreamManager;
 import com.protocol7.quincy.streams.Stream;
 import com.protocol7.quincy.streams.StreamListener;
@@ -32,28 +44,43 @@ import com.protocol7.quincy.tls.ServerTLSManager;
 import com.protocol7.quincy.tls.aead.AEAD;
 import com.protocol7.quincy.tls.extensions.TransportParameters;
 import com.protocol7.quincy.utils.Ticker;
-import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import java.net.InetSocketAddress;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
-
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A server connection. All connection state is confined to the event loop of the connection, calls
+ * to the public API from other threads are handed over to the event loop.
+ */
 public class ServerConnection implements InternalConnection {
 
+  private final Logger log = LoggerFactory.getLogger(ServerConnection.class);
+
   private Optional<ConnectionId> remoteConnectionId = Optional.empty();
   private final Optional<ConnectionId> localConnectionId;
   private final PacketSender packetSender;
   private final Version version;
-  private final AtomicReference<Long> sendPacketNumber = new AtomicReference<>(PacketNumber.MIN);
+  private long sendPacketNumber = PacketNumber.MIN;
   private final ServerStateMachine stateMachine;
 
   private final ServerTLSManager tlsManager;
   private final Pipeline pipeline;
   private final InetSocketAddress peerAddress;
   private final StreamManager streamManager;
+  private final PacketBufferManager packetBuffer;
+  private final ConnectionSender sender;
+  private final EventExecutor executor;
+  private final ConnectionTimer timer;
+  private final RttEstimator rttEstimator;
+  private final FlowControlHandler flowControlHandler;
 
   public ServerConnection(
       final Configuration configuration,
@@ -64,19 +91,61 @@ public class ServerConnection implements InternalConnection {
       final PrivateKey privateKey,
       final FlowControlHandler flowControlHandler,
       final InetSocketAddress peerAddress,
-      final Timer timer) {
+      final EventExecutor executor,
+      final Supplier<ConnectionId> connectionIds) {
     this.version = configuration.getVersion();
+    final int maxPacketSize = configuration.getMaxPacketSize();
     this.packetSender = packetSender;
     this.peerAddress = peerAddress;
     final TransportParameters transportParameters = configuration.toTransportParameters();
 
-    this.streamManager = new DefaultStreamManager(this, streamListener);
+    this.flowControlHandler = flowControlHandler;
+    this.executor = executor;
+    this.streamManager =
+        new DefaultStreamManager(this, executor, streamListener, flowControlHandler);
 
     final Ticker ticker = Ticker.systemTicker();
+    this.timer = new ConnectionTimer(executor, ticker);
+
+    this.rttEstimator = new RttEstimator(configuration.getMaxAckDelay(), TimeUnit.MILLISECONDS);
+    final CongestionController congestionController =
+        configuration.getCongestionControllerFactory().create(maxPacketSize, rttEstimator, ticker);
+
+    final RetransmissionQueue retransmissions = new RetransmissionQueue(this);
+    retransmissions.register(FrameType.STREAM, streamManager);
+    for (final FrameType type :
+        List.of(
+            FrameType.MAX_DATA,
+            FrameType.MAX_STREAM_DATA,
+            FrameType.DATA_BLOCKED,
+            FrameType.STREAM_DATA_BLOCKED)) {
+      retransmissions.register(type, flowControlHandler);
+    }
 
-    final PacketBufferManager packetBuffer =
+    this.packetBuffer =
         new PacketBufferManager(
-            new AckDelay(configuration.getAckDelayExponent(), ticker), this, timer, ticker);
+            new AckDelay(configuration.getAckDelayExponent(), ticker),
+            new AckFrequency(configuration.getMaxAckDelay(), TimeUnit.MILLISECONDS),
+            rttEstimator,
+            congestionController,
+            retransmissions,
+            this,
+            streamManager,
+            timer,
+            ticker);
+    this.sender =
+        new ConnectionSender(
+            new ServerPackets(),
+            packetBuffer,
+            congestionController,
+            new Pacer(
+                configuration.getPacingBurst(),
+                maxPacketSize,
+                congestionController,
+                rttEstimator,
+                ticker),
+            timer,
+            maxPacketSize);
     this.tlsManager =
         new ServerTLSManager(localConnectionId, transportParameters, privateKey, certificates);
 
@@ -85,17 +154,33 @@ public class ServerConnection implements InternalConnection {
     final TerminationManager terminationManager =
         new TerminationManager(this, timer, configuration.getIdleTimeout(), TimeUnit.SECONDS);
 
-    this.pipeline =
-        new Pipeline(
+    final List<InboundHandler> inboundHandlers =
+        new ArrayList<>(
             List.of(
                 logger,
-                new ServerRetryHandler(new RetryToken(privateKey), 30, TimeUnit.MINUTES),
+                new ServerRetryHandler(
+                    new RetryToken(privateKey), 30, TimeUnit.MINUTES, connectionIds),
                 tlsManager,
                 packetBuffer,
                 streamManager,
                 flowControlHandler,
-                terminationManager),
-            List.of(flowControlHandler, packetBuffer, logger));
+                terminationManager));
+    final List<OutboundHandler> outboundHandlers =
+        new ArrayList<>(List.of(flowControlHandler, packetBuffer, logger));
+
+    if (configuration.isPathMtuDiscovery()) {
+      final PathMtuDiscovery pathMtuDiscovery =
+          new PathMtuDiscovery(
+              maxPacketSize,
+              configuration.getMaxProbePacketSize(),
+              sender::sendPadded,
+              this::setMaxPacketSize,
+              ticker);
+      inboundHandlers.add(4, pathMtuDiscovery);
+      outboundHandlers.add(0, pathMtuDiscovery);
+    }
+
+    this.pipeline = new Pipeline(inboundHandlers, outboundHandlers);
 
     this.localConnectionId = Optional.of(localConnectionId);
 
@@ -128,38 +213,116 @@ public class ServerConnection implements InternalConnection {
   }
 
   public FullPacket send(final Frame... frames) {
-    final Packet packet;
+    return sender.send(currentEncryptionLevel(), frames);
+  }
+
+  public void probe(final EncryptionLevel level, final Frame... frames) {
+    sender.probe(level, frames);
+  }
+
+  public void queue(final Frame... frames) {
+    sender.queue(currentEncryptionLevel(), frames);
+  }
+
+  public void queue(final EncryptionLevel level, final Frame... frames) {
+    sender.queue(level, frames);
+  }
+
+  public void flush() {
+    if (stateMachine.getState() == State.Closed) {
+      return;
+    }
+
+    sender.flush();
+  }
+
+  private class ServerPackets implements ConnectionSender.Packets {
+
+    @Override
+    public boolean available(final EncryptionLevel level) {
+      return tlsManager.available(level);
+    }
+
+    @Override
+    public int capacity(final EncryptionLevel level, final int packetSize) {
+      if (level == EncryptionLevel.OneRtt) {
+        return FrameScheduler.shortPacketCapacity(packetSize, remoteConnectionId);
+      } else {
+        return FrameScheduler.longPacketCapacity(
+            packetSize, remoteConnectionId, localConnectionId, empty());
+      }
+    }
+
+    @Override
+    public Packet create(final EncryptionLevel level, final List<Frame> frames) {
+      if (level == EncryptionLevel.OneRtt) {
+        return ShortPacket.create(
+            false,
+            getRemoteConnectionId(),
+            nextSendPacketNumber(),
+            packetBuffer.getLargestAcked(level),
+            frames);
+      } else if (level == EncryptionLevel.Handshake) {
+        return HandshakePacket.create(
+            remoteConnectionId, localConnectionId, nextSendPacketNumber(), version, frames);
+      } else {
+        return InitialPacket.create(
+            remoteConnectionId,
+            localConnectionId,
+            nextSendPacketNumber(),
+            version,
+            empty(),
+            frames);
+      }
+    }
+
+    @Override
+    public Packet sendPacket(final Packet packet) {
+      return ServerConnection.this.sendPacket(packet);
+    }
+  }
+
+  private EncryptionLevel currentEncryptionLevel() {
     if (tlsManager.available(EncryptionLevel.OneRtt)) {
-      packet = ShortPacket.create(false, getRemoteConnectionId(), nextSendPacketNumber(), frames);
+      return EncryptionLevel.OneRtt;
     } else if (tlsManager.available(EncryptionLevel.Handshake)) {
-      packet =
-          HandshakePacket.create(
-              remoteConnectionId, localConnectionId, nextSendPacketNumber(), version, frames);
+      return EncryptionLevel.Handshake;
     } else {
-      packet =
-          InitialPacket.create(
-              remoteConnectionId,
-              localConnectionId,
-              nextSendPacketNumber(),
-              version,
-              empty(),
-              frames);
+      return EncryptionLevel.Initial;
     }
+  }
 
-    return (FullPacket) sendPacket(packet);
+  // the path MTU discovered, packets are built, paced and assembled into datagrams up to the size
+  private void setMaxPacketSize(final int maxPacketSize) {
+    sender.setMaxPacketSize(maxPacketSize);
+    packetSender.setMaxPacketSize(maxPacketSize);
   }
 
   private void sendPacketUnbuffered(final Packet packet) {
+    // written without blocking, lost packets are handled by retransmissions
     packetSender
         .send(packet, getAEAD(Packet.getEncryptionLevel(packet)))
-        .awaitUninterruptibly(); // TODO fix
+        .addListener(
+            future -> {
+              if (!future.isSuccess()) {
+                log.warn("Failed to send packet {}", packet, future.cause());
+              }
+            });
   }
 
   public void onPacket(final Packet packet) {
-    // with incorrect conn ID
-    stateMachine.processPacket(packet);
-
-    pipeline.onPacket(this, packet);
+    try {
+      // with incorrect conn ID
+      stateMachine.processPacket(packet);
+
+      pipeline.onPacket(this, packet);
+      flush();
+    } finally {
+      // frames parsed from the datagram retain slices of it until handled
+      if (packet instanceof FullPacket) {
+        ((FullPacket) packet).getPayload().release();
+      }
+    }
   }
 
   @Override
@@ -167,8 +330,19 @@ public class ServerConnection implements InternalConnection {
     return tlsManager.getAEAD(level);
   }
 
+  @Override
+  public long getLargestReceivedPacketNumber(final EncryptionLevel level) {
+    return packetBuffer.getLargestReceived(level);
+  }
+
   private long nextSendPacketNumber() {
-    return sendPacketNumber.updateAndGet(packetNumber -> PacketNumber.next(packetNumber));
+    sendPacketNumber = PacketNumber.next(sendPacketNumber);
+    return sendPacketNumber;
+  }
+
+  @Override
+  public long getSmoothedRtt() {
+    return rttEstimator.getSmoothedRtt();
   }
 
   public State getState() {
@@ -181,13 +355,23 @@ public class ServerConnection implements InternalConnection {
 
   public Future<Void> close(
       final TransportError error, final FrameType frameType, final String msg) {
-    stateMachine.closeImmediate(new ConnectionCloseFrame(error.getValue(), frameType, msg));
+    return Futures.runOn(
+        executor,
+        () -> {
+          stateMachine.closeImmediate(new ConnectionCloseFrame(error.getValue(), frameType, msg));
 
-    return packetSender.destroy();
+          return closeInternal();
+        });
   }
 
   public Stream openStream() {
-    return streamManager.openStream(false, true);
+    if (executor.inEventLoop()) {
+      return streamManager.openStream(false, true);
+    }
+    return executor
+        .submit(() -> streamManager.openStream(false, true))
+        .syncUninterruptibly()
+        .getNow();
   }
 
   @Override
@@ -196,12 +380,23 @@ public class ServerConnection implements InternalConnection {
   }
 
   public Future<Void> close() {
-    stateMachine.closeImmediate();
+    return Futures.runOn(
+        executor,
+        () -> {
+          stateMachine.closeImmediate();
 
-    return packetSender.destroy();
+          return closeInternal();
+        });
   }
 
   public void closeByPeer() {
-    packetSender.destroy().awaitUninterruptibly(); // TOOD fix
+    closeInternal();
+  }
+
+  private Future<Void> closeInternal() {
+    timer.close();
+    flowControlHandler.close();
+
+    return packetSender.destroy();
   }
 }
@@ -24,7 +24,7 @@ public class ServerStateMachine {
     this.connection = connection;
   }
 
-  public synchronized void processPacket(final Packet packet) {
+  public void processPacket(final Packet packet) {
     // TODO check version
     if (state == State.Started) {
       if (packet instanceof InitialPacket) {
@@ -0,0 +1,36 @@
+package com.protocol7.quincy.server;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.utils.Rnd;
+import java.util.function.Supplier;
+
+/**
+ * Generates the connection IDs issued by a server worker. The index of the worker is encoded in the
+ * first byte, so that packets arriving at the wrong worker can be forwarded to the owning one.
+ */
+public class WorkerConnectionIds implements Supplier<ConnectionId> {
+
+  public static final int MAX_WORKERS = 256;
+
+  public static int workerIndex(final ConnectionId connectionId) {
+    return connectionId.asBytes()[0] & 0xFF;
+  }
+
+  private final int workerIndex;
+
+  public WorkerConnectionIds(final int workerIndex) {
+    checkArgument(workerIndex >= 0 && workerIndex < MAX_WORKERS);
+
+    this.workerIndex = workerIndex;
+  }
+
+  @Override
+  public ConnectionId get() {
+    final byte[] id = new byte[ConnectionId.LENGTH];
+    Rnd.rndBytes(id);
+    id[0] = (byte) workerIndex;
+    return new ConnectionId(id);
+  }
+}
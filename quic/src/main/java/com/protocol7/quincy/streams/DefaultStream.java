@@ -5,30 +5,37 @@ import com.protocol7.quincy.protocol.StreamId;
 import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.ResetStreamFrame;
 import com.protocol7.quincy.protocol.frames.StreamFrame;
-import com.protocol7.quincy.protocol.packets.FullPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.EventExecutor;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A stream of a connection. Stream state is confined to the event loop of the connection, writes
+ * and resets from other threads are handed over to the event loop.
+ */
 public class DefaultStream implements Stream {
 
   private final long id;
   private final FrameSender sender;
+  private final EventExecutor executor;
   private final StreamListener listener;
-  private final AtomicLong offset = new AtomicLong(0);
+  private long offset = 0;
   private final StreamType streamType;
   private final SendStateMachine sendStateMachine = new SendStateMachine();
   private final ReceiveStateMachine receiveStateMachine = new ReceiveStateMachine();
   private final ReceivedDataBuffer receivedDataBuffer = new ReceivedDataBuffer();
-  private final AtomicBoolean seenFinish = new AtomicBoolean(false);
+  private boolean seenFinish = false;
 
   public DefaultStream(
       final long id,
       final FrameSender sender,
+      final EventExecutor executor,
       final StreamListener listener,
       final StreamType streamType) {
     this.id = StreamId.validate(id);
     this.sender = sender;
+    this.executor = executor;
     this.listener = listener;
     this.streamType = streamType;
   }
@@ -42,23 +49,46 @@ public class DefaultStream implements Stream {
   }
 
   public void write(final byte[] b, final boolean finish) {
-    canWrite();
+    write(Unpooled.wrappedBuffer(b), finish);
+  }
+
+  public void write(final ByteBuf b, final boolean finish) {
+    if (!executor.inEventLoop()) {
+      executor.execute(() -> write(b, finish));
+      return;
+    }
+
+    try {
+      canWrite();
+    } catch (final IllegalStateException e) {
+      b.release();
+      throw e;
+    }
 
-    final long frameOffset = offset.getAndAdd(b.length);
+    final long frameOffset = offset;
+    offset += b.readableBytes();
     final StreamFrame sf = new StreamFrame(id, frameOffset, finish, b);
-    final FullPacket p = sender.send(sf);
 
-    sendStateMachine.onStream(p.getPacketNumber(), finish);
+    // queued, so that stream data is held back while the congestion window is full
+    sender.queue(sf);
+    sender.flush();
+
+    sendStateMachine.onStream(finish);
   }
 
   public void reset(final int applicationErrorCode) {
-    canReset();
+    if (!executor.inEventLoop()) {
+      executor.execute(() -> reset(applicationErrorCode));
+      return;
+    }
 
-    final Frame frame = new ResetStreamFrame(id, applicationErrorCode, offset.get());
+    canReset();
 
-    final FullPacket p = sender.send(frame);
+    // queued, held back like stream data while the congestion window is full
+    sender.queue(new ResetStreamFrame(id, applicationErrorCode, offset));
+    sender.flush();
 
-    sendStateMachine.onReset(p.getPacketNumber());
+    sendStateMachine.onReset();
   }
 
   private void canWrite() {
@@ -73,31 +103,54 @@ public class DefaultStream implements Stream {
     }
   }
 
-  public void onData(final long offset, final boolean finish, final byte[] b) {
+  /**
+   * Handles received data, retained until handed over to the listener. The caller keeps its
+   * reference to the data.
+   */
+  public void onData(final long offset, final boolean finish, final ByteBuf b) {
     if (finish) {
-      seenFinish.set(true);
+      seenFinish = true;
     }
 
-    receivedDataBuffer.onData(b, offset, finish);
+    // a duplicate, so that the listener can read the data without affecting the caller
+    receivedDataBuffer.onData(b.retainedDuplicate(), offset, finish);
 
     while (receivedDataBuffer.hasMore()) {
-      final Optional<byte[]> data = receivedDataBuffer.read();
+      final ByteBuf data = receivedDataBuffer.read().get();
 
-      listener.onData(this, data.get(), receivedDataBuffer.isDone() && seenFinish.get());
+      listener.onData(this, data, receivedDataBuffer.isDone() && seenFinish);
     }
 
     receiveStateMachine.onStream(finish);
   }
 
+  /** The offset up to which data has been handed over to the listener */
+  public long getReadOffset() {
+    return receivedDataBuffer.getReadOffset();
+  }
+
   public void onReset(final int applicationErrorCode, final long offset) {
     receiveStateMachine.onReset();
     receiveStateMachine.onAppReadReset();
   }
 
+  /** Lost data is sent again, unless the stream has been reset */
+  public Optional<Frame> onLost(final StreamFrame frame) {
+    if (sendStateMachine.isReset()) {
+      frame.release();
+      return Optional.empty();
+    }
+    return Optional.of(frame);
+  }
+
   public void onAck(final long pn) {
     sendStateMachine.onAck(pn);
   }
 
+  public void onResetAck() {
+    sendStateMachine.onResetAck();
+  }
+
   public boolean isFinished() {
     return !sendStateMachine.canSend() || !receiveStateMachine.canReceive();
   }
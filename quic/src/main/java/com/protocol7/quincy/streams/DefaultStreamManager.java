@@ -5,22 +5,30 @@ import static java.util.Objects.requireNonNull;
 import com.protocol7.quincy.FrameSender;
 import com.protocol7.quincy.PipelineContext;
 import com.protocol7.quincy.connection.State;
-import com.protocol7.quincy.protocol.frames.AckBlock;
-import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.flowcontrol.FlowControlHandler;
 import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.ResetStreamFrame;
 import com.protocol7.quincy.protocol.frames.StreamFrame;
 import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.ShortPacket;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.List;
+import java.util.Optional;
 
 public class DefaultStreamManager implements StreamManager {
 
   private final Streams streams;
   private final StreamListener listener;
+  private final FlowControlHandler flowControlHandler;
 
-  public DefaultStreamManager(final FrameSender frameSender, final StreamListener listener) {
-    this.streams = new Streams(requireNonNull(frameSender));
+  public DefaultStreamManager(
+      final FrameSender frameSender,
+      final EventExecutor executor,
+      final StreamListener listener,
+      final FlowControlHandler flowControlHandler) {
+    this.streams = new Streams(requireNonNull(frameSender), requireNonNull(executor));
     this.listener = requireNonNull(listener);
+    this.flowControlHandler = requireNonNull(flowControlHandler);
   }
 
   @Override
@@ -40,14 +48,14 @@ public class DefaultStreamManager implements StreamManager {
 
           final DefaultStream stream = streams.getOrCreate(sf.getStreamId(), listener);
 
-          stream.onData(sf.getOffset(), sf.isFin(), sf.getData());
+          stream.onData(sf.getOffset(), sf.isFin(), sf.content());
+
+          // receive windows follow the data read, handed over to the listener once in order
+          flowControlHandler.onRead(sf.getStreamId(), stream.getReadOffset());
         } else if (frame instanceof ResetStreamFrame) {
           final ResetStreamFrame rsf = (ResetStreamFrame) frame;
           final DefaultStream stream = streams.getOrCreate(rsf.getStreamId(), listener);
           stream.onReset(rsf.getApplicationErrorCode(), rsf.getOffset());
-        } else if (frame instanceof AckFrame) {
-          final AckFrame af = (AckFrame) frame;
-          af.getBlocks().stream().forEach(this::handleAcks);
         }
       }
     }
@@ -55,13 +63,24 @@ public class DefaultStreamManager implements StreamManager {
     ctx.next(packet);
   }
 
-  private void handleAcks(final AckBlock block) {
-    // TODO optimize
-    final long smallest = block.getSmallest();
-    final long largest = block.getLargest();
-    for (long i = smallest; i <= largest; i++) {
-      streams.onAck(i);
+  @Override
+  public void onAck(final long packetNumber, final List<Frame> frames) {
+    // only the streams with frames in the acknowledged packet are notified
+    for (final Frame frame : frames) {
+      if (frame instanceof StreamFrame) {
+        streams.onAck(((StreamFrame) frame).getStreamId(), packetNumber);
+      } else if (frame instanceof ResetStreamFrame) {
+        streams.onResetAck(((ResetStreamFrame) frame).getStreamId());
+      }
+    }
+  }
+
+  @Override
+  public Optional<Frame> onLost(final Frame frame) {
+    if (frame instanceof StreamFrame) {
+      return streams.onLost((StreamFrame) frame);
     }
+    return Optional.of(frame);
   }
 
   @Override
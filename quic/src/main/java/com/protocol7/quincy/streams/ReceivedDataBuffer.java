@@ -1,37 +1,54 @@
 package com.protocol7.quincy.streams;
 
+import io.netty.buffer.ByteBuf;
 import java.util.Optional;
 import java.util.TreeMap;
 
+/**
+ * Buffers out of order stream data until it can be read in order. Buffered data is retained by the
+ * buffer, ownership is handed over to the caller on read.
+ */
 // TODO optimize
 public class ReceivedDataBuffer {
 
-  private final TreeMap<Long, byte[]> buffer = new TreeMap<>();
+  private final TreeMap<Long, ByteBuf> buffer = new TreeMap<>();
   private long largestOffset = 0;
   private long readOffset = 0;
 
-  public void onData(final byte[] data, final long offset, final boolean finish) {
-    buffer.put(offset, data);
+  public void onData(final ByteBuf data, final long offset, final boolean finish) {
+    if (offset < readOffset) {
+      // already read, retransmitted data
+      data.release();
+    } else {
+      final ByteBuf previous = buffer.put(offset, data);
+      if (previous != null) {
+        previous.release();
+      }
+    }
     if (finish) {
       this.largestOffset = offset;
     }
   }
 
   public boolean hasMore() {
-    return buffer.get(readOffset) != null;
+    return buffer.containsKey(readOffset);
   }
 
-  public Optional<byte[]> read() {
-    final byte[] b = buffer.get(readOffset);
+  public Optional<ByteBuf> read() {
+    final ByteBuf b = buffer.remove(readOffset);
 
     if (b != null) {
-      readOffset += b.length;
+      readOffset += b.readableBytes();
       return Optional.of(b);
     } else {
       return Optional.empty();
     }
   }
 
+  public long getReadOffset() {
+    return readOffset;
+  }
+
   public boolean isDone() {
     return readOffset > largestOffset;
   }
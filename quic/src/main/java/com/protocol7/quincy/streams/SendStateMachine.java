@@ -2,10 +2,8 @@ package com.protocol7.quincy.streams;
 
 import static com.protocol7.quincy.streams.SendStateMachine.SendStreamState.*;
 
-import java.util.Collections;
-import java.util.Optional;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class SendStateMachine {
 
@@ -23,11 +21,9 @@ public class SendStateMachine {
   }
 
   private SendStreamState state = Open;
-  private final Set<Long> outstandingStreamPackets =
-      Collections.newSetFromMap(new ConcurrentHashMap<>());
-  private Optional<Long> outstandingResetPacket = Optional.empty();
+  private final Set<Long> outstandingStreamPackets = new HashSet<>();
 
-  public void onStream(final long pn, final boolean fin) {
+  public void onStream(final boolean fin) {
     if (state == Open || state == Send) {
       if (fin) {
         state = DataSent;
@@ -39,10 +35,9 @@ public class SendStateMachine {
     }
   }
 
-  public void onReset(final long pn) {
+  public void onReset() {
     if (state == Open || state == Send || state == DataSent) {
       state = ResetSent;
-      outstandingResetPacket = Optional.of(pn);
     } else {
       throw new IllegalStateException();
     }
@@ -51,14 +46,16 @@ public class SendStateMachine {
   public void onAck(final long pn) {
     outstandingStreamPackets.remove(pn);
 
+    // acks of stream data sent before the reset are ignored
     if (state == DataSent && outstandingStreamPackets.isEmpty()) {
       state = DataRecvd;
-    } else if (state == ResetSent) {
-      if (outstandingResetPacket.isPresent() && outstandingResetPacket.get().equals(pn)) {
-        state = ResetRecvd;
-      } else {
-        throw new IllegalStateException();
-      }
+    }
+  }
+
+  /** Called when any packet carrying the reset, including retransmissions, is acknowledged */
+  public void onResetAck() {
+    if (state == ResetSent) {
+      state = ResetRecvd;
     }
   }
 
@@ -66,6 +63,10 @@ public class SendStateMachine {
     return state == Open || state == Send;
   }
 
+  public boolean isReset() {
+    return state == ResetSent || state == ResetRecvd;
+  }
+
   public boolean canReset() {
     return state == Open || state == Send || state == DataSent;
   }
@@ -1,5 +1,7 @@
 package com.protocol7.quincy.streams;
 
+import io.netty.buffer.ByteBuf;
+
 public interface Stream {
 
   long getId();
@@ -8,6 +10,12 @@ public interface Stream {
 
   void write(final byte[] b, boolean finish);
 
+  /**
+   * Writes the readable bytes of the buffer without copying. The stream takes ownership of the
+   * buffer, and releases it once the data has been acknowledged by the peer.
+   */
+  void write(final ByteBuf b, boolean finish);
+
   void reset(int applicationErrorCode);
 
   boolean isFinished();
@@ -1,5 +1,12 @@
 package com.protocol7.quincy.streams;
 
+import io.netty.buffer.ByteBuf;
+
 public interface StreamListener {
-  void onData(Stream stream, byte[] data, boolean finished);
+
+  /**
+   * Called with stream data in order. The data is a slice of the received packet, ownership is
+   * handed over to the listener which must release it.
+   */
+  void onData(Stream stream, ByteBuf data, boolean finished);
 }
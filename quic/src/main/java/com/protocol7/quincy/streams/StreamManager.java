@@ -1,8 +1,11 @@
 package com.protocol7.quincy.streams;
 
 import com.protocol7.quincy.InboundHandler;
+import com.protocol7.quincy.reliability.AckListener;
+import com.protocol7.quincy.reliability.LostFrameHandler;
 
-public interface StreamManager extends InboundHandler {
+/** Handles received stream frames, and acknowledgements and losses of sent stream frames */
+public interface StreamManager extends InboundHandler, AckListener, LostFrameHandler {
 
   Stream openStream(boolean client, boolean bidirectional);
 }
@@ -2,17 +2,23 @@ package com.protocol7.quincy.streams;
 
 import com.protocol7.quincy.FrameSender;
 import com.protocol7.quincy.protocol.StreamId;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
+import io.netty.util.concurrent.EventExecutor;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
 
 public class Streams {
 
   private final FrameSender frameSender;
-  private final Map<Long, DefaultStream> streams = new ConcurrentHashMap<>();
+  private final EventExecutor executor;
+  private final Map<Long, DefaultStream> streams = new HashMap<>();
   private long maxId = 0;
 
-  public Streams(final FrameSender frameSender) {
+  public Streams(final FrameSender frameSender, final EventExecutor executor) {
     this.frameSender = frameSender;
+    this.executor = executor;
   }
 
   public Stream openStream(
@@ -20,7 +26,7 @@ public class Streams {
     final StreamType type = bidirectional ? StreamType.Bidirectional : StreamType.Sending;
     final long streamId = StreamId.next(maxId, client, bidirectional);
     this.maxId = streamId;
-    final DefaultStream stream = new DefaultStream(streamId, frameSender, handler, type);
+    final DefaultStream stream = new DefaultStream(streamId, frameSender, executor, handler, type);
     streams.put(streamId, stream);
     return stream;
   }
@@ -30,18 +36,35 @@ public class Streams {
     if (stream == null) {
       stream =
           new DefaultStream(
-              streamId, frameSender, handler, StreamType.Bidirectional); // TODO support stream type
-      final DefaultStream existingStream = streams.putIfAbsent(streamId, stream);
-      if (existingStream != null) {
-        stream = existingStream;
-      }
+              streamId,
+              frameSender,
+              executor,
+              handler,
+              StreamType.Bidirectional); // TODO support stream type
+      streams.put(streamId, stream);
     }
     return stream;
   }
 
-  public void onAck(final long pn) {
-    for (final DefaultStream stream : streams.values()) {
+  public Optional<Frame> onLost(final StreamFrame frame) {
+    final DefaultStream stream = streams.get(frame.getStreamId());
+    if (stream != null) {
+      return stream.onLost(frame);
+    }
+    return Optional.of(frame);
+  }
+
+  public void onAck(final long streamId, final long pn) {
+    final DefaultStream stream = streams.get(streamId);
+    if (stream != null) {
       stream.onAck(pn);
     }
   }
+
+  public void onResetAck(final long streamId) {
+    final DefaultStream stream = streams.get(streamId);
+    if (stream != null) {
+      stream.onResetAck();
+    }
+  }
 }
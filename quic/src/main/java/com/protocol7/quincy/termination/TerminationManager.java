@@ -2,6 +2,7 @@ package com.protocol7.quincy.termination;
 
 import com.protocol7.quincy.InboundHandler;
 import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.connection.ConnectionTimer;
 import com.protocol7.quincy.connection.InternalConnection;
 import com.protocol7.quincy.connection.State;
 import com.protocol7.quincy.protocol.TransportError;
@@ -10,30 +11,24 @@ import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.FrameType;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
-import io.netty.util.Timeout;
-import io.netty.util.Timer;
-import io.netty.util.TimerTask;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class TerminationManager implements InboundHandler {
 
-  private final AtomicReference<Timeout> timeout = new AtomicReference<>(null);
   private final InternalConnection connection;
-  private final Timer timer;
   private final long idleTimeoutMs;
-  private final TimerTask idleTask;
+  private final ConnectionTimer.Deadline idleDeadline;
 
   public TerminationManager(
       final InternalConnection connection,
-      final Timer timer,
+      final ConnectionTimer timer,
       final long idleTimeout,
       final TimeUnit idleUnit) {
     this.connection = connection;
-    this.timer = timer;
     this.idleTimeoutMs = idleUnit.toMillis(idleTimeout);
-    this.idleTask =
-        timeout -> connection.close(TransportError.NO_ERROR, FrameType.PADDING, "Timeout");
+    this.idleDeadline =
+        timer.deadline(
+            () -> connection.close(TransportError.NO_ERROR, FrameType.PADDING, "Timeout"));
   }
 
   @Override
@@ -57,12 +52,7 @@ public class TerminationManager implements InboundHandler {
   }
 
   private void resetIdleTimer() {
-    timeout.updateAndGet(
-        timeout -> {
-          if (timeout != null) {
-            timeout.cancel();
-          }
-          return timer.newTimeout(idleTask, idleTimeoutMs, TimeUnit.MILLISECONDS);
-        });
+    // only moves the deadline, the timer is re-armed when the previous deadline expires
+    idleDeadline.set(idleTimeoutMs, TimeUnit.MILLISECONDS);
   }
 }
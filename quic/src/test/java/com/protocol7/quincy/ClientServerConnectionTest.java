@@ -15,6 +15,7 @@ import com.protocol7.quincy.connection.PacketSender;
 import com.protocol7.quincy.connection.State;
 import com.protocol7.quincy.flowcontrol.DefaultFlowControlHandler;
 import com.protocol7.quincy.flowcontrol.FlowControlHandler;
+import com.protocol7.quincy.flowcontrol.ReceiveBudget;
 import com.protocol7.quincy.netty.QuicBuilder;
 import com.protocol7.quincy.protocol.ConnectionId;
 import com.protocol7.quincy.protocol.packets.Packet;
@@ -25,9 +26,13 @@ import com.protocol7.quincy.streams.StreamListener;
 import com.protocol7.quincy.tls.KeyUtil;
 import com.protocol7.quincy.tls.NoopCertificateValidator;
 import com.protocol7.quincy.tls.aead.AEAD;
-import io.netty.util.Timer;
+import com.protocol7.quincy.utils.Ticker;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.util.concurrent.DefaultEventExecutor;
 import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import io.netty.util.concurrent.SucceededFuture;
@@ -56,29 +61,37 @@ public class ClientServerConnectionTest {
 
   private @Mock StreamListener clientListener;
   private @Mock StreamListener serverListener;
-  private @Mock Timer scheduler;
-  private final FlowControlHandler flowControlHandler = new DefaultFlowControlHandler(1000, 1000);
+  private final FlowControlHandler clientFlowControlHandler =
+      new DefaultFlowControlHandler(
+          1000, 1000, 1_000_000, new ReceiveBudget(1_000_000), Ticker.systemTicker());
+  private final FlowControlHandler serverFlowControlHandler =
+      new DefaultFlowControlHandler(
+          1000, 1000, 1_000_000, new ReceiveBudget(1_000_000), Ticker.systemTicker());
 
-  public static class ForwardingPacketSender implements PacketSender {
+  // each connection is confined to an event loop of its own
+  private final EventExecutor clientExecutor = new DefaultEventExecutor();
+  private final EventExecutor serverExecutor = new DefaultEventExecutor();
 
-    private final DefaultEventExecutor executor = new DefaultEventExecutor();
+  public static class ForwardingPacketSender implements PacketSender {
 
     private InternalConnection peer;
+    private EventExecutor peerExecutor;
 
-    public void setPeer(final InternalConnection peer) {
+    public void setPeer(final InternalConnection peer, final EventExecutor peerExecutor) {
       this.peer = peer;
+      this.peerExecutor = peerExecutor;
     }
 
     @Override
     public Future<Void> send(final Packet packet, final AEAD aead) {
-      executor.execute(() -> peer.onPacket(packet));
+      peerExecutor.execute(() -> peer.onPacket(packet));
 
-      return new SucceededFuture(executor, null);
+      return new SucceededFuture(peerExecutor, null);
     }
 
     @Override
     public Future<Void> destroy() {
-      return new SucceededFuture(executor, null);
+      return new SucceededFuture(peerExecutor, null);
     }
   }
 
@@ -90,10 +103,10 @@ public class ClientServerConnectionTest {
             destConnectionId,
             clientListener,
             clientSender,
-            flowControlHandler,
+            clientFlowControlHandler,
             TestUtil.getTestAddress(),
             new NoopCertificateValidator(),
-            scheduler);
+            clientExecutor);
 
     final List<byte[]> certificates = KeyUtil.getCertsFromCrt("src/test/resources/server.crt");
     final PrivateKey privateKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
@@ -106,12 +119,13 @@ public class ClientServerConnectionTest {
             serverSender,
             certificates,
             privateKey,
-            flowControlHandler,
+            serverFlowControlHandler,
             TestUtil.getTestAddress(),
-            scheduler);
+            serverExecutor,
+            ConnectionId::random);
 
-    clientSender.setPeer(serverConnection);
-    serverSender.setPeer(clientConnection);
+    clientSender.setPeer(serverConnection, serverExecutor);
+    serverSender.setPeer(clientConnection, clientExecutor);
   }
 
   @Test
@@ -139,7 +153,7 @@ public class ClientServerConnectionTest {
               return null;
             })
         .when(serverListener)
-        .onData(any(), eq(PING), eq(true));
+        .onData(any(), eq(Unpooled.wrappedBuffer(PING)), eq(true));
 
     // send ping
     final Stream stream = clientConnection.openStream();
@@ -148,7 +162,7 @@ public class ClientServerConnectionTest {
     sleep();
 
     // verify we got pong
-    verify(clientListener).onData(any(), eq(PONG), eq(true));
+    verify(clientListener).onData(any(), eq(Unpooled.wrappedBuffer(PONG)), eq(true));
   }
 
   @Test
@@ -166,9 +180,9 @@ public class ClientServerConnectionTest {
     }
 
     // wait until all messages have arrived
-    ArgumentCaptor<byte[]> captor = null;
+    ArgumentCaptor<ByteBuf> captor = null;
     for (int i = 0; i < 10; i++) {
-      captor = ArgumentCaptor.forClass(byte[].class);
+      captor = ArgumentCaptor.forClass(ByteBuf.class);
       verify(serverListener, atLeast(0))
           .onData(any(Stream.class), captor.capture(), any(Boolean.class));
 
@@ -182,7 +196,7 @@ public class ClientServerConnectionTest {
       assertEquals(100, captor.getAllValues().size());
 
       for (int i = 0; i < 100; i++) {
-        final byte[] value = captor.getAllValues().get(i);
+        final byte[] value = ByteBufUtil.getBytes(captor.getAllValues().get(i));
         assertArrayEquals(b(i), value);
       }
     } else {
@@ -57,6 +57,19 @@ public class ServerRetryHandlerTest {
     verify(ctx, never()).next(any(Packet.class));
   }
 
+  @Test
+  public void retryWithConnectionIdSupplier() {
+    final ConnectionId newConnectionId = ConnectionId.random();
+    final ServerRetryHandler handler =
+        new ServerRetryHandler(retryToken, 10000, TimeUnit.MILLISECONDS, () -> newConnectionId);
+
+    handler.onReceivePacket(p(Optional.empty()), ctx);
+
+    final ArgumentCaptor<RetryPacket> retryCaptor = ArgumentCaptor.forClass(RetryPacket.class);
+    verify(ctx).sendPacket(retryCaptor.capture());
+    assertEquals(of(newConnectionId), retryCaptor.getValue().getSourceConnectionId());
+  }
+
   @Test
   public void withToken() {
     final InitialPacket initialPacket =
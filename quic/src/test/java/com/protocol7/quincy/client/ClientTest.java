@@ -14,13 +14,16 @@ import com.protocol7.quincy.protocol.*;
 import com.protocol7.quincy.protocol.frames.*;
 import com.protocol7.quincy.protocol.packets.*;
 import com.protocol7.quincy.streams.StreamListener;
+import com.protocol7.quincy.tls.EncryptionLevel;
 import com.protocol7.quincy.tls.KeyUtil;
 import com.protocol7.quincy.tls.NoopCertificateValidator;
 import com.protocol7.quincy.tls.ServerTlsSession;
 import com.protocol7.quincy.tls.ServerTlsSession.ServerHelloAndHandshake;
 import com.protocol7.quincy.tls.aead.InitialAEAD;
 import com.protocol7.quincy.utils.Rnd;
-import io.netty.util.Timer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.util.concurrent.*;
 import java.security.PrivateKey;
 import java.util.List;
@@ -50,10 +53,13 @@ public class ClientTest {
 
   @Mock private PacketSender packetSender;
   @Mock private StreamListener streamListener;
-  @Mock private Timer scheduler;
+  @Mock private EventExecutor executor;
 
   @Before
   public void setUp() {
+    // the test thread acts as the event loop of the connection
+    when(executor.inEventLoop()).thenReturn(true);
+
     when(packetSender.send(any(), any()))
         .thenReturn(new SucceededFuture(new DefaultEventExecutor(), null));
     when(packetSender.destroy())
@@ -68,7 +74,7 @@ public class ClientTest {
             flowControlHandler,
             TestUtil.getTestAddress(),
             new NoopCertificateValidator(),
-            scheduler);
+            executor);
 
     final PrivateKey privateKey = KeyUtil.getPrivateKey("src/test/resources/server.der");
     final List<byte[]> serverCert = KeyUtil.getCertsFromCrt("src/test/resources/server.crt");
@@ -181,13 +187,14 @@ public class ClientTest {
 
     connection.onPacket(packet(new StreamFrame(streamId, 0, true, DATA)));
 
-    final ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+    final ArgumentCaptor<ByteBuf> dataCaptor = ArgumentCaptor.forClass(ByteBuf.class);
     verify(streamListener).onData(any(), dataCaptor.capture(), eq(true));
 
-    assertArrayEquals(DATA, dataCaptor.getValue());
+    assertArrayEquals(DATA, ByteBufUtil.getBytes(dataCaptor.getValue()));
 
-    // verify ack
-    assertAck(4, 3, 3, 3);
+    // verify ack, sent with every other packet
+    connection.onPacket(packet(PingFrame.INSTANCE));
+    assertAck(4, 3, 3, 4);
   }
 
   @Test
@@ -197,13 +204,11 @@ public class ClientTest {
     connection.onPacket(packet(new StreamFrame(streamId, 0, false, DATA)));
     connection.onPacket(packet(new StreamFrame(streamId, DATA.length, true, DATA2)));
 
-    verify(streamListener).onData(any(), eq(DATA), eq(false));
-    verify(streamListener).onData(any(), eq(DATA2), eq(true));
+    verify(streamListener).onData(any(), eq(Unpooled.wrappedBuffer(DATA)), eq(false));
+    verify(streamListener).onData(any(), eq(Unpooled.wrappedBuffer(DATA2)), eq(true));
 
     // verify ack
-    assertAck(4, 3, 3, 3);
-    // verify ack
-    assertAck(5, 4, 4, 4);
+    assertAck(4, 3, 3, 4);
   }
 
   @Test
@@ -213,12 +218,11 @@ public class ClientTest {
     connection.onPacket(packet(new StreamFrame(streamId, DATA.length, true, DATA2)));
     connection.onPacket(packet(new StreamFrame(streamId, 0, false, DATA)));
 
-    verify(streamListener).onData(any(), eq(DATA), eq(false));
-    verify(streamListener).onData(any(), eq(DATA2), eq(true));
+    verify(streamListener).onData(any(), eq(Unpooled.wrappedBuffer(DATA)), eq(false));
+    verify(streamListener).onData(any(), eq(Unpooled.wrappedBuffer(DATA2)), eq(true));
 
-    // verify acks
-    assertAck(4, 3, 3, 3);
-    assertAck(5, 4, 4, 4);
+    // verify ack
+    assertAck(4, 3, 3, 4);
   }
 
   @Test
@@ -227,8 +231,9 @@ public class ClientTest {
 
     connection.onPacket(packet(new ResetStreamFrame(streamId, 123, 0)));
 
-    // verify ack
-    assertAck(4, 3, 3, 3);
+    // verify ack, sent with every other packet
+    connection.onPacket(packet(PingFrame.INSTANCE));
+    assertAck(4, 3, 3, 4);
   }
 
   @Test
@@ -237,8 +242,13 @@ public class ClientTest {
 
     connection.onPacket(packet(PingFrame.INSTANCE));
 
-    // verify ack
-    assertAck(4, 3, 3, 3);
+    // the ack is delayed
+    verify(packetSender, times(3)).send(any(), any());
+
+    connection.onPacket(packet(PingFrame.INSTANCE));
+
+    // verify ack, sent with every other packet
+    assertAck(4, 3, 3, 4);
   }
 
   @Test
@@ -302,6 +312,81 @@ public class ClientTest {
     verify(packetSender).destroy();
   }
 
+  @Test
+  public void queuedFramesPacked() {
+    handshake();
+
+    connection.queue(new MaxDataFrame(1000), new MaxStreamDataFrame(streamId, 1000));
+    connection.flush();
+
+    // both frames in a single packet
+    verify(packetSender, times(4)).send(any(), any());
+    final ShortPacket packet = (ShortPacket) captureSentPacket(4);
+    assertEquals(
+        List.of(new MaxDataFrame(1000), new MaxStreamDataFrame(streamId, 1000)),
+        packet.getPayload().getFrames());
+  }
+
+  @Test
+  public void queuedFramesSentWithAck() {
+    handshake();
+
+    connection.queue(new MaxDataFrame(1000));
+    connection.onPacket(packet(PingFrame.INSTANCE));
+
+    verify(packetSender, times(4)).send(any(), any());
+    final ShortPacket packet = (ShortPacket) captureSentPacket(4);
+    final List<Frame> frames = packet.getPayload().getFrames();
+    assertEquals(2, frames.size());
+    assertEquals(List.of(new AckBlock(3, 3)), ((AckFrame) frames.get(0)).getBlocks());
+    assertEquals(new MaxDataFrame(1000), frames.get(1));
+  }
+
+  @Test
+  public void queuedFramesFillMaxPacketSize() {
+    handshake();
+
+    for (int i = 0; i < 10; i++) {
+      connection.queue(new StreamFrame(streamId, i * 300, false, new byte[300]));
+    }
+    connection.flush();
+
+    // four frames fit in each packet
+    verify(packetSender, times(6)).send(any(), any());
+    for (int i = 4; i <= 6; i++) {
+      final ShortPacket packet = (ShortPacket) captureSentPacket(i);
+      final ByteBuf bb = Unpooled.buffer();
+      packet.write(bb, connection.getAEAD(EncryptionLevel.OneRtt));
+      assertTrue(bb.writerIndex() <= new QuicBuilder().configuration().getMaxPacketSize());
+    }
+    assertEquals(4, ((ShortPacket) captureSentPacket(4)).getPayload().getFrames().size());
+    assertEquals(4, ((ShortPacket) captureSentPacket(5)).getPayload().getFrames().size());
+    assertEquals(2, ((ShortPacket) captureSentPacket(6)).getPayload().getFrames().size());
+  }
+
+  @Test
+  public void congestionWindowLimitsSending() {
+    handshake();
+    clearInvocations(packetSender);
+
+    // one frame per packet, more than fits in the initial congestion window
+    for (int i = 0; i < 40; i++) {
+      connection.queue(new StreamFrame(streamId, i * 1000, false, new byte[1000]));
+    }
+    connection.flush();
+
+    final ArgumentCaptor<Packet> captor = ArgumentCaptor.forClass(Packet.class);
+    verify(packetSender, atLeastOnce()).send(captor.capture(), any());
+    final int sent = captor.getAllValues().size();
+    assertTrue(sent < 40);
+
+    // acks open up the window for the held back frames
+    final long largest = ((FullPacket) captor.getValue()).getPacketNumber();
+    connection.onPacket(packet(new AckFrame(0, new AckBlock(1, largest))));
+
+    verify(packetSender, atLeast(sent + 1)).send(any(), any());
+  }
+
   private void assertAck(
       final int number, final int packetNumber, final int smallest, final int largest) {
     final ShortPacket ackPacket = (ShortPacket) captureSentPacket(number);
@@ -0,0 +1,137 @@
+package com.protocol7.quincy.congestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.reliability.DeliveryRateSampler;
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.reliability.SentPacketTracker;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Runs BBR against a simulated bottleneck link, with a FIFO queue draining at the link rate and a
+ * fixed propagation delay. Every packet delivered over the link is acknowledged immediately.
+ */
+public class BbrTest {
+
+  // 10 Mbit/s
+  private static final long RATE = 1_250_000;
+  private static final long ONE_WAY_DELAY = ms(20);
+  private static final long DURATION = TimeUnit.SECONDS.toNanos(12);
+
+  private long now = 0;
+  private final Ticker ticker = () -> now;
+  private final RttEstimator rttEstimator = new RttEstimator(25, TimeUnit.MILLISECONDS);
+  private final Bbr bbr = new Bbr(1200, rttEstimator, ticker);
+  private final DeliveryRateSampler sampler = new DeliveryRateSampler(ticker);
+  private final SentPacketTracker tracker = new SentPacketTracker(bbr, sampler, ticker);
+
+  // packet numbers and ack arrival times of packets on the link, in order
+  private final ArrayDeque<long[]> acks = new ArrayDeque<>();
+  private final Set<Bbr.State> states = EnumSet.noneOf(Bbr.State.class);
+  private long pn = 0;
+  private long linkFree = 0;
+  private long nextSend = 0;
+
+  // stats from the second half of the run
+  private long ackedBytes = 0;
+  private long rttSum = 0;
+  private long rttCount = 0;
+
+  @Test
+  public void deepBuffer() {
+    run(1000, 0);
+
+    assertModel();
+    assertEquals(RATE, ackedBytes * 1e9 / (DURATION / 2), 0.1 * RATE);
+    // the queue is kept short, not filling the buffer
+    assertTrue(rttSum / rttCount < 1.5 * 2 * ONE_WAY_DELAY);
+    assertTrue(states.contains(Bbr.State.PROBE_BW_UP));
+    assertTrue(states.contains(Bbr.State.PROBE_RTT));
+  }
+
+  @Test
+  public void randomLoss() {
+    // loss based controllers collapse with 1% random loss on a path like this
+    run(1000, 0.01);
+
+    assertModel();
+    assertEquals(RATE, ackedBytes * 1e9 / (DURATION / 2), 0.2 * RATE);
+  }
+
+  @Test
+  public void shallowBuffer() {
+    run(10, 0);
+
+    assertModel();
+    assertEquals(RATE, ackedBytes * 1e9 / (DURATION / 2), 0.2 * RATE);
+  }
+
+  private void assertModel() {
+    assertEquals(RATE, bbr.getMaxBandwidth(), 0.1 * RATE);
+    assertEquals(2 * ONE_WAY_DELAY, bbr.getMinRtt(), ms(2));
+  }
+
+  private void run(final int bufferPackets, final double lossRate) {
+    final Random random = new Random(123);
+
+    while (now < DURATION) {
+      while (bbr.canSend() && nextSend <= now) {
+        send(bufferPackets, random.nextDouble() < lossRate);
+      }
+
+      final long nextAck = acks.isEmpty() ? Long.MAX_VALUE : acks.peek()[1];
+      now = Math.max(now, Math.min(nextAck, bbr.canSend() ? nextSend : Long.MAX_VALUE));
+
+      while (!acks.isEmpty() && acks.peek()[1] <= now) {
+        ack(acks.poll()[0]);
+      }
+      states.add(bbr.getState());
+    }
+  }
+
+  private void send(final int bufferPackets, final boolean lost) {
+    final ShortPacket packet =
+        ShortPacket.create(false, Optional.empty(), pn, new PaddingFrame(1150));
+    final int size = packet.calculateLength();
+    tracker.put(packet);
+
+    final long transmission = size * TimeUnit.SECONDS.toNanos(1) / RATE;
+    final long queued = Math.max(0, linkFree - now) / transmission;
+    if (!lost && queued < bufferPackets) {
+      linkFree = Math.max(now, linkFree) + transmission;
+      acks.add(new long[] {pn, linkFree + 2 * ONE_WAY_DELAY});
+    }
+
+    pn++;
+    nextSend = now + size * TimeUnit.SECONDS.toNanos(1) / bbr.getPacingRate().get();
+  }
+
+  private void ack(final long packetNumber) {
+    final long sentTime = tracker.getSentTime(packetNumber);
+    final int size = tracker.getSize(packetNumber);
+    tracker.remove(packetNumber, packetNumber, (ackedPn, frames) -> {});
+    tracker.removeLost(packetNumber, rttEstimator.lossDelay(), (lostPn, frames) -> {});
+    rttEstimator.update(now - sentTime, 0, true);
+    sampler.sample().ifPresent(bbr::onRateSample);
+
+    if (now > DURATION / 2) {
+      ackedBytes += size;
+      rttSum += now - sentTime;
+      rttCount++;
+    }
+  }
+
+  private static long ms(final long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
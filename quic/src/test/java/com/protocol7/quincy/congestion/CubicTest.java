@@ -0,0 +1,106 @@
+package com.protocol7.quincy.congestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CubicTest {
+
+  private static final int MSS = 1000;
+
+  @Mock private Ticker ticker;
+
+  private final RttEstimator rttEstimator = new RttEstimator(25, TimeUnit.MILLISECONDS);
+  private Cubic cc;
+  private long pn = 0;
+
+  @Before
+  public void setUp() {
+    rttEstimator.update(TimeUnit.MILLISECONDS.toNanos(100), 0, true);
+    cc = new Cubic(MSS, rttEstimator, ticker);
+  }
+
+  @Test
+  public void slowStart() {
+    ack(0);
+
+    assertEquals(11 * MSS, cc.getCongestionWindow());
+  }
+
+  @Test
+  public void multiplicativeDecrease() {
+    lose(ms(100));
+
+    assertEquals(7 * MSS, cc.getCongestionWindow());
+    assertEquals(10 * MSS, cc.getMaxWindow(), 0);
+
+    // only one reduction per recovery period
+    lose(ms(100));
+    assertEquals(7 * MSS, cc.getCongestionWindow());
+  }
+
+  @Test
+  public void fastConvergence() {
+    lose(ms(100));
+    // lost again before reaching the previous max window
+    lose(ms(200));
+
+    assertEquals(4900, cc.getCongestionWindow());
+    assertEquals(7 * MSS * (1 + Cubic.BETA) / 2, cc.getMaxWindow(), 0.001);
+  }
+
+  @Test
+  public void concaveGrowth() {
+    lose(ms(100));
+
+    // grows towards the max window, but not beyond it before reaching it
+    long previous = cc.getCongestionWindow();
+    for (int i = 1; i <= 18; i++) {
+      ack(ms(100 + i * 100));
+      final long window = cc.getCongestionWindow();
+      assertTrue(window >= previous);
+      previous = window;
+    }
+    assertTrue(cc.getCongestionWindow() > 7 * MSS);
+    assertTrue(cc.getCongestionWindow() <= 10 * MSS);
+  }
+
+  @Test
+  public void convexGrowth() {
+    lose(ms(100));
+
+    // past the time to reach the max window, probing for more
+    for (int i = 1; i <= 40; i++) {
+      ack(ms(100 + i * 100));
+    }
+    assertTrue(cc.getCongestionWindow() > 10 * MSS);
+  }
+
+  private void ack(final long now) {
+    when(ticker.nanoTime()).thenReturn(now);
+    cc.onPacketSent(pn, now, MSS);
+    cc.onPacketAcked(pn, now, MSS);
+    pn++;
+  }
+
+  private void lose(final long now) {
+    when(ticker.nanoTime()).thenReturn(now);
+    cc.onPacketSent(pn, now - 1, MSS);
+    cc.onPacketLost(pn, now - 1, MSS);
+    pn++;
+  }
+
+  private static long ms(final long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
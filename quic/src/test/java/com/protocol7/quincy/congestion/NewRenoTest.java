@@ -0,0 +1,149 @@
+package com.protocol7.quincy.congestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NewRenoTest {
+
+  private static final int MSS = 1000;
+
+  @Mock private Ticker ticker;
+
+  private NewReno cc;
+
+  @Before
+  public void setUp() {
+    cc = new NewReno(MSS, new RttEstimator(25, TimeUnit.MILLISECONDS), ticker);
+  }
+
+  @Test
+  public void initialWindow() {
+    assertEquals(10 * MSS, cc.getCongestionWindow());
+    assertEquals(0, cc.getBytesInFlight());
+    assertTrue(cc.canSend());
+  }
+
+  @Test
+  public void canSend() {
+    for (int pn = 0; pn < 10; pn++) {
+      assertTrue(cc.canSend());
+      cc.onPacketSent(pn, 0, MSS);
+    }
+
+    assertEquals(10 * MSS, cc.getBytesInFlight());
+    assertFalse(cc.canSend());
+
+    cc.onPacketDiscarded(0, MSS);
+    assertTrue(cc.canSend());
+  }
+
+  @Test
+  public void slowStart() {
+    cc.onPacketSent(1, 0, MSS);
+    cc.onPacketAcked(1, 0, MSS);
+
+    // grows by the acknowledged bytes
+    assertEquals(11 * MSS, cc.getCongestionWindow());
+    assertEquals(0, cc.getBytesInFlight());
+  }
+
+  @Test
+  public void loss() {
+    cc.onPacketSent(1, 0, MSS);
+    cc.onPacketSent(2, 0, MSS);
+    when(ticker.nanoTime()).thenReturn(100L);
+
+    cc.onPacketLost(1, 0, MSS);
+    assertEquals(5 * MSS, cc.getCongestionWindow());
+
+    // only one reduction for packets sent before recovery started
+    cc.onPacketLost(2, 0, MSS);
+    assertEquals(5 * MSS, cc.getCongestionWindow());
+    assertEquals(0, cc.getBytesInFlight());
+  }
+
+  @Test
+  public void noGrowthInRecovery() {
+    cc.onPacketSent(1, 0, MSS);
+    cc.onPacketSent(2, 0, MSS);
+    when(ticker.nanoTime()).thenReturn(100L);
+    cc.onPacketLost(1, 0, MSS);
+
+    cc.onPacketAcked(2, 0, MSS);
+    assertEquals(5 * MSS, cc.getCongestionWindow());
+  }
+
+  @Test
+  public void congestionAvoidance() {
+    when(ticker.nanoTime()).thenReturn(100L);
+    cc.onPacketSent(1, 0, MSS);
+    cc.onPacketLost(1, 0, MSS);
+
+    // a window of acked packets sent after recovery grows the window by about one datagram
+    for (int pn = 2; pn < 7; pn++) {
+      cc.onPacketSent(pn, 200, MSS);
+      cc.onPacketAcked(pn, 200, MSS);
+    }
+    assertTrue(cc.getCongestionWindow() > 5 * MSS);
+    assertTrue(cc.getCongestionWindow() <= 6 * MSS);
+  }
+
+  @Test
+  public void congestionAvoidanceLargeWindow() {
+    // slow start up to a multi-MB window
+    int pn = 0;
+    for (; pn < 4000; pn++) {
+      cc.onPacketSent(pn, 0, MSS);
+      cc.onPacketAcked(pn, 0, MSS);
+    }
+    when(ticker.nanoTime()).thenReturn(100L);
+    cc.onPacketSent(pn, 0, MSS);
+    cc.onPacketLost(pn++, 0, MSS);
+    final long window = cc.getCongestionWindow();
+    assertEquals(2_005_000, window);
+
+    // each ack is a tiny share of the window, yet a window of acks grows it by one datagram
+    for (long acked = 0; acked < window; acked += MSS) {
+      assertEquals(window, cc.getCongestionWindow());
+      cc.onPacketSent(pn, 200, MSS);
+      cc.onPacketAcked(pn++, 200, MSS);
+    }
+    assertEquals(window + MSS, cc.getCongestionWindow());
+  }
+
+  @Test
+  public void minimumWindow() {
+    for (int i = 0; i < 10; i++) {
+      when(ticker.nanoTime()).thenReturn((long) i + 1);
+      cc.onPacketSent(i, i, MSS);
+      cc.onPacketLost(i, i, MSS);
+    }
+
+    assertEquals(2 * MSS, cc.getCongestionWindow());
+  }
+
+  @Test
+  public void minimumWindowFollowsMaxDatagramSize() {
+    cc.setMaxDatagramSize(2 * MSS);
+
+    for (int i = 0; i < 10; i++) {
+      when(ticker.nanoTime()).thenReturn((long) i + 1);
+      cc.onPacketSent(i, i, MSS);
+      cc.onPacketLost(i, i, MSS);
+    }
+
+    assertEquals(4 * MSS, cc.getCongestionWindow());
+  }
+}
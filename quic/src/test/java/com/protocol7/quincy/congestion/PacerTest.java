@@ -0,0 +1,98 @@
+package com.protocol7.quincy.congestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.reliability.RttEstimator;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PacerTest {
+
+  private static final int MSS = 1000;
+
+  @Mock private Ticker ticker;
+  @Mock private CongestionController congestionController;
+
+  private final RttEstimator rttEstimator = new RttEstimator(25, TimeUnit.MILLISECONDS);
+  private Pacer pacer;
+
+  @Before
+  public void setUp() {
+    when(ticker.nanoTime()).thenReturn(0L);
+    // 1 MB/s
+    when(congestionController.getPacingRate()).thenReturn(Optional.of(1_000_000L));
+
+    pacer = new Pacer(3, MSS, congestionController, rttEstimator, ticker);
+  }
+
+  @Test
+  public void burst() {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, pacer.delay());
+      pacer.onPacketSent(MSS);
+    }
+
+    // one packet per millisecond at the pacing rate
+    assertEquals(ms(1), pacer.delay());
+  }
+
+  @Test
+  public void refill() {
+    for (int i = 0; i < 3; i++) {
+      pacer.onPacketSent(MSS);
+    }
+
+    when(ticker.nanoTime()).thenReturn(ms(1) / 2);
+    assertEquals(ms(1) / 2, pacer.delay());
+
+    when(ticker.nanoTime()).thenReturn(ms(1));
+    assertEquals(0, pacer.delay());
+    pacer.onPacketSent(MSS);
+    assertEquals(ms(1), pacer.delay());
+  }
+
+  @Test
+  public void refillUpToBurst() {
+    pacer.onPacketSent(MSS);
+
+    // idle for long, but only the burst is sent back to back
+    when(ticker.nanoTime()).thenReturn(TimeUnit.SECONDS.toNanos(10));
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, pacer.delay());
+      pacer.onPacketSent(MSS);
+    }
+    assertEquals(ms(1), pacer.delay());
+  }
+
+  @Test
+  public void rateFromCongestionWindow() {
+    when(congestionController.getPacingRate()).thenReturn(Optional.empty());
+    when(congestionController.getCongestionWindow()).thenReturn(80_000L);
+    rttEstimator.update(ms(100), 0, true);
+
+    // 1.25 windows per smoothed RTT
+    assertEquals(1_000_000, pacer.rate(), 0.001);
+  }
+
+  @Test
+  public void maxDatagramSize() {
+    for (int i = 0; i < 3; i++) {
+      pacer.onPacketSent(MSS);
+    }
+
+    pacer.setMaxDatagramSize(2 * MSS);
+    assertEquals(ms(2), pacer.delay());
+  }
+
+  private static long ms(final long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
@@ -0,0 +1,48 @@
+package com.protocol7.quincy.connection;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+public class ChannelFlusherTest {
+
+  private final EmbeddedChannel channel = new EmbeddedChannel();
+  private final ChannelFlusher flusher = ChannelFlusher.get(channel);
+
+  @Test
+  public void samePerChannel() {
+    assertSame(flusher, ChannelFlusher.get(channel));
+  }
+
+  @Test
+  public void flushAfterBatch() {
+    flusher.beginBatch();
+
+    channel.write("a");
+    flusher.scheduleFlush();
+    channel.write("b");
+    flusher.scheduleFlush();
+
+    // no flush task scheduled while in batch
+    channel.runPendingTasks();
+    assertNull(channel.readOutbound());
+
+    flusher.endBatch();
+
+    assertSame("a", channel.readOutbound());
+    assertSame("b", channel.readOutbound());
+  }
+
+  @Test
+  public void flushOutsideOfBatch() {
+    channel.write("a");
+    flusher.scheduleFlush();
+
+    channel.runPendingTasks();
+
+    assertTrue(channel.outboundMessages().contains("a"));
+  }
+}
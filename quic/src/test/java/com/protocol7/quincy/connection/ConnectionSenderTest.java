@@ -0,0 +1,251 @@
+package com.protocol7.quincy.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.congestion.Pacer;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.CryptoFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.MaxDataFrame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.reliability.PacketBufferManager;
+import com.protocol7.quincy.tls.EncryptionLevel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConnectionSenderTest {
+
+  private static final int MAX_PACKET_SIZE = 1200;
+
+  @Mock private PacketBufferManager packetBuffer;
+  @Mock private CongestionController congestionController;
+  @Mock private Pacer pacer;
+  @Mock private ConnectionTimer timer;
+  @Mock private ConnectionTimer.Deadline pacingDeadline;
+
+  private final Optional<ConnectionId> connId = Optional.of(ConnectionId.random());
+  private final List<FullPacket> sent = new ArrayList<>();
+  private long nextPacketNumber = 1;
+  private boolean handshakeAvailable = true;
+
+  private ConnectionSender sender;
+
+  @Before
+  public void setUp() {
+    when(timer.deadline(any())).thenReturn(pacingDeadline);
+
+    sender =
+        new ConnectionSender(
+            new ConnectionSender.Packets() {
+              @Override
+              public boolean available(final EncryptionLevel level) {
+                return level != EncryptionLevel.Handshake || handshakeAvailable;
+              }
+
+              @Override
+              public int capacity(final EncryptionLevel level, final int packetSize) {
+                return FrameScheduler.shortPacketCapacity(packetSize, connId);
+              }
+
+              @Override
+              public Packet create(final EncryptionLevel level, final List<Frame> frames) {
+                return ShortPacket.create(false, connId, nextPacketNumber++, frames);
+              }
+
+              @Override
+              public Packet sendPacket(final Packet packet) {
+                sent.add((FullPacket) packet);
+                return packet;
+              }
+            },
+            packetBuffer,
+            congestionController,
+            pacer,
+            timer,
+            MAX_PACKET_SIZE);
+  }
+
+  @Test
+  public void flushPacksQueuedFrames() {
+    when(congestionController.canSend()).thenReturn(true);
+
+    sender.queue(EncryptionLevel.OneRtt, new MaxDataFrame(1), new MaxDataFrame(2));
+    sender.flush();
+
+    assertEquals(1, sent.size());
+    assertEquals(
+        List.of(new MaxDataFrame(1), new MaxDataFrame(2)), sent.get(0).getPayload().getFrames());
+    verify(pacer).onPacketSent(sent.get(0).calculateLength());
+  }
+
+  @Test
+  public void flushSplitsCryptoFrames() {
+    when(congestionController.canSend()).thenReturn(true);
+
+    sender.queue(EncryptionLevel.OneRtt, new CryptoFrame(0, new byte[2000]));
+    sender.flush();
+
+    assertEquals(2, sent.size());
+    for (final FullPacket packet : sent) {
+      assertTrue(packet.calculateLength() <= MAX_PACKET_SIZE);
+    }
+  }
+
+  @Test
+  public void flushDropsFramesTooLargeForPacket() {
+    when(congestionController.canSend()).thenReturn(true);
+
+    sender.queue(EncryptionLevel.OneRtt, new PaddingFrame(2000), new MaxDataFrame(1));
+    sender.flush();
+
+    assertEquals(1, sent.size());
+    assertEquals(List.of(new MaxDataFrame(1)), sent.get(0).getPayload().getFrames());
+  }
+
+  @Test
+  public void flushBlockedByCongestionWindow() {
+    when(congestionController.canSend()).thenReturn(false);
+
+    sender.queue(EncryptionLevel.OneRtt, new MaxDataFrame(1));
+    sender.flush();
+
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  public void flushBlockedByPacer() {
+    when(congestionController.canSend()).thenReturn(true);
+    when(pacer.delay()).thenReturn(123L);
+
+    sender.queue(EncryptionLevel.OneRtt, new MaxDataFrame(1));
+    sender.flush();
+
+    assertTrue(sent.isEmpty());
+    verify(pacingDeadline).set(123, TimeUnit.NANOSECONDS);
+  }
+
+  @Test
+  public void flushDiscardsLevelsWithoutKeys() {
+    when(congestionController.canSend()).thenReturn(true);
+    handshakeAvailable = false;
+
+    sender.queue(EncryptionLevel.Handshake, new MaxDataFrame(1));
+    sender.queue(EncryptionLevel.OneRtt, new MaxDataFrame(2));
+    sender.flush();
+
+    handshakeAvailable = true;
+    sender.flush();
+    assertEquals(1, sent.size());
+    assertEquals(List.of(new MaxDataFrame(2)), sent.get(0).getPayload().getFrames());
+  }
+
+  @Test
+  public void sendWithQueuedFrames() {
+    final AckFrame ack = new AckFrame(123, new AckBlock(1, 1));
+    when(packetBuffer.ackFrame(EncryptionLevel.OneRtt)).thenReturn(Optional.of(ack));
+
+    sender.queue(EncryptionLevel.OneRtt, new MaxDataFrame(1));
+    sender.send(EncryptionLevel.OneRtt, PingFrame.INSTANCE);
+
+    // not held back by the congestion window
+    assertEquals(1, sent.size());
+    assertEquals(
+        List.of(PingFrame.INSTANCE, ack, new MaxDataFrame(1)),
+        sent.get(0).getPayload().getFrames());
+  }
+
+  @Test
+  public void probeNotBlocked() {
+    sender.probe(EncryptionLevel.Handshake, PingFrame.INSTANCE);
+
+    // not held back by the congestion window or the pacer
+    assertEquals(1, sent.size());
+    assertEquals(List.of(PingFrame.INSTANCE), sent.get(0).getPayload().getFrames());
+    verify(pacer).onPacketSent(sent.get(0).calculateLength());
+  }
+
+  @Test
+  public void probeLimitedToTwoPackets() {
+    when(congestionController.canSend()).thenReturn(true);
+
+    sender.probe(
+        EncryptionLevel.OneRtt,
+        new CryptoFrame(0, new byte[1000]),
+        new CryptoFrame(1000, new byte[1000]),
+        new CryptoFrame(2000, new byte[1000]));
+
+    assertEquals(2, sent.size());
+
+    // the rest is flushed as the congestion window allows
+    sender.flush();
+    assertEquals(3, sent.size());
+  }
+
+  @Test
+  public void probeDroppedWithoutKeys() {
+    handshakeAvailable = false;
+
+    sender.probe(EncryptionLevel.Handshake, PingFrame.INSTANCE);
+
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  public void sendPadded() {
+    when(congestionController.canSend()).thenReturn(true);
+
+    final FullPacket packet = sender.sendPadded(1400).get();
+
+    // the capacity assumes the longest packet number encoding
+    assertTrue(packet.calculateLength() > 1400 - 4);
+    assertTrue(packet.calculateLength() <= 1400);
+    assertEquals(PingFrame.INSTANCE, packet.getPayload().getFrames().get(0));
+    assertTrue(packet.getPayload().getFrames().get(1) instanceof PaddingFrame);
+    verify(pacer).onPacketSent(packet.calculateLength());
+  }
+
+  @Test
+  public void sendPaddedBlockedByCongestionWindow() {
+    when(congestionController.canSend()).thenReturn(false);
+
+    assertEquals(Optional.empty(), sender.sendPadded(1400));
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  public void sendPaddedBlockedByPacer() {
+    when(congestionController.canSend()).thenReturn(true);
+    when(pacer.delay()).thenReturn(123L);
+
+    assertEquals(Optional.empty(), sender.sendPadded(1400));
+    assertTrue(sent.isEmpty());
+  }
+
+  @Test
+  public void maxPacketSize() {
+    sender.setMaxPacketSize(1400);
+
+    assertEquals(1400, sender.getMaxPacketSize());
+    verify(congestionController).setMaxDatagramSize(1400);
+    verify(pacer).setMaxDatagramSize(1400);
+  }
+}
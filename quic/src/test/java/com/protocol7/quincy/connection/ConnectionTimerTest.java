@@ -0,0 +1,145 @@
+package com.protocol7.quincy.connection;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.utils.Ticker;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConnectionTimerTest {
+
+  @Mock private EventExecutor executor;
+  @Mock private Ticker ticker;
+  @Mock private ScheduledFuture<?> scheduled;
+  @Mock private Runnable task1;
+  @Mock private Runnable task2;
+
+  private ConnectionTimer timer;
+
+  @Before
+  public void setUp() {
+    when(ticker.nanoTime()).thenReturn(0L);
+    doReturn(scheduled).when(executor).schedule(any(Runnable.class), anyLong(), any());
+
+    timer = new ConnectionTimer(executor, ticker);
+  }
+
+  @Test
+  public void scheduleEarliest() {
+    final ConnectionTimer.Deadline deadline1 = timer.deadline(task1);
+    final ConnectionTimer.Deadline deadline2 = timer.deadline(task2);
+
+    deadline1.set(100, TimeUnit.MILLISECONDS);
+    verify(executor).schedule(any(Runnable.class), eq(ms(100)), eq(TimeUnit.NANOSECONDS));
+
+    // earlier deadline re-arms
+    deadline2.set(50, TimeUnit.MILLISECONDS);
+    verify(scheduled).cancel(false);
+    verify(executor).schedule(any(Runnable.class), eq(ms(50)), eq(TimeUnit.NANOSECONDS));
+
+    // later deadline does not
+    deadline1.set(200, TimeUnit.MILLISECONDS);
+    verify(executor, times(2)).schedule(any(Runnable.class), anyLong(), any());
+  }
+
+  @Test
+  public void expire() {
+    final ConnectionTimer.Deadline deadline1 = timer.deadline(task1);
+    final ConnectionTimer.Deadline deadline2 = timer.deadline(task2);
+
+    deadline1.set(100, TimeUnit.MILLISECONDS);
+    final Runnable expire = captureScheduled(1);
+    deadline2.set(300, TimeUnit.MILLISECONDS);
+
+    when(ticker.nanoTime()).thenReturn(ms(100));
+    expire.run();
+
+    verify(task1).run();
+    verify(task2, never()).run();
+    assertFalse(deadline1.isSet());
+    assertTrue(deadline2.isSet());
+
+    // re-armed for the remaining deadline
+    verify(executor).schedule(any(Runnable.class), eq(ms(200)), eq(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void moveLater() {
+    final ConnectionTimer.Deadline deadline = timer.deadline(task1);
+
+    deadline.set(100, TimeUnit.MILLISECONDS);
+    final Runnable expire = captureScheduled(1);
+
+    // moved without re-arming
+    when(ticker.nanoTime()).thenReturn(ms(50));
+    deadline.set(100, TimeUnit.MILLISECONDS);
+
+    when(ticker.nanoTime()).thenReturn(ms(100));
+    expire.run();
+
+    // not yet expired, re-armed for the new deadline
+    verify(task1, never()).run();
+    verify(executor).schedule(any(Runnable.class), eq(ms(50)), eq(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void cancel() {
+    final ConnectionTimer.Deadline deadline = timer.deadline(task1);
+
+    deadline.set(100, TimeUnit.MILLISECONDS);
+    final Runnable expire = captureScheduled(1);
+    deadline.cancel();
+
+    when(ticker.nanoTime()).thenReturn(ms(100));
+    expire.run();
+
+    verify(task1, never()).run();
+  }
+
+  @Test
+  public void close() {
+    final ConnectionTimer.Deadline deadline = timer.deadline(task1);
+
+    deadline.set(100, TimeUnit.MILLISECONDS);
+    final Runnable expire = captureScheduled(1);
+
+    timer.close();
+    verify(scheduled).cancel(false);
+    assertFalse(deadline.isSet());
+
+    // no longer possible to set
+    deadline.set(100, TimeUnit.MILLISECONDS);
+    assertFalse(deadline.isSet());
+
+    when(ticker.nanoTime()).thenReturn(ms(100));
+    expire.run();
+    verify(task1, never()).run();
+  }
+
+  private Runnable captureScheduled(final int times) {
+    final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(times)).schedule(captor.capture(), anyLong(), any());
+    return captor.getValue();
+  }
+
+  private static long ms(final long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
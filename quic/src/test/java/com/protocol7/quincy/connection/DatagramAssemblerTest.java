@@ -0,0 +1,173 @@
+package com.protocol7.quincy.connection;
+
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.quincy.TestUtil;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.Version;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.packets.HandshakePacket;
+import com.protocol7.quincy.protocol.packets.InitialPacket;
+import com.protocol7.quincy.protocol.packets.Packet;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.protocol.packets.VersionNegotiationPacket;
+import com.protocol7.quincy.tls.aead.AEAD;
+import com.protocol7.quincy.tls.aead.TestAEAD;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.concurrent.Future;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class DatagramAssemblerTest {
+
+  private final AEAD aead = TestAEAD.create();
+  private final InetSocketAddress peerAddress = TestUtil.getTestAddress();
+  private final ConnectionId connId = ConnectionId.random();
+  private final EmbeddedChannel channel = new EmbeddedChannel();
+  private final ChannelFlusher flusher = ChannelFlusher.get(channel);
+
+  @Test
+  public void coalesceEncryptionLevels() {
+    final DatagramAssembler assembler = assembler(1452);
+
+    final Future<Void> f1 = assembler.add(initial(1), aead);
+    final Future<Void> f2 = assembler.add(handshake(2), aead);
+    final Future<Void> f3 = assembler.add(shortPacket(3), aead);
+
+    // all packets end up in the same datagram
+    assertEquals(f1, f2);
+    assertEquals(f2, f3);
+
+    final List<Packet> packets = parse(readDatagram());
+    assertEquals(3, packets.size());
+    assertTrue(packets.get(0) instanceof InitialPacket);
+    assertTrue(packets.get(1) instanceof HandshakePacket);
+    assertTrue(packets.get(2) instanceof ShortPacket);
+
+    assertNull(channel.readOutbound());
+    assertTrue(f1.isSuccess());
+  }
+
+  @Test
+  public void finishedByFlush() {
+    final DatagramAssembler assembler = assembler(1452);
+
+    assembler.add(initial(1), aead);
+    assembler.add(handshake(2), aead);
+
+    // nothing written until the flush
+    assertTrue(channel.outboundMessages().isEmpty());
+
+    channel.runPendingTasks();
+
+    assertEquals(2, parse(readDatagram()).size());
+  }
+
+  @Test
+  public void shortPacketEndsDatagram() {
+    final DatagramAssembler assembler = assembler(1452);
+
+    final Future<Void> f1 = assembler.add(shortPacket(1), aead);
+    final Future<Void> f2 = assembler.add(initial(2), aead);
+    assertFalse(f1 == f2);
+
+    channel.runPendingTasks();
+
+    assertEquals(1, parse(readDatagram()).size());
+    assertEquals(1, parse(readDatagram()).size());
+  }
+
+  @Test
+  public void exceedingMaxPacketSize() {
+    // a packet number of the same length as the ones added, nonces are never reused
+    final ByteBuf single = channel.alloc().buffer();
+    initial(4).write(single, aead);
+
+    // room for one packet only
+    final DatagramAssembler assembler = assembler(single.readableBytes() + 10);
+
+    assembler.add(initial(1), aead);
+    assembler.add(initial(2), aead);
+    assembler.add(initial(3), aead);
+
+    channel.runPendingTasks();
+
+    assertEquals(1, ((InitialPacket) parse(readDatagram()).get(0)).getPacketNumber());
+    assertEquals(2, ((InitialPacket) parse(readDatagram()).get(0)).getPacketNumber());
+    assertEquals(3, ((InitialPacket) parse(readDatagram()).get(0)).getPacketNumber());
+    assertNull(channel.readOutbound());
+  }
+
+  @Test
+  public void maxPacketSizeChanged() {
+    final ByteBuf single = channel.alloc().buffer();
+    initial(4).write(single, aead);
+
+    final DatagramAssembler assembler = assembler(single.readableBytes() + 10);
+    assembler.setMaxPacketSize(2 * single.readableBytes());
+
+    // both packets fit within the new size
+    assembler.add(initial(1), aead);
+    assembler.add(initial(2), aead);
+
+    channel.runPendingTasks();
+
+    assertEquals(2, parse(readDatagram()).size());
+    assertNull(channel.readOutbound());
+  }
+
+  @Test
+  public void versionNegotiationNotCoalesced() {
+    final DatagramAssembler assembler = assembler(1452);
+
+    assembler.add(initial(1), aead);
+    assembler.add(new VersionNegotiationPacket(of(connId), of(connId), Version.DRAFT_18), aead);
+
+    channel.runPendingTasks();
+
+    assertEquals(1, parse(readDatagram()).size());
+    assertEquals(1, parse(readDatagram()).size());
+  }
+
+  private DatagramAssembler assembler(final int maxPacketSize) {
+    return new DatagramAssembler(channel, peerAddress, maxPacketSize, flusher);
+  }
+
+  private ByteBuf readDatagram() {
+    final DatagramPacket dp = channel.readOutbound();
+    assertEquals(peerAddress, dp.recipient());
+    return dp.content();
+  }
+
+  private List<Packet> parse(final ByteBuf bb) {
+    final List<Packet> packets = new ArrayList<>();
+    while (bb.isReadable()) {
+      packets.add(Packet.parse(bb, connId.getLength()).complete(l -> aead));
+    }
+    return packets;
+  }
+
+  private InitialPacket initial(final long pn) {
+    return InitialPacket.create(
+        of(connId), of(connId), pn, Version.DRAFT_18, empty(), new PaddingFrame(1));
+  }
+
+  private HandshakePacket handshake(final long pn) {
+    return HandshakePacket.create(
+        of(connId), of(connId), pn, Version.DRAFT_18, new PaddingFrame(1));
+  }
+
+  private ShortPacket shortPacket(final long pn) {
+    return ShortPacket.create(false, of(connId), pn, PingFrame.INSTANCE);
+  }
+}
@@ -0,0 +1,175 @@
+package com.protocol7.quincy.connection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.primitives.Bytes;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.Version;
+import com.protocol7.quincy.protocol.frames.CryptoFrame;
+import com.protocol7.quincy.protocol.frames.MaxDataFrame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
+import com.protocol7.quincy.protocol.packets.HandshakePacket;
+import com.protocol7.quincy.protocol.packets.InitialPacket;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.tls.EncryptionLevel;
+import com.protocol7.quincy.tls.aead.AEAD;
+import com.protocol7.quincy.tls.aead.TestAEAD;
+import com.protocol7.quincy.utils.Rnd;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class FrameSchedulerTest {
+
+  private static final int MAX_PACKET_SIZE = 1452;
+  // encoded using the maximum packet number length
+  private static final long LARGE_PN = 1L << 30;
+
+  private final AEAD aead = TestAEAD.create();
+  private final Optional<ConnectionId> dcid = Optional.of(ConnectionId.random());
+  private final Optional<ConnectionId> scid = Optional.of(ConnectionId.random());
+
+  private final FrameScheduler scheduler = new FrameScheduler();
+
+  @Test
+  public void drainInOrder() {
+    scheduler.queue(EncryptionLevel.OneRtt, new MaxDataFrame(1), PingFrame.INSTANCE);
+    scheduler.queue(EncryptionLevel.OneRtt, new MaxDataFrame(2));
+
+    assertTrue(scheduler.hasQueued(EncryptionLevel.OneRtt));
+    assertEquals(
+        List.of(new MaxDataFrame(1), PingFrame.INSTANCE, new MaxDataFrame(2)),
+        scheduler.drain(EncryptionLevel.OneRtt, 100));
+    assertFalse(scheduler.hasQueued(EncryptionLevel.OneRtt));
+  }
+
+  @Test
+  public void drainSkipsFramesNotFitting() {
+    scheduler.queue(
+        EncryptionLevel.OneRtt, new PaddingFrame(10), new PaddingFrame(100), new PaddingFrame(20));
+
+    assertEquals(
+        List.of(new PaddingFrame(10), new PaddingFrame(20)),
+        scheduler.drain(EncryptionLevel.OneRtt, 50));
+
+    // kept for the next packet
+    assertEquals(List.of(new PaddingFrame(100)), scheduler.drain(EncryptionLevel.OneRtt, 100));
+    assertFalse(scheduler.hasQueued(EncryptionLevel.OneRtt));
+  }
+
+  @Test
+  public void drainNothingFits() {
+    scheduler.queue(EncryptionLevel.OneRtt, new PaddingFrame(100));
+
+    assertTrue(scheduler.drain(EncryptionLevel.OneRtt, 0).isEmpty());
+    assertTrue(scheduler.drain(EncryptionLevel.OneRtt, 99).isEmpty());
+
+    // not split, kept for a packet with room for it
+    assertEquals(Optional.empty(), scheduler.poll(EncryptionLevel.OneRtt, 99));
+    assertEquals(Optional.of(new PaddingFrame(100)), scheduler.poll(EncryptionLevel.OneRtt, 100));
+    assertEquals(Optional.empty(), scheduler.poll(EncryptionLevel.OneRtt, 100));
+  }
+
+  @Test
+  public void pollSplitsStreamFrames() {
+    final byte[] data = Rnd.rndBytes(100);
+    scheduler.queue(EncryptionLevel.OneRtt, new StreamFrame(0, 10, true, data));
+
+    assertTrue(scheduler.drain(EncryptionLevel.OneRtt, 60).isEmpty());
+    final StreamFrame first = (StreamFrame) scheduler.poll(EncryptionLevel.OneRtt, 60).get();
+    assertTrue(first.calculateLength() <= 60);
+    assertEquals(10, first.getOffset());
+    assertFalse(first.isFin());
+
+    // the rest is kept first for the next packet
+    final StreamFrame rest = (StreamFrame) scheduler.drain(EncryptionLevel.OneRtt, 100).get(0);
+    assertEquals(10 + first.getLength(), rest.getOffset());
+    assertTrue(rest.isFin());
+    assertArrayEquals(data, Bytes.concat(first.getData(), rest.getData()));
+    assertFalse(scheduler.hasQueued(EncryptionLevel.OneRtt));
+  }
+
+  @Test
+  public void pollDontSplitSmallParts() {
+    final StreamFrame frame = new StreamFrame(0, 0, true, new byte[100]);
+    scheduler.queue(EncryptionLevel.OneRtt, frame);
+
+    assertEquals(Optional.empty(), scheduler.poll(EncryptionLevel.OneRtt, 20));
+    assertTrue(scheduler.hasQueued(EncryptionLevel.OneRtt));
+  }
+
+  @Test
+  public void pollSplitsCryptoFrames() {
+    final byte[] data = Rnd.rndBytes(100);
+    scheduler.queue(EncryptionLevel.Handshake, new CryptoFrame(10, data));
+
+    final CryptoFrame first = (CryptoFrame) scheduler.poll(EncryptionLevel.Handshake, 60).get();
+    assertTrue(first.calculateLength() <= 60);
+    assertEquals(10, first.getOffset());
+
+    // the rest is kept first for the next packet
+    final CryptoFrame rest = (CryptoFrame) scheduler.poll(EncryptionLevel.Handshake, 100).get();
+    assertEquals(10 + first.getCryptoData().length, rest.getOffset());
+    assertArrayEquals(data, Bytes.concat(first.getCryptoData(), rest.getCryptoData()));
+    assertFalse(scheduler.hasQueued(EncryptionLevel.Handshake));
+  }
+
+  @Test
+  public void queuePerLevel() {
+    scheduler.queue(EncryptionLevel.Handshake, new MaxDataFrame(1));
+    scheduler.queue(EncryptionLevel.OneRtt, new MaxDataFrame(2));
+
+    assertEquals(List.of(new MaxDataFrame(1)), scheduler.drain(EncryptionLevel.Handshake, 100));
+    assertFalse(scheduler.hasQueued(EncryptionLevel.Initial));
+    assertFalse(scheduler.hasQueued(EncryptionLevel.Handshake));
+
+    scheduler.discard(EncryptionLevel.OneRtt);
+    assertFalse(scheduler.hasQueued(EncryptionLevel.OneRtt));
+  }
+
+  @Test
+  public void shortPacketCapacity() {
+    final int capacity = FrameScheduler.shortPacketCapacity(MAX_PACKET_SIZE, dcid);
+
+    final ShortPacket packet =
+        ShortPacket.create(false, dcid, LARGE_PN, new PaddingFrame(capacity));
+
+    final ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+    assertEquals(MAX_PACKET_SIZE, bb.writerIndex());
+  }
+
+  @Test
+  public void initialPacketCapacity() {
+    final Optional<byte[]> token = Optional.of(Rnd.rndBytes(20));
+    final int capacity = FrameScheduler.longPacketCapacity(MAX_PACKET_SIZE, dcid, scid, token);
+
+    final InitialPacket packet =
+        InitialPacket.create(
+            dcid, scid, LARGE_PN, Version.DRAFT_18, token, new PaddingFrame(capacity));
+
+    final ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+    assertEquals(MAX_PACKET_SIZE, bb.writerIndex());
+  }
+
+  @Test
+  public void handshakePacketCapacity() {
+    final int capacity =
+        FrameScheduler.longPacketCapacity(MAX_PACKET_SIZE, dcid, scid, Optional.empty());
+
+    final HandshakePacket packet =
+        HandshakePacket.create(dcid, scid, LARGE_PN, Version.DRAFT_18, new PaddingFrame(capacity));
+
+    final ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, aead);
+    assertEquals(MAX_PACKET_SIZE, bb.writerIndex());
+  }
+}
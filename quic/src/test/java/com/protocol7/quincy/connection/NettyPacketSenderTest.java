@@ -0,0 +1,102 @@
+package com.protocol7.quincy.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.TestUtil;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.tls.aead.AEAD;
+import com.protocol7.quincy.tls.aead.TestAEAD;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.DefaultAttributeMap;
+import java.net.InetSocketAddress;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NettyPacketSenderTest {
+
+  private final AEAD aead = TestAEAD.create();
+  private final InetSocketAddress peerAddress = TestUtil.getTestAddress();
+
+  @Mock private Channel channel;
+  @Mock private EventLoop eventLoop;
+  private final DefaultAttributeMap attributes = new DefaultAttributeMap();
+
+  private NettyPacketSender sender;
+
+  @Before
+  public void setUp() {
+    when(channel.alloc()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+    when(channel.eventLoop()).thenReturn(eventLoop);
+    when(channel.attr(any())).thenAnswer(inv -> attributes.attr(inv.getArgument(0)));
+
+    sender = new NettyPacketSender(channel, peerAddress, 1452);
+  }
+
+  @Test
+  public void flushOncePerBurst() {
+    sender.send(packet(1), aead);
+    sender.send(packet(2), aead);
+
+    final ArgumentCaptor<DatagramPacket> datagramCaptor =
+        ArgumentCaptor.forClass(DatagramPacket.class);
+    verify(channel, times(2)).write(datagramCaptor.capture());
+    datagramCaptor.getAllValues().forEach(dp -> assertEquals(peerAddress, dp.recipient()));
+
+    // a single flush scheduled for the burst, not yet run
+    final ArgumentCaptor<Runnable> flushCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(eventLoop).execute(flushCaptor.capture());
+    verify(channel, never()).flush();
+
+    flushCaptor.getValue().run();
+    verify(channel).flush();
+
+    // next burst gets a new flush
+    sender.send(packet(3), aead);
+    verify(eventLoop, times(2)).execute(any());
+  }
+
+  @Test
+  public void flushShared() {
+    // packets for different peers on the same channel share a single flush
+    final NettyPacketSender sender2 =
+        new NettyPacketSender(channel, new InetSocketAddress("127.0.0.1", 5555), 1452);
+
+    sender.send(packet(1), aead);
+    sender2.send(packet(2), aead);
+
+    verify(eventLoop, times(1)).execute(any());
+  }
+
+  @Test
+  public void destroyFlushes() {
+    sender.send(packet(1), aead);
+
+    sender.destroy();
+
+    final InOrder inOrder = inOrder(channel);
+    inOrder.verify(channel).flush();
+    inOrder.verify(channel).close();
+  }
+
+  private ShortPacket packet(final long pn) {
+    return ShortPacket.create(false, Optional.of(ConnectionId.random()), pn, PingFrame.INSTANCE);
+  }
+}
@@ -1,13 +1,18 @@
 package com.protocol7.quincy.flowcontrol;
 
 import static java.util.Optional.of;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 import com.protocol7.quincy.PipelineContext;
 import com.protocol7.quincy.protocol.ConnectionId;
@@ -24,11 +29,15 @@ import com.protocol7.quincy.protocol.frames.StreamFrame;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.ShortPacket;
+import java.util.Optional;
 import org.junit.Test;
 
 public class DefaultFlowControlHandlerTest {
 
-  private final DefaultFlowControlHandler handler = new DefaultFlowControlHandler(15, 10);
+  private long now = 0;
+  private final ReceiveBudget budget = new ReceiveBudget(100);
+  private final DefaultFlowControlHandler handler =
+      new DefaultFlowControlHandler(15, 10, 40, budget, () -> now);
   private final PipelineContext ctx = mock(PipelineContext.class);
   private final long sid = 123;
   private final long sid2 = 456;
@@ -40,7 +49,7 @@ public class DefaultFlowControlHandlerTest {
 
     // blocked on stream limit
     assertFalse(handler.tryConsume(sid, 11, ctx));
-    verify(ctx).send(new StreamDataBlockedFrame(sid, 10));
+    verify(ctx).queue(new StreamDataBlockedFrame(sid, 10));
   }
 
   @Test
@@ -50,7 +59,7 @@ public class DefaultFlowControlHandlerTest {
 
     // running out of stream tokens
     assertFalse(handler.tryConsume(sid, 12, ctx));
-    verify(ctx).send(new StreamDataBlockedFrame(sid, 10));
+    verify(ctx).queue(new StreamDataBlockedFrame(sid, 10));
 
     // increase stream tokens
     Packet packet = p(new MaxStreamDataFrame(sid, 12));
@@ -63,7 +72,7 @@ public class DefaultFlowControlHandlerTest {
 
     // but not this many
     assertFalse(handler.tryConsume(sid, 13, ctx));
-    verify(ctx).send(new StreamDataBlockedFrame(sid, 12));
+    verify(ctx).queue(new StreamDataBlockedFrame(sid, 12));
 
     // must not send any additional data blocked frames until new size
     assertFalse(handler.tryConsume(sid, 13, ctx));
@@ -76,7 +85,7 @@ public class DefaultFlowControlHandlerTest {
 
     // we must now get a new data blocked frame
     assertFalse(handler.tryConsume(sid, 14, ctx));
-    verify(ctx).send(new StreamDataBlockedFrame(sid, 13));
+    verify(ctx).queue(new StreamDataBlockedFrame(sid, 13));
   }
 
   @Test
@@ -85,7 +94,7 @@ public class DefaultFlowControlHandlerTest {
     verifyZeroInteractions(ctx);
 
     assertFalse(handler.tryConsume(sid2, 6, ctx));
-    verify(ctx).send(new DataBlockedFrame(15));
+    verify(ctx).queue(new DataBlockedFrame(15));
 
     Packet packet = p(new MaxDataFrame(16));
     handler.onReceivePacket(packet, ctx);
@@ -95,7 +104,7 @@ public class DefaultFlowControlHandlerTest {
     verifyZeroInteractions(ctx);
 
     assertFalse(handler.tryConsume(sid2, 7, ctx));
-    verify(ctx).send(new DataBlockedFrame(16));
+    verify(ctx).queue(new DataBlockedFrame(16));
 
     // must not send any additional data blocked frames until new size
     assertFalse(handler.tryConsume(sid2, 7, ctx));
@@ -108,25 +117,25 @@ public class DefaultFlowControlHandlerTest {
 
     // we must now get a new data blocked frame
     assertFalse(handler.tryConsume(sid2, 8, ctx));
-    verify(ctx).send(new DataBlockedFrame(17));
+    verify(ctx).queue(new DataBlockedFrame(17));
   }
 
   @Test
   public void streamFrames() {
-    Packet packet = p(new StreamFrame(sid, 0, false, new byte[3]));
+    Packet packet = read(new StreamFrame(sid, 0, false, new byte[3]));
     handler.onReceivePacket(packet, ctx);
     verify(ctx).next(packet);
 
-    // going over 50% of the max stream offset, send a new max stream offset
-    packet = p(new StreamFrame(sid, 3, false, new byte[3]));
+    // consumed over 50% of the stream window, send a new max stream offset a window ahead
+    packet = read(new StreamFrame(sid, 3, false, new byte[3]));
     handler.onReceivePacket(packet, ctx);
-    verify(ctx).send(new MaxStreamDataFrame(sid, 20));
+    verify(ctx).queue(new MaxStreamDataFrame(sid, 16));
     verify(ctx).next(packet);
 
-    // going over 50% of the max connection offset, send a new max connection offset
-    packet = p(new StreamFrame(sid, 6, false, new byte[3]));
+    // consumed over 50% of the connection window, send a new max connection offset
+    packet = read(new StreamFrame(sid, 6, false, new byte[3]));
     handler.onReceivePacket(packet, ctx);
-    verify(ctx).send(new MaxDataFrame(30));
+    verify(ctx).queue(new MaxDataFrame(24));
     verify(ctx).next(packet);
 
     // user more than flow control allow, must close connection
@@ -137,6 +146,170 @@ public class DefaultFlowControlHandlerTest {
     verify(ctx).next(packet);
   }
 
+  @Test
+  public void autotuneStreamWindow() {
+    when(ctx.getSmoothedRtt()).thenReturn(100L);
+
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, false, new byte[6])), ctx);
+    verify(ctx).queue(new MaxStreamDataFrame(sid, 16));
+
+    // the window was consumed within two round trips, and is doubled
+    now = 150;
+    handler.onReceivePacket(read(new StreamFrame(sid, 6, false, new byte[6])), ctx);
+    verify(ctx).queue(new MaxDataFrame(27), new MaxStreamDataFrame(sid, 32));
+
+    // consumed slower than that, the windows are kept
+    now = 500;
+    handler.onReceivePacket(read(new StreamFrame(sid, 12, false, new byte[11])), ctx);
+    verify(ctx).queue(new MaxDataFrame(38), new MaxStreamDataFrame(sid, 43));
+  }
+
+  @Test
+  public void autotuneConnectionWindowWithinBudget() {
+    when(ctx.getSmoothedRtt()).thenReturn(100L);
+    budget.reserve(95);
+
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, false, new byte[8])), ctx);
+    verify(ctx).queue(new MaxDataFrame(23), new MaxStreamDataFrame(sid, 18));
+
+    // doubling the window needs more than is left of the budget
+    now = 10;
+    handler.onReceivePacket(read(new StreamFrame(sid2, 0, false, new byte[8])), ctx);
+    verify(ctx).queue(new MaxDataFrame(36), new MaxStreamDataFrame(sid2, 18));
+    assertEquals(0, budget.getAvailable());
+
+    handler.close();
+    assertEquals(5, budget.getAvailable());
+  }
+
+  @Test
+  public void shrinkIdleWindow() {
+    when(ctx.getSmoothedRtt()).thenReturn(100L);
+
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, false, new byte[6])), ctx);
+    now = 10;
+    handler.onReceivePacket(read(new StreamFrame(sid, 6, false, new byte[6])), ctx);
+    verify(ctx).queue(new MaxDataFrame(27), new MaxStreamDataFrame(sid, 32));
+
+    // idle for more than ten round trips, back to the initial windows
+    now = 2000;
+    handler.onReceivePacket(read(new StreamFrame(sid, 12, false, new byte[14])), ctx);
+    verify(ctx).queue(new MaxDataFrame(41));
+
+    now = 2010;
+    handler.onReceivePacket(read(new StreamFrame(sid, 26, false, new byte[4])), ctx);
+    verify(ctx).queue(new MaxStreamDataFrame(sid, 40));
+  }
+
+  @Test
+  public void windowsFollowReadData() {
+    // out of order, not yet read
+    handler.onReceivePacket(p(new StreamFrame(sid, 6, false, new byte[3])), ctx);
+    verify(ctx, never()).queue(any(Frame.class));
+
+    handler.onRead(sid, 9);
+    handler.onReceivePacket(p(new StreamFrame(sid, 0, false, new byte[6])), ctx);
+    verify(ctx).queue(new MaxDataFrame(24), new MaxStreamDataFrame(sid, 19));
+  }
+
+  @Test
+  public void idleConnectionWindowHeldUntilRead() {
+    when(ctx.getSmoothedRtt()).thenReturn(100L);
+
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, false, new byte[8])), ctx);
+    now = 10;
+    handler.onReceivePacket(read(new StreamFrame(sid2, 0, false, new byte[8])), ctx);
+    verify(ctx).queue(new MaxDataFrame(46), new MaxStreamDataFrame(sid2, 18));
+    assertEquals(85, budget.getAvailable());
+
+    // idle, but the peer can still send up to the advertised limit
+    now = 2000;
+    handler.onReceivePacket(read(new StreamFrame(sid2, 8, false, new byte[1])), ctx);
+    assertEquals(85, budget.getAvailable());
+
+    handler.close();
+    assertEquals(100, budget.getAvailable());
+  }
+
+  @Test
+  public void noStreamUpdateAfterFin() {
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, true, new byte[6])), ctx);
+
+    verify(ctx, never()).queue(any(Frame.class));
+  }
+
+  @Test
+  public void noStreamUpdateForDataReorderedAfterFin() {
+    handler.onReceivePacket(p(new StreamFrame(sid, 6, true, new byte[2])), ctx);
+    // the earlier data arrives late, past half of the stream window, and all data is read
+    handler.onRead(sid, 8);
+    handler.onReceivePacket(p(new StreamFrame(sid, 0, false, new byte[6])), ctx);
+
+    // only the connection window is updated
+    verify(ctx).queue(new MaxDataFrame(23));
+    verify(ctx, times(1)).queue(any(Frame.class));
+    assertEquals(Optional.empty(), handler.onLost(new MaxStreamDataFrame(sid, 10)));
+  }
+
+  @Test
+  public void dataBeyondFinalSize() {
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, true, new byte[2])), ctx);
+    handler.onReceivePacket(p(new StreamFrame(sid, 2, false, new byte[1])), ctx);
+
+    verify(ctx)
+        .closeConnection(eq(TransportError.FINAL_OFFSET_ERROR), eq(FrameType.STREAM), anyString());
+  }
+
+  @Test
+  public void lostMaxData() {
+    final MaxDataFrame lost = new MaxDataFrame(15);
+    assertEquals(Optional.of(lost), handler.onLost(lost));
+
+    // superseded by a larger limit
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, false, new byte[5])), ctx);
+    handler.onReceivePacket(read(new StreamFrame(sid2, 0, false, new byte[3])), ctx);
+    verify(ctx).queue(new MaxDataFrame(23));
+    assertEquals(Optional.empty(), handler.onLost(lost));
+  }
+
+  @Test
+  public void lostMaxStreamData() {
+    final MaxStreamDataFrame lost = new MaxStreamDataFrame(sid, 10);
+    assertEquals(Optional.of(lost), handler.onLost(lost));
+
+    handler.onReceivePacket(read(new StreamFrame(sid, 0, false, new byte[6])), ctx);
+    verify(ctx).queue(new MaxStreamDataFrame(sid, 16));
+    assertEquals(Optional.empty(), handler.onLost(lost));
+  }
+
+  @Test
+  public void lostStreamDataBlocked() {
+    final StreamDataBlockedFrame lost = new StreamDataBlockedFrame(sid, 10);
+    assertFalse(handler.tryConsume(sid, 11, ctx));
+    assertEquals(Optional.of(lost), handler.onLost(lost));
+
+    // no longer blocked
+    handler.onReceivePacket(p(new MaxStreamDataFrame(sid, 20)), ctx);
+    assertEquals(Optional.empty(), handler.onLost(lost));
+  }
+
+  @Test
+  public void lostDataBlocked() {
+    final DataBlockedFrame lost = new DataBlockedFrame(15);
+    assertTrue(handler.tryConsume(sid, 10, ctx));
+    assertFalse(handler.tryConsume(sid2, 6, ctx));
+    assertEquals(Optional.of(lost), handler.onLost(lost));
+
+    handler.onReceivePacket(p(new MaxDataFrame(30)), ctx);
+    assertEquals(Optional.empty(), handler.onLost(lost));
+  }
+
+  // stream data read as soon as received, as in order data is handed over to the application
+  private FullPacket read(final StreamFrame frame) {
+    handler.onRead(frame.getStreamId(), frame.getOffset() + frame.getLength());
+    return p(frame);
+  }
+
   private FullPacket p(final Frame frame) {
     return new ShortPacket(false, of(ConnectionId.random()), PacketNumber.MIN, new Payload(frame));
   }
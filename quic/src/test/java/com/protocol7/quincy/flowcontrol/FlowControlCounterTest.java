@@ -61,6 +61,17 @@ public class FlowControlCounterTest {
     fcm.tryConsume(sid, 6);
   }
 
+  @Test
+  public void finishStream() {
+    assertConsume(fcm.tryConsume(sid, 5), true, 5, maxConn, 5, maxStream);
+    assertFalse(fcm.isFinished(sid));
+
+    fcm.finishStream(sid, 5);
+    assertTrue(fcm.isFinished(sid));
+    assertEquals(5, fcm.getStreamOffset(sid));
+    assertFalse(fcm.isFinished(sid2));
+  }
+
   @Test
   public void tryConsumeTooSmallConnectionSet() {
     assertConsume(fcm.tryConsume(sid, 8), true, 8, maxConn, 8, maxStream);
@@ -1,7 +1,9 @@
 package com.protocol7.quincy.flowcontrol;
 
 import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.packets.Packet;
+import java.util.Optional;
 
 public class MockFlowControlHandler implements FlowControlHandler {
   @Override
@@ -13,4 +15,15 @@ public class MockFlowControlHandler implements FlowControlHandler {
   public void beforeSendPacket(final Packet packet, final PipelineContext ctx) {
     ctx.next(packet);
   }
+
+  @Override
+  public Optional<Frame> onLost(final Frame frame) {
+    return Optional.of(frame);
+  }
+
+  @Override
+  public void onRead(final long streamId, final long offset) {}
+
+  @Override
+  public void close() {}
 }
@@ -0,0 +1,29 @@
+package com.protocol7.quincy.flowcontrol;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ReceiveBudgetTest {
+
+  private final ReceiveBudget budget = new ReceiveBudget(100);
+
+  @Test
+  public void reserve() {
+    assertEquals(60, budget.reserve(60));
+    assertEquals(40, budget.getAvailable());
+
+    // only what is left
+    assertEquals(40, budget.reserve(60));
+    assertEquals(0, budget.reserve(1));
+  }
+
+  @Test
+  public void release() {
+    budget.reserve(100);
+    budget.release(30);
+
+    assertEquals(30, budget.getAvailable());
+    assertEquals(30, budget.reserve(60));
+  }
+}
@@ -0,0 +1,119 @@
+package com.protocol7.quincy.flowcontrol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.OptionalLong;
+import org.junit.Test;
+
+public class ReceiveWindowTest {
+
+  private static final long RTT = 100;
+
+  private final ReceiveBudget budget = new ReceiveBudget(1000);
+  private final ReceiveWindow window = new ReceiveWindow(100, 400, budget);
+
+  @Test
+  public void updateAfterHalfRead() {
+    assertEquals(OptionalLong.empty(), window.onRead(50, 100, RTT, 0));
+    assertEquals(OptionalLong.of(151), window.onRead(51, 100, RTT, 0));
+  }
+
+  @Test
+  public void growWhenReadWithinTwoRtts() {
+    assertEquals(OptionalLong.of(160), window.onRead(60, 100, RTT, 0));
+    assertEquals(OptionalLong.of(320), window.onRead(120, 160, RTT, 150));
+    assertEquals(200, window.getWindow());
+    assertEquals(900, budget.getAvailable());
+  }
+
+  @Test
+  public void keepWhenReadSlowly() {
+    assertEquals(OptionalLong.of(160), window.onRead(60, 100, RTT, 0));
+    assertEquals(OptionalLong.of(220), window.onRead(120, 160, RTT, 250));
+    assertEquals(100, window.getWindow());
+  }
+
+  @Test
+  public void maxWindow() {
+    long offset = 0;
+    long max = 100;
+    for (int i = 0; i < 10; i++) {
+      offset = max - 1;
+      max = window.onRead(offset, max, RTT, i).getAsLong();
+    }
+
+    assertEquals(400, window.getWindow());
+    assertEquals(offset + 400, max);
+    assertEquals(700, budget.getAvailable());
+  }
+
+  @Test
+  public void limitedByBudget() {
+    budget.reserve(950);
+
+    window.onRead(60, 100, RTT, 0);
+    window.onRead(120, 160, RTT, 10);
+
+    assertEquals(150, window.getWindow());
+    assertEquals(0, budget.getAvailable());
+  }
+
+  @Test
+  public void shrinkWhenIdle() {
+    window.onRead(60, 100, RTT, 0);
+    window.onRead(120, 160, RTT, 10);
+    assertEquals(200, window.getWindow());
+
+    assertFalse(window.isIdle(RTT, 1000));
+    assertTrue(window.isIdle(RTT, 1011));
+
+    // not yet half of the initial window read
+    assertEquals(OptionalLong.empty(), window.onRead(260, 320, RTT, 2000));
+    assertEquals(100, window.getWindow());
+
+    // the peer can still send up to the advertised offset
+    assertEquals(900, budget.getAvailable());
+    window.onRead(320, 320, RTT, 2010);
+    assertEquals(1000, budget.getAvailable());
+  }
+
+  @Test
+  public void shrinkReleasedOnceAdvertisedRead() {
+    window.onRead(60, 100, RTT, 0);
+    window.onRead(120, 160, RTT, 10);
+
+    window.shrink(150, 320);
+    assertEquals(100, window.getWindow());
+    assertFalse(window.isReleased());
+    assertEquals(900, budget.getAvailable());
+
+    window.shrink(320, 320);
+    assertTrue(window.isReleased());
+    assertEquals(1000, budget.getAvailable());
+  }
+
+  @Test
+  public void closeReleasesShrunkWindow() {
+    window.onRead(60, 100, RTT, 0);
+    window.onRead(120, 160, RTT, 10);
+    window.shrink(150, 320);
+
+    window.close();
+
+    assertTrue(window.isReleased());
+    assertEquals(1000, budget.getAvailable());
+  }
+
+  @Test
+  public void close() {
+    window.onRead(60, 100, RTT, 0);
+    window.onRead(120, 160, RTT, 10);
+
+    window.close();
+
+    assertEquals(100, window.getWindow());
+    assertEquals(1000, budget.getAvailable());
+  }
+}
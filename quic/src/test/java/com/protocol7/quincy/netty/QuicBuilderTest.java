@@ -0,0 +1,24 @@
+package com.protocol7.quincy.netty;
+
+import com.protocol7.quincy.TestUtil;
+import com.protocol7.quincy.tls.KeyUtil;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.junit.Test;
+
+public class QuicBuilderTest {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void multipleWorkersRequireEpoll() {
+    // rejected before any channel is bound, so no event loop group is needed
+    new QuicBuilder()
+        .withCertificates(KeyUtil.getCertsFromCrt("src/test/resources/server.crt"))
+        .withPrivateKey(KeyUtil.getPrivateKey("src/test/resources/server.der"))
+        .withWorkers(2)
+        .bindServer(
+            null,
+            NioDatagramChannel.class,
+            TestUtil.getTestAddress(),
+            new ChannelInboundHandlerAdapter());
+  }
+}
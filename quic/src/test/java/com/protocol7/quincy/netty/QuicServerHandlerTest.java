@@ -0,0 +1,87 @@
+package com.protocol7.quincy.netty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.protocol7.quincy.TestUtil;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.server.WorkerConnectionIds;
+import com.protocol7.quincy.tls.KeyUtil;
+import com.protocol7.quincy.tls.aead.TestAEAD;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.DatagramPacket;
+import java.util.Optional;
+import org.junit.Test;
+
+public class QuicServerHandlerTest {
+
+  private final QuicServerHandler handler =
+      new QuicServerHandler(
+          new QuicBuilder().configuration(),
+          KeyUtil.getCertsFromCrt("src/test/resources/server.crt"),
+          KeyUtil.getPrivateKey("src/test/resources/server.der"));
+
+  @Test
+  public void invalidDatagramsInBatchAreReleased() {
+    final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+    final ByteBuf bb1 = Unpooled.wrappedBuffer("this is not a packet".getBytes());
+    final ByteBuf bb2 = Unpooled.wrappedBuffer("neither is this".getBytes());
+
+    try {
+      // both datagrams are read before read complete is fired
+      channel.writeInbound(
+          new DatagramPacket(bb1, TestUtil.getTestAddress(), TestUtil.getTestAddress()),
+          new DatagramPacket(bb2, TestUtil.getTestAddress(), TestUtil.getTestAddress()));
+      fail();
+    } catch (final RuntimeException expected) {
+      // rethrown by the embedded channel
+    }
+
+    assertEquals(0, bb1.refCnt());
+    assertEquals(0, bb2.refCnt());
+  }
+
+  @Test
+  public void forwardToOwningWorker() {
+    final ServerWorkers workers = new ServerWorkers(2);
+    final EmbeddedChannel channel0 = new EmbeddedChannel(handler(workers, 0));
+    final EmbeddedChannel channel1 = new EmbeddedChannel(handler(workers, 1));
+
+    // packet for a connection owned by worker 1
+    final ShortPacket packet =
+        ShortPacket.create(
+            false, Optional.of(new WorkerConnectionIds(1).get()), 1, PingFrame.INSTANCE);
+    final ByteBuf bb = Unpooled.buffer();
+    packet.write(bb, TestAEAD.create());
+
+    channel0.writeInbound(
+        new DatagramPacket(bb, TestUtil.getTestAddress(), TestUtil.getTestAddress()));
+
+    // not routed by worker 0
+    channel0.checkException();
+    assertEquals(1, bb.refCnt());
+
+    // but by worker 1, which fails as the connection has no 1-RTT keys
+    try {
+      channel1.runPendingTasks();
+      channel1.checkException();
+      fail();
+    } catch (final RuntimeException expected) {
+      // rethrown by the embedded channel
+    }
+    assertEquals(0, bb.refCnt());
+  }
+
+  private QuicServerHandler handler(final ServerWorkers workers, final int workerIndex) {
+    return new QuicServerHandler(
+        new QuicBuilder().configuration(),
+        KeyUtil.getCertsFromCrt("src/test/resources/server.crt"),
+        KeyUtil.getPrivateKey("src/test/resources/server.der"),
+        workers,
+        workerIndex);
+  }
+}
@@ -0,0 +1,260 @@
+package com.protocol7.quincy.pmtu;
+
+import static com.protocol7.quincy.pmtu.PathMtuDiscovery.BASE_PACKET_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.connection.State;
+import com.protocol7.quincy.protocol.ConnectionId;
+import com.protocol7.quincy.protocol.Payload;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PathMtuDiscoveryTest {
+
+  private static final int PACKET_SIZE = 1452;
+  private static final int MAX_PROBE_PACKET_SIZE = 8952;
+
+  private final Optional<ConnectionId> connectionId = Optional.of(ConnectionId.random());
+
+  @Mock private PipelineContext ctx;
+  @Mock private Ticker ticker;
+
+  private final List<Integer> probes = new ArrayList<>();
+  private final List<Long> probePacketNumbers = new ArrayList<>();
+  private final List<Integer> packetSizes = new ArrayList<>();
+  private long packetNumber = 0;
+  private long receivePacketNumber = 0;
+  private ShortPacket lastReceived;
+  private boolean congestionBlocked = false;
+
+  private PathMtuDiscovery pmtu;
+
+  @Before
+  public void setUp() {
+    when(ctx.getState()).thenReturn(State.Ready);
+
+    pmtu = discovery(MAX_PROBE_PACKET_SIZE);
+  }
+
+  private PathMtuDiscovery discovery(final int maxProbePacketSize) {
+    return new PathMtuDiscovery(
+        PACKET_SIZE,
+        maxProbePacketSize,
+        size -> {
+          if (congestionBlocked) {
+            return Optional.empty();
+          }
+          probes.add(size);
+          final FullPacket probe = packet(PingFrame.INSTANCE);
+          probePacketNumbers.add(probe.getPacketNumber());
+          return Optional.of(probe);
+        },
+        packetSizes::add,
+        ticker);
+  }
+
+  @Test
+  public void noProbeBeforeReady() {
+    when(ctx.getState()).thenReturn(State.BeforeReady);
+
+    receive(PingFrame.INSTANCE);
+
+    assertTrue(probes.isEmpty());
+  }
+
+  @Test
+  public void probeAcked() {
+    receive(PingFrame.INSTANCE);
+
+    assertEquals(List.of(5202), probes);
+    verify(ctx).next(lastReceived);
+
+    ackProbe();
+
+    // raised, and continues searching upwards
+    assertEquals(List.of(5202), packetSizes);
+    assertEquals(5202, pmtu.getPacketSize());
+    assertEquals(List.of(5202, 7077), probes);
+  }
+
+  @Test
+  public void probeOutstanding() {
+    receive(PingFrame.INSTANCE);
+    receive(PingFrame.INSTANCE);
+
+    // only one probe at a time
+    assertEquals(List.of(5202), probes);
+  }
+
+  @Test
+  public void probeHeldBackByCongestionControl() {
+    congestionBlocked = true;
+    receive(PingFrame.INSTANCE);
+    assertTrue(probes.isEmpty());
+
+    // probed with a later packet
+    congestionBlocked = false;
+    receive(PingFrame.INSTANCE);
+    assertEquals(List.of(5202), probes);
+  }
+
+  @Test
+  public void probeLost() {
+    receive(PingFrame.INSTANCE);
+
+    // retried until MAX_PROBES have been lost
+    for (int i = 1; i < PathMtuDiscovery.MAX_PROBES; i++) {
+      loseProbe();
+      assertEquals(i + 1, probes.size());
+      assertEquals(5202, (int) probes.get(i));
+    }
+
+    loseProbe();
+
+    // search continues below the failed size
+    assertEquals(3327, (int) probes.get(probes.size() - 1));
+    assertTrue(packetSizes.isEmpty());
+    assertEquals(PACKET_SIZE, pmtu.getPacketSize());
+  }
+
+  @Test
+  public void probeTimeout() {
+    when(ticker.nanoTime()).thenReturn(0L);
+    receive(PingFrame.INSTANCE);
+    assertEquals(1, probes.size());
+
+    when(ticker.nanoTime()).thenReturn(PathMtuDiscovery.PROBE_TIMEOUT_NANOS);
+    receive(PingFrame.INSTANCE);
+
+    // timed out probe is lost and retried
+    assertEquals(List.of(5202, 5202), probes);
+  }
+
+  @Test
+  public void searchDone() {
+    pmtu = discovery(PACKET_SIZE + PathMtuDiscovery.SEARCH_PRECISION - 1);
+
+    receive(PingFrame.INSTANCE);
+
+    assertTrue(probes.isEmpty());
+  }
+
+  @Test
+  public void convergesOnPathLimit() {
+    // simulates a path that drops any datagram larger than the limit
+    final int pathLimit = 4000;
+
+    receive(PingFrame.INSTANCE);
+
+    for (int i = 0; i < 100; i++) {
+      final int probeCount = probes.size();
+      if (probes.get(probeCount - 1) <= pathLimit) {
+        ackProbe();
+      } else {
+        loseProbe();
+      }
+
+      if (probes.size() == probeCount) {
+        // search done
+        break;
+      }
+    }
+
+    assertTrue(pmtu.getPacketSize() <= pathLimit);
+    assertTrue(pmtu.getPacketSize() > pathLimit - PathMtuDiscovery.SEARCH_PRECISION);
+  }
+
+  @Test
+  public void blackHole() {
+    // large packets sent, none of which get acked
+    for (int i = 0; i < PathMtuDiscovery.BLACK_HOLE_THRESHOLD; i++) {
+      send(largeStreamFrame());
+    }
+    final long lastLarge = packetNumber;
+
+    // while later, smaller packets are acked
+    send(PingFrame.INSTANCE);
+    send(PingFrame.INSTANCE);
+    send(PingFrame.INSTANCE);
+    receive(new AckFrame(0, new AckBlock(lastLarge + 1, packetNumber)));
+
+    assertEquals(List.of(BASE_PACKET_SIZE), packetSizes);
+    assertEquals(BASE_PACKET_SIZE, pmtu.getPacketSize());
+
+    // search restarts below the failed size
+    assertEquals(List.of(1326), probes);
+  }
+
+  @Test
+  public void noBlackHoleWhenLargeAcked() {
+    send(largeStreamFrame());
+    send(largeStreamFrame());
+    send(largeStreamFrame());
+    final long acked = packetNumber;
+    send(largeStreamFrame());
+    send(PingFrame.INSTANCE);
+    send(PingFrame.INSTANCE);
+    send(PingFrame.INSTANCE);
+
+    receive(new AckFrame(0, new AckBlock(acked + 2, packetNumber), new AckBlock(acked, acked)));
+
+    assertTrue(packetSizes.isEmpty());
+    assertEquals(PACKET_SIZE, pmtu.getPacketSize());
+  }
+
+  private void receive(final Frame... frames) {
+    receivePacketNumber++;
+    lastReceived = new ShortPacket(false, connectionId, receivePacketNumber, payload(frames));
+    pmtu.onReceivePacket(lastReceived, ctx);
+  }
+
+  private void send(final Frame... frames) {
+    pmtu.beforeSendPacket(packet(frames), ctx);
+  }
+
+  private void ackProbe() {
+    final long pn = probePacketNumbers.get(probePacketNumbers.size() - 1);
+    receive(new AckFrame(0, new AckBlock(pn, pn)));
+  }
+
+  private void loseProbe() {
+    // ack enough later packets for the probe to be considered lost
+    final long pn = probePacketNumbers.get(probePacketNumbers.size() - 1);
+    for (int i = 0; i < PathMtuDiscovery.PACKET_THRESHOLD; i++) {
+      send(PingFrame.INSTANCE);
+    }
+    receive(new AckFrame(0, new AckBlock(pn + 1, packetNumber)));
+  }
+
+  private StreamFrame largeStreamFrame() {
+    return new StreamFrame(0, 0, false, new byte[1400]);
+  }
+
+  private ShortPacket packet(final Frame... frames) {
+    packetNumber++;
+    return new ShortPacket(false, connectionId, packetNumber, payload(frames));
+  }
+
+  private static Payload payload(final Frame... frames) {
+    return new Payload(frames);
+  }
+}
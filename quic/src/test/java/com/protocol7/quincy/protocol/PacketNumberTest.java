@@ -1,6 +1,7 @@
 package com.protocol7.quincy.protocol;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 import com.protocol7.quincy.TestUtil;
 import com.protocol7.quincy.utils.Bytes;
@@ -52,6 +53,65 @@ public class PacketNumberTest {
     assertEquals(pn, parsed);
   }
 
+  @Test
+  public void roundtripByteBuf() {
+    final ByteBuf bb = Unpooled.buffer();
+    for (int len = 1; len <= 4; len++) {
+      final long pn = (1L << (8 * len)) - 2;
+      PacketNumber.write(pn, len, bb);
+      assertEquals(len, bb.readableBytes());
+
+      assertEquals(pn, PacketNumber.read(bb, len));
+      assertFalse(bb.isReadable());
+    }
+  }
+
+  @Test
+  public void getLength() {
+    assertEquals(1, PacketNumber.getLength(0));
+    assertEquals(1, PacketNumber.getLength(127));
+    assertEquals(2, PacketNumber.getLength(128));
+
+    assertEquals(1, PacketNumber.getLength(1000, 999));
+    assertEquals(1, PacketNumber.getLength(1000 + 127, 999));
+    assertEquals(2, PacketNumber.getLength(1000 + 128, 999));
+
+    // RFC 9000 appendix A.2
+    assertEquals(2, PacketNumber.getLength(0xac5c02, 0xabe8b3));
+    assertEquals(3, PacketNumber.getLength(0xace8fe, 0xabe8b3));
+
+    // never more than 4 bytes
+    assertEquals(4, PacketNumber.getLength(1L << 40, PacketNumber.NONE));
+  }
+
+  @Test
+  public void decode() {
+    // RFC 9000 appendix A.3
+    assertEquals(0xa82f9b32L, PacketNumber.decode(0x9b32, 2, 0xa82f30eaL));
+
+    assertEquals(0, PacketNumber.decode(0, 1, PacketNumber.NONE));
+    assertEquals(255, PacketNumber.decode(0xff, 1, 200));
+    // wraps forwards
+    assertEquals(256, PacketNumber.decode(0, 1, 255));
+    // and backwards, for reordered packets
+    assertEquals(255, PacketNumber.decode(0xff, 1, 256));
+  }
+
+  @Test
+  public void roundtripTruncated() {
+    // past 2^32 packets
+    final long largestAcked = (1L << 32) + 1000;
+    for (long pn = largestAcked + 1; pn < largestAcked + 70000; pn += 997) {
+      final int length = PacketNumber.getLength(pn, largestAcked);
+      final ByteBuf bb = Unpooled.buffer();
+      PacketNumber.write(pn, length, bb);
+
+      // the peer has received at least up to the largest acked
+      final long truncated = PacketNumber.read(bb, length);
+      assertEquals(pn, PacketNumber.decode(truncated, length, largestAcked));
+    }
+  }
+
   @Test
   public void parseVarint() {
     assertRead(0x19, "19");
@@ -62,8 +122,8 @@ public class PacketNumberTest {
 
   @Test
   public void writeVarint() {
-    assertWrite(0x19, "00000019");
-    assertWrite(0x3719, "00003719");
+    assertWrite(0x19, "19");
+    assertWrite(0x3719, "3719");
     assertWrite(0x2589fa19, "2589fa19");
     assertWrite(1160621137, "452dac51");
   }
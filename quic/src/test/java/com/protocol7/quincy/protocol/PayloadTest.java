@@ -1,6 +1,8 @@
 package com.protocol7.quincy.protocol;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 import com.protocol7.quincy.TestUtil;
 import com.protocol7.quincy.protocol.frames.*;
@@ -15,39 +17,84 @@ public class PayloadTest {
 
   private final AEAD aead = TestAEAD.create();
   private final long pn = 1;
-  private final byte[] aad = new byte[12];
+  private final int aadLength = 12;
 
   @Test
   public void roundtrip() {
     final Payload payload = new Payload(PingFrame.INSTANCE, new PaddingFrame(1));
 
     final ByteBuf bb = Unpooled.buffer();
-    payload.write(bb, aead, pn, aad);
+    bb.writeZero(aadLength);
+    payload.write(bb, aead, pn, 0);
 
-    final Payload parsed = Payload.parse(bb, payload.calculateLength(), aead, pn, aad);
+    bb.readerIndex(aadLength);
+    final Payload parsed = Payload.parse(bb, payload.calculateLength(), aead, pn, 0);
 
     assertEquals(payload, parsed);
   }
 
+  @Test
+  public void roundtripDirect() {
+    final Payload payload = new Payload(PingFrame.INSTANCE, new PaddingFrame(1));
+
+    final ByteBuf bb = Unpooled.directBuffer();
+    bb.writeZero(aadLength);
+    payload.write(bb, aead, pn, 0);
+
+    bb.readerIndex(aadLength);
+    final Payload parsed = Payload.parse(bb, payload.calculateLength(), aead, pn, 0);
+
+    assertEquals(payload, parsed);
+    assertFalse(bb.isReadable());
+  }
+
   @Test
   public void write() {
     final Payload payload = new Payload(PingFrame.INSTANCE, new PaddingFrame(1));
 
     final ByteBuf bb = Unpooled.buffer();
-    payload.write(bb, aead, pn, aad);
+    bb.writeZero(aadLength);
+    payload.write(bb, aead, pn, 0);
 
+    bb.readerIndex(aadLength);
     TestUtil.assertBuffer("e1eca61dcd946af283d48c55a5d25967efd6", bb);
   }
 
   @Test
   public void parse() {
-    final ByteBuf bb = Unpooled.copiedBuffer(Hex.dehex("e1eca61dcd946af283d48c55a5d25967efd6"));
-    final Payload parsed = Payload.parse(bb, bb.writerIndex(), aead, pn, aad);
+    final ByteBuf bb =
+        Unpooled.copiedBuffer(
+            new byte[aadLength], Hex.dehex("e1eca61dcd946af283d48c55a5d25967efd6"));
+    bb.readerIndex(aadLength);
+    final Payload parsed = Payload.parse(bb, bb.readableBytes(), aead, pn, 0);
+
+    assertFalse(bb.isReadable());
 
     final Payload expected = new Payload(PingFrame.INSTANCE, new PaddingFrame(1));
     assertEquals(expected, parsed);
   }
 
+  @Test
+  public void parseRetainsStreamData() {
+    final Payload payload =
+        new Payload(new StreamFrame(0, 0, false, "hello".getBytes()), PingFrame.INSTANCE);
+
+    final ByteBuf bb = Unpooled.buffer();
+    bb.writeZero(aadLength);
+    payload.write(bb, aead, pn, 0);
+
+    bb.readerIndex(aadLength);
+    final Payload parsed = Payload.parse(bb, payload.calculateLength(), aead, pn, 0);
+    final StreamFrame frame = (StreamFrame) parsed.getFrames().get(0);
+
+    // a slice of the decrypted packet, not a copy
+    assertSame(bb, frame.content().unwrap());
+    assertEquals(2, bb.refCnt());
+
+    parsed.release();
+    assertEquals(1, bb.refCnt());
+  }
+
   @Test
   public void addFrame() {
     final Payload payload = new Payload(PingFrame.INSTANCE);
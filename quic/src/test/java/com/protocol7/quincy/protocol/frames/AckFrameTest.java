@@ -50,4 +50,16 @@ public class AckFrameTest {
 
     assertEquals("02406444d20000", Hex.hex(Bytes.drainToArray(bb)));
   }
+
+  @Test
+  public void parseEcnCountsSkipped() {
+    // ACK_ECN of packet 100 with ECT(0), ECT(1) and CE counts of 1, 0 and 2, followed by a PING
+    final ByteBuf bb = Unpooled.wrappedBuffer(Hex.dehex("03406444d2000001000201"));
+
+    final AckFrame parsed = AckFrame.parse(bb);
+
+    assertEquals(1234, parsed.getAckDelay());
+    assertEquals(List.of(new AckBlock(100, 100)), parsed.getBlocks());
+    assertEquals(FrameType.PING, Frame.parse(bb).getType());
+  }
 }
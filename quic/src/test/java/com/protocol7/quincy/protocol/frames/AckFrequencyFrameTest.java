@@ -0,0 +1,32 @@
+package com.protocol7.quincy.protocol.frames;
+
+import static org.junit.Assert.assertEquals;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+public class AckFrequencyFrameTest {
+
+  @Test
+  public void roundtrip() {
+    final AckFrequencyFrame frame = new AckFrequencyFrame(123, 10, 25_000, true);
+
+    final ByteBuf bb = Unpooled.buffer();
+    frame.write(bb);
+
+    assertEquals(frame.calculateLength(), bb.readableBytes());
+
+    final AckFrequencyFrame parsed = AckFrequencyFrame.parse(bb);
+
+    assertEquals(frame.getSequenceNumber(), parsed.getSequenceNumber());
+    assertEquals(frame.getPacketTolerance(), parsed.getPacketTolerance());
+    assertEquals(frame.getUpdateMaxAckDelay(), parsed.getUpdateMaxAckDelay());
+    assertEquals(frame.isIgnoreOrder(), parsed.isIgnoreOrder());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void zeroPacketTolerance() {
+    new AckFrequencyFrame(123, 0, 25_000, true);
+  }
+}
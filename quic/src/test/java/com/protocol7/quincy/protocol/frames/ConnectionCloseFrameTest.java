@@ -34,4 +34,17 @@ public class ConnectionCloseFrameTest {
     assertEquals(ccf.getFrameType(), parsed.getFrameType());
     assertEquals(ccf.getReasonPhrase(), parsed.getReasonPhrase());
   }
+
+  @Test
+  public void roundtripExtensionFrameType() {
+    final ConnectionCloseFrame ccf = new ConnectionCloseFrame(12, FrameType.ACK_FREQUENCY, "");
+
+    final ByteBuf bb = Unpooled.buffer();
+    ccf.write(bb);
+    assertEquals(bb.writerIndex(), ccf.calculateLength());
+
+    final ConnectionCloseFrame parsed = ConnectionCloseFrame.parse(bb);
+
+    assertEquals(FrameType.ACK_FREQUENCY, parsed.getFrameType());
+  }
 }
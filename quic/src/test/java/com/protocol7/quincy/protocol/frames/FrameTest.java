@@ -1,7 +1,9 @@
 package com.protocol7.quincy.protocol.frames;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import com.protocol7.quincy.Varint;
 import com.protocol7.quincy.utils.Rnd;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
@@ -25,11 +27,26 @@ public class FrameTest {
     assertFrame(new AckFrame(123, new AckBlock(12, 13)));
   }
 
+  @Test
+  public void ackFrameMultipleBlocks() {
+    assertFrame(new AckFrame(123, new AckBlock(1000, 1100), new AckBlock(12, 13)));
+  }
+
+  @Test
+  public void streamFrameLarge() {
+    assertFrame(new StreamFrame(123, 100_000, false, Rnd.rndBytes(1000)));
+  }
+
   @Test
   public void streamFrame() {
     assertFrame(new StreamFrame(123, 124, true, "hello".getBytes()));
   }
 
+  @Test
+  public void ackFrequencyFrame() {
+    assertFrame(new AckFrequencyFrame(1, 2, 3, false));
+  }
+
   @Test
   public void paddingFrame() {
     assertFrame(new PaddingFrame(1));
@@ -102,10 +119,21 @@ public class FrameTest {
     assertFrame(new NewToken(Rnd.rndBytes(20)));
   }
 
+  @Test(expected = RuntimeException.class)
+  public void unknownTwoByteFrameType() {
+    // shares the first byte with ACK_FREQUENCY
+    final ByteBuf bb = Unpooled.buffer();
+    Varint.write(0xb0, bb);
+
+    Frame.parse(bb);
+  }
+
   private void assertFrame(final Frame frame) {
     final ByteBuf bb = Unpooled.buffer();
     frame.write(bb);
 
+    assertEquals(bb.writerIndex(), frame.calculateLength());
+
     final Frame parsed = Frame.parse(bb);
 
     assertTrue(parsed.getClass().equals(frame.getClass()));
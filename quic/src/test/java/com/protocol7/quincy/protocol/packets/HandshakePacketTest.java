@@ -35,7 +35,8 @@ public class HandshakePacketTest {
     assertEquals(srcConnId, parsed.getSourceConnectionId().get());
     assertEquals(PacketNumber.MIN, parsed.getPacketNumber());
     assertEquals(packet.getVersion(), parsed.getVersion());
-    assertEquals(1 + AEAD.OVERHEAD, parsed.getPayload().calculateLength());
+    // padded for header protection sampling
+    assertEquals(3 + AEAD.OVERHEAD, parsed.getPayload().calculateLength());
     assertTrue(parsed.getPayload().getFrames().get(0) instanceof PaddingFrame);
   }
 
@@ -0,0 +1,60 @@
+package com.protocol7.quincy.reliability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.protocol7.quincy.protocol.frames.AckFrequencyFrame;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AckFrequencyTest {
+
+  private final AckFrequency ackFrequency = new AckFrequency(25, TimeUnit.MILLISECONDS);
+
+  @Test
+  public void everyOtherPacket() {
+    assertFalse(ackFrequency.onAckElicitingPacket(false));
+    assertTrue(ackFrequency.onAckElicitingPacket(false));
+
+    ackFrequency.onAckSent();
+
+    assertFalse(ackFrequency.onAckElicitingPacket(false));
+  }
+
+  @Test
+  public void outOfOrder() {
+    assertTrue(ackFrequency.onAckElicitingPacket(true));
+  }
+
+  @Test
+  public void maxAckDelay() {
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(25), ackFrequency.getMaxAckDelay());
+  }
+
+  @Test
+  public void update() {
+    ackFrequency.update(new AckFrequencyFrame(0, 3, 10_000, true));
+
+    assertFalse(ackFrequency.onAckElicitingPacket(true));
+    assertFalse(ackFrequency.onAckElicitingPacket(false));
+    assertTrue(ackFrequency.onAckElicitingPacket(false));
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(10), ackFrequency.getMaxAckDelay());
+  }
+
+  @Test
+  public void updateIgnoresReordered() {
+    ackFrequency.update(new AckFrequencyFrame(1, 3, 10_000, true));
+    ackFrequency.update(new AckFrequencyFrame(0, 1, 20_000, false));
+
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(10), ackFrequency.getMaxAckDelay());
+  }
+
+  @Test
+  public void updateMinAckDelay() {
+    ackFrequency.update(new AckFrequencyFrame(0, 3, 10, true));
+
+    assertEquals(
+        TimeUnit.MICROSECONDS.toNanos(AckFrequency.MIN_ACK_DELAY), ackFrequency.getMaxAckDelay());
+  }
+}
@@ -0,0 +1,90 @@
+package com.protocol7.quincy.reliability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.utils.Ticker;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DeliveryRateSamplerTest {
+
+  @Mock private Ticker ticker;
+
+  private DeliveryRateSampler sampler;
+
+  // state recorded with each sent packet
+  private final long[] delivered = new long[10];
+  private final long[] deliveredTimes = new long[10];
+  private final long[] firstSentTimes = new long[10];
+  private final long[] sentTimes = new long[10];
+
+  @Before
+  public void setUp() {
+    sampler = new DeliveryRateSampler(ticker);
+  }
+
+  @Test
+  public void noSample() {
+    assertEquals(Optional.empty(), sampler.sample());
+  }
+
+  @Test
+  public void sample() {
+    send(0, 1000, true);
+    send(1, 1100, false);
+
+    ack(0, 100, 5000);
+    final RateSample first = sampler.sample().get();
+    assertEquals(100, first.getDelivered());
+    assertEquals(100, first.getTotalDelivered());
+    // ack interval from the send after idle
+    assertEquals(4000, first.getInterval());
+    assertEquals(4000, first.getRtt());
+
+    ack(1, 100, 5500);
+    final RateSample second = sampler.sample().get();
+    // delivered since the packet was sent
+    assertEquals(200, second.getDelivered());
+    assertEquals(4500, second.getInterval());
+    assertEquals(4400, second.getRtt());
+    assertEquals(200, second.getTotalDelivered());
+    assertEquals((long) (200 * 1e9 / 4500), second.getDeliveryRate());
+  }
+
+  @Test
+  public void mostRecentlySentPacket() {
+    send(0, 1000, true);
+    send(1, 2000, false);
+    send(2, 3000, false);
+
+    // acked by a single frame, largest first
+    ack(2, 100, 6000);
+    ack(0, 100, 6000);
+    final RateSample sample = sampler.sample().get();
+
+    assertEquals(3000, sample.getRtt());
+    assertEquals(200, sample.getAcked());
+    assertFalse(sampler.sample().isPresent());
+  }
+
+  private void send(final int pn, final long time, final boolean idle) {
+    sampler.onPacketSent(time, idle);
+    sentTimes[pn] = time;
+    delivered[pn] = sampler.getDelivered();
+    deliveredTimes[pn] = sampler.getDeliveredTime();
+    firstSentTimes[pn] = sampler.getFirstSentTime();
+  }
+
+  private void ack(final int pn, final int size, final long time) {
+    when(ticker.nanoTime()).thenReturn(time);
+    sampler.onPacketAcked(
+        sentTimes[pn], size, delivered[pn], deliveredTimes[pn], firstSentTimes[pn]);
+  }
+}
@@ -2,6 +2,7 @@ package com.protocol7.quincy.reliability;
 
 import static com.protocol7.quincy.protocol.ConnectionId.random;
 import static java.util.Optional.of;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -9,27 +10,33 @@ import static org.mockito.Mockito.*;
 
 import com.protocol7.quincy.FrameSender;
 import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.connection.ConnectionTimer;
+import com.protocol7.quincy.protocol.PacketNumber;
 import com.protocol7.quincy.protocol.Payload;
 import com.protocol7.quincy.protocol.Version;
 import com.protocol7.quincy.protocol.frames.AckBlock;
 import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.AckFrequencyFrame;
+import com.protocol7.quincy.protocol.frames.CryptoFrame;
 import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.PaddingFrame;
 import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
 import com.protocol7.quincy.protocol.packets.HandshakePacket;
 import com.protocol7.quincy.protocol.packets.InitialPacket;
 import com.protocol7.quincy.protocol.packets.Packet;
 import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.tls.EncryptionLevel;
 import com.protocol7.quincy.utils.Ticker;
-import io.netty.util.Timeout;
-import io.netty.util.Timer;
-import io.netty.util.TimerTask;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -38,13 +45,18 @@ public class PacketBufferManagerTest {
 
   @Mock private PipelineContext ctx;
   @Mock private FrameSender frameSender;
+  @Mock private AckListener ackListener;
   @Mock private AckDelay ackDelay;
-  @Mock private Timer timer;
+  @Mock private ConnectionTimer timer;
+  @Mock private ConnectionTimer.Deadline lossDetectionDeadline;
+  @Mock private ConnectionTimer.Deadline ackDeadline;
   @Mock private Ticker ticker;
-  @Mock private Timeout timeout;
+  @Mock private CongestionController congestionController;
 
+  private final RttEstimator rttEstimator = new RttEstimator(25, TimeUnit.MILLISECONDS);
   private PacketBufferManager buffer;
-  private TimerTask resendTask;
+  private Runnable lossDetectionTask;
+  private Runnable ackTask;
 
   @Before
   public void setUp() {
@@ -54,14 +66,23 @@ public class PacketBufferManagerTest {
 
     when(ticker.nanoTime()).thenReturn(2000_0000_0000L);
 
-    final ArgumentCaptor<TimerTask> taskCaptor = ArgumentCaptor.forClass(TimerTask.class);
-    when(timer.newTimeout(taskCaptor.capture(), anyLong(), any(TimeUnit.class))).thenReturn(null);
-
-    when(timeout.timer()).thenReturn(timer);
-
-    buffer = new PacketBufferManager(ackDelay, frameSender, timer, ticker);
-
-    resendTask = taskCaptor.getValue();
+    final ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+    when(timer.deadline(taskCaptor.capture())).thenReturn(lossDetectionDeadline, ackDeadline);
+
+    buffer =
+        new PacketBufferManager(
+            ackDelay,
+            new AckFrequency(25, TimeUnit.MILLISECONDS),
+            rttEstimator,
+            congestionController,
+            new RetransmissionQueue(frameSender),
+            frameSender,
+            ackListener,
+            timer,
+            ticker);
+
+    lossDetectionTask = taskCaptor.getAllValues().get(0);
+    ackTask = taskCaptor.getAllValues().get(1);
   }
 
   @Test
@@ -74,24 +95,83 @@ public class PacketBufferManagerTest {
     verify(ctx, never()).send(any(Frame.class));
     assertBufferEmpty();
 
-    final Packet pingPacket = packet(2, PingFrame.INSTANCE);
-
-    buffer.onReceivePacket(pingPacket, ctx);
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
+    buffer.onReceivePacket(packet(3, PingFrame.INSTANCE), ctx);
 
     final AckFrame actual = (AckFrame) verifySent();
 
-    assertEquals(new AckBlock(1, 2), actual.getBlocks().get(0));
+    assertEquals(new AckBlock(1, 3), actual.getBlocks().get(0));
   }
 
   @Test
-  public void ackOnPing() {
-    final Packet pingPacket = packet(2, PingFrame.INSTANCE);
+  public void ackEveryOtherPing() {
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
 
-    buffer.onReceivePacket(pingPacket, ctx);
+    verify(ctx, never()).send(any(Frame.class));
+
+    buffer.onReceivePacket(packet(3, PingFrame.INSTANCE), ctx);
 
     final AckFrame actual = (AckFrame) verifySent();
     assertEquals(67, actual.getAckDelay());
-    assertEquals(new AckBlock(2, 2), actual.getBlocks().get(0));
+    assertEquals(new AckBlock(2, 3), actual.getBlocks().get(0));
+    verify(ackDeadline).cancel();
+  }
+
+  @Test
+  public void delayedAck() {
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
+
+    // acked within the max ack delay
+    verify(ctx, never()).send(any(Frame.class));
+    verify(ackDeadline).set(ms(25), TimeUnit.NANOSECONDS);
+
+    ackTask.run();
+
+    final ArgumentCaptor<Frame> captor = ArgumentCaptor.forClass(Frame.class);
+    verify(frameSender).send(captor.capture());
+    assertEquals(new AckBlock(2, 2), ((AckFrame) captor.getValue()).getBlocks().get(0));
+  }
+
+  @Test
+  public void ackOutOfOrder() {
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
+    buffer.ackFrame(EncryptionLevel.OneRtt);
+
+    // packet 3 is missing
+    buffer.onReceivePacket(packet(4, PingFrame.INSTANCE), ctx);
+
+    final AckFrame actual = (AckFrame) verifySent();
+    assertEquals(List.of(new AckBlock(4, 4), new AckBlock(2, 2)), actual.getBlocks());
+  }
+
+  @Test
+  public void ackFrequency() {
+    buffer.onReceivePacket(packet(1, new AckFrequencyFrame(0, 3, 10_000, true)), ctx);
+    buffer.ackFrame(EncryptionLevel.OneRtt);
+
+    buffer.onReceivePacket(packet(3, PingFrame.INSTANCE), ctx);
+    buffer.onReceivePacket(packet(5, PingFrame.INSTANCE), ctx);
+
+    // reordering ignored, acked after three packets or 10 ms
+    verify(ctx, never()).send(any(Frame.class));
+    verify(ackDeadline, atLeastOnce()).set(ms(10), TimeUnit.NANOSECONDS);
+
+    buffer.onReceivePacket(packet(6, PingFrame.INSTANCE), ctx);
+
+    verifySent();
+  }
+
+  @Test
+  public void ackFrequencyIgnoresOldSequenceNumbers() {
+    buffer.onReceivePacket(packet(1, new AckFrequencyFrame(1, 3, 10_000, true)), ctx);
+    buffer.onReceivePacket(packet(2, new AckFrequencyFrame(0, 10, 10_000, true)), ctx);
+    buffer.ackFrame(EncryptionLevel.OneRtt);
+
+    buffer.onReceivePacket(packet(3, PingFrame.INSTANCE), ctx);
+    buffer.onReceivePacket(packet(4, PingFrame.INSTANCE), ctx);
+    buffer.onReceivePacket(packet(5, PingFrame.INSTANCE), ctx);
+
+    verifySent();
   }
 
   @Test
@@ -172,6 +252,35 @@ public class PacketBufferManagerTest {
     assertTrue(buffer.getBuffer().isEmpty());
   }
 
+  @Test
+  public void largestPacketNumbers() {
+    assertEquals(PacketNumber.NONE, buffer.getLargestAcked(EncryptionLevel.OneRtt));
+    assertEquals(PacketNumber.NONE, buffer.getLargestReceived(EncryptionLevel.OneRtt));
+
+    buffer.beforeSendPacket(packet(2, PingFrame.INSTANCE), ctx);
+    buffer.onReceivePacket(packet(5, new AckFrame(123, new AckBlock(2, 2))), ctx);
+    buffer.onReceivePacket(packet(4, PingFrame.INSTANCE), ctx);
+
+    assertEquals(2, buffer.getLargestAcked(EncryptionLevel.OneRtt));
+    assertEquals(5, buffer.getLargestReceived(EncryptionLevel.OneRtt));
+
+    // tracked per packet number space
+    assertEquals(PacketNumber.NONE, buffer.getLargestAcked(EncryptionLevel.Initial));
+    assertEquals(PacketNumber.NONE, buffer.getLargestReceived(EncryptionLevel.Handshake));
+  }
+
+  @Test
+  public void ackNotifiesListener() {
+    buffer.beforeSendPacket(packet(2, PingFrame.INSTANCE), ctx);
+    buffer.beforeSendPacket(packet(4, PingFrame.INSTANCE), ctx);
+
+    buffer.onReceivePacket(packet(3, new AckFrame(123, new AckBlock(1, 1000))), ctx);
+
+    verify(ackListener).onAck(2, List.of(PingFrame.INSTANCE));
+    verify(ackListener).onAck(4, List.of(PingFrame.INSTANCE));
+    verifyNoMoreInteractions(ackListener);
+  }
+
   @Test
   public void ackPacketWithInvalidPacketType() {
     buffer.beforeSendPacket(packet(2, PingFrame.INSTANCE), ctx);
@@ -196,17 +305,234 @@ public class PacketBufferManagerTest {
   }
 
   @Test
-  public void resend() throws Exception {
-    final Packet pingPacket = packet(2, PingFrame.INSTANCE);
-    buffer.beforeSendPacket(pingPacket, ctx);
+  public void lossByPacketThreshold() {
+    final StreamFrame lost = new StreamFrame(0, 0, false, new byte[10]);
+    buffer.beforeSendPacket(packet(2, lost), ctx);
+    buffer.beforeSendPacket(packet(3, PingFrame.INSTANCE), ctx);
+    buffer.beforeSendPacket(packet(4, PingFrame.INSTANCE), ctx);
+    buffer.beforeSendPacket(packet(5, PingFrame.INSTANCE), ctx);
+
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(5, 5))), ctx);
+
+    // lost frames are queued to be packed together
+    final InOrder inOrder = inOrder(frameSender);
+    inOrder.verify(frameSender).queue(EncryptionLevel.OneRtt, lost);
+    inOrder.verify(frameSender).flush();
+
+    // not yet lost
+    assertBuffered(3);
+    assertBuffered(4);
+    assertFalse(buffer.getBuffer().contains(2));
+  }
+
+  @Test
+  public void lostCryptoAtLevel() {
+    final CryptoFrame lost = new CryptoFrame(0, "fin".getBytes());
+    buffer.beforeSendPacket(hp(2, lost), ctx);
+    buffer.beforeSendPacket(hp(3, new PaddingFrame(1)), ctx);
+    buffer.beforeSendPacket(hp(4, new PaddingFrame(1)), ctx);
+    buffer.beforeSendPacket(hp(5, new PaddingFrame(1)), ctx);
+
+    buffer.onReceivePacket(hp(1, new AckFrame(123, new AckBlock(5, 5))), ctx);
+
+    // sent again in a handshake packet
+    verify(frameSender).queue(EncryptionLevel.Handshake, lost);
+    verify(frameSender).flush();
+  }
+
+  @Test
+  public void lossByTimeThreshold() {
+    final StreamFrame lost = new StreamFrame(0, 0, false, new byte[10]);
+    buffer.beforeSendPacket(packet(2, lost), ctx);
+    buffer.beforeSendPacket(packet(3, PingFrame.INSTANCE), ctx);
+
+    // acked after 100 ms
+    when(ticker.nanoTime()).thenReturn(time(100));
+    buffer.onReceivePacket(packet(1, new AckFrame(0, new AckBlock(3, 3))), ctx);
+
+    assertEquals(ms(100), rttEstimator.getLatestRtt());
+    verify(frameSender, never()).flush();
+
+    // armed for the loss delay of 9/8 RTT after packet 2 was sent
+    verify(lossDetectionDeadline).set(ms(12.5), TimeUnit.NANOSECONDS);
+
+    when(ticker.nanoTime()).thenReturn(time(112.5));
+    lossDetectionTask.run();
+
+    verify(frameSender).queue(EncryptionLevel.OneRtt, lost);
+    verify(frameSender).flush();
+    assertBufferEmpty();
+    verify(lossDetectionDeadline).cancel();
+  }
+
+  @Test
+  public void probeTimeout() {
+    buffer.beforeSendPacket(packet(2, new StreamFrame(0, 0, false, new byte[10])), ctx);
+
+    // initial RTT of 333 ms, RTT variance of half that and the max ack delay
+    final long pto = ms(333 + 4 * 166.5 + 25);
+    verify(lossDetectionDeadline).set(pto, TimeUnit.NANOSECONDS);
+
+    when(ticker.nanoTime()).thenReturn(time(0) + pto);
+    lossDetectionTask.run();
+
+    // probe sent, re-armed with the timeout doubled
+    verify(frameSender).probe(EncryptionLevel.OneRtt, PingFrame.INSTANCE);
+    verify(lossDetectionDeadline, times(2)).set(pto, TimeUnit.NANOSECONDS);
     assertBuffered(2);
+  }
+
+  @Test
+  public void probeTimeoutRecoversDroppedHandshakeFlight() {
+    // the first handshake flight is dropped on the way
+    buffer.beforeSendPacket(hp(2, new CryptoFrame(0, new byte[] {1, 2, 3})), ctx);
 
-    // move time forward
-    when(ticker.nanoTime()).thenReturn(3000_0000_0000L);
+    // initial RTT of 333 ms and RTT variance of half that, no ack delay during the handshake
+    final long pto = ms(333 + 4 * 166.5);
+    verify(lossDetectionDeadline).set(pto, TimeUnit.NANOSECONDS);
+
+    when(ticker.nanoTime()).thenReturn(time(0) + pto);
+    lossDetectionTask.run();
+
+    // the crypto data is probed again at the handshake level
+    final ArgumentCaptor<Frame> captor = ArgumentCaptor.forClass(Frame.class);
+    verify(frameSender).probe(eq(EncryptionLevel.Handshake), captor.capture());
+    // not held back by congestion control
+    verify(frameSender, never()).queue(any(EncryptionLevel.class), any());
+    verify(frameSender, never()).flush();
+    final CryptoFrame probe = (CryptoFrame) captor.getValue();
+    assertEquals(0, probe.getOffset());
+    assertArrayEquals(new byte[] {1, 2, 3}, probe.getCryptoData());
+
+    // the probe arrives and is acked, declaring the dropped packet lost
+    buffer.beforeSendPacket(hp(3, probe), ctx);
+    when(ticker.nanoTime()).thenReturn(time(0) + pto + ms(30));
+    buffer.onReceivePacket(hp(1, new AckFrame(123, new AckBlock(3, 3))), ctx);
+
+    assertTrue(buffer.getHandshakeBuffer().isEmpty());
+    verify(lossDetectionDeadline).cancel();
+  }
+
+  @Test
+  public void probeTimeoutPingsWithoutCryptoData() {
+    buffer.beforeSendPacket(ip(2, PingFrame.INSTANCE), ctx);
 
-    resendTask.run(timeout);
+    when(ticker.nanoTime()).thenReturn(time(0) + ms(333 + 4 * 166.5));
+    lossDetectionTask.run();
+
+    verify(frameSender).probe(EncryptionLevel.Initial, PingFrame.INSTANCE);
+  }
+
+  @Test
+  public void dontRetransmitAcks() {
+    final AckFrame ackFrame = new AckFrame(123, new AckBlock(7, 8));
+    buffer.beforeSendPacket(packet(2, ackFrame), ctx);
+    buffer.beforeSendPacket(packet(3, PingFrame.INSTANCE), ctx);
+    buffer.beforeSendPacket(packet(4, PingFrame.INSTANCE), ctx);
+    buffer.beforeSendPacket(packet(5, PingFrame.INSTANCE), ctx);
+
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(5, 5))), ctx);
+
+    verify(frameSender, never()).flush();
+  }
+
+  @Test
+  public void rttSample() {
+    buffer.beforeSendPacket(packet(2, PingFrame.INSTANCE), ctx);
+
+    when(ticker.nanoTime()).thenReturn(time(30));
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(2, 2))), ctx);
+
+    assertEquals(ms(30), rttEstimator.getLatestRtt());
+    assertEquals(ms(30), rttEstimator.getSmoothedRtt());
+
+    // nothing in flight
+    verify(lossDetectionDeadline).cancel();
+  }
+
+  @Test
+  public void rateSample() {
+    when(ticker.nanoTime()).thenReturn(time(0));
+    buffer.beforeSendPacket(packet(2, PingFrame.INSTANCE), ctx);
+    buffer.beforeSendPacket(packet(3, PingFrame.INSTANCE), ctx);
+
+    when(ticker.nanoTime()).thenReturn(time(30));
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(2, 3))), ctx);
+
+    // one sample for the ack frame
+    final ArgumentCaptor<RateSample> captor = ArgumentCaptor.forClass(RateSample.class);
+    verify(congestionController).onRateSample(captor.capture());
+    final int size = ((ShortPacket) packet(2, PingFrame.INSTANCE)).calculateLength();
+    assertEquals(2 * size, captor.getValue().getAcked());
+    assertEquals(ms(30), captor.getValue().getRtt());
+  }
+
+  @Test
+  public void noRttSampleForAckOnly() {
+    buffer.beforeSendPacket(packet(2, new AckFrame(123, new AckBlock(7, 8))), ctx);
+
+    when(ticker.nanoTime()).thenReturn(time(30));
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(2, 2))), ctx);
+
+    assertFalse(rttEstimator.hasSample());
+  }
+
+  @Test
+  public void ackFrame() {
+    // acks only, not directly acked
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(7, 8))), ctx);
+
+    final AckFrame actual = buffer.ackFrame(EncryptionLevel.OneRtt).get();
+    assertEquals(67, actual.getAckDelay());
+    assertEquals(new AckBlock(1, 1), actual.getBlocks().get(0));
+
+    // acked again until the peer acks the ack
+    assertEquals(actual, buffer.ackFrame(EncryptionLevel.OneRtt).get());
+  }
+
+  @Test
+  public void stopAckingWhenAckAcked() {
+    buffer.onReceivePacket(packet(1, new AckFrame(123, new AckBlock(7, 8))), ctx);
+    final AckFrame ackFrame = buffer.ackFrame(EncryptionLevel.OneRtt).get();
+
+    buffer.beforeSendPacket(packet(2, PingFrame.INSTANCE, ackFrame), ctx);
+    buffer.onReceivePacket(packet(3, new AckFrame(123, new AckBlock(2, 2))), ctx);
+
+    // only the packet carrying the ack remains to be acked
+    assertEquals(
+        List.of(new AckBlock(3, 3)), buffer.ackFrame(EncryptionLevel.OneRtt).get().getBlocks());
+  }
+
+  @Test
+  public void dropDuplicate() {
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
+
+    verify(ctx, times(1)).next(any());
+  }
+
+  @Test
+  public void dontAckAlreadySent() {
+    // a later handler sends a packet, which the connection adds the ack to
+    doAnswer(
+            inv -> {
+              buffer.ackFrame(EncryptionLevel.OneRtt);
+              return null;
+            })
+        .when(ctx)
+        .next(any());
+
+    buffer.onReceivePacket(packet(2, PingFrame.INSTANCE), ctx);
+
+    verify(ctx, never()).send(any(Frame.class));
+  }
+
+  private static long time(final double ms) {
+    return 2000_0000_0000L + ms(ms);
+  }
 
-    verify(frameSender).send(PingFrame.INSTANCE);
+  private static long ms(final double ms) {
+    return (long) (ms * 1_000_000);
   }
 
   private Packet packet(final long pn, final Frame... frames) {
@@ -0,0 +1,153 @@
+package com.protocol7.quincy.reliability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.protocol.PacketNumber;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReceivedPacketTrackerTest {
+
+  @Mock private AckDelay ackDelay;
+
+  private final ReceivedPacketTracker tracker = new ReceivedPacketTracker();
+
+  @Test
+  public void empty() {
+    assertEquals(Optional.empty(), tracker.ackFrame(ackDelay));
+    assertFalse(tracker.isAckPending());
+    assertEquals(PacketNumber.NONE, tracker.getLargestReceived());
+  }
+
+  @Test
+  public void inOrder() {
+    for (long pn = 1; pn <= 10; pn++) {
+      assertTrue(tracker.add(pn, pn));
+    }
+
+    assertEquals(1, tracker.size());
+    assertEquals(List.of(new AckBlock(1, 10)), blocks());
+    assertEquals(10, tracker.getLargestReceived());
+  }
+
+  @Test
+  public void outOfOrder() {
+    tracker.add(1, 0);
+    tracker.add(5, 0);
+    tracker.add(3, 0);
+    tracker.add(9, 0);
+
+    assertEquals(
+        List.of(new AckBlock(9, 9), new AckBlock(5, 5), new AckBlock(3, 3), new AckBlock(1, 1)),
+        blocks());
+
+    // extend ranges
+    tracker.add(4, 0);
+    tracker.add(8, 0);
+    assertEquals(List.of(new AckBlock(8, 9), new AckBlock(3, 5), new AckBlock(1, 1)), blocks());
+
+    // fill a gap
+    tracker.add(2, 0);
+    assertEquals(List.of(new AckBlock(8, 9), new AckBlock(1, 5)), blocks());
+    assertEquals(9, tracker.getLargestReceived());
+  }
+
+  @Test
+  public void duplicate() {
+    assertTrue(tracker.add(1, 0));
+    assertTrue(tracker.add(3, 0));
+
+    assertFalse(tracker.add(1, 0));
+    assertFalse(tracker.add(3, 0));
+    assertTrue(tracker.add(2, 0));
+    assertFalse(tracker.add(2, 0));
+  }
+
+  @Test
+  public void ackPending() {
+    tracker.add(1, 0);
+    assertTrue(tracker.isAckPending());
+
+    tracker.ackFrame(ackDelay);
+    assertFalse(tracker.isAckPending());
+
+    // acked again, but not pending
+    assertTrue(tracker.ackFrame(ackDelay).isPresent());
+
+    tracker.add(1, 0);
+    assertFalse(tracker.isAckPending());
+    tracker.add(2, 0);
+    assertTrue(tracker.isAckPending());
+  }
+
+  @Test
+  public void ackDelay() {
+    when(ackDelay.delay(anyLong())).thenReturn(45L);
+    when(ackDelay.calculate(45L, TimeUnit.NANOSECONDS)).thenReturn(67L);
+
+    tracker.add(2, 200);
+    tracker.add(1, 300);
+
+    assertEquals(67, tracker.ackFrame(ackDelay).get().getAckDelay());
+    // delay since the largest packet was received
+    verify(ackDelay).delay(200);
+  }
+
+  @Test
+  public void prune() {
+    tracker.add(1, 0);
+    tracker.add(2, 0);
+    tracker.add(4, 0);
+    tracker.add(5, 0);
+    tracker.add(7, 0);
+
+    tracker.prune(4);
+
+    assertEquals(List.of(new AckBlock(7, 7), new AckBlock(5, 5)), blocks());
+
+    // pruned packet numbers are duplicates
+    assertFalse(tracker.add(3, 0));
+    assertTrue(tracker.add(6, 0));
+    assertEquals(List.of(new AckBlock(5, 7)), blocks());
+
+    tracker.prune(7);
+    assertEquals(Optional.empty(), tracker.ackFrame(ackDelay));
+  }
+
+  @Test
+  public void bounded() {
+    // every other packet lost
+    for (long pn = 0; pn < 1000; pn += 2) {
+      tracker.add(pn, 0);
+    }
+
+    assertEquals(ReceivedPacketTracker.MAX_RANGES, tracker.size());
+    final List<AckBlock> blocks = blocks();
+    assertEquals(new AckBlock(998, 998), blocks.get(0));
+    assertEquals(ReceivedPacketTracker.MAX_RANGES, blocks.size());
+
+    // older than the tracked ranges
+    assertFalse(tracker.add(0, 0));
+    assertTrue(tracker.add(935, 0));
+    assertEquals(new AckBlock(935, 936), blocks().get(ReceivedPacketTracker.MAX_RANGES - 1));
+  }
+
+  private List<AckBlock> blocks() {
+    final Optional<AckFrame> frame = tracker.ackFrame(ackDelay);
+    assertTrue(frame.isPresent());
+    return frame.get().getBlocks();
+  }
+}
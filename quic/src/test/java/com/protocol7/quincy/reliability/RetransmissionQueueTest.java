@@ -0,0 +1,114 @@
+package com.protocol7.quincy.reliability;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.protocol7.quincy.FrameSender;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.CryptoFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.FrameType;
+import com.protocol7.quincy.protocol.frames.MaxDataFrame;
+import com.protocol7.quincy.protocol.frames.PaddingFrame;
+import com.protocol7.quincy.protocol.frames.PingFrame;
+import com.protocol7.quincy.protocol.frames.StreamFrame;
+import com.protocol7.quincy.tls.EncryptionLevel;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RetransmissionQueueTest {
+
+  @Mock private FrameSender frameSender;
+
+  @Test
+  public void dropAcksPaddingAndPings() {
+    final RetransmissionQueue queue = new RetransmissionQueue(frameSender);
+
+    queue.onLoss(
+        EncryptionLevel.OneRtt,
+        List.of(new AckFrame(123, new AckBlock(1, 2)), new PaddingFrame(10), PingFrame.INSTANCE));
+    queue.flush();
+
+    verify(frameSender, never()).flush();
+  }
+
+  @Test
+  public void retransmitAtLevel() {
+    final RetransmissionQueue queue = new RetransmissionQueue(frameSender);
+    final CryptoFrame crypto = new CryptoFrame(0, "hello".getBytes());
+    final MaxDataFrame maxData = new MaxDataFrame(123);
+
+    queue.onLoss(EncryptionLevel.Handshake, List.of(crypto));
+    queue.onLoss(EncryptionLevel.OneRtt, List.of(maxData));
+    queue.flush();
+
+    final InOrder inOrder = inOrder(frameSender);
+    inOrder.verify(frameSender).queue(EncryptionLevel.Handshake, crypto);
+    inOrder.verify(frameSender).queue(EncryptionLevel.OneRtt, maxData);
+    inOrder.verify(frameSender).flush();
+  }
+
+  @Test
+  public void handler() {
+    final RetransmissionQueue queue = new RetransmissionQueue(frameSender);
+    queue.register(FrameType.MAX_DATA, frame -> Optional.of(new MaxDataFrame(456)));
+
+    queue.onLoss(EncryptionLevel.OneRtt, List.of(new MaxDataFrame(123)));
+    queue.flush();
+
+    // refreshed
+    verify(frameSender).queue(EncryptionLevel.OneRtt, new MaxDataFrame(456));
+  }
+
+  @Test
+  public void mergeStreamData() {
+    final RetransmissionQueue queue = new RetransmissionQueue(frameSender);
+
+    // lost in different packets, out of order
+    queue.onLoss(EncryptionLevel.OneRtt, List.of(new StreamFrame(0, 3, true, new byte[] {4, 5})));
+    queue.onLoss(
+        EncryptionLevel.OneRtt,
+        List.of(new StreamFrame(0, 0, false, new byte[] {1, 2, 3}), new MaxDataFrame(123)));
+    queue.flush();
+
+    final List<Frame> frames = captureQueued();
+    assertEquals(2, frames.size());
+    assertEquals(new MaxDataFrame(123), frames.get(0));
+
+    final StreamFrame merged = (StreamFrame) frames.get(1);
+    assertEquals(0, merged.getOffset());
+    assertEquals(true, merged.isFin());
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, merged.getData());
+  }
+
+  @Test
+  public void dontMergeGaps() {
+    final RetransmissionQueue queue = new RetransmissionQueue(frameSender);
+
+    final StreamFrame first = new StreamFrame(0, 0, false, new byte[3]);
+    final StreamFrame second = new StreamFrame(0, 10, false, new byte[3]);
+    final StreamFrame otherStream = new StreamFrame(4, 3, false, new byte[3]);
+    queue.onLoss(EncryptionLevel.OneRtt, List.of(second, otherStream, first));
+    queue.flush();
+
+    assertEquals(List.of(first, second, otherStream), captureQueued());
+  }
+
+  private List<Frame> captureQueued() {
+    final ArgumentCaptor<Frame> captor = ArgumentCaptor.forClass(Frame.class);
+    verify(frameSender).queue(any(EncryptionLevel.class), captor.capture());
+    return captor.getAllValues();
+  }
+}
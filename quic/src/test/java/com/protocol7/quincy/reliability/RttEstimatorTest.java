@@ -0,0 +1,100 @@
+package com.protocol7.quincy.reliability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class RttEstimatorTest {
+
+  private final RttEstimator estimator = new RttEstimator(25, TimeUnit.MILLISECONDS);
+
+  @Test
+  public void initial() {
+    assertFalse(estimator.hasSample());
+    assertEquals(ms(333), estimator.getSmoothedRtt());
+    assertEquals(ms(333) / 2, estimator.getRttVar());
+  }
+
+  @Test
+  public void firstSample() {
+    estimator.update(ms(100), ms(10), true);
+
+    assertTrue(estimator.hasSample());
+    // ack delay not used for the first sample
+    assertEquals(ms(100), estimator.getLatestRtt());
+    assertEquals(ms(100), estimator.getSmoothedRtt());
+    assertEquals(ms(50), estimator.getRttVar());
+    assertEquals(ms(100), estimator.getMinRtt());
+  }
+
+  @Test
+  public void subsequentSample() {
+    estimator.update(ms(100), 0, true);
+    estimator.update(ms(200), ms(20), true);
+
+    // adjusted for the ack delay
+    assertEquals(ms(200), estimator.getLatestRtt());
+    assertEquals((7 * ms(100) + ms(180)) / 8, estimator.getSmoothedRtt());
+    assertEquals((3 * ms(50) + ms(80)) / 4, estimator.getRttVar());
+    assertEquals(ms(100), estimator.getMinRtt());
+  }
+
+  @Test
+  public void ackDelayLimitedToMaxAckDelay() {
+    estimator.update(ms(100), 0, true);
+    estimator.update(ms(200), ms(50), true);
+
+    assertEquals((7 * ms(100) + ms(175)) / 8, estimator.getSmoothedRtt());
+  }
+
+  @Test
+  public void ackDelayNotLimitedBeforeHandshakeConfirmed() {
+    estimator.update(ms(100), 0, false);
+    estimator.update(ms(200), ms(50), false);
+
+    assertEquals((7 * ms(100) + ms(150)) / 8, estimator.getSmoothedRtt());
+  }
+
+  @Test
+  public void ackDelayNotBelowMinRtt() {
+    estimator.update(ms(100), 0, true);
+    estimator.update(ms(110), ms(20), true);
+
+    // subtracting the delay would go below the min RTT
+    assertEquals((7 * ms(100) + ms(110)) / 8, estimator.getSmoothedRtt());
+  }
+
+  @Test
+  public void minRtt() {
+    estimator.update(ms(100), 0, true);
+    estimator.update(ms(80), 0, true);
+    estimator.update(ms(120), 0, true);
+
+    assertEquals(ms(80), estimator.getMinRtt());
+  }
+
+  @Test
+  public void lossDelay() {
+    estimator.update(ms(80), 0, true);
+    assertEquals(ms(90), estimator.lossDelay());
+
+    // the larger of latest and smoothed RTT
+    estimator.update(ms(160), 0, true);
+    assertEquals(ms(180), estimator.lossDelay());
+  }
+
+  @Test
+  public void probeTimeout() {
+    estimator.update(ms(100), 0, true);
+
+    assertEquals(ms(100 + 4 * 50), estimator.probeTimeout(false));
+    assertEquals(ms(100 + 4 * 50 + 25), estimator.probeTimeout(true));
+  }
+
+  private static long ms(final long ms) {
+    return TimeUnit.MILLISECONDS.toNanos(ms);
+  }
+}
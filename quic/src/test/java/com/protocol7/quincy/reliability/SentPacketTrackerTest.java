@@ -0,0 +1,296 @@
+package com.protocol7.quincy.reliability;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.protocol7.quincy.congestion.CongestionController;
+import com.protocol7.quincy.protocol.frames.AckBlock;
+import com.protocol7.quincy.protocol.frames.AckFrame;
+import com.protocol7.quincy.protocol.frames.Frame;
+import com.protocol7.quincy.protocol.frames.MaxDataFrame;
+import com.protocol7.quincy.protocol.packets.FullPacket;
+import com.protocol7.quincy.protocol.packets.ShortPacket;
+import com.protocol7.quincy.utils.Ticker;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SentPacketTrackerTest {
+
+  @Mock private Ticker ticker;
+  @Mock private CongestionController congestionController;
+  private long pn1 = 1;
+  private long pn2 = 2;
+  private FullPacket packet1 = p(pn1);
+  private FullPacket packet2 = p(pn2);
+
+  private SentPacketTracker tracker;
+
+  @Before
+  public void setUp() {
+    when(ticker.nanoTime()).thenReturn(0L);
+
+    tracker = new SentPacketTracker(congestionController, new DeliveryRateSampler(ticker), ticker);
+  }
+
+  @Test
+  public void test() {
+    assertTrue(tracker.isEmpty());
+    assertFalse(tracker.contains(pn1));
+
+    tracker.put(packet1);
+
+    assertFalse(tracker.isEmpty());
+    assertTrue(tracker.contains(pn1));
+
+    assertTrue(tracker.remove(pn1));
+
+    assertTrue(tracker.isEmpty());
+    assertFalse(tracker.contains(pn1));
+  }
+
+  @Test
+  public void remove() {
+    assertFalse(tracker.remove(pn1));
+    tracker.put(packet1);
+    assertTrue(tracker.remove(pn1));
+    assertFalse(tracker.remove(pn1));
+  }
+
+  @Test
+  public void removeRange() {
+    tracker.put(packet1);
+    tracker.put(packet2);
+    tracker.put(p(5));
+
+    final List<Long> acked = new ArrayList<>();
+    tracker.remove(
+        pn1,
+        4,
+        (pn, frames) -> {
+          acked.add(pn);
+          assertEquals(List.of(f(pn)), frames);
+        });
+
+    // only tracked packets in the range
+    assertEquals(List.of(pn1, pn2), acked);
+    assertFalse(tracker.contains(pn1));
+    assertFalse(tracker.contains(pn2));
+    assertTrue(tracker.contains(5));
+  }
+
+  @Test
+  public void oldest() {
+    assertEquals(Optional.empty(), tracker.oldestPacketNumber());
+    assertEquals(Optional.empty(), tracker.oldestTime());
+
+    when(ticker.nanoTime()).thenReturn(100L);
+    tracker.put(packet1);
+    when(ticker.nanoTime()).thenReturn(200L);
+    tracker.put(packet2);
+    tracker.put(p(3));
+
+    assertEquals(Optional.of(pn1), tracker.oldestPacketNumber());
+    assertEquals(Optional.of(100L), tracker.oldestTime());
+
+    // acking a later packet leaves the oldest
+    tracker.remove(pn2);
+    assertEquals(Optional.of(pn1), tracker.oldestPacketNumber());
+
+    tracker.remove(pn1);
+    assertEquals(Optional.of(3L), tracker.oldestPacketNumber());
+    assertEquals(Optional.of(200L), tracker.oldestTime());
+  }
+
+  @Test
+  public void metadata() {
+    when(ticker.nanoTime()).thenReturn(123L);
+    tracker.put(packet1);
+    final FullPacket ackOnly =
+        ShortPacket.create(false, Optional.empty(), pn2, new AckFrame(0, new AckBlock(1, 1)));
+    tracker.put(ackOnly);
+
+    assertEquals(123L, tracker.getSentTime(pn1));
+    assertEquals(packet1.calculateLength(), tracker.getSize(pn1));
+    assertTrue(tracker.isAckEliciting(pn1));
+    assertTrue(tracker.isInFlight(pn1));
+
+    assertFalse(tracker.isAckEliciting(pn2));
+    assertFalse(tracker.isInFlight(pn2));
+  }
+
+  @Test
+  public void growAndWrap() {
+    // wrap around the ring, then grow while wrapped
+    for (long pn = 0; pn < 50; pn++) {
+      tracker.put(p(pn));
+    }
+    for (long pn = 0; pn < 40; pn++) {
+      assertTrue(tracker.remove(pn));
+    }
+    for (long pn = 50; pn < 1000; pn++) {
+      tracker.put(p(pn));
+    }
+
+    assertEquals(960, tracker.size());
+    assertEquals(Optional.of(40L), tracker.oldestPacketNumber());
+    for (long pn = 40; pn < 1000; pn++) {
+      assertTrue(tracker.contains(pn));
+      assertEquals(List.of(f(pn)), drainOne(pn));
+    }
+    assertTrue(tracker.isEmpty());
+  }
+
+  @Test
+  public void skippedPacketNumbers() {
+    tracker.put(p(10));
+    tracker.put(p(200));
+
+    assertFalse(tracker.contains(11));
+    assertFalse(tracker.remove(100));
+
+    tracker.remove(10);
+    assertEquals(Optional.of(200L), tracker.oldestPacketNumber());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void decreasingPacketNumber() {
+    tracker.put(packet2);
+    tracker.put(packet1);
+  }
+
+  @Test
+  public void clear() {
+    tracker.put(packet1);
+    tracker.put(packet2);
+
+    tracker.clear();
+
+    assertTrue(tracker.isEmpty());
+    assertFalse(tracker.contains(pn1));
+
+    // packet numbers may start over
+    tracker.put(packet1);
+    assertEquals(Optional.of(pn1), tracker.oldestPacketNumber());
+  }
+
+  @Test
+  public void removeLost() {
+    tracker.put(packet1);
+    tracker.put(packet2);
+    when(ticker.nanoTime()).thenReturn(100L);
+    tracker.put(p(3));
+    tracker.put(p(4));
+    tracker.put(p(6));
+
+    final List<Long> lost = new ArrayList<>();
+    final Optional<Long> lossTime =
+        tracker.removeLost(
+            5,
+            50,
+            (pn, frames) -> {
+              lost.add(pn);
+              assertEquals(List.of(f(pn)), frames);
+            });
+
+    // packet 1 by packet threshold, 2 sent before the loss delay
+    assertEquals(List.of(pn1, pn2), lost);
+    // packets after the largest acked are not lost
+    assertTrue(tracker.contains(6));
+    assertEquals(Optional.of(150L), lossTime);
+
+    when(ticker.nanoTime()).thenReturn(150L);
+    lost.clear();
+    assertEquals(Optional.empty(), tracker.removeLost(5, 50, (pn, frames) -> lost.add(pn)));
+    assertEquals(List.of(3L, 4L), lost);
+  }
+
+  @Test
+  public void congestionControl() {
+    when(ticker.nanoTime()).thenReturn(100L);
+    tracker.put(packet1);
+    tracker.put(packet2);
+    tracker.put(p(4));
+    tracker.put(p(6));
+    final int size = packet1.calculateLength();
+
+    verify(congestionController).onPacketSent(pn1, 100L, size);
+
+    tracker.remove(pn1);
+    verify(congestionController).onPacketAcked(pn1, 100L, size);
+
+    tracker.remove(6, 6, (pn, frames) -> {});
+    verify(congestionController).onPacketAcked(6, 100L, p(6).calculateLength());
+
+    tracker.removeLost(6, 1000, (pn, frames) -> {});
+    verify(congestionController).onPacketLost(pn2, 100L, size);
+
+    tracker.clear();
+    verify(congestionController).onPacketDiscarded(4, p(4).calculateLength());
+  }
+
+  @Test
+  public void ackOnlyNotInFlight() {
+    tracker.put(
+        ShortPacket.create(false, Optional.empty(), pn1, new AckFrame(0, new AckBlock(1, 1))));
+    tracker.remove(pn1);
+
+    verify(congestionController, never()).onPacketSent(anyLong(), anyLong(), anyInt());
+    verify(congestionController, never()).onPacketAcked(anyLong(), anyLong(), anyInt());
+  }
+
+  @Test
+  public void hasAckEliciting() {
+    assertFalse(tracker.hasAckEliciting());
+
+    tracker.put(
+        ShortPacket.create(false, Optional.empty(), pn1, new AckFrame(0, new AckBlock(1, 1))));
+    assertFalse(tracker.hasAckEliciting());
+
+    tracker.put(packet2);
+    assertTrue(tracker.hasAckEliciting());
+
+    tracker.remove(pn2);
+    assertFalse(tracker.hasAckEliciting());
+  }
+
+  @Test
+  public void unackedFrames() {
+    assertEquals(List.of(), tracker.getUnackedFrames());
+
+    tracker.put(packet1);
+    tracker.put(packet2);
+    tracker.put(p(5));
+    tracker.remove(pn2);
+
+    // still tracked
+    assertEquals(List.of(f(pn1), f(5)), tracker.getUnackedFrames());
+    assertEquals(List.of(f(pn1), f(5)), tracker.getUnackedFrames());
+  }
+
+  private List<Frame> drainOne(final long pn) {
+    final List<Frame> acked = new ArrayList<>();
+    tracker.remove(pn, pn, (ackedPn, frames) -> acked.addAll(frames));
+    return acked;
+  }
+
+  private FullPacket p(final long pn) {
+    return ShortPacket.create(false, Optional.empty(), pn, f(pn));
+  }
+
+  private Frame f(final long i) {
+    return new MaxDataFrame(i);
+  }
+}
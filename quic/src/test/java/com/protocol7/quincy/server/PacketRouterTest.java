@@ -19,6 +19,7 @@ import com.protocol7.quincy.tls.aead.AEAD;
 import com.protocol7.quincy.tls.aead.TestAEAD;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import java.net.InetSocketAddress;
 import java.util.List;
 import org.junit.Before;
@@ -47,7 +48,7 @@ public class PacketRouterTest {
   public void setUp() {
     router = new PacketRouter(Version.DRAFT_18, connections, listener);
 
-    when(connections.get(any(), any(), any(), any())).thenReturn(connection);
+    when(connections.get(any(), any(), any(), any(), any())).thenReturn(connection);
 
     when(connection.getAEAD(any())).thenReturn(aead);
     when(connection.getLocalConnectionId()).thenReturn(of(srcConnId));
@@ -57,12 +58,12 @@ public class PacketRouterTest {
   public void route() {
     final InitialPacket packet =
         InitialPacket.create(
-            of(destConnId), empty(), 2, Version.DRAFT_18, empty(), new PaddingFrame(1));
+            of(destConnId), empty(), 2, Version.DRAFT_18, empty(), new PaddingFrame(3));
 
     final ByteBuf bb = Unpooled.buffer();
     packet.write(bb, aead);
 
-    router.route(bb, sender, peerAddress);
+    router.route(bb, peer -> sender, peerAddress, ImmediateEventExecutor.INSTANCE);
 
     verify(connection).onPacket(packet);
   }
@@ -71,7 +72,7 @@ public class PacketRouterTest {
   public void invalidPacket() {
     final ByteBuf bb = Unpooled.wrappedBuffer("this is not a packet".getBytes());
 
-    router.route(bb, sender, peerAddress);
+    router.route(bb, peer -> sender, peerAddress, ImmediateEventExecutor.INSTANCE);
   }
 
   @Test
@@ -83,7 +84,7 @@ public class PacketRouterTest {
     final ByteBuf bb = Unpooled.buffer();
     packet.write(bb, aead);
 
-    router.route(bb, sender, peerAddress);
+    router.route(bb, peer -> sender, peerAddress, ImmediateEventExecutor.INSTANCE);
 
     final ArgumentCaptor<VersionNegotiationPacket> captor =
         ArgumentCaptor.forClass(VersionNegotiationPacket.class);
@@ -11,6 +11,7 @@ import com.protocol7.quincy.connection.PacketSender;
 import com.protocol7.quincy.connection.State;
 import com.protocol7.quincy.flowcontrol.DefaultFlowControlHandler;
 import com.protocol7.quincy.flowcontrol.FlowControlHandler;
+import com.protocol7.quincy.flowcontrol.ReceiveBudget;
 import com.protocol7.quincy.netty.QuicBuilder;
 import com.protocol7.quincy.protocol.*;
 import com.protocol7.quincy.protocol.frames.*;
@@ -22,8 +23,10 @@ import com.protocol7.quincy.tls.ClientTlsSession.HandshakeResult;
 import com.protocol7.quincy.tls.KeyUtil;
 import com.protocol7.quincy.tls.NoopCertificateValidator;
 import com.protocol7.quincy.tls.aead.InitialAEAD;
-import io.netty.util.Timer;
+import com.protocol7.quincy.utils.Ticker;
+import io.netty.buffer.Unpooled;
 import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.SucceededFuture;
 import java.security.PrivateKey;
 import java.util.List;
@@ -54,8 +57,10 @@ public class ServerTest {
 
   @Mock private PacketSender packetSender;
   @Mock private StreamListener streamListener;
-  @Mock private Timer scheduler;
-  private final FlowControlHandler flowControlHandler = new DefaultFlowControlHandler(1000, 1000);
+  @Mock private EventExecutor executor;
+  private final FlowControlHandler flowControlHandler =
+      new DefaultFlowControlHandler(
+          1000, 1000, 1_000_000, new ReceiveBudget(1_000_000), Ticker.systemTicker());
 
   @Before
   public void setUp() {
@@ -75,7 +80,8 @@ public class ServerTest {
             privateKey,
             flowControlHandler,
             TestUtil.getTestAddress(),
-            scheduler);
+            executor,
+            ConnectionId::random);
   }
 
   @Test
@@ -128,7 +134,7 @@ public class ServerTest {
 
     connection.onPacket(packet(destConnectionId2, new StreamFrame(streamId, 0, false, DATA)));
 
-    verify(streamListener).onData(any(), eq(DATA), eq(false));
+    verify(streamListener).onData(any(), eq(Unpooled.wrappedBuffer(DATA)), eq(false));
   }
 
   @Test
@@ -142,9 +148,11 @@ public class ServerTest {
   public void ping() throws CertificateInvalidException {
     handshake();
 
+    connection.onPacket(packet(destConnectionId2, PingFrame.INSTANCE));
     connection.onPacket(packet(destConnectionId2, PingFrame.INSTANCE));
 
-    assertAck(4, 3, 4, 4);
+    // acked every other packet
+    assertAck(4, 3, 4, 5);
   }
 
   private void assertAck(
@@ -0,0 +1,40 @@
+package com.protocol7.quincy.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.protocol7.quincy.protocol.ConnectionId;
+import org.junit.Test;
+
+public class WorkerConnectionIdsTest {
+
+  @Test
+  public void workerIndex() {
+    final WorkerConnectionIds ids = new WorkerConnectionIds(17);
+
+    final ConnectionId id1 = ids.get();
+    final ConnectionId id2 = ids.get();
+
+    assertEquals(ConnectionId.LENGTH, id1.getLength());
+    assertEquals(17, WorkerConnectionIds.workerIndex(id1));
+    assertEquals(17, WorkerConnectionIds.workerIndex(id2));
+    assertNotEquals(id1, id2);
+  }
+
+  @Test
+  public void maxWorkerIndex() {
+    final WorkerConnectionIds ids = new WorkerConnectionIds(255);
+
+    assertEquals(255, WorkerConnectionIds.workerIndex(ids.get()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void workerIndexTooLarge() {
+    new WorkerConnectionIds(WorkerConnectionIds.MAX_WORKERS);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeWorkerIndex() {
+    new WorkerConnectionIds(-1);
+  }
+}
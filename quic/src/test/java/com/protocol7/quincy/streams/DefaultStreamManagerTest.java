@@ -1,15 +1,16 @@
 package com.protocol7.quincy.streams;
 
 import static java.util.Optional.of;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.protocol7.quincy.PipelineContext;
 import com.protocol7.quincy.connection.State;
+import com.protocol7.quincy.flowcontrol.FlowControlHandler;
 import com.protocol7.quincy.protocol.ConnectionId;
 import com.protocol7.quincy.protocol.PacketNumber;
 import com.protocol7.quincy.protocol.Payload;
@@ -18,6 +19,10 @@ import com.protocol7.quincy.protocol.frames.ResetStreamFrame;
 import com.protocol7.quincy.protocol.frames.StreamFrame;
 import com.protocol7.quincy.protocol.packets.FullPacket;
 import com.protocol7.quincy.protocol.packets.ShortPacket;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import java.util.List;
+import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -32,17 +37,17 @@ public class DefaultStreamManagerTest {
 
   @Mock private PipelineContext ctx;
   @Mock private StreamListener listener;
-  @Mock private FullPacket packet;
+  @Mock private FlowControlHandler flowControlHandler;
 
   private DefaultStreamManager manager;
 
   @Before
   public void setUp() {
-    when(ctx.send(any(Frame.class))).thenReturn(packet);
     when(ctx.getState()).thenReturn(State.Ready);
-    when(packet.getPacketNumber()).thenReturn(456L);
 
-    manager = new DefaultStreamManager(ctx, listener);
+    manager =
+        new DefaultStreamManager(
+            ctx, ImmediateEventExecutor.INSTANCE, listener, flowControlHandler);
   }
 
   @Test
@@ -50,7 +55,7 @@ public class DefaultStreamManagerTest {
     final Stream stream = manager.openStream(true, true);
 
     stream.write(DATA1, true);
-    verify(ctx).send(new StreamFrame(stream.getId(), 0, true, DATA1));
+    verify(ctx).queue(new StreamFrame(stream.getId(), 0, true, DATA1));
 
     assertTrue(stream.isFinished());
   }
@@ -60,12 +65,12 @@ public class DefaultStreamManagerTest {
     final Stream stream = manager.openStream(true, true);
 
     stream.write(DATA1, false);
-    verify(ctx).send(new StreamFrame(stream.getId(), 0, false, DATA1));
+    verify(ctx).queue(new StreamFrame(stream.getId(), 0, false, DATA1));
 
     assertFalse(stream.isFinished());
 
     stream.write(DATA2, true);
-    verify(ctx).send(new StreamFrame(stream.getId(), DATA1.length, true, DATA2));
+    verify(ctx).queue(new StreamFrame(stream.getId(), DATA1.length, true, DATA2));
 
     assertTrue(stream.isFinished());
   }
@@ -75,21 +80,59 @@ public class DefaultStreamManagerTest {
     final Stream stream = manager.openStream(true, true);
 
     stream.write(DATA1, false);
-    verify(ctx).send(new StreamFrame(stream.getId(), 0, false, DATA1));
+    verify(ctx).queue(new StreamFrame(stream.getId(), 0, false, DATA1));
 
     stream.reset(123);
 
-    verify(ctx).send(new ResetStreamFrame(stream.getId(), 123, DATA1.length));
+    verify(ctx).queue(new ResetStreamFrame(stream.getId(), 123, DATA1.length));
 
     assertTrue(stream.isFinished());
   }
 
+  @Test
+  public void ackAfterReset() {
+    final Stream stream = manager.openStream(true, true);
+
+    stream.write(DATA1, false);
+    stream.reset(123);
+
+    // data sent before the reset, acked after
+    manager.onAck(455, List.of(new StreamFrame(stream.getId(), 0, false, DATA1)));
+    manager.onAck(456, List.of(new ResetStreamFrame(stream.getId(), 123, DATA1.length)));
+
+    // acks for unknown streams are ignored
+    manager.onAck(457, List.of(new StreamFrame(stream.getId() + 4, 0, false, DATA1)));
+
+    assertTrue(stream.isFinished());
+  }
+
+  @Test
+  public void lostData() {
+    final Stream stream = manager.openStream(true, true);
+    stream.write(DATA1, false);
+
+    final StreamFrame lost = new StreamFrame(stream.getId(), 0, false, DATA1);
+    assertEquals(Optional.of(lost), manager.onLost(lost));
+  }
+
+  @Test
+  public void lostDataAfterReset() {
+    final Stream stream = manager.openStream(true, true);
+    stream.write(DATA1, false);
+    stream.reset(123);
+
+    // the peer discards data after the reset, no need to send it again
+    final StreamFrame lost = new StreamFrame(stream.getId(), 0, false, DATA1);
+    assertEquals(Optional.empty(), manager.onLost(lost));
+    assertEquals(0, lost.content().refCnt());
+  }
+
   @Test
   public void receiveSingle() {
     final Stream stream = manager.openStream(true, true);
 
     manager.onReceivePacket(p(new StreamFrame(stream.getId(), 0, true, DATA1)), ctx);
-    verify(listener).onData(stream, DATA1, true);
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA1), true);
 
     assertTrue(stream.isFinished());
   }
@@ -99,11 +142,11 @@ public class DefaultStreamManagerTest {
     final Stream stream = manager.openStream(true, true);
 
     manager.onReceivePacket(p(new StreamFrame(stream.getId(), 0, false, DATA1)), ctx);
-    verify(listener).onData(stream, DATA1, false);
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA1), false);
     verifyNoMoreInteractions(listener);
 
     manager.onReceivePacket(p(new StreamFrame(stream.getId(), DATA1.length, true, DATA2)), ctx);
-    verify(listener).onData(stream, DATA2, true);
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA2), true);
 
     assertTrue(stream.isFinished());
   }
@@ -114,10 +157,12 @@ public class DefaultStreamManagerTest {
 
     manager.onReceivePacket(p(new StreamFrame(stream.getId(), DATA1.length, true, DATA2)), ctx);
     verifyNoMoreInteractions(listener);
+    verify(flowControlHandler).onRead(stream.getId(), 0);
 
     manager.onReceivePacket(p(new StreamFrame(stream.getId(), 0, false, DATA1)), ctx);
-    verify(listener).onData(stream, DATA1, false);
-    verify(listener).onData(stream, DATA2, true);
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA1), false);
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA2), true);
+    verify(flowControlHandler).onRead(stream.getId(), DATA1.length + DATA2.length);
 
     assertTrue(stream.isFinished());
   }
@@ -127,7 +172,7 @@ public class DefaultStreamManagerTest {
     final Stream stream = manager.openStream(true, true);
 
     manager.onReceivePacket(p(new StreamFrame(stream.getId(), 0, false, DATA1)), ctx);
-    verify(listener).onData(stream, DATA1, false);
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA1), false);
     verifyNoMoreInteractions(listener);
 
     manager.onReceivePacket(p(new ResetStreamFrame(stream.getId(), 123, DATA1.length)), ctx);
@@ -2,6 +2,9 @@ package com.protocol7.quincy.streams;
 
 import static org.junit.Assert.*;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import org.junit.Test;
 
 public class ReceivedDataBufferTest {
@@ -13,27 +16,56 @@ public class ReceivedDataBufferTest {
 
   @Test
   public void inOrder() {
-    buffer.onData(DATA1, 0, false);
+    buffer.onData(Unpooled.wrappedBuffer(DATA1), 0, false);
     assertFalse(buffer.isDone());
-    assertArrayEquals(DATA1, buffer.read().get());
+    assertArrayEquals(DATA1, read());
 
-    buffer.onData(DATA2, DATA1.length, true);
+    buffer.onData(Unpooled.wrappedBuffer(DATA2), DATA1.length, true);
 
-    assertArrayEquals(DATA2, buffer.read().get());
+    assertArrayEquals(DATA2, read());
     assertTrue(buffer.isDone());
   }
 
   @Test
   public void outOfOrder() {
-    buffer.onData(DATA2, DATA1.length, true);
+    buffer.onData(Unpooled.wrappedBuffer(DATA2), DATA1.length, true);
 
     assertFalse(buffer.isDone());
     assertFalse(buffer.read().isPresent());
 
-    buffer.onData(DATA1, 0, false);
+    buffer.onData(Unpooled.wrappedBuffer(DATA1), 0, false);
 
-    assertArrayEquals(DATA1, buffer.read().get());
-    assertArrayEquals(DATA2, buffer.read().get());
+    assertArrayEquals(DATA1, read());
+    assertArrayEquals(DATA2, read());
     assertTrue(buffer.isDone());
   }
+
+  @Test
+  public void duplicateReleased() {
+    final ByteBuf first = Unpooled.copiedBuffer(DATA2);
+    final ByteBuf duplicate = Unpooled.copiedBuffer(DATA2);
+    buffer.onData(first, DATA1.length, false);
+    buffer.onData(duplicate, DATA1.length, false);
+
+    assertEquals(0, first.refCnt());
+    assertEquals(1, duplicate.refCnt());
+
+    buffer.onData(Unpooled.wrappedBuffer(DATA1), 0, false);
+    read();
+    read();
+
+    // already read
+    final ByteBuf retransmitted = Unpooled.copiedBuffer(DATA1);
+    buffer.onData(retransmitted, 0, false);
+    assertEquals(0, retransmitted.refCnt());
+  }
+
+  private byte[] read() {
+    final ByteBuf bb = buffer.read().get();
+    try {
+      return ByteBufUtil.getBytes(bb);
+    } finally {
+      bb.release();
+    }
+  }
 }
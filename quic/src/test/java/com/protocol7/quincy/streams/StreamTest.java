@@ -10,7 +10,10 @@ import com.protocol7.quincy.protocol.StreamId;
 import com.protocol7.quincy.protocol.frames.Frame;
 import com.protocol7.quincy.protocol.frames.ResetStreamFrame;
 import com.protocol7.quincy.protocol.frames.StreamFrame;
-import com.protocol7.quincy.protocol.packets.FullPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -22,34 +25,82 @@ public class StreamTest {
   public static final byte[] DATA = "Hello".getBytes();
   @Mock private PipelineContext ctx;
   @Mock private StreamListener listener;
-  @Mock private FullPacket packet;
   private final long streamId = StreamId.random(true, true);
 
   @Before
   public void setUp() {
     MockitoAnnotations.initMocks(this);
-
-    when(packet.getPacketNumber()).thenReturn(123L);
-    when(ctx.send(any(Frame.class))).thenReturn(packet);
   }
 
   @Test
   public void write() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
 
     stream.write(DATA, false);
 
     final StreamFrame frame = (StreamFrame) captureFrame();
 
-    assertEquals(DATA, frame.getData());
+    assertArrayEquals(DATA, frame.getData());
     assertEquals(0, frame.getOffset());
     assertEquals(streamId, frame.getStreamId());
     assertFalse(frame.isFin());
   }
 
+  @Test
+  public void writeOutsideEventLoop() {
+    final EventExecutor executor = mock(EventExecutor.class);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, executor, listener, Bidirectional);
+
+    stream.write(DATA, false);
+
+    // handed over to the event loop
+    final ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).execute(taskCaptor.capture());
+    verify(ctx, never()).queue(any());
+
+    when(executor.inEventLoop()).thenReturn(true);
+    taskCaptor.getValue().run();
+
+    final StreamFrame frame = (StreamFrame) captureFrame();
+    assertArrayEquals(DATA, frame.getData());
+  }
+
+  @Test
+  public void writeByteBuf() {
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
+
+    final ByteBuf data = Unpooled.copiedBuffer(DATA);
+    stream.write(data, false);
+
+    // sent without copying
+    final StreamFrame frame = (StreamFrame) captureFrame();
+    assertSame(data, frame.content());
+    assertEquals(1, data.refCnt());
+  }
+
+  @Test
+  public void writeByteBufOnClosed() {
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
+    stream.write(DATA, true);
+
+    final ByteBuf data = Unpooled.copiedBuffer(DATA);
+    try {
+      stream.write(data, true);
+      fail();
+    } catch (final IllegalStateException e) {
+      // released when failing
+      assertEquals(0, data.refCnt());
+    }
+  }
+
   @Test
   public void writeWithOffset() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
 
     stream.write(DATA, false);
     final StreamFrame frame1 = (StreamFrame) captureFrame();
@@ -62,7 +113,8 @@ public class StreamTest {
 
   @Test
   public void reset() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
 
     stream.write(DATA, false);
     captureFrame();
@@ -78,7 +130,8 @@ public class StreamTest {
 
   @Test(expected = IllegalStateException.class)
   public void resetOnClosed() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
 
     stream.reset(123);
     stream.reset(123);
@@ -86,7 +139,8 @@ public class StreamTest {
 
   @Test(expected = IllegalStateException.class)
   public void writeOnClosed() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
     stream.write(DATA, true);
     assertTrue(stream.isFinished());
     stream.write(DATA, true);
@@ -94,21 +148,26 @@ public class StreamTest {
 
   private Frame captureFrame() {
     final ArgumentCaptor<Frame> packetCaptor = ArgumentCaptor.forClass(Frame.class);
-    verify(ctx, atLeastOnce()).send(packetCaptor.capture());
+    verify(ctx, atLeastOnce()).queue(packetCaptor.capture());
     return packetCaptor.getValue();
   }
 
   @Test
   public void onData() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
-    stream.onData(0, true, DATA);
-
-    verify(listener).onData(stream, DATA, true);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
+    final ByteBuf data = Unpooled.copiedBuffer(DATA);
+    stream.onData(0, true, data);
+
+    verify(listener).onData(stream, Unpooled.wrappedBuffer(DATA), true);
+    // the caller keeps its reference, the listener owns a retained duplicate
+    assertEquals(2, data.refCnt());
   }
 
   @Test
   public void onReset() {
-    final DefaultStream stream = new DefaultStream(streamId, ctx, listener, Bidirectional);
+    final DefaultStream stream =
+        new DefaultStream(streamId, ctx, ImmediateEventExecutor.INSTANCE, listener, Bidirectional);
     stream.onReset(123, 456);
 
     assertTrue(stream.isFinished());
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import com.protocol7.quincy.PipelineContext;
 import com.protocol7.quincy.protocol.StreamId;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -20,7 +21,7 @@ public class StreamsTest {
 
   @Before
   public void setUp() {
-    this.streams = new Streams(ctx);
+    this.streams = new Streams(ctx, ImmediateEventExecutor.INSTANCE);
   }
 
   @Test
@@ -2,14 +2,15 @@ package com.protocol7.quincy.termination;
 
 import static com.protocol7.quincy.protocol.ConnectionId.random;
 import static java.util.Optional.of;
-import static org.junit.Assert.assertFalse;
-import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
-import com.protocol7.quincy.MockTimer;
 import com.protocol7.quincy.PipelineContext;
+import com.protocol7.quincy.connection.ConnectionTimer;
 import com.protocol7.quincy.connection.InternalConnection;
 import com.protocol7.quincy.connection.State;
 import com.protocol7.quincy.protocol.PacketNumber;
@@ -25,6 +26,7 @@ import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
@@ -33,13 +35,19 @@ public class TerminationManagerTest {
 
   @Mock private InternalConnection connection;
   @Mock private PipelineContext ctx;
+  @Mock private ConnectionTimer timer;
+  @Mock private ConnectionTimer.Deadline idleDeadline;
 
   private TerminationManager manager;
-  private MockTimer timer = new MockTimer();
+  private Runnable idleTask;
 
   @Before
   public void setUp() {
+    final ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+    when(timer.deadline(taskCaptor.capture())).thenReturn(idleDeadline);
+
     manager = new TerminationManager(connection, timer, 123, TimeUnit.SECONDS);
+    idleTask = taskCaptor.getValue();
   }
 
   @Test
@@ -55,16 +63,20 @@ public class TerminationManagerTest {
   }
 
   @Test
-  public void idleTimeout() throws Exception {
-    assertTrue(timer.timeouts.isEmpty());
+  public void idleTimeout() {
+    verify(idleDeadline, never()).set(123_000, TimeUnit.MILLISECONDS);
 
     manager.onReceivePacket(packet(PingFrame.INSTANCE), ctx);
 
     // timer set for next packet
-    assertFalse(timer.timeouts.isEmpty());
+    verify(idleDeadline).set(123_000, TimeUnit.MILLISECONDS);
+
+    // moved on every packet
+    manager.onReceivePacket(packet(PingFrame.INSTANCE), ctx);
+    verify(idleDeadline, times(2)).set(123_000, TimeUnit.MILLISECONDS);
 
     // now trigger timer
-    timer.trigger();
+    idleTask.run();
 
     verify(connection).close(eq(TransportError.NO_ERROR), eq(FrameType.PADDING), anyString());
   }
@@ -1,11 +1,12 @@
 package com.protocol7.quincy.tls.aead;
 
-import com.google.common.primitives.Longs;
 import com.protocol7.quincy.utils.Hex;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
 import javax.crypto.Cipher;
-import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -13,14 +14,47 @@ public class AEAD {
 
   public static final int OVERHEAD = 16;
 
-  private static byte[] makeNonce(final byte[] iv, final long packetNumber) {
-    final byte[] nonce = new byte[iv.length];
+  private static final int SAMPLE_LENGTH = 16;
 
-    System.arraycopy(Longs.toByteArray(packetNumber), 0, nonce, nonce.length - 8, 8);
-    for (int i = 0; i < iv.length; i++) {
-      nonce[i] ^= iv[i];
+  // header protection ciphers are not thread safe, so keep one set per thread (that is, per event
+  // loop) and share them between all AEAD instances
+  private static class Ciphers {
+    private final Cipher header;
+    private final byte[] sample = new byte[SAMPLE_LENGTH];
+    private final byte[] mask = new byte[SAMPLE_LENGTH];
+
+    private Ciphers() {
+      header = newCipher("AES/ECB/NoPadding");
+    }
+  }
+
+  private static final FastThreadLocal<Ciphers> ciphers =
+      new FastThreadLocal<>() {
+        @Override
+        protected Ciphers initialValue() {
+          return new Ciphers();
+        }
+      };
+
+  private static Cipher newCipher(final String transformation) {
+    try {
+      return Cipher.getInstance(transformation, "SunJCE");
+    } catch (final GeneralSecurityException shouldNeverHappen) {
+      throw new RuntimeException(shouldNeverHappen);
     }
-    return nonce;
+  }
+
+  private static GCMParameterSpec makeNonce(
+      final byte[] nonce, final byte[] iv, final long packetNumber) {
+    System.arraycopy(iv, 0, nonce, 0, iv.length);
+    for (int i = 0; i < 8; i++) {
+      nonce[nonce.length - 1 - i] ^= (byte) (packetNumber >>> (8 * i));
+    }
+    return new GCMParameterSpec(128, nonce);
+  }
+
+  private static SecretKeySpec keySpec(final byte[] key) {
+    return new SecretKeySpec(key, 0, key.length, "AES");
   }
 
   private static byte[] prepareKey(final byte[] key) {
@@ -48,6 +82,20 @@ public class AEAD {
   private final byte[] myPnKey;
   private final byte[] otherPnKey;
 
+  private final SecretKeySpec myKeySpec;
+  private final SecretKeySpec otherKeySpec;
+  private final SecretKeySpec myPnKeySpec;
+  private final SecretKeySpec otherPnKeySpec;
+
+  // a cipher per direction, so the nonces of a key are only ever used on the cipher of that key.
+  // The JCE refuses to seal twice with the same key and nonce, reusing a nonce fails rather than
+  // breaking confidentiality. Packets can be sealed and opened on different threads, each cipher
+  // is guarded by its own lock
+  private final Cipher sealer = newCipher("AES/GCM/NoPadding");
+  private final Cipher opener = newCipher("AES/GCM/NoPadding");
+  private final byte[] sealNonce = new byte[12];
+  private final byte[] openNonce = new byte[12];
+
   public AEAD(
       final byte[] myKey,
       final byte[] otherKey,
@@ -61,61 +109,196 @@ public class AEAD {
     this.otherIV = prepareIV(otherIV);
     this.myPnKey = prepareKey(myPnKey);
     this.otherPnKey = prepareKey(otherPnKey);
+
+    this.myKeySpec = keySpec(this.myKey);
+    this.otherKeySpec = keySpec(this.otherKey);
+    this.myPnKeySpec = keySpec(this.myPnKey);
+    this.otherPnKeySpec = keySpec(this.otherPnKey);
   }
 
   public byte[] open(final byte[] src, final long packetNumber, final byte[] aad)
       throws GeneralSecurityException {
-    return process(src, packetNumber, aad, otherKey, otherIV, Cipher.DECRYPT_MODE);
+    synchronized (opener) {
+      init(opener, Cipher.DECRYPT_MODE, otherKeySpec, openNonce, otherIV, packetNumber);
+      opener.updateAAD(aad);
+      return opener.doFinal(src);
+    }
   }
 
   public byte[] seal(final byte[] src, final long packetNumber, final byte[] aad)
       throws GeneralSecurityException {
-    return process(src, packetNumber, aad, myKey, myIV, Cipher.ENCRYPT_MODE);
+    synchronized (sealer) {
+      init(sealer, Cipher.ENCRYPT_MODE, myKeySpec, sealNonce, myIV, packetNumber);
+      sealer.updateAAD(aad);
+      return sealer.doFinal(src);
+    }
+  }
+
+  /**
+   * Decrypts in place. The AAD is the bytes between aadOffset and payloadOffset, the cipher text
+   * the length bytes starting at payloadOffset. Returns the length of the plain text, which is
+   * written starting at payloadOffset. Reader and writer indices are left untouched.
+   */
+  public int open(
+      final ByteBuf bb,
+      final int aadOffset,
+      final int payloadOffset,
+      final int length,
+      final long packetNumber)
+      throws GeneralSecurityException {
+    synchronized (opener) {
+      init(opener, Cipher.DECRYPT_MODE, otherKeySpec, openNonce, otherIV, packetNumber);
+      return processInPlace(opener, bb, aadOffset, payloadOffset, length, length - OVERHEAD);
+    }
+  }
+
+  /**
+   * Encrypts in place. The AAD is the bytes between aadOffset and payloadOffset, the plain text the
+   * bytes between payloadOffset and the writer index. The writer index is moved forward to include
+   * the authentication tag.
+   */
+  public void seal(
+      final ByteBuf bb, final int aadOffset, final int payloadOffset, final long packetNumber)
+      throws GeneralSecurityException {
+    final int length = bb.writerIndex() - payloadOffset;
+    bb.ensureWritable(OVERHEAD);
+
+    synchronized (sealer) {
+      init(sealer, Cipher.ENCRYPT_MODE, myKeySpec, sealNonce, myIV, packetNumber);
+      final int written =
+          processInPlace(sealer, bb, aadOffset, payloadOffset, length, length + OVERHEAD);
+
+      bb.writerIndex(payloadOffset + written);
+    }
+  }
+
+  private static void init(
+      final Cipher cipher,
+      final int mode,
+      final SecretKeySpec key,
+      final byte[] nonce,
+      final byte[] iv,
+      final long packetNumber)
+      throws GeneralSecurityException {
+    cipher.init(mode, key, makeNonce(nonce, iv, packetNumber));
+  }
+
+  private static int processInPlace(
+      final Cipher cipher,
+      final ByteBuf bb,
+      final int aadOffset,
+      final int payloadOffset,
+      final int length,
+      final int outputLength)
+      throws GeneralSecurityException {
+    if (bb.hasArray()) {
+      final byte[] array = bb.array();
+      final int arrayOffset = bb.arrayOffset();
+
+      cipher.updateAAD(array, arrayOffset + aadOffset, payloadOffset - aadOffset);
+      return cipher.doFinal(
+          array, arrayOffset + payloadOffset, length, array, arrayOffset + payloadOffset);
+    } else if (bb.nioBufferCount() == 1) {
+      cipher.updateAAD(bb.nioBuffer(aadOffset, payloadOffset - aadOffset));
+
+      final ByteBuffer input = bb.nioBuffer(payloadOffset, length);
+      final ByteBuffer output = bb.nioBuffer(payloadOffset, Math.max(length, outputLength));
+      return cipher.doFinal(input, output);
+    } else {
+      // composite buffer, fall back to copying
+      final byte[] aad = new byte[payloadOffset - aadOffset];
+      bb.getBytes(aadOffset, aad);
+      cipher.updateAAD(aad);
+
+      final byte[] input = new byte[length];
+      bb.getBytes(payloadOffset, input);
+      final byte[] output = cipher.doFinal(input);
+      bb.setBytes(payloadOffset, output);
+      return output.length;
+    }
   }
 
   public int getSampleLength() {
-    return 16;
+    return SAMPLE_LENGTH;
   }
 
   public byte[] decryptHeader(final byte[] sample, final byte[] bs, final boolean shortHeader)
       throws GeneralSecurityException {
-    return processHeader(sample, bs, shortHeader, otherPnKey);
+    return processHeader(sample, bs, shortHeader, otherPnKeySpec);
   }
 
   public byte[] encryptHeader(final byte[] sample, final byte[] bs, final boolean shortHeader)
       throws GeneralSecurityException {
-    return processHeader(sample, bs, shortHeader, myPnKey);
+    return processHeader(sample, bs, shortHeader, myPnKeySpec);
   }
 
-  private final ThreadLocal<Cipher> pnCiphers =
-      ThreadLocal.withInitial(
-          () -> {
-            try {
-              return Cipher.getInstance("AES/ECB/NoPadding", "SunJCE");
-            } catch (final GeneralSecurityException shouldNeverHappen) {
-              throw new RuntimeException(shouldNeverHappen);
-            }
-          });
+  /**
+   * Removes header protection in place, using the sample following the packet number offset.
+   * Returns the packet number length from the now unprotected first byte.
+   */
+  public int decryptHeader(
+      final ByteBuf bb, final int firstByteOffset, final int pnOffset, final boolean shortHeader)
+      throws GeneralSecurityException {
+    final byte[] mask = mask(bb, pnOffset, otherPnKeySpec);
+
+    final byte firstByte = (byte) (bb.getByte(firstByteOffset) ^ (mask[0] & maskMask(shortHeader)));
+    bb.setByte(firstByteOffset, firstByte);
 
-  private byte[] processHeader(
-      final byte[] sample, final byte[] bs, final boolean shortHeader, final byte[] key)
+    final int pnLength = (firstByte & 0x3) + 1;
+    applyMask(bb, pnOffset, pnLength, mask);
+    return pnLength;
+  }
+
+  /** Applies header protection in place, using the sample following the packet number offset. */
+  public void encryptHeader(
+      final ByteBuf bb,
+      final int firstByteOffset,
+      final int pnOffset,
+      final int pnLength,
+      final boolean shortHeader)
       throws GeneralSecurityException {
-    final byte[] out = Arrays.copyOf(bs, bs.length);
+    final byte[] mask = mask(bb, pnOffset, myPnKeySpec);
 
-    final Cipher cipher = pnCiphers.get();
-    final SecretKey secretKey = new SecretKeySpec(key, 0, key.length, "AES");
+    bb.setByte(firstByteOffset, bb.getByte(firstByteOffset) ^ (mask[0] & maskMask(shortHeader)));
+    applyMask(bb, pnOffset, pnLength, mask);
+  }
 
-    cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+  private static byte[] mask(final ByteBuf bb, final int pnOffset, final SecretKeySpec key)
+      throws GeneralSecurityException {
+    final Ciphers c = ciphers.get();
+    bb.getBytes(pnOffset + 4, c.sample);
 
-    final byte[] mask = cipher.doFinal(sample);
+    c.header.init(Cipher.ENCRYPT_MODE, key);
+    c.header.doFinal(c.sample, 0, SAMPLE_LENGTH, c.mask, 0);
+    return c.mask;
+  }
 
-    final byte maskMask;
+  private static void applyMask(
+      final ByteBuf bb, final int pnOffset, final int pnLength, final byte[] mask) {
+    for (int i = 0; i < pnLength; i++) {
+      bb.setByte(pnOffset + i, bb.getByte(pnOffset + i) ^ mask[1 + i]);
+    }
+  }
+
+  private static int maskMask(final boolean shortHeader) {
     if (shortHeader) {
-      maskMask = 0x1f;
+      return 0x1f;
     } else {
-      maskMask = 0xf;
+      return 0xf;
     }
-    out[0] ^= mask[0] & maskMask;
+  }
+
+  private byte[] processHeader(
+      final byte[] sample, final byte[] bs, final boolean shortHeader, final SecretKeySpec key)
+      throws GeneralSecurityException {
+    final byte[] out = Arrays.copyOf(bs, bs.length);
+
+    final Cipher cipher = ciphers.get().header;
+    cipher.init(Cipher.ENCRYPT_MODE, key);
+
+    final byte[] mask = cipher.doFinal(sample);
+
+    out[0] ^= mask[0] & maskMask(shortHeader);
 
     for (int i = 1; i < out.length; i++) {
       out[i] ^= mask[i];
@@ -124,34 +307,6 @@ public class AEAD {
     return out;
   }
 
-  private final ThreadLocal<Cipher> aeadCiphers =
-      ThreadLocal.withInitial(
-          () -> {
-            try {
-              return Cipher.getInstance("AES/GCM/NoPadding", "SunJCE");
-            } catch (final GeneralSecurityException shouldNeverHappen) {
-              throw new RuntimeException(shouldNeverHappen);
-            }
-          });
-
-  private byte[] process(
-      final byte[] src,
-      final long packetNumber,
-      final byte[] aad,
-      final byte[] key,
-      final byte[] iv,
-      final int mode)
-      throws GeneralSecurityException {
-    final Cipher cipher = aeadCiphers.get();
-    final SecretKey secretKey = new SecretKeySpec(key, 0, key.length, "AES");
-    final byte[] nonce = makeNonce(iv, packetNumber);
-    final GCMParameterSpec spec = new GCMParameterSpec(128, nonce);
-
-    cipher.init(mode, secretKey, spec);
-    cipher.updateAAD(aad);
-    return cipher.doFinal(src);
-  }
-
   public byte[] getMyKey() {
     return myKey;
   }
@@ -3,6 +3,7 @@ package com.protocol7.quincy.tls.extensions;
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Shorts;
 import java.util.EnumSet;
+import java.util.Optional;
 
 public enum TransportParameterType {
   ORIGINAL_CONNECTION_ID(0x0000),
@@ -18,7 +19,9 @@ public enum TransportParameterType {
   ACK_DELAY_EXPONENT(0x000a),
   MAX_ACK_DELAY(0x000b),
   DISABLE_MIGRATION(0x000c),
-  PREFERRED_ADDRESS(0x000d);
+  PREFERRED_ADDRESS(0x000d),
+  // draft-ietf-quic-ack-frequency-01
+  MIN_ACK_DELAY(0xde1a);
 
   public static TransportParameterType fromValue(final byte[] value) {
     Preconditions.checkArgument(value.length == 2);
@@ -27,12 +30,22 @@ public enum TransportParameterType {
   }
 
   public static TransportParameterType fromValue(final int value) {
+    return find(value).orElseThrow(() -> new IllegalArgumentException("Unknown value: " + value));
+  }
+
+  public static Optional<TransportParameterType> find(final byte[] value) {
+    Preconditions.checkArgument(value.length == 2);
+
+    return find((value[0] & 0xff) << 8 | value[1] & 0xff);
+  }
+
+  private static Optional<TransportParameterType> find(final int value) {
     for (final TransportParameterType tp : EnumSet.allOf(TransportParameterType.class)) {
-      if (tp.value == value) {
-        return tp;
+      if ((tp.value & 0xffff) == (value & 0xffff)) {
+        return Optional.of(tp);
       }
     }
-    throw new IllegalArgumentException("Unknown value: " + value);
+    return Optional.empty();
   }
 
   private final short value;
@@ -11,6 +11,7 @@ import static com.protocol7.quincy.tls.extensions.TransportParameterType.INITIAL
 import static com.protocol7.quincy.tls.extensions.TransportParameterType.INITIAL_MAX_UNI_STREAMS;
 import static com.protocol7.quincy.tls.extensions.TransportParameterType.MAX_ACK_DELAY;
 import static com.protocol7.quincy.tls.extensions.TransportParameterType.MAX_PACKET_SIZE;
+import static com.protocol7.quincy.tls.extensions.TransportParameterType.MIN_ACK_DELAY;
 import static com.protocol7.quincy.tls.extensions.TransportParameterType.ORIGINAL_CONNECTION_ID;
 import static com.protocol7.quincy.tls.extensions.TransportParameterType.STATELESS_RESET_TOKEN;
 
@@ -18,6 +19,7 @@ import com.protocol7.quincy.Varint;
 import io.netty.buffer.ByteBuf;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Optional;
 
 public class TransportParameters implements Extension {
 
@@ -36,6 +38,7 @@ public class TransportParameters implements Extension {
     private int initialMaxStreamDataUni = -1;
     private int maxAckDelay = -1;
     private byte[] originalConnectionId = new byte[0];
+    private int minAckDelay = -1;
 
     public Builder withInitialMaxStreamDataBidiLocal(final int initialMaxStreamDataBidiLocal) {
       this.initialMaxStreamDataBidiLocal = initialMaxStreamDataBidiLocal;
@@ -102,6 +105,11 @@ public class TransportParameters implements Extension {
       return this;
     }
 
+    public Builder withMinAckDelay(final int minAckDelay) {
+      this.minAckDelay = minAckDelay;
+      return this;
+    }
+
     public TransportParameters build() {
       return new TransportParameters(
           initialMaxStreamDataBidiLocal,
@@ -116,7 +124,8 @@ public class TransportParameters implements Extension {
           initialMaxStreamDataBidiRemote,
           initialMaxStreamDataUni,
           maxAckDelay,
-          originalConnectionId);
+          originalConnectionId,
+          minAckDelay);
     }
   }
 
@@ -139,9 +148,13 @@ public class TransportParameters implements Extension {
         final byte[] data = new byte[len];
         tpBB.readBytes(data);
 
-        final TransportParameterType tp = TransportParameterType.fromValue(type);
+        final Optional<TransportParameterType> known = TransportParameterType.find(type);
+        if (!known.isPresent()) {
+          // unknown transport parameters must be ignored
+          continue;
+        }
 
-        switch (tp) {
+        switch (known.get()) {
           case INITIAL_MAX_STREAM_DATA_BIDI_LOCAL:
             builder.withInitialMaxStreamDataBidiLocal(dataToInt(data));
             break;
@@ -181,6 +194,9 @@ public class TransportParameters implements Extension {
           case ORIGINAL_CONNECTION_ID:
             builder.withOriginalConnectionId(data);
             break;
+          case MIN_ACK_DELAY:
+            builder.withMinAckDelay(dataToInt(data));
+            break;
         }
       }
       return builder.build();
@@ -215,6 +231,7 @@ public class TransportParameters implements Extension {
   private final int initialMaxStreamDataUni;
   private final int maxAckDelay;
   private final byte[] originalConnectionId;
+  private final int minAckDelay;
 
   private TransportParameters(
       final int initialMaxStreamDataBidiLocal,
@@ -229,7 +246,8 @@ public class TransportParameters implements Extension {
       final int initialMaxStreamDataBidiRemote,
       final int initialMaxStreamDataUni,
       final int maxAckDelay,
-      final byte[] originalConnectionId) {
+      final byte[] originalConnectionId,
+      final int minAckDelay) {
     this.initialMaxStreamDataBidiLocal = initialMaxStreamDataBidiLocal;
     this.initialMaxData = initialMaxData;
     this.initialMaxBidiStreams = initialMaxBidiStreams;
@@ -243,6 +261,7 @@ public class TransportParameters implements Extension {
     this.initialMaxStreamDataUni = initialMaxStreamDataUni;
     this.maxAckDelay = maxAckDelay;
     this.originalConnectionId = originalConnectionId;
+    this.minAckDelay = minAckDelay;
   }
 
   @Override
@@ -302,6 +321,11 @@ public class TransportParameters implements Extension {
     return originalConnectionId;
   }
 
+  /** The smallest max ack delay the endpoint accepts in ACK_FREQUENCY frames, in microseconds */
+  public int getMinAckDelay() {
+    return minAckDelay;
+  }
+
   @Override
   public boolean equals(final Object o) {
     if (this == o) return true;
@@ -318,6 +342,7 @@ public class TransportParameters implements Extension {
         && initialMaxStreamDataBidiRemote == that.initialMaxStreamDataBidiRemote
         && initialMaxStreamDataUni == that.initialMaxStreamDataUni
         && maxAckDelay == that.maxAckDelay
+        && minAckDelay == that.minAckDelay
         && Arrays.equals(statelessResetToken, that.statelessResetToken)
         && Arrays.equals(originalConnectionId, that.originalConnectionId);
   }
@@ -336,7 +361,8 @@ public class TransportParameters implements Extension {
             disableMigration,
             initialMaxStreamDataBidiRemote,
             initialMaxStreamDataUni,
-            maxAckDelay);
+            maxAckDelay,
+            minAckDelay);
     result = 31 * result + Arrays.hashCode(statelessResetToken);
     result = 31 * result + Arrays.hashCode(originalConnectionId);
     return result;
@@ -371,6 +397,8 @@ public class TransportParameters implements Extension {
         + maxAckDelay
         + ", originalConnectionId="
         + Arrays.toString(originalConnectionId)
+        + ", minAckDelay="
+        + minAckDelay
         + '}';
   }
 
@@ -432,13 +460,16 @@ public class TransportParameters implements Extension {
       bb.writeShort(originalConnectionId.length);
       bb.writeBytes(originalConnectionId);
     }
+    if (minAckDelay > -1) {
+      bb.writeBytes(MIN_ACK_DELAY.asBytes());
+      writeVarint(bb, minAckDelay);
+    }
 
     bb.setShort(lenPos, bb.writerIndex() - lenPos - 2);
   }
 
   private void writeVarint(final ByteBuf bb, final int value) {
-    final byte[] b = Varint.write(value);
-    bb.writeShort(b.length);
-    bb.writeBytes(b);
+    bb.writeShort(Varint.getLength(value));
+    Varint.write(value, bb);
   }
 }
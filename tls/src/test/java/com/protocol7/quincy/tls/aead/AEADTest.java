@@ -5,7 +5,10 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.protocol7.quincy.utils.Hex;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
 import javax.crypto.AEADBadTagException;
 import org.junit.Test;
 
@@ -104,12 +107,74 @@ public class AEADTest {
     assertArrayEquals(plainText, actual);
   }
 
+  @Test
+  public void sealInPlaceHeap() throws GeneralSecurityException {
+    assertSealInPlace(Unpooled.buffer());
+  }
+
+  @Test
+  public void sealInPlaceDirect() throws GeneralSecurityException {
+    assertSealInPlace(Unpooled.directBuffer());
+  }
+
+  private void assertSealInPlace(final ByteBuf bb) throws GeneralSecurityException {
+    bb.writeBytes(aad);
+    bb.writeBytes(plainText);
+
+    aead.seal(bb, 0, aad.length, packetNumber);
+
+    assertArrayEquals(aad, bytes(bb, 0, aad.length));
+    assertArrayEquals(myCipherText, bytes(bb, aad.length, bb.writerIndex() - aad.length));
+  }
+
+  @Test
+  public void openInPlaceHeap() throws GeneralSecurityException {
+    assertOpenInPlace(Unpooled.buffer());
+  }
+
+  @Test
+  public void openInPlaceDirect() throws GeneralSecurityException {
+    assertOpenInPlace(Unpooled.directBuffer());
+  }
+
+  private void assertOpenInPlace(final ByteBuf bb) throws GeneralSecurityException {
+    bb.writeBytes(aad);
+    bb.writeBytes(otherCipherText);
+
+    final int length = aead.open(bb, 0, aad.length, otherCipherText.length, packetNumber);
+
+    assertEquals(plainText.length, length);
+    assertArrayEquals(plainText, bytes(bb, aad.length, length));
+  }
+
+  private byte[] bytes(final ByteBuf bb, final int offset, final int length) {
+    final byte[] b = new byte[length];
+    bb.getBytes(offset, b);
+    return b;
+  }
+
   @Test(expected = AEADBadTagException.class)
   public void openBadAad() throws GeneralSecurityException {
     final byte[] actual = aead.open(otherCipherText, packetNumber, new byte[aad.length]);
     assertArrayEquals(plainText, actual);
   }
 
+  @Test(expected = InvalidAlgorithmParameterException.class)
+  public void sealReusedNonce() throws GeneralSecurityException {
+    aead.seal(plainText, packetNumber, aad);
+    aead.seal(plainText, packetNumber, aad);
+  }
+
+  @Test
+  public void sealSameNonceWithSeparateAEADs() throws GeneralSecurityException {
+    // AEADs don't share cipher state, the same packet number in another connection is fine
+    final AEAD first = TestAEAD.create();
+    final AEAD second = TestAEAD.create();
+
+    assertArrayEquals(
+        first.seal(plainText, packetNumber, aad), second.seal(plainText, packetNumber, aad));
+  }
+
   @Test
   public void testAEAD() throws GeneralSecurityException {
     final AEAD testAEAD = TestAEAD.create();
@@ -141,4 +206,23 @@ public class AEADTest {
 
     assertHex(header, decrypted);
   }
+
+  @Test
+  public void headerRoundtripInPlace() throws GeneralSecurityException {
+    final ByteBuf bb = Unpooled.directBuffer();
+    bb.writeByte(0xc3); // long header, 4 byte packet number
+    bb.writeZero(4); // packet number
+    bb.writeBytes(sample);
+
+    aead.encryptHeader(bb, 0, 1, 4, false);
+
+    // must match the array based variant, using the sample following the packet number
+    final byte[] expected = aead.encryptHeader(sample, new byte[] {(byte) 0xc3, 0, 0, 0, 0}, false);
+    assertArrayEquals(expected, bytes(bb, 0, 5));
+
+    final int pnLength = aead.decryptHeader(bb, 0, 1, false);
+
+    assertEquals(4, pnLength);
+    assertArrayEquals(new byte[] {(byte) 0xc3, 0, 0, 0, 0}, bytes(bb, 0, 5));
+  }
 }
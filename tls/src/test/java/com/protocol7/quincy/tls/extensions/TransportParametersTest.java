@@ -27,6 +27,7 @@ public class TransportParametersTest {
             .withMaxPacketSize(432)
             .withStatelessResetToken("srt".getBytes())
             .withOriginalConnectionId("oci".getBytes())
+            .withMinAckDelay(1000)
             .build();
 
     final ByteBuf bb = Unpooled.buffer();
@@ -49,6 +50,7 @@ public class TransportParametersTest {
     assertEquals(tps.getMaxPacketSize(), parsed.getMaxPacketSize());
     assertArrayEquals(tps.getStatelessResetToken(), parsed.getStatelessResetToken());
     assertArrayEquals(tps.getOriginalConnectionId(), parsed.getOriginalConnectionId());
+    assertEquals(tps.getMinAckDelay(), parsed.getMinAckDelay());
   }
 
   @Test
@@ -74,4 +76,16 @@ public class TransportParametersTest {
     assertEquals(16, parsed.getStatelessResetToken().length);
     assertEquals(17, parsed.getOriginalConnectionId().length);
   }
+
+  @Test
+  public void ignoreUnknown() {
+    // an unknown parameter followed by the idle timeout
+    final byte[] data = dehex("000b1a1a0002ffff0001000130");
+    final ByteBuf bb = Unpooled.wrappedBuffer(data);
+
+    final TransportParameters parsed = TransportParameters.parse(bb);
+
+    assertEquals(48, parsed.getIdleTimeout());
+    assertEquals(-1, parsed.getMinAckDelay());
+  }
 }